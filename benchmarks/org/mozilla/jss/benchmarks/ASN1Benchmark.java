@@ -0,0 +1,70 @@
+package org.mozilla.jss.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.pkix.cert.Certificate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ASN.1 benchmarks for certificate parsing and encoding:
+ *
+ *  - decodeTemplate/encode: JSS's template-based ASN.1 decoder and encoder
+ *    (org.mozilla.jss.asn1) on a pkix Certificate.
+ *  - parseX509CertImpl: JSS's DER parser (org.mozilla.jss.netscape.security).
+ *  - parseJDK: the JDK's X.509 CertificateFactory, as baseline.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ASN1Benchmark {
+
+    byte[] der;
+    Certificate.Template template;
+    Certificate certificate;
+    CertificateFactory factory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        der = BenchmarkDB.getInstance().getEncodedCertificate();
+        template = Certificate.getTemplate();
+        certificate = (Certificate) ASN1Util.decode(template, der);
+        factory = CertificateFactory.getInstance("X.509", "SUN");
+    }
+
+    @Benchmark
+    public Object decodeTemplate() throws Exception {
+        return ASN1Util.decode(template, der);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return ASN1Util.encode(certificate);
+    }
+
+    @Benchmark
+    public Object parseX509CertImpl() throws Exception {
+        return new X509CertImpl(der);
+    }
+
+    @Benchmark
+    public Object parseJDK() throws Exception {
+        return factory.generateCertificate(new ByteArrayInputStream(der));
+    }
+}
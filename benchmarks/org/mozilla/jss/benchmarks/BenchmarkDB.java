@@ -0,0 +1,224 @@
+package org.mozilla.jss.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.InitializationValues;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.InternalCertificate;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CertificateAlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CertificateIssuerName;
+import org.mozilla.jss.netscape.security.x509.CertificateSerialNumber;
+import org.mozilla.jss.netscape.security.x509.CertificateSubjectName;
+import org.mozilla.jss.netscape.security.x509.CertificateValidity;
+import org.mozilla.jss.netscape.security.x509.CertificateVersion;
+import org.mozilla.jss.netscape.security.x509.CertificateX509Key;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.netscape.security.x509.X509CertInfo;
+import org.mozilla.jss.netscape.security.x509.X509Key;
+import org.mozilla.jss.provider.javax.crypto.JSSNativeTrustManager;
+import org.mozilla.jss.ssl.javax.JSSEngine;
+import org.mozilla.jss.util.NullPasswordCallback;
+import org.mozilla.jss.util.Password;
+
+/**
+ * Shared fixture for the JSS benchmarks.
+ *
+ * Creates a throwaway NSS database in a temporary directory holding a
+ * self-signed RSA server certificate for "localhost", and an equivalent
+ * in-memory JKS key store for the SunJSSE/SunJCE baselines. The database
+ * is created once per benchmark JVM and removed when it exits.
+ *
+ * Benchmarks select an implementation by provider name: JSS for the
+ * Mozilla-JSS provider, JDK for the default JDK providers.
+ */
+public class BenchmarkDB {
+
+    public static final String JSS = "JSS";
+    public static final String JDK = "JDK";
+
+    public static final String PASSWORD = "m1oZilla";
+    public static final String NICKNAME = "Benchmark_RSA";
+    public static final String SUBJECT = "CN=localhost, O=JSS Benchmarks";
+
+    private static BenchmarkDB instance;
+
+    private File dir;
+    private CryptoManager manager;
+
+    private org.mozilla.jss.crypto.X509Certificate nssCert;
+    private KeyPair nssKeyPair;
+
+    private KeyStore sunKeyStore;
+    private KeyPair sunKeyPair;
+
+    public static synchronized BenchmarkDB getInstance() throws Exception {
+        if (instance == null) {
+            instance = new BenchmarkDB();
+        }
+
+        return instance;
+    }
+
+    private BenchmarkDB() throws Exception {
+        dir = Files.createTempDirectory("jss-benchmarks-").toFile();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir)));
+
+        InitializationValues ivs = new InitializationValues(dir.getAbsolutePath());
+        // Keep the JDK providers as defaults; benchmarks always name the
+        // provider they measure.
+        ivs.installJSSProviderFirst = false;
+        CryptoManager.initialize(ivs);
+        manager = CryptoManager.getInstance();
+
+        Password password = new Password(PASSWORD.toCharArray());
+        CryptoToken token = manager.getInternalKeyStorageToken();
+        token.initPassword(new NullPasswordCallback(), password);
+        manager.setPasswordCallback(password);
+
+        KeyPairGenerator nssGenerator = KeyPairGenerator.getInstance("RSA", "Mozilla-JSS");
+        nssGenerator.initialize(2048);
+        nssKeyPair = nssGenerator.generateKeyPair();
+
+        byte[] nssDer = createCertificate(nssKeyPair, "Mozilla-JSS");
+        nssCert = manager.importCertPackage(nssDer, NICKNAME);
+
+        // Trust the self-signed certificate as a peer so that NSS's own
+        // certificate validation accepts it.
+        ((InternalCertificate) nssCert).setSSLTrust(
+                InternalCertificate.VALID_PEER | InternalCertificate.TRUSTED_PEER);
+
+        KeyPairGenerator sunGenerator = KeyPairGenerator.getInstance("RSA", "SunRsaSign");
+        sunGenerator.initialize(2048);
+        sunKeyPair = sunGenerator.generateKeyPair();
+
+        byte[] sunDer = createCertificate(sunKeyPair, "SunRsaSign");
+        CertificateFactory factory = CertificateFactory.getInstance("X.509", "SUN");
+        X509Certificate sunCert = (X509Certificate) factory.generateCertificate(new ByteArrayInputStream(sunDer));
+
+        sunKeyStore = KeyStore.getInstance("JKS", "SUN");
+        sunKeyStore.load(null, null);
+        sunKeyStore.setKeyEntry(NICKNAME, sunKeyPair.getPrivate(), PASSWORD.toCharArray(),
+                new X509Certificate[] { sunCert });
+    }
+
+    /**
+     * Creates a self-signed certificate for the given key pair, signed by
+     * the given provider.
+     */
+    private static byte[] createCertificate(KeyPair keyPair, String provider) throws Exception {
+        Date notBefore = new Date(System.currentTimeMillis() - 60 * 1000L);
+        Date notAfter = new Date(notBefore.getTime() + 365 * 24 * 60 * 60 * 1000L);
+        X500Name name = new X500Name(SUBJECT);
+
+        X509CertInfo info = new X509CertInfo();
+        info.set(X509CertInfo.VERSION, new CertificateVersion(CertificateVersion.V3));
+        info.set(X509CertInfo.SERIAL_NUMBER, new CertificateSerialNumber(
+                BigInteger.valueOf(notBefore.getTime() / 1000)));
+        info.set(X509CertInfo.ALGORITHM_ID, new CertificateAlgorithmId(AlgorithmId.get("SHA256withRSA")));
+        info.set(X509CertInfo.SUBJECT, new CertificateSubjectName(name));
+        info.set(X509CertInfo.ISSUER, new CertificateIssuerName(name));
+        info.set(X509CertInfo.VALIDITY, new CertificateValidity(notBefore, notAfter));
+        info.set(X509CertInfo.KEY, new CertificateX509Key(
+                X509Key.parse(new DerValue(keyPair.getPublic().getEncoded()))));
+
+        X509CertImpl cert = new X509CertImpl(info);
+        cert.sign(keyPair.getPrivate(), "SHA256withRSA", provider);
+        return cert.getEncoded();
+    }
+
+    public CryptoManager getCryptoManager() {
+        return manager;
+    }
+
+    /**
+     * DER encoding of the server certificate in the NSS database.
+     */
+    public byte[] getEncodedCertificate() throws Exception {
+        return nssCert.getEncoded();
+    }
+
+    /**
+     * RSA key pair of the given implementation.
+     */
+    public KeyPair getKeyPair(String impl) {
+        return JSS.equals(impl) ? nssKeyPair : sunKeyPair;
+    }
+
+    /**
+     * Returns an initialized SSLContext of the given implementation which
+     * presents and trusts the benchmark server certificate.
+     */
+    public SSLContext createSSLContext(String impl) throws Exception {
+        if (JSS.equals(impl)) {
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance("NssX509", "Mozilla-JSS");
+            SSLContext context = SSLContext.getInstance("TLS", "Mozilla-JSS");
+            context.init(kmf.getKeyManagers(), new TrustManager[] { new JSSNativeTrustManager() }, null);
+            return context;
+        }
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("SunX509", "SunJSSE");
+        kmf.init(sunKeyStore, PASSWORD.toCharArray());
+
+        TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509", "SunJSSE");
+        tmf.init(sunKeyStore);
+
+        SSLContext context = SSLContext.getInstance("TLS", "SunJSSE");
+        context.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
+        return context;
+    }
+
+    /**
+     * Creates a server SSLEngine from the given context, presenting the
+     * benchmark server certificate.
+     */
+    public SSLEngine createServerEngine(SSLContext context) throws Exception {
+        SSLEngine engine = context.createSSLEngine();
+        engine.setUseClientMode(false);
+
+        if (engine instanceof JSSEngine) {
+            ((JSSEngine) engine).setCertFromAlias(NICKNAME);
+        }
+
+        return engine;
+    }
+
+    /**
+     * Creates a client SSLEngine from the given context, connecting to
+     * localhost so that hostname verification succeeds.
+     */
+    public SSLEngine createClientEngine(SSLContext context) {
+        SSLEngine engine = context.createSSLEngine("localhost", 443);
+        engine.setUseClientMode(true);
+        return engine;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,103 @@
+package org.mozilla.jss.benchmarks;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing a CRL and checking every revoked serial number against it:
+ *
+ *  - full: a RevokedCertImpl is created for every entry.
+ *  - compact: the entries are indexed by RevokedCertIndex and only
+ *    decoded on demand.
+ *
+ * One in three entries carries a reason code extension. The CRL is signed
+ * with a JDK key, so the benchmark doesn't need NSS.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CRLBenchmark {
+
+    @Param({ "500", "5000", "50000" })
+    public int size;
+
+    byte[] encoded;
+    BigInteger[] serials;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        serials = new BigInteger[size];
+        RevokedCertificate[] revokedCerts = new RevokedCertificate[size];
+
+        for (int i = 0; i < size; i++) {
+            serials[i] = BigInteger.valueOf(0x1000 + i * 7919L);
+
+            CRLExtensions entryExtensions = null;
+            if (i % 3 == 0) {
+                entryExtensions = new CRLExtensions();
+                entryExtensions.add(new CRLReasonExtension(RevocationReason.fromInt(1)));
+            }
+            revokedCerts[i] = new RevokedCertImpl(serials[i], new Date(), entryExtensions);
+        }
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair kp = generator.generateKeyPair();
+
+        X509CRLImpl crl = new X509CRLImpl(
+            new X500Name("CN=CRLBenchmark"),
+            new Date(),
+            new Date(System.currentTimeMillis() + 86400000L),
+            revokedCerts,
+            null
+        );
+        crl.sign(kp.getPrivate(), "SHA256withRSA");
+        encoded = crl.getEncoded();
+    }
+
+    @Benchmark
+    public int full() throws Exception {
+        return lookup(new X509CRLImpl(encoded, true, false));
+    }
+
+    @Benchmark
+    public int compact() throws Exception {
+        return lookup(new X509CRLImpl(encoded, true, true));
+    }
+
+    private int lookup(X509CRLImpl crl) {
+        int hits = 0;
+        for (BigInteger serial : serials) {
+            if (crl.isRevoked(serial)) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,151 @@
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JCA benchmarks comparing the Mozilla-JSS provider against the JDK
+ * providers (SunJCE, SUN and SunRsaSign) for one-shot operations on a
+ * payload of the given size.
+ *
+ * Engine objects are created once per trial and reused, as applications
+ * holding on to them would; each operation reinitializes or resets them
+ * as required by the JCA contract.
+ *
+ * encryptInto and encryptDirect write into preallocated output, the way
+ * CipherOutputStream and NIO callers do.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CryptoBenchmark {
+
+    @Param({ BenchmarkDB.JSS, BenchmarkDB.JDK })
+    public String impl;
+
+    @Param({ "64", "1024", "16384" })
+    public int size;
+
+    byte[] data;
+
+    SecretKey aesKey;
+    IvParameterSpec iv;
+    Cipher cipher;
+    byte[] output;
+    ByteBuffer directInput;
+    ByteBuffer directOutput;
+
+    Mac mac;
+    MessageDigest digest;
+
+    Signature signer;
+    Signature verifier;
+    byte[] signature;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDB db = BenchmarkDB.getInstance();
+        boolean jss = BenchmarkDB.JSS.equals(impl);
+
+        String jce = jss ? "Mozilla-JSS" : "SunJCE";
+        String sun = jss ? "Mozilla-JSS" : "SUN";
+        String rsa = jss ? "Mozilla-JSS" : "SunRsaSign";
+
+        data = new byte[size];
+        new Random(size).nextBytes(data);
+
+        KeyGenerator aesGenerator = KeyGenerator.getInstance("AES", jce);
+        aesGenerator.init(128);
+        aesKey = aesGenerator.generateKey();
+        iv = new IvParameterSpec(new byte[16]);
+        cipher = Cipher.getInstance("AES/CBC/PKCS5Padding", jce);
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey, iv);
+        output = new byte[cipher.getOutputSize(size)];
+        directInput = ByteBuffer.allocateDirect(size);
+        directInput.put(data);
+        directOutput = ByteBuffer.allocateDirect(output.length);
+
+        KeyGenerator hmacGenerator = KeyGenerator.getInstance("HmacSHA256", jce);
+        mac = Mac.getInstance("HmacSHA256", jce);
+        mac.init(hmacGenerator.generateKey());
+
+        digest = MessageDigest.getInstance("SHA-256", sun);
+
+        KeyPair keyPair = db.getKeyPair(impl);
+        signer = Signature.getInstance("SHA256withRSA", rsa);
+        signer.initSign(keyPair.getPrivate());
+        verifier = Signature.getInstance("SHA256withRSA", rsa);
+        verifier.initVerify(keyPair.getPublic());
+
+        signer.update(data);
+        signature = signer.sign();
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey, iv);
+        return cipher.doFinal(data);
+    }
+
+    @Benchmark
+    public int encryptInto() throws Exception {
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey, iv);
+        return cipher.doFinal(data, 0, data.length, output, 0);
+    }
+
+    @Benchmark
+    public int encryptDirect() throws Exception {
+        directInput.clear();
+        directOutput.clear();
+        cipher.init(Cipher.ENCRYPT_MODE, aesKey, iv);
+        return cipher.doFinal(directInput, directOutput);
+    }
+
+    @Benchmark
+    public byte[] hmac() throws Exception {
+        return mac.doFinal(data);
+    }
+
+    @Benchmark
+    public byte[] digest() throws Exception {
+        return digest.digest(data);
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        signer.update(data);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
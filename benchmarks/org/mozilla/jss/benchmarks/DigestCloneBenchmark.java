@@ -0,0 +1,117 @@
+package org.mozilla.jss.benchmarks;
+
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Completes a SHA-256 digest and an HMAC-SHA256 over a shared prefix
+ * followed by a short suffix, as transcript hashing does, either by
+ * digesting the prefix again each time (rehash) or by cloning an engine
+ * which has already digested it (clone).
+ *
+ * hmacClone requires a token able to save the operation state of HMAC
+ * contexts; otherwise it fails with CloneNotSupportedException.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DigestCloneBenchmark {
+
+    @Param({ BenchmarkDB.JSS, BenchmarkDB.JDK })
+    public String impl;
+
+    @Param({ "1024", "65536" })
+    public int prefixSize;
+
+    byte[] prefix;
+    byte[] suffix;
+
+    MessageDigest digest;
+    MessageDigest prefixDigest;
+
+    Mac mac;
+    Mac prefixMac;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDB.getInstance();
+        boolean jss = BenchmarkDB.JSS.equals(impl);
+
+        String jce = jss ? "Mozilla-JSS" : "SunJCE";
+        String sun = jss ? "Mozilla-JSS" : "SUN";
+
+        Random random = new Random(prefixSize);
+        prefix = new byte[prefixSize];
+        random.nextBytes(prefix);
+        suffix = new byte[64];
+        random.nextBytes(suffix);
+
+        digest = MessageDigest.getInstance("SHA-256", sun);
+        prefixDigest = MessageDigest.getInstance("SHA-256", sun);
+        prefixDigest.update(prefix);
+
+        KeyGenerator hmacGenerator = KeyGenerator.getInstance("HmacSHA256", jce);
+        mac = Mac.getInstance("HmacSHA256", jce);
+        mac.init(hmacGenerator.generateKey());
+
+        try {
+            prefixMac = (Mac) mac.clone();
+            prefixMac.update(prefix);
+        } catch (CloneNotSupportedException e) {
+            // Only hmacClone fails; the other benchmarks still run.
+            prefixMac = null;
+        }
+    }
+
+    @Benchmark
+    public byte[] digestRehash() throws Exception {
+        digest.update(prefix);
+        digest.update(suffix);
+        return digest.digest();
+    }
+
+    @Benchmark
+    public byte[] digestClone() throws Exception {
+        MessageDigest copy = (MessageDigest) prefixDigest.clone();
+        copy.update(suffix);
+        return copy.digest();
+    }
+
+    @Benchmark
+    public byte[] hmacRehash() throws Exception {
+        mac.update(prefix);
+        mac.update(suffix);
+        return mac.doFinal();
+    }
+
+    @Benchmark
+    public byte[] hmacClone() throws Exception {
+        if (prefixMac == null) {
+            throw new CloneNotSupportedException("HMAC state can't be cloned on this token");
+        }
+
+        Mac copy = (Mac) prefixMac.clone();
+        copy.update(suffix);
+        return copy.doFinal();
+    }
+}
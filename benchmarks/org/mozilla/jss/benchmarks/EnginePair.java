@@ -0,0 +1,162 @@
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import org.mozilla.jss.ssl.javax.JSSEngine;
+
+/**
+ * A client and a server SSLEngine connected through in-memory buffers.
+ *
+ * Both engines are driven from the calling thread, so measurements cover
+ * the engines themselves rather than any network stack. The record
+ * buffers are kept in write mode between calls.
+ */
+public class EnginePair {
+
+    /**
+     * Upper bound on handshake steps; a handshake which hasn't completed
+     * by then is stuck.
+     */
+    static final int MAX_STEPS = 1000;
+
+    static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    SSLEngine client;
+    SSLEngine server;
+
+    ByteBuffer clientToServer;
+    ByteBuffer serverToClient;
+    ByteBuffer clientApp;
+    ByteBuffer serverApp;
+
+    /**
+     * Creates a pair of engines from the given context. The buffers are
+     * sized to hold maxPayload bytes of application data in flight.
+     */
+    public EnginePair(BenchmarkDB db, SSLContext context, int maxPayload) throws Exception {
+        client = db.createClientEngine(context);
+        server = db.createServerEngine(context);
+
+        SSLSession session = client.getSession();
+        int packets = session.getPacketBufferSize() * (maxPayload / 16384 + 2);
+        int app = Math.max(session.getApplicationBufferSize(), maxPayload) * 2;
+
+        clientToServer = ByteBuffer.allocate(packets);
+        serverToClient = ByteBuffer.allocate(packets);
+        clientApp = ByteBuffer.allocate(app);
+        serverApp = ByteBuffer.allocate(app);
+    }
+
+    public SSLEngine getClient() {
+        return client;
+    }
+
+    public SSLEngine getServer() {
+        return server;
+    }
+
+    /**
+     * Runs the handshake to completion.
+     */
+    public void handshake() throws Exception {
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int step = 0; step < MAX_STEPS; step++) {
+            if (isDone(client) && isDone(server)) {
+                clientApp.clear();
+                serverApp.clear();
+                return;
+            }
+
+            step(client, serverToClient, clientToServer, clientApp);
+            step(server, clientToServer, serverToClient, serverApp);
+        }
+
+        throw new SSLException("Handshake didn't complete after " + MAX_STEPS + " steps");
+    }
+
+    /**
+     * Sends the remaining bytes of payload from the client to the server.
+     * Returns the number of bytes the server received.
+     */
+    public int transfer(ByteBuffer payload) throws Exception {
+        while (payload.hasRemaining()) {
+            check(client.wrap(payload, clientToServer));
+        }
+
+        clientToServer.flip();
+        while (clientToServer.hasRemaining()) {
+            SSLEngineResult result = server.unwrap(clientToServer, serverApp);
+            check(result);
+            if (result.bytesConsumed() == 0) {
+                break;
+            }
+        }
+        clientToServer.compact();
+
+        int received = serverApp.position();
+        serverApp.clear();
+        return received;
+    }
+
+    /**
+     * Closes both engines and releases their native resources.
+     */
+    public void close() throws Exception {
+        close(client);
+        close(server);
+    }
+
+    static void step(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer app) throws Exception {
+        switch (engine.getHandshakeStatus()) {
+        case NEED_TASK:
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            break;
+        case NEED_WRAP:
+            check(engine.wrap(EMPTY, out));
+            break;
+        case NEED_UNWRAP:
+            in.flip();
+            check(engine.unwrap(in, app));
+            in.compact();
+            break;
+        default:
+            break;
+        }
+    }
+
+    static boolean isDone(SSLEngine engine) {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+        return status == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                || status == SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+
+    static void check(SSLEngineResult result) throws SSLException {
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            throw new SSLException("Unexpected engine closure: " + result);
+        }
+    }
+
+    static void close(SSLEngine engine) throws Exception {
+        engine.closeOutbound();
+        try {
+            engine.closeInbound();
+        } catch (SSLException e) {
+            // Expected; the peer never sent close_notify.
+        }
+
+        if (engine instanceof JSSEngine) {
+            ((JSSEngine) engine).cleanup();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.mozilla.jss.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.asn1.OCTET_STRING;
+import org.mozilla.jss.asn1.SET;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of an ASN.1 SET OF with many members, as in CRLs and PKCS #7
+ * certificate bags:
+ *
+ *  - encodeDER: DER encoding, which sorts the member encodings.
+ *  - encodeBER: BER encoding in insertion order, as baseline.
+ *
+ * Members are 20-byte OCTET STRINGs in random order. Neither benchmark
+ * needs NSS.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SETBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    public int size;
+
+    SET set;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(size);
+        set = new SET();
+
+        for (int i = 0; i < size; i++) {
+            byte[] value = new byte[20];
+            random.nextBytes(value);
+            set.addElement(new OCTET_STRING(value));
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeDER() {
+        return ASN1Util.encode(set);
+    }
+
+    @Benchmark
+    public byte[] encodeBER() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        set.BERencode(set.getTag(), bos);
+        return bos.toByteArray();
+    }
+}
@@ -0,0 +1,72 @@
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Bulk data benchmark comparing JSSEngine against SunJSSE: wraps a payload
+ * on the client and unwraps it on the server over an established
+ * connection.
+ *
+ * Run with `-prof gc` to check the allocation rate of the wrap/unwrap
+ * path; with debug logging disabled, JSSEngine shouldn't allocate per
+ * record beyond the SSLEngineResult objects the API requires.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SSLEngineBenchmark {
+
+    @Param({ BenchmarkDB.JSS, BenchmarkDB.JDK })
+    public String impl;
+
+    @Param({ "64", "1024", "16384", "65536" })
+    public int size;
+
+    EnginePair engines;
+    ByteBuffer payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDB db = BenchmarkDB.getInstance();
+        SSLContext context = db.createSSLContext(impl);
+
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        payload = ByteBuffer.wrap(data);
+
+        engines = new EnginePair(db, context, size);
+        engines.handshake();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        engines.close();
+    }
+
+    @Benchmark
+    public int transfer() throws Exception {
+        payload.rewind();
+        return engines.transfer(payload);
+    }
+}
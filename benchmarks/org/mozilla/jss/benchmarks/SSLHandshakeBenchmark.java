@@ -0,0 +1,59 @@
+package org.mozilla.jss.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handshake benchmark comparing JSSEngine against SunJSSE: creates a client
+ * and a server engine, completes a TLS handshake between them and releases
+ * them again.
+ *
+ * Each handshake uses fresh engines from the same SSLContext, so depending
+ * on the implementation's session cache, later handshakes may be resumed.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SSLHandshakeBenchmark {
+
+    @Param({ BenchmarkDB.JSS, BenchmarkDB.JDK })
+    public String impl;
+
+    BenchmarkDB db;
+    SSLContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        db = BenchmarkDB.getInstance();
+        context = db.createSSLContext(impl);
+    }
+
+    @Benchmark
+    public SSLSession handshake() throws Exception {
+        EnginePair engines = new EnginePair(db, context, 0);
+        try {
+            engines.handshake();
+            return engines.getClient().getSession();
+        } finally {
+            engines.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+# JMH benchmarks for JSS
+#
+# The benchmarks live under benchmarks/ so that they're never part of
+# jss.jar or the test suite. They're only built when WITH_BENCHMARKS is
+# enabled, as they require the JMH jars:
+#
+#   jmh-core, jmh-generator-annprocess, jopt-simple, commons-math3
+#
+# Use `make benchmark` to run them; arguments can be passed to the JMH
+# runner via the JMH_ARGS environment variable, e.g.:
+#
+#   JMH_ARGS="SSLEngineBenchmark -prof gc" make benchmark
+macro(jss_benchmarks)
+    find_jar(
+        JMH_CORE_JAR
+        NAMES jmh/jmh-core jmh-core
+    )
+    find_jar(
+        JMH_GENERATOR_JAR
+        NAMES jmh/jmh-generator-annprocess jmh-generator-annprocess
+    )
+    find_jar(
+        JOPT_SIMPLE_JAR
+        NAMES jopt-simple jopt-simple/jopt-simple
+    )
+    find_jar(
+        MATH3_JAR
+        NAMES apache-commons-math3 commons-math3
+    )
+
+    if(JMH_CORE_JAR STREQUAL "JMH_CORE_JAR-NOTFOUND")
+        message(FATAL_ERROR "Benchmark dependency jmh-core.jar not found by find_jar!")
+    endif()
+
+    if(JMH_GENERATOR_JAR STREQUAL "JMH_GENERATOR_JAR-NOTFOUND")
+        message(FATAL_ERROR "Benchmark dependency jmh-generator-annprocess.jar not found by find_jar!")
+    endif()
+
+    if(JOPT_SIMPLE_JAR STREQUAL "JOPT_SIMPLE_JAR-NOTFOUND")
+        message(FATAL_ERROR "Benchmark dependency jopt-simple.jar not found by find_jar!")
+    endif()
+
+    if(MATH3_JAR STREQUAL "MATH3_JAR-NOTFOUND")
+        message(FATAL_ERROR "Benchmark dependency commons-math3.jar not found by find_jar!")
+    endif()
+
+    set(BENCHMARKS_CLASSES_OUTPUT_DIR "${CMAKE_BINARY_DIR}/classes/benchmarks")
+    set(JSS_BENCHMARKS_JAR_PATH "${CMAKE_BINARY_DIR}/benchmarks-jss${JSS_VERSION_MAJOR}.jar")
+    set(BENCHMARKS_OUTPUTS "${TARGETS_OUTPUT_DIR}/finished_benchmarks_generate_java")
+    file(MAKE_DIRECTORY "${BENCHMARKS_CLASSES_OUTPUT_DIR}")
+
+    file(GLOB_RECURSE JAVA_BENCHMARK_SOURCES benchmarks/*.java)
+
+    set(BENCHMARKS_CLASSPATH "${JSS_JAR_PATH}:${JAVAC_CLASSPATH}:${JMH_CORE_JAR}:${JOPT_SIMPLE_JAR}:${MATH3_JAR}")
+    message(STATUS "benchmarks classpath: ${BENCHMARKS_CLASSPATH}")
+
+    # The JMH annotation processor generates the benchmark harness and the
+    # META-INF/BenchmarkList used by the runner.
+    add_custom_command(
+        OUTPUT "${BENCHMARKS_OUTPUTS}"
+        COMMAND ${Java_JAVAC_EXECUTABLE} -classpath "${BENCHMARKS_CLASSPATH}" -processorpath "${JMH_GENERATOR_JAR}:${JMH_CORE_JAR}" -target 1.8 -source 1.8 -d ${BENCHMARKS_CLASSES_OUTPUT_DIR} ${JAVA_BENCHMARK_SOURCES}
+        COMMAND touch "${BENCHMARKS_OUTPUTS}"
+        DEPENDS generate_jar ${JAVA_BENCHMARK_SOURCES}
+    )
+
+    add_custom_command(
+        OUTPUT "${JSS_BENCHMARKS_JAR_PATH}"
+        COMMAND "${Java_JAR_EXECUTABLE}" cf "${JSS_BENCHMARKS_JAR_PATH}" -C "${BENCHMARKS_CLASSES_OUTPUT_DIR}" .
+        DEPENDS "${BENCHMARKS_OUTPUTS}"
+    )
+
+    add_custom_target(
+        generate_benchmarks ALL
+        DEPENDS "${JSS_BENCHMARKS_JAR_PATH}"
+    )
+
+    # Like the test suite, use the versioned library so that only exported
+    # JNI symbols are reachable. Logging is left unconfigured so that debug
+    # logging stays disabled while measuring. JMH_ARGS is expanded by the
+    # shell when the target runs.
+    add_custom_target(
+        benchmark
+        COMMAND sh -c "LD_LIBRARY_PATH=${CMAKE_BINARY_DIR} exec ${Java_JAVA_EXECUTABLE} -classpath ${JSS_BENCHMARKS_JAR_PATH}:${BENCHMARKS_CLASSPATH}:${SLF4J_JDK14_JAR} -Djava.library.path=${CMAKE_BINARY_DIR} org.openjdk.jmh.Main \$JMH_ARGS"
+        DEPENDS generate_benchmarks generate_so
+        USES_TERMINAL
+        VERBATIM
+    )
+endmacro()
@@ -399,6 +399,12 @@ macro(jss_config_symbols)
         message(WARNING "Your NSS version doesn't support NIST SP800-108 KBKDF; some features of JSS won't work.")
     endif()
 
+    # Added in NSS v3.52
+    check_symbol_exists("PK11_AEADOp" "nss.h;pk11pub.h" HAVE_NSS_AEAD)
+    if(NOT HAVE_NSS_AEAD)
+        message(WARNING "Your NSS version doesn't support PK11_AEADOp; AES-GCM and ChaCha20-Poly1305 ciphers won't work.")
+    endif()
+
     if(HAVE_NSS_CMAC)
         try_run(CK_HAVE_WORKING_NSS
                 CK_HAVE_COMPILING_NSS
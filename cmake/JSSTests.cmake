@@ -94,6 +94,34 @@ macro(jss_tests)
         NAME "BigObjectIdentifier"
         COMMAND "org.mozilla.jss.tests.BigObjectIdentifier"
     )
+    jss_test_java(
+        NAME "ASN1_Encoding"
+        COMMAND "org.mozilla.jss.tests.ASN1EncodingTest"
+    )
+    jss_test_java(
+        NAME "Extension_Factories"
+        COMMAND "org.mozilla.jss.tests.ExtensionFactoryTest"
+    )
+    jss_test_java(
+        NAME "Compact_CRL_Entries"
+        COMMAND "org.mozilla.jss.tests.CompactCRLTest"
+    )
+    jss_test_java(
+        NAME "X509CRLReader_Streaming"
+        COMMAND "org.mozilla.jss.tests.X509CRLReaderTest"
+    )
+    jss_test_java(
+        NAME "CRL_Store"
+        COMMAND "org.mozilla.jss.tests.CRLStoreTest"
+    )
+    jss_test_java(
+        NAME "JSSTrustAnchors"
+        COMMAND "org.mozilla.jss.tests.JSSTrustAnchorsTest"
+    )
+    jss_test_java(
+        NAME "JSSSessionContext"
+        COMMAND "org.mozilla.jss.tests.JSSSessionContextTest"
+    )
     jss_test_java(
         NAME "JSS_Test_PR_FileDesc"
         COMMAND "org.mozilla.jss.tests.TestPRFD"
@@ -235,6 +263,16 @@ macro(jss_tests)
         COMMAND "org.mozilla.jss.tests.ListCerts" "${RESULTS_NSSDB_OUTPUT_DIR}" "Server_RSA"
         DEPENDS "Setup_DBs"
     )
+    jss_test_java(
+        NAME "PK11Cert_Views"
+        COMMAND "org.mozilla.jss.tests.PK11CertViewTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "CA_RSA"
+        DEPENDS "List_CA_certs"
+    )
+    jss_test_java(
+        NAME "Thread_Token_Scope"
+        COMMAND "org.mozilla.jss.tests.ThreadTokenScopeTest" "${RESULTS_NSSDB_OUTPUT_DIR}"
+        DEPENDS "Setup_DBs"
+    )
     jss_test_java(
         NAME "Verify_cert_by_certnick"
         COMMAND "org.mozilla.jss.tests.VerifyCert" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Server_RSA"
@@ -260,6 +298,11 @@ macro(jss_tests)
         COMMAND "org.mozilla.jss.tests.KeyStoreTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" getAliases
         DEPENDS "List_CA_certs" "X509CertTest" "Secret_Key_Generation" "Symmetric_Key_Deriving" "SSLClientAuth"
     )
+    jss_test_java(
+        NAME "KeyStoreTest_AliasIndex"
+        COMMAND "org.mozilla.jss.tests.KeyStoreTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" checkAliasIndex
+        DEPENDS "KeyStoreTest"
+    )
     jss_test_java(
         NAME "JSSProvider"
         COMMAND "org.mozilla.jss.tests.JSSProvider" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
@@ -275,6 +318,31 @@ macro(jss_tests)
         COMMAND "org.mozilla.jss.tests.TestSSLEngine" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Client_ECDSA" "Server_ECDSA"
         DEPENDS "SSLEngine_RSA"
     )
+    jss_test_java(
+        NAME "JSSServerTemplateCache"
+        COMMAND "org.mozilla.jss.tests.JSSServerTemplateCacheTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Server_RSA" "Server_ECDSA"
+        DEPENDS "List_CA_certs"
+    )
+    jss_test_java(
+        NAME "Legacy_Channel_Socket"
+        COMMAND "org.mozilla.jss.tests.LegacyChannelSocketTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Server_RSA"
+        DEPENDS "List_CA_certs"
+    )
+    jss_test_java(
+        NAME "CRL_Revocation"
+        COMMAND "org.mozilla.jss.tests.CRLRevocationTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Server_RSA" "CA_RSA"
+        DEPENDS "List_CA_certs"
+    )
+    jss_test_java(
+        NAME "JSS_Chain_Cache"
+        COMMAND "org.mozilla.jss.tests.JSSChainCacheTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Server_RSA" "CA_RSA"
+        DEPENDS "List_CA_certs"
+    )
+    jss_test_java(
+        NAME "JSSTokenKeyManager"
+        COMMAND "org.mozilla.jss.tests.JSSTokenKeyManagerTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "localhost"
+        DEPENDS "List_CA_certs"
+    )
 
     if(NOT FIPS_ENABLED)
         jss_test_java(
@@ -287,6 +355,11 @@ macro(jss_tests)
             COMMAND "org.mozilla.jss.tests.HmacTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
             DEPENDS "Setup_DBs"
         )
+        jss_test_java(
+            NAME "Cipher_Buffers"
+            COMMAND "org.mozilla.jss.tests.CipherBufferTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
+            DEPENDS "Setup_DBs"
+        )
         if(HAVE_NSS_CMAC)
             jss_test_java(
                 NAME "CMAC_Test"
@@ -294,6 +367,13 @@ macro(jss_tests)
                 DEPENDS "Setup_DBs"
             )
         endif()
+        if(HAVE_NSS_AEAD)
+            jss_test_java(
+                NAME "AEAD_Test"
+                COMMAND "org.mozilla.jss.tests.TestAEAD" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
+                DEPENDS "Setup_DBs"
+            )
+        endif()
         if(HAVE_NSS_KBKDF)
             jss_test_java(
                 NAME "KBKDF_Test"
@@ -8,10 +8,12 @@ import java.security.GeneralSecurityException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
-import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.mozilla.jss.asn1.ANY;
 import org.mozilla.jss.asn1.ASN1Util;
@@ -28,6 +30,8 @@ import org.mozilla.jss.crypto.TokenException;
 import org.mozilla.jss.crypto.TokenSupplier;
 import org.mozilla.jss.crypto.TokenSupplierManager;
 import org.mozilla.jss.crypto.X509Certificate;
+import org.mozilla.jss.netscape.security.x509.CRLStore;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 import org.mozilla.jss.pkcs11.KeyType;
 import org.mozilla.jss.pkcs11.PK11Cert;
 import org.mozilla.jss.pkcs11.PK11Module;
@@ -141,7 +145,7 @@ public final class CryptoManager implements TokenSupplier
      *
      * @return The internal cryptographic services token.
      */
-    public synchronized CryptoToken getInternalCryptoToken() {
+    public CryptoToken getInternalCryptoToken() {
         return internalCryptoToken;
     }
 
@@ -154,7 +158,7 @@ public final class CryptoManager implements TokenSupplier
      *
      * @return The internal key storage token.
      */
-    public synchronized CryptoToken getInternalKeyStorageToken() {
+    public CryptoToken getInternalKeyStorageToken() {
         return internalKeyStorageToken;
     }
 
@@ -167,7 +171,7 @@ public final class CryptoManager implements TokenSupplier
      * @exception org.mozilla.jss.NoSuchTokenException If no token
      *  is found with the given name.
      */
-    public synchronized CryptoToken getTokenByName(String name)
+    public CryptoToken getTokenByName(String name)
         throws NoSuchTokenException
     {
         Enumeration<CryptoToken> tokens = getAllTokens();
@@ -192,7 +196,7 @@ public final class CryptoManager implements TokenSupplier
      * @param alg Algorithm.
      * @return Enumeration of tokens.
      */
-    public synchronized Enumeration<CryptoToken> getTokensSupportingAlgorithm(Algorithm alg)
+    public Enumeration<CryptoToken> getTokensSupportingAlgorithm(Algorithm alg)
     {
         Enumeration<CryptoToken> tokens = getAllTokens();
         Vector<CryptoToken> goodTokens = new Vector<>();
@@ -215,7 +219,7 @@ public final class CryptoManager implements TokenSupplier
      *      is a <code>CryptoToken</code>
      * @see org.mozilla.jss.crypto.CryptoToken
      */
-    public synchronized Enumeration<CryptoToken> getAllTokens() {
+    public Enumeration<CryptoToken> getAllTokens() {
         Enumeration<PK11Module> modules = getModules();
         Enumeration<CryptoToken> tokens;
         Vector<CryptoToken> allTokens = new Vector<>();
@@ -237,7 +241,7 @@ public final class CryptoManager implements TokenSupplier
      * @return All tokens accessible from JSS, except for the built-in
      *      internal tokens.
      */
-    public synchronized Enumeration<CryptoToken> getExternalTokens() {
+    public Enumeration<CryptoToken> getExternalTokens() {
         Enumeration<PK11Module> modules = getModules();
         Enumeration<CryptoToken> tokens;
         PK11Token token;
@@ -264,8 +268,8 @@ public final class CryptoManager implements TokenSupplier
      *      item in the enumeration is a <code>PK11Module</code>.
      * @see org.mozilla.jss.pkcs11.PK11Module
      */
-    public synchronized Enumeration<PK11Module> getModules() {
-        return moduleVector.elements();
+    public Enumeration<PK11Module> getModules() {
+        return Collections.enumeration(modules);
     }
 
     // Need to reload modules after adding new one
@@ -275,47 +279,55 @@ public final class CryptoManager implements TokenSupplier
      * The list of modules. This should be initialized by the constructor
      * and updated whenever 1) a new module is added, 2) a module is deleted,
      * or 3) FIPS mode is switched.
+     *
+     * The list is immutable and replaced as a whole by reloadModules(), so
+     * that lookups need no lock.
      */
-    private Vector<PK11Module> moduleVector;
+    private volatile List<PK11Module> modules = Collections.emptyList();
 
     /**
-     * Re-creates the Vector of modules that is stored by CryptoManager.
+     * Re-creates the list of modules that is stored by CryptoManager.
      * This entails going into native code to enumerate all modules,
-     * wrap each one in a PK11Module, and storing the PK11Module in the vector.
+     * wrap each one in a PK11Module, and storing the PK11Module in the list.
      */
     private synchronized void reloadModules() {
-        moduleVector = new Vector<>();
+        Vector<PK11Module> moduleVector = new Vector<>();
         putModulesInVector(moduleVector);
 
         // Get the internal tokens
-        Enumeration<CryptoToken> tokens = getAllTokens();
-
-        internalCryptoToken = null;
-        internalKeyStorageToken = null;
-        while(tokens.hasMoreElements()) {
-            PK11Token token = (PK11Token) tokens.nextElement();
-            if( token.isInternalCryptoToken() ) {
-                assert(internalCryptoToken == null);
-                internalCryptoToken = token;
-            }
-            if( token.isInternalKeyStorageToken() ) {
-                assert(internalKeyStorageToken == null);
-                internalKeyStorageToken = token;
+        CryptoToken cryptoToken = null;
+        CryptoToken keyStorageToken = null;
+        for (PK11Module module : moduleVector) {
+            Enumeration<CryptoToken> tokens = module.getTokens();
+            while(tokens.hasMoreElements()) {
+                PK11Token token = (PK11Token) tokens.nextElement();
+                if( token.isInternalCryptoToken() ) {
+                    assert(cryptoToken == null);
+                    cryptoToken = token;
+                }
+                if( token.isInternalKeyStorageToken() ) {
+                    assert(keyStorageToken == null);
+                    keyStorageToken = token;
+                }
             }
         }
-        assert(internalKeyStorageToken != null);
-        assert(internalCryptoToken != null);
+        assert(keyStorageToken != null);
+        assert(cryptoToken != null);
+
+        modules = Collections.unmodifiableList(new ArrayList<>(moduleVector));
+        internalCryptoToken = cryptoToken;
+        internalKeyStorageToken = keyStorageToken;
     }
 
     /**
      * The internal cryptographic services token.
      */
-    private CryptoToken internalCryptoToken;
+    private volatile CryptoToken internalCryptoToken;
 
     /**
      * The internal key storage token.
      */
-    private CryptoToken internalKeyStorageToken;
+    private volatile CryptoToken internalKeyStorageToken;
 
     /**
      * Native code to traverse all PKCS #11 modules, wrap each one in
@@ -337,9 +349,7 @@ public final class CryptoManager implements TokenSupplier
     }
 
     public static boolean isInitialized() {
-        synchronized (CryptoManager.class) {
-            return instance != null;
-        }
+        return instance != null;
     }
 
     /**
@@ -355,10 +365,10 @@ public final class CryptoManager implements TokenSupplier
     public static CryptoManager getInstance()
         throws NotInitializedException
     {
-        synchronized (CryptoManager.class) {
-            if (instance != null) {
-                return instance;
-            }
+        // instance is volatile, so the common case takes no lock.
+        CryptoManager cm = instance;
+        if (cm != null) {
+            return cm;
         }
 
         /* Java has lazy-loading Security providers; until a provider
@@ -410,7 +420,25 @@ public final class CryptoManager implements TokenSupplier
     /**
      * The singleton instance, and a static initializer to create it.
      */
-    private static CryptoManager instance=null;
+    private static volatile CryptoManager instance=null;
+
+    /**
+     * The directory containing the security databases, as passed to
+     * initialize().
+     */
+    private volatile String configDir;
+
+    /**
+     * Incremented whenever certificates or keys are imported or deleted
+     * through JSS, so that caches of the certificate database can tell
+     * when they have become stale.
+     */
+    private final AtomicLong certDBModCount = new AtomicLong();
+
+    /**
+     * CRLs checked by verifyCertificate and isCertValid, if any.
+     */
+    private volatile CRLStore crlStore;
 
 
     ///////////////////////////////////////////////////////////////////////
@@ -557,13 +585,16 @@ public final class CryptoManager implements TokenSupplier
                             values.cooperate
                             );
 
-        instance = new CryptoManager();
-        instance.setPasswordCallback(values.passwordCallback);
+        // getInstance() returns instance without taking the lock, so it is
+        // only assigned once the CryptoManager is completely set up.
+        CryptoManager cm = new CryptoManager();
+        cm.configDir = values.configDir;
+        cm.setPasswordCallback(values.passwordCallback);
         if( values.fipsMode != InitializationValues.FIPSMode.UNCHANGED) {
             if( enableFIPS(values.fipsMode ==
                     InitializationValues.FIPSMode.ENABLED) )
             {
-                instance.reloadModules();
+                cm.reloadModules();
             }
         }
 
@@ -601,6 +632,8 @@ public final class CryptoManager implements TokenSupplier
             java.security.Security.removeProvider("SUN");
         }
 
+        instance = cm;
+
         logger.info("JSS CryptoManager: successfully initialized from NSS database at " + values.configDir);
     }
 
@@ -698,7 +731,9 @@ public final class CryptoManager implements TokenSupplier
             NoSuchItemOnTokenException,
             TokenException
     {
-        return importCertPackageNative(certPackage, nickname, false, false);
+        X509Certificate cert = importCertPackageNative(certPackage, nickname, false, false);
+        certDBModCount.incrementAndGet();
+        return cert;
     }
 
     /**
@@ -735,7 +770,9 @@ public final class CryptoManager implements TokenSupplier
             NoSuchItemOnTokenException,
             TokenException
     {
-        return importCertPackageNative(certPackage, nickname, false, true);
+        X509Certificate cert = importCertPackageNative(certPackage, nickname, false, true);
+        certDBModCount.incrementAndGet();
+        return cert;
     }
 
 
@@ -762,7 +799,9 @@ public final class CryptoManager implements TokenSupplier
             TokenException
     {
         try {
-            return importCertPackageNative(certPackage, null, true, false);
+            X509Certificate cert = importCertPackageNative(certPackage, null, true, false);
+            certDBModCount.incrementAndGet();
+            return cert;
         } catch(NicknameConflictException e) {
             logger.error("importing CA certs caused nickname conflict", e);
             throw new RuntimeException("Importing CA certs caused nickname conflict: " + e.getMessage(), e);
@@ -797,7 +836,9 @@ public final class CryptoManager implements TokenSupplier
         }
 
         else {
-            return importCertToPermNative(cert,nickname);
+            InternalCertificate result = importCertToPermNative(cert,nickname);
+            certDBModCount.incrementAndGet();
+            return result;
         }
     }
 
@@ -807,7 +848,40 @@ public final class CryptoManager implements TokenSupplier
      */
     public X509Certificate importDERCert(byte[] cert, CertificateUsage usage,
                                          boolean permanent, String nickname) {
-        return importDERCertNative(cert, usage.getEnumValue(), permanent, nickname);
+        X509Certificate result = importDERCertNative(cert, usage.getEnumValue(), permanent, nickname);
+        certDBModCount.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * Returns the directory containing the security databases, as passed
+     * to initialize(). This may include an NSS database type prefix such
+     * as "sql:".
+     */
+    public String getConfigDir() {
+        return configDir;
+    }
+
+    /**
+     * Returns a counter which changes whenever certificates are imported
+     * through this CryptoManager, certificates or keys are set or deleted
+     * through a JSS KeyStore or a token's CryptoStore, or certDBModified()
+     * is called. Caches
+     * derived from the certificate database can compare it against a
+     * previously observed value to decide whether they must be rebuilt.
+     */
+    public long getCertDBModCount() {
+        return certDBModCount.get();
+    }
+
+    /**
+     * Records a modification of the certificate database made other than
+     * through JSS, e.g., by another process or by native code, so that
+     * caches derived from it are rebuilt. JSS KeyStores and CryptoStores
+     * call this themselves.
+     */
+    public void certDBModified() {
+        certDBModCount.incrementAndGet();
     }
 
     private native X509Certificate importDERCertNative(byte[] cert, int usage, boolean permanent, String nickname);
@@ -1064,8 +1138,10 @@ public final class CryptoManager implements TokenSupplier
 
     public static final boolean JSS_DEBUG = getJSSDebug();
 
-    // Hashtable is synchronized.
-    private Hashtable<Thread, CryptoToken> perThreadTokenTable = new Hashtable<>();
+    // Unlike a table keyed by Thread, a ThreadLocal takes no lock and
+    // doesn't keep exited threads reachable. It also works with virtual
+    // threads.
+    private final ThreadLocal<CryptoToken> threadToken = new ThreadLocal<>();
 
     /**
      * Sets the default token for the current thread. This token will
@@ -1081,9 +1157,61 @@ public final class CryptoManager implements TokenSupplier
      */
     public void setThreadToken(CryptoToken token) {
         if( token != null ) {
-            perThreadTokenTable.put(Thread.currentThread(), token);
+            threadToken.set(token);
         } else {
-            perThreadTokenTable.remove(Thread.currentThread());
+            threadToken.remove();
+        }
+    }
+
+    /**
+     * Sets the default token for the current thread until the returned
+     * scope is closed, which restores the previous default token:
+     *
+     * <pre>
+     * try (CryptoManager.ThreadTokenScope scope = cm.withThreadToken(token)) {
+     *     Signature signer = Signature.getInstance(...);
+     *     ...
+     * }
+     * </pre>
+     *
+     * Unlike pairs of setThreadToken(...) calls, scopes nest and always
+     * restore the token, even when the enclosed code throws.
+     *
+     * @param token The token to use for crypto operations. Specifying
+     * <code>null</code> will cause the InternalKeyStorageToken to be used.
+     * @return The scope, to be closed on the same thread.
+     */
+    public ThreadTokenScope withThreadToken(CryptoToken token) {
+        ThreadTokenScope scope = new ThreadTokenScope(threadToken.get());
+        setThreadToken(token);
+        return scope;
+    }
+
+    /**
+     * Restores the previous default token of a thread when closed; see
+     * withThreadToken(...).
+     */
+    public final class ThreadTokenScope implements AutoCloseable {
+        private final Thread thread = Thread.currentThread();
+        private final CryptoToken previous;
+        private boolean closed;
+
+        private ThreadTokenScope(CryptoToken previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            if (Thread.currentThread() != thread) {
+                throw new IllegalStateException(
+                    "Thread token scope must be closed by the thread which opened it");
+            }
+
+            closed = true;
+            setThreadToken(previous);
         }
     }
 
@@ -1100,8 +1228,7 @@ public final class CryptoManager implements TokenSupplier
      * it will be the InternalKeyStorageToken.
      */
     public CryptoToken getThreadToken() {
-        CryptoToken tok =
-            perThreadTokenTable.get(Thread.currentThread());
+        CryptoToken tok = threadToken.get();
         if( tok == null ) {
             tok = getInternalKeyStorageToken();
         }
@@ -1132,6 +1259,11 @@ public final class CryptoManager implements TokenSupplier
         int currCertificateUsage = 0x0000; // initialize it to 0
         currCertificateUsage = verifyCertificateNowCUNative(nickname,
                 checkSig);
+        if (currCertificateUsage != CertificateUsage.basicCertificateUsages
+                && isRevoked(nickname)) {
+            // cert is good for nothing
+            return CertificateUsage.basicCertificateUsages;
+        }
         return currCertificateUsage;
     }
 
@@ -1175,10 +1307,10 @@ public final class CryptoManager implements TokenSupplier
                 // cert is good for nothing
                 return false;
             } else
-                return true;
+                return !isRevoked(nickname);
         } else {
             return verifyCertificateNowNative(nickname, checkSig,
-              certificateUsage.getUsage());
+              certificateUsage.getUsage()) && !isRevoked(nickname);
         }
     }
 
@@ -1201,6 +1333,7 @@ public final class CryptoManager implements TokenSupplier
                     throws ObjectNotFoundException, InvalidNicknameException, CertificateException {
         int usage = certificateUsage == null ? 0 : certificateUsage.getUsage();
         verifyCertificateNowNative2(nickname, checkSig, usage);
+        checkRevocation(nickname);
     }
 
     /**
@@ -1220,6 +1353,121 @@ public final class CryptoManager implements TokenSupplier
             InvalidNicknameException, CertificateException {
         int usage = certificateUsage == null ? 0 : certificateUsage.getUsage();
         verifyCertificateNowNative3(cert, checkSig, usage);
+        checkRevocation(cert);
+    }
+
+    /**
+     * Sets the store of CRLs consulted after NSS has validated a
+     * certificate. Passing null disables the check.
+     * <p>
+     * The verifyCertificate and isCertValid methods taking a nickname or
+     * an X509Certificate check the certificate and the chain NSS builds
+     * for it, so a revoked intermediate CA fails the verification too.
+     * {@link #isCertValid(byte[], boolean, CertUsage)} checks the
+     * certificates in the package, since the chain of a temporary
+     * certificate isn't kept after the verification.
+     */
+    public void setCRLStore(CRLStore crlStore) {
+        this.crlStore = crlStore;
+    }
+
+    public CRLStore getCRLStore() {
+        return crlStore;
+    }
+
+    /**
+     * Checks a certificate and the chain NSS builds for it against the
+     * CRL store.
+     *
+     * @exception CertificateException If a certificate in the chain is
+     *      revoked, or the chain can't be built.
+     */
+    private void checkRevocation(X509Certificate cert) throws CertificateException {
+        CRLStore store = crlStore;
+        if (store == null) {
+            return;
+        }
+
+        X509Certificate[] chain;
+        if (cert instanceof PK11Cert) {
+            try {
+                chain = buildCertificateChain(cert);
+            } catch (TokenException e) {
+                throw new CertificateException("Unable to build certificate chain: " + e.getMessage(), e);
+            }
+        } else {
+            chain = new X509Certificate[] { cert };
+        }
+
+        for (X509Certificate c : chain) {
+            java.security.cert.X509Certificate jcert;
+            if (c instanceof java.security.cert.X509Certificate) {
+                jcert = (java.security.cert.X509Certificate) c;
+            } else {
+                jcert = new X509CertImpl(c.getEncoded());
+            }
+
+            if (store.isRevoked(jcert)) {
+                throw new CertificateException("Certificate revoked: " + jcert.getSubjectDN());
+            }
+        }
+    }
+
+    private void checkRevocation(String nickname)
+            throws ObjectNotFoundException, CertificateException {
+        if (crlStore == null) {
+            return;
+        }
+
+        X509Certificate cert;
+        try {
+            cert = findCertByNickname(nickname);
+        } catch (TokenException e) {
+            throw new CertificateException("Unable to find certificate " + nickname + ": " + e.getMessage(), e);
+        }
+        checkRevocation(cert);
+    }
+
+    /**
+     * Returns true if the certificate or its chain is revoked, or the
+     * check can't be completed.
+     */
+    private boolean isRevoked(String nickname) throws ObjectNotFoundException {
+        try {
+            checkRevocation(nickname);
+            return false;
+        } catch (CertificateException e) {
+            logger.debug("CryptoManager: " + e.getMessage());
+            return true;
+        }
+    }
+
+    /**
+     * Returns true if a certificate in the package is revoked, or the
+     * package can't be parsed.
+     */
+    private boolean isRevoked(byte[] certPackage) {
+        CRLStore store = crlStore;
+        if (store == null) {
+            return false;
+        }
+
+        try {
+            java.security.cert.CertificateFactory factory =
+                    java.security.cert.CertificateFactory.getInstance("X.509");
+            for (java.security.cert.Certificate cert : factory.generateCertificates(
+                    new java.io.ByteArrayInputStream(certPackage))) {
+                java.security.cert.X509Certificate jcert = (java.security.cert.X509Certificate) cert;
+                if (store.isRevoked(jcert)) {
+                    logger.debug("CryptoManager: Certificate revoked: " + jcert.getSubjectDN());
+                    return true;
+                }
+            }
+            return false;
+        } catch (CertificateException e) {
+            logger.debug("CryptoManager: Unable to parse certificate package: " + e.getMessage());
+            return true;
+        }
     }
 
     private native boolean verifyCertificateNowNative(String nickname,
@@ -1260,7 +1508,8 @@ public final class CryptoManager implements TokenSupplier
         if (nickname==null) {
             throw new InvalidNicknameException("Nickname must be non-null");
         }
-        return verifyCertNowNative(nickname, checkSig, certUsage.getUsage());
+        return verifyCertNowNative(nickname, checkSig, certUsage.getUsage())
+                && !isRevoked(nickname);
     }
 
     /*
@@ -1292,7 +1541,8 @@ public final class CryptoManager implements TokenSupplier
         throws TokenException, CertificateEncodingException
     {
         return verifyCertTempNative(certPackage , checkSig,
-                                    certUsage.getUsage());
+                                    certUsage.getUsage())
+                && !isRevoked(certPackage);
     }
 
 
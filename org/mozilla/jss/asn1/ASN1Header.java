@@ -251,6 +251,33 @@ public class ASN1Header {
         this.contentLength = contentLength;
     }
 
+    /**
+     * Computes the length of the DER header of a value with the given tag
+     * and content length, without encoding it.
+     * @param tag Tag.
+     * @param contentLength Content length; must be &ge;0.
+     * @return Length of the identifier and length octets.
+     */
+    public static int getEncodedLength(Tag tag, long contentLength) {
+        assert(contentLength >= 0);
+
+        int length = 1;
+        if( tag.getNum() > 30 ) {
+            // long form: seven bits of the tag number per octet
+            int bitlength = 64 - Long.numberOfLeadingZeros(tag.getNum());
+            length += (bitlength + 6) / 7;
+        }
+
+        length += 1;
+        if( contentLength > 127 ) {
+            // long form: the number of octets, then the length itself
+            int bitlength = 64 - Long.numberOfLeadingZeros(contentLength);
+            length += (bitlength + 7) / 8;
+        }
+
+        return length;
+    }
+
     public void encode( OutputStream ostream )
         throws IOException
     {
@@ -265,7 +292,8 @@ public class ASN1Header {
             return cachedEncoding;
         }
 
-        ByteArrayOutputStream cache = new ByteArrayOutputStream();
+        byte[] cache;
+        int pos = 0;
 
         //
         // Identifier octet(s)
@@ -278,27 +306,33 @@ public class ASN1Header {
             idOctet |= 0x20;
         }
 
+        if( contentLength == -1 ) {
+            // indefinite form takes a single length octet
+            cache = new byte[getEncodedLength(tag, 0)];
+        } else {
+            cache = new byte[getEncodedLength(tag, contentLength)];
+        }
+
         if( tag.getNum() <= 30 ) {
             // short form
             idOctet |= (tag.getNum() & 0x1f );
 
-            cache.write( idOctet );
+            cache[pos++] = idOctet;
         }  else {
             // long form
             idOctet |= 0x1f;
-            BigInteger tagNum = BigInteger.valueOf(tag.getNum());
 
-            cache.write( idOctet );
+            cache[pos++] = idOctet;
 
-            int bitlength = tagNum.bitLength();
+            int bitlength = 64 - Long.numberOfLeadingZeros(tag.getNum());
             int reps = (bitlength+6)/7;
 
             for( reps = reps-1; reps > 0 ; reps--) {
                 long shifted = tag.getNum() >>> ( 7*reps );
-                cache.write( (((byte)shifted) & 0x7f) | 0x80 );
+                cache[pos++] = (byte) ((shifted & 0x7f) | 0x80);
             }
 
-            cache.write( ((byte)tag.getNum()) & 0x7f );
+            cache[pos++] = (byte) (tag.getNum() & 0x7f);
         }
 
         //
@@ -306,19 +340,21 @@ public class ASN1Header {
         //
         if( contentLength == -1 ) {
             // indefinite form
-            cache.write( (byte) 0x80 );
+            cache[pos++] = (byte) 0x80;
         } else if( contentLength <= 127 ) {
             // short form
-            cache.write( (byte) contentLength );
+            cache[pos++] = (byte) contentLength;
         } else {
             // long form
-            byte[] val = unsignedBigIntToByteArray(
-                            BigInteger.valueOf(contentLength) );
-            cache.write( ((byte)val.length) | 0x80 );
-            cache.write( val, 0, val.length );
+            int numBytes = cache.length - pos - 1;
+            cache[pos++] = (byte) (numBytes | 0x80);
+            for( int i = numBytes - 1; i >= 0; i-- ) {
+                cache[pos++] = (byte) (contentLength >>> (8 * i));
+            }
         }
+        assert(pos == cache.length);
 
-        cachedEncoding = cache.toByteArray();
+        cachedEncoding = cache;
 
         return cachedEncoding;
     }
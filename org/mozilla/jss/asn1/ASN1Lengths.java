@@ -0,0 +1,134 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+package org.mozilla.jss.asn1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+
+/**
+ * Caches encoded lengths while a value is being encoded.
+ *
+ * Constructed values must know the length of their contents before
+ * writing their header. Rather than rendering each element into a
+ * temporary buffer, they ask the elements for their encoded length and
+ * then stream the elements directly. To keep this linear, lengths are
+ * remembered per value (by identity) for as long as the outermost encode
+ * or length computation on the current thread is running; nothing is
+ * cached between encodings, so values may be modified in between.
+ */
+final class ASN1Lengths {
+
+    private static final ThreadLocal<Scope> current =
+            ThreadLocal.withInitial(Scope::new);
+
+    // Lengths of up to this many values are cleared after an encoding
+    // rather than dropped, so that the map is reused.
+    private static final int MAX_RETAINED = 1024;
+
+    private ASN1Lengths() {
+    }
+
+    /**
+     * Enters a length caching scope, joining the current one if this
+     * thread is already encoding. Must be closed.
+     */
+    static Scope open() {
+        Scope scope = current.get();
+        scope.depth++;
+        return scope;
+    }
+
+    /**
+     * Measures the encoding of a value by writing it to a stream which
+     * only counts bytes.
+     */
+    static long count(ASN1Value value, Tag implicitTag) throws IOException {
+        try (Scope scope = open()) {
+            long length = scope.get(value, implicitTag);
+            if (length >= 0) {
+                return length;
+            }
+
+            Counter counter = new Counter();
+            value.encode(implicitTag, counter);
+            scope.put(value, implicitTag, counter.count);
+            return counter.count;
+        }
+    }
+
+    /**
+     * Lets constructed values skip encoding their elements when they are
+     * only being measured: if the stream is counting bytes, adds the
+     * value's computed length to it and returns true.
+     */
+    static boolean skip(ASN1Value value, Tag implicitTag, OutputStream ostream)
+        throws IOException
+    {
+        if (!(ostream instanceof Counter)) {
+            return false;
+        }
+
+        ((Counter) ostream).count += value.getEncodedLength(implicitTag);
+        return true;
+    }
+
+    static final class Scope implements AutoCloseable {
+
+        private IdentityHashMap<ASN1Value, Entry> lengths =
+                new IdentityHashMap<>(64);
+        private int depth;
+
+        /**
+         * Returns the cached length of the value under the given tag,
+         * or -1.
+         */
+        long get(ASN1Value value, Tag implicitTag) {
+            Entry entry = lengths.get(value);
+            if (entry == null || !entry.tag.equals(implicitTag)) {
+                return -1;
+            }
+            return entry.length;
+        }
+
+        void put(ASN1Value value, Tag implicitTag, long length) {
+            lengths.put(value, new Entry(implicitTag, length));
+        }
+
+        @Override
+        public void close() {
+            if (--depth == 0) {
+                if (lengths.size() > MAX_RETAINED) {
+                    lengths = new IdentityHashMap<>(64);
+                } else if (!lengths.isEmpty()) {
+                    lengths.clear();
+                }
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final Tag tag;
+        private final long length;
+
+        Entry(Tag tag, long length) {
+            this.tag = tag;
+            this.length = length;
+        }
+    }
+
+    private static final class Counter extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
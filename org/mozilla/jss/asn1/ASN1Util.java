@@ -4,10 +4,10 @@
 package org.mozilla.jss.asn1;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 public class ASN1Util {
@@ -18,17 +18,85 @@ public class ASN1Util {
 
     public static byte[] encode(Tag implicitTag, ASN1Value val)
     {
-      try {
+      try (ASN1Lengths.Scope scope = ASN1Lengths.open()) {
+
+        long length = val.getEncodedLength(implicitTag);
+        if( length > Integer.MAX_VALUE - 8 ) {
+            throw new IOException("Encoding too large: " + length + " bytes");
+        }
 
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        val.encode(implicitTag, bos);
-        return bos.toByteArray();
+        byte[] encoding = new byte[(int) length];
+        encode(implicitTag, val, encoding, 0);
+        return encoding;
 
       } catch( IOException e ) {
         throw new RuntimeException("Unable to encode byte array: " + e.getMessage(), e);
       }
     }
 
+    /**
+     * Writes the DER encoding of a value into a caller-supplied array.
+     * The encoding must fit; its size can be found with
+     * {@link ASN1Value#getEncodedLength(Tag)}.
+     *
+     * @param implicitTag Implicit tag.
+     * @param val Value to encode.
+     * @param output Array receiving the encoding.
+     * @param offset Index in <code>output</code> at which to begin writing.
+     * @return The number of bytes written.
+     * @throws IOException If the encoding doesn't fit or another error
+     *      occurred.
+     */
+    public static int encode(Tag implicitTag, ASN1Value val, byte[] output,
+            int offset) throws IOException
+    {
+        try (ASN1Lengths.Scope scope = ASN1Lengths.open()) {
+            long length = val.getEncodedLength(implicitTag);
+            if( offset < 0 || length > output.length - offset ) {
+                throw new IOException("Output too small: " + length +
+                    " bytes needed, " + (output.length - offset) + " supplied");
+            }
+
+            ArrayOutputStream out = new ArrayOutputStream(output, offset, (int) length);
+            val.encode(implicitTag, out);
+            if( out.position != offset + length ) {
+                throw new IOException("Encoded " + (out.position - offset) +
+                    " bytes, expected " + length);
+            }
+            return (int) length;
+        }
+    }
+
+    // Writes into a fixed region of an array, failing rather than growing.
+    private static class ArrayOutputStream extends OutputStream {
+        private final byte[] output;
+        private final int limit;
+        private int position;
+
+        ArrayOutputStream(byte[] output, int offset, int length) {
+            this.output = output;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if( position >= limit ) {
+                throw new IOException("Encoding exceeds its computed length");
+            }
+            output[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if( len > limit - position ) {
+                throw new IOException("Encoding exceeds its computed length");
+            }
+            System.arraycopy(b, off, output, position, len);
+            position += len;
+        }
+    }
+
     public static ASN1Value decode(ASN1Template template, byte[] encoded)
         throws InvalidBERException
     {
@@ -40,4 +40,36 @@ public interface ASN1Value {
      */
     public void encode(Tag implicitTag, OutputStream ostream)
         throws IOException;
+
+    /**
+     * Returns the length of this value's DER encoding using its own base
+     * tag, header included.
+     *
+     * @return Encoded length.
+     * @throws IOException If an error occurred.
+     */
+    public default long getEncodedLength() throws IOException {
+        return getEncodedLength(getTag());
+    }
+
+    /**
+     * Returns the length of this value's DER encoding using an implicit
+     * tag, header included.
+     *
+     * The default implementation counts the bytes written by
+     * <code>encode</code> without storing them. Constructed types compute
+     * their length from their elements instead, so that they can write
+     * their header and stream their elements without buffering them.
+     * While a value is being encoded, lengths are cached per value, so
+     * nested values are measured only once.
+     * Subclasses which change the encoding of a type overriding this
+     * method must override it as well.
+     *
+     * @param implicitTag Implicit tag.
+     * @return Encoded length.
+     * @throws IOException If an error occurred.
+     */
+    public default long getEncodedLength(Tag implicitTag) throws IOException {
+        return ASN1Lengths.count(this, implicitTag);
+    }
 }
@@ -76,6 +76,12 @@ public abstract class CharacterString implements ASN1Value {
         ostream.write( contents );
     }
 
+    public long getEncodedLength(Tag implicitTag) {
+        byte[] contents = getEncodedContents();
+        return ASN1Header.getEncodedLength(implicitTag, contents.length)
+            + contents.length;
+    }
+
 public abstract static class Template implements ASN1Template {
 
     /**
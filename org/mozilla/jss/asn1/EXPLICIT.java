@@ -3,7 +3,6 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.mozilla.jss.asn1;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -61,13 +60,30 @@ public class EXPLICIT implements ASN1Value {
     public void encode(Tag implicitTag, OutputStream ostream)
         throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        content.encode(bos);
-        byte[] contentBytes = bos.toByteArray();
-        ASN1Header head = new ASN1Header(implicitTag, FORM,
-            contentBytes.length );
-        head.encode(ostream);
-        ostream.write(contentBytes);
+        try (ASN1Lengths.Scope scope = ASN1Lengths.open()) {
+            if( ASN1Lengths.skip(this, implicitTag, ostream) ) {
+                return;
+            }
+
+            long contentLength = content.getEncodedLength();
+            ASN1Header head = new ASN1Header(implicitTag, FORM,
+                contentLength );
+            head.encode(ostream);
+            content.encode(ostream);
+        }
+    }
+
+    public long getEncodedLength(Tag implicitTag) throws IOException {
+        try (ASN1Lengths.Scope scope = ASN1Lengths.open()) {
+            long length = scope.get(this, implicitTag);
+            if( length < 0 ) {
+                long contentLength = content.getEncodedLength();
+                length = ASN1Header.getEncodedLength(implicitTag, contentLength)
+                    + contentLength;
+                scope.put(this, implicitTag, length);
+            }
+            return length;
+        }
     }
 
     public static Template getTemplate( Tag tag, ASN1Template content) {
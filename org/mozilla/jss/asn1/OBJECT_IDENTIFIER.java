@@ -432,6 +432,10 @@ public class OBJECT_IDENTIFIER implements ASN1Value {
         ostream.write( getEncoding(implicitTag) );
     }
 
+    public long getEncodedLength(Tag implicitTag) {
+        return getEncoding(implicitTag).length;
+    }
+
     private static final Template templateInstance = new Template();
     public static Template getTemplate() {
         return templateInstance;
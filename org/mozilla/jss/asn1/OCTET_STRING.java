@@ -41,6 +41,10 @@ public class OCTET_STRING implements ASN1Value {
         ostream.write(data);
     }
 
+    public long getEncodedLength(Tag implicitTag) {
+        return ASN1Header.getEncodedLength(implicitTag, data.length) + data.length;
+    }
+
     private static final Template templateInstance = new Template();
     public static Template getTemplate() {
         return templateInstance;
@@ -9,6 +9,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Vector;
 
 import org.mozilla.jss.util.Assert;
@@ -171,49 +172,117 @@ public class SET implements ASN1Value {
     public void encode(Tag implicitTag, OutputStream ostream)
         throws IOException
     {
-        // what ordering method?
-        boolean lexOrdering;
-        if( elements.size() < 2 ) {
-            // doesn't matter, only one element
-            lexOrdering = true;
-        } else if( tagAt(0).equals(tagAt(1)) ) {
-            // tags are the same, lexicographic ordering
-            lexOrdering = true;
-        } else {
-            // tags are different, order by tag
-            lexOrdering = false;
-        }
+        try (ASN1Lengths.Scope scope = ASN1Lengths.open()) {
 
-        // compute and order contents
-        int numElements = elements.size();
-        int totalBytes = 0;
-        Vector<byte[]> encodings = new Vector<>(numElements);
-        Vector<Integer> tags = new Vector<>(numElements);
-        int i;
-        for(i = 0; i < numElements; i++ ) {
+            if( ASN1Lengths.skip(this, implicitTag, ostream) ) {
+                return;
+            }
 
             // if an entry is null, just skip it
-            if( elementAt(i) != null ) {
-                byte[] enc = ASN1Util.encode(tagAt(i), elementAt(i));
+            Element[] elems = elements.toArray(new Element[0]);
+            ASN1Value[] values = new ASN1Value[elems.length];
+            Tag[] tags = new Tag[elems.length];
+            int count = 0;
+            for(Element e : elems) {
+                ASN1Value el = e.getValue();
+                if( el != null ) {
+                    values[count] = el;
+                    tags[count] = e.getTag();
+                    count++;
+                }
+            }
+
+            // what ordering method? Decided by the first two elements
+            // which are actually encoded.
+            boolean lexOrdering;
+            if( count < 2 ) {
+                // doesn't matter, only one element
+                lexOrdering = true;
+            } else if( tags[0].equals(tags[1]) ) {
+                // tags are the same, lexicographic ordering
+                lexOrdering = true;
+            } else {
+                // tags are different, order by tag
+                lexOrdering = false;
+            }
 
-                totalBytes += enc.length;
+            if( !lexOrdering || count < 2 ) {
+                // The order doesn't depend on the encodings, so the
+                // elements can be streamed directly after the header.
+                int[] order = sortIndices(count,
+                    (x, y) -> compareTags(tags[x], tags[y]));
 
-                if( lexOrdering ) {
-                    insertInOrder(encodings, enc);
-                } else {
-                   insertInOrder(encodings, enc, tags, (int) tagAt(i).getNum());
+                ASN1Header header = new ASN1Header( implicitTag, FORM,
+                    contentLength() );
+                header.encode(ostream);
+
+                for(int i = 0; i < count; i++ ) {
+                    int index = order[i];
+                    values[index].encode(tags[index], ostream);
                 }
+                return;
+            }
+
+            // Lexicographic ordering compares the encodings themselves.
+            // Encode all elements back to back into a single buffer,
+            // recording where each encoding starts; this gives the content
+            // length without a per-element array. If a parent has already
+            // measured this SET, the buffer never needs to grow.
+            long measured = scope.get(this, implicitTag);
+            EncodingBuffer contents = new EncodingBuffer(
+                measured > 0 && measured < Integer.MAX_VALUE ? (int) measured : 64);
+            int[] offsets = new int[count + 1];
+            for(int i = 0; i < count; i++ ) {
+                offsets[i] = contents.size();
+                values[i].encode(tags[i], contents);
+            }
+            offsets[count] = contents.size();
+
+            // order the encodings once
+            int[] order = sortIndices(count, (x, y) -> contents.compare(
+                offsets[x], offsets[x + 1], offsets[y], offsets[y + 1]));
+
+            // write header
+            ASN1Header header = new ASN1Header( implicitTag, FORM, contents.size() );
+            header.encode(ostream);
+
+            // write contents in order
+            for(int i = 0; i < count; i++ ) {
+                int index = order[i];
+                contents.writeTo(ostream, offsets[index], offsets[index + 1]);
             }
         }
+    }
 
-        // write header
-        ASN1Header header = new ASN1Header( implicitTag, FORM, totalBytes );
-        header.encode(ostream);
+    /**
+     * Returns the length of the DER encoding of this SET using the given
+     * implicit tag, computed from the encoded lengths of its elements.
+     * The order of the elements doesn't affect it.
+     */
+    public long getEncodedLength(Tag implicitTag) throws IOException {
+        try (ASN1Lengths.Scope scope = ASN1Lengths.open()) {
+            long length = scope.get(this, implicitTag);
+            if( length < 0 ) {
+                long contentLength = contentLength();
+                length = ASN1Header.getEncodedLength(implicitTag, contentLength)
+                    + contentLength;
+                scope.put(this, implicitTag, length);
+            }
+            return length;
+        }
+    }
 
-        // write contents in order
-        for(i=0; i < numElements; i++ ) {
-            ostream.write( encodings.elementAt(i) );
+    // Sum of the encoded lengths of the elements. Must be called within a
+    // length caching scope.
+    private long contentLength() throws IOException {
+        long length = 0;
+        for(Element e : elements.toArray(new Element[0])) {
+            ASN1Value el = e.getValue();
+            if( el != null ) {
+                length += el.getEncodedLength(e.getTag());
+            }
         }
+        return length;
     }
 
     /**
@@ -226,88 +295,103 @@ public class SET implements ASN1Value {
     public void BERencode(Tag implicitTag, OutputStream ostream)
         throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ASN1Lengths.Scope scope = ASN1Lengths.open()) {
 
-        // compute contents
-        int size = elements.size();
-        for(int i = 0; i < size; i++ ) {
-            ASN1Value el = elementAt(i);
-            if(el!=null) {
-                el.encode(tagAt(i), bos);
+            if( ASN1Lengths.skip(this, implicitTag, ostream) ) {
+                return;
             }
-        }
-
-        byte[] bytes = bos.toByteArray();
 
-        // write header
-        ASN1Header header = new ASN1Header( implicitTag, FORM, bytes.length );
-        header.encode(ostream);
+            // write header
+            ASN1Header header = new ASN1Header( implicitTag, FORM, contentLength() );
+            header.encode(ostream);
 
-        // write contents
-        ostream.write(bytes);
+            // write contents, streaming each element
+            for(Element e : elements.toArray(new Element[0])) {
+                ASN1Value el = e.getValue();
+                if(el!=null) {
+                    el.encode(e.getTag(), ostream);
+                }
+            }
+        }
     }
 
-    // performs ascending lexicographic ordering
-    // linear search, but number of items is usually going to be small.
-    private static void insertInOrder(Vector<byte[]> encs, byte[] enc) {
-        int size = encs.size();
+    private interface IntComparator {
+        int compare(int left, int right);
+    }
 
-        // find the lowest item that we are less than or equal to
-        int i;
-        for(i=0; i < size; i++) {
-            if( compare(enc, encs.elementAt(i)) < 1 ) {
-                break;
+    // Most SETs are small; below this size, insertion sort on the indices
+    // is cheaper than boxing them for Arrays.sort.
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // Returns the indices 0..count-1 in ascending order. Both sorts are
+    // stable, so equal elements keep their relative order.
+    private static int[] sortIndices(int count, IntComparator comparator) {
+        int[] order = new int[count];
+
+        if( count <= INSERTION_SORT_THRESHOLD ) {
+            for(int i = 0; i < count; i++) {
+                int j = i;
+                while( j > 0 && comparator.compare(order[j - 1], i) > 0 ) {
+                    order[j] = order[j - 1];
+                    j--;
+                }
+                order[j] = i;
             }
+            return order;
         }
 
-        // insert ourself before this item
-        encs.insertElementAt(enc, i);
+        Integer[] boxed = new Integer[count];
+        for(int i = 0; i < count; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, comparator::compare);
+        for(int i = 0; i < count; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
     }
 
-    // performs ascending ordering by tag
-    // linear search, but number of items is usually going to be small.
-    private static void insertInOrder(Vector<byte[]> encs, byte[] enc, Vector<Integer> tags,
-                int tag)
-    {
-        int size = encs.size();
-
-        // find the lowest item that we are less than or equal to
-        int i;
-        for(i = 0; i < size; i++) {
-            if( tag <= tags.elementAt(i).intValue() ) {
-                break;
-            }
+    // Orders tags as defined in X.680 section 8.6: by tag class
+    // (universal, application, context-specific, private), then by number.
+    private static int compareTags(Tag left, Tag right) {
+        int diff = left.getTagClass().toInt() - right.getTagClass().toInt();
+        if( diff != 0 ) {
+            return diff;
         }
-
-        // insert ourself before this item
-        encs.insertElementAt(enc, i);
-        tags.insertElementAt(Integer.valueOf(i), i );
+        return Long.compare(left.getNum(), right.getNum());
     }
 
+    /**
+     * Holds the concatenated encodings of the elements of a SET, exposing
+     * its buffer so that they can be compared and written out in place.
+     */
+    private static class EncodingBuffer extends ByteArrayOutputStream {
 
-    // compares two byte arrays
-    // returns 1 if left > right, -1 if left < right, 0 if left == right
-    private static int compare(byte[] left, byte[] right) {
-        int min = (left.length < right.length) ? left.length : right.length;
+        EncodingBuffer(int size) {
+            super(size);
+        }
 
-        for(int i=0; i < min; i++) {
-            if( (left[i]&0xff) < (right[i]&0xff) ) {
-                return -1;
-            } else if( (left[i]&0xff) > (right[i]&0xff) ) {
-                return 1;
+        // Compares buf[lStart, lEnd) and buf[rStart, rEnd) as unsigned
+        // bytes; a proper prefix sorts first.
+        int compare(int lStart, int lEnd, int rStart, int rEnd) {
+            int lLen = lEnd - lStart;
+            int rLen = rEnd - rStart;
+            int min = (lLen < rLen) ? lLen : rLen;
+
+            for(int i = 0; i < min; i++) {
+                int diff = (buf[lStart + i] & 0xff) - (buf[rStart + i] & 0xff);
+                if( diff != 0 ) {
+                    return diff;
+                }
             }
+            return lLen - rLen;
         }
 
-        // equal up to the minimal endpoint
-        if( left.length > min ) {
-            assert(right.length==min);
-            return 1;
-        }
-        if( right.length > min ) {
-            assert(left.length==min);
-            return -1;
+        void writeTo(OutputStream ostream, int start, int end)
+            throws IOException
+        {
+            ostream.write(buf, start, end - start);
         }
-        return 0;
     }
 
     /**
@@ -92,6 +92,12 @@ public abstract class TimeBase implements ASN1Value {
         ostream.write('Z');
     }
 
+    public long getEncodedLength(Tag implicit) {
+        // YYMMDDHHMMSSZ or YYYYMMDDHHMMSSZ
+        int contentLength = isUTC() ? 13 : 15;
+        return ASN1Header.getEncodedLength(implicit, contentLength) + contentLength;
+    }
+
     public abstract static class Template {
 
         protected abstract boolean isUTC();
@@ -33,6 +33,12 @@ getAlgInfo(JNIEnv *env, jobject alg, JSS_AlgInfo *info);
 #define CKM_NSS_SP800_108_DOUBLE_PIPELINE_KDF_DERIVE_DATA CKM_INVALID_MECHANISM
 #endif
 
+#ifndef CKM_CHACHA20_POLY1305
+/* Both added at the same time. */
+#define CKM_CHACHA20_POLY1305 CKM_INVALID_MECHANISM
+#define CKM_CHACHA20_KEY_GEN CKM_INVALID_MECHANISM
+#endif
+
 /***********************************************************************
 **
 **  Algorithm indices.  This must be kept in sync with the algorithm
@@ -130,6 +136,12 @@ JSS_AlgInfo JSS_AlgTable[NUM_ALGS] = {
 /* 77 */    {CKM_NSS_SP800_108_DOUBLE_PIPELINE_KDF_DERIVE_DATA, PK11_MECH},
 /* 78 */    {SEC_OID_PKCS1_RSA_PSS_SIGNATURE, SEC_OID_TAG},
 
+/* CKM_CHACHA20_* are new to NSS; some implementations might not yet have
+ * them. */
+/* 79 */    {CKM_AES_GCM, PK11_MECH},
+/* 80 */    {CKM_CHACHA20_POLY1305, PK11_MECH},
+/* 81 */    {CKM_CHACHA20_KEY_GEN, PK11_MECH},
+
 /* REMEMBER TO UPDATE NUM_ALGS!!! (in Algorithm.h) */
 };
 
@@ -258,4 +258,9 @@ public class Algorithm {
 
     // RSA-PSS
     protected static final short SEC_OID_PKCS1_RSA_PSS_SIGNATURE = 78;
+
+    // AEAD ciphers
+    protected static final int CKM_AES_GCM=79;
+    protected static final int CKM_CHACHA20_POLY1305=80;
+    protected static final int CKM_CHACHA20_KEY_GEN=81;
 }
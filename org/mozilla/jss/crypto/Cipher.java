@@ -4,11 +4,13 @@
 
 package org.mozilla.jss.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.spec.AlgorithmParameterSpec;
 
 import javax.crypto.BadPaddingException;
+import javax.crypto.ShortBufferException;
 
 import org.mozilla.jss.util.Assert;
 
@@ -112,6 +114,122 @@ public abstract class Cipher {
         throws IllegalStateException, IllegalBlockSizeException,
         BadPaddingException, TokenException;
 
+    /**
+     * Updates the encryption context with additional input, writing the
+     * output into a caller-supplied array.
+     * @param input Bytes of plaintext (if encrypting) or ciphertext (if
+     *      decrypting).
+     * @param inputOffset The index in <code>input</code> at which to begin
+     *      reading.
+     * @param inputLength The number of bytes from <code>input</code> to read.
+     * @param output The array receiving the output.
+     * @param outputOffset The index in <code>output</code> at which to
+     *      begin writing.
+     * @return The number of bytes written to <code>output</code>.
+     */
+    public int update(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, TokenException, ShortBufferException
+    {
+        byte[] bytes = update(input, inputOffset, inputLength);
+        return copyOutput(bytes, output, outputOffset);
+    }
+
+    /**
+     * Updates the encryption context with the remaining bytes of
+     * <code>input</code>, writing the output into <code>output</code>. The
+     * positions of both buffers are advanced.
+     * @return The number of bytes written to <code>output</code>.
+     */
+    public int update(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, TokenException, ShortBufferException
+    {
+        byte[] bytes = new byte[input.remaining()];
+        input.get(bytes);
+        return copyOutput(update(bytes), output);
+    }
+
+    /**
+     * Completes a cipher operation, writing the output into a
+     * caller-supplied array.
+     * @param input Bytes of plaintext (if encrypting) or ciphertext (if
+     *      decrypting).
+     * @param inputOffset The index in <code>input</code> at which to begin
+     *      reading.
+     * @param inputLength The number of bytes from <code>input</code> to read.
+     * @param output The array receiving the output.
+     * @param outputOffset The index in <code>output</code> at which to
+     *      begin writing.
+     * @return The number of bytes written to <code>output</code>.
+     */
+    public int doFinal(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, TokenException, ShortBufferException
+    {
+        byte[] bytes;
+        if( inputLength == 0 ) {
+            bytes = doFinal();
+        } else {
+            bytes = doFinal(input, inputOffset, inputLength);
+        }
+        return copyOutput(bytes, output, outputOffset);
+    }
+
+    /**
+     * Completes a cipher operation with the remaining bytes of
+     * <code>input</code>, writing the output into <code>output</code>. The
+     * positions of both buffers are advanced.
+     * @return The number of bytes written to <code>output</code>.
+     */
+    public int doFinal(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, TokenException, ShortBufferException
+    {
+        byte[] bytes = new byte[input.remaining()];
+        input.get(bytes);
+        if( bytes.length == 0 ) {
+            return copyOutput(doFinal(), output);
+        }
+        return copyOutput(doFinal(bytes), output);
+    }
+
+    private static int copyOutput(byte[] bytes, byte[] output,
+            int outputOffset) throws ShortBufferException
+    {
+        if( bytes.length > output.length - outputOffset ) {
+            throw new ShortBufferException(bytes.length + " needed, " +
+                (output.length - outputOffset) + " supplied");
+        }
+        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
+        return bytes.length;
+    }
+
+    private static int copyOutput(byte[] bytes, ByteBuffer output)
+        throws ShortBufferException
+    {
+        if( bytes.length > output.remaining() ) {
+            throw new ShortBufferException(bytes.length + " needed, " +
+                output.remaining() + " supplied");
+        }
+        output.put(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Supplies additional authenticated data (AAD) to an AEAD cipher
+     * operation. AAD must be supplied before any plaintext or ciphertext.
+     * @param bytes Bytes of additional authenticated data.
+     * @param offset The index in <code>bytes</code> at which to begin reading.
+     * @param length The number of bytes from <code>bytes</code> to read.
+     */
+    public void updateAAD(byte[] bytes, int offset, int length)
+        throws IllegalStateException, TokenException
+    {
+        throw new UnsupportedOperationException(
+            "Additional authenticated data is only supported by AEAD ciphers");
+    }
+
     /**
      * Pads a byte array so that its length is a multiple of the given
      *  blocksize.  The method of padding is the one defined in the RSA
@@ -8,6 +8,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Hashtable;
 import java.util.Vector;
 
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.RC2ParameterSpec;
 
@@ -47,6 +48,7 @@ public class EncryptionAlgorithm extends Algorithm {
         public static final Mode NONE = new Mode("NONE");
         public static final Mode ECB = new Mode("ECB");
         public static final Mode CBC = new Mode("CBC");
+        public static final Mode GCM = new Mode("GCM");
     }
 
     public static class Alg {
@@ -80,6 +82,7 @@ public class EncryptionAlgorithm extends Algorithm {
         public static final Alg DESede = new Alg("DESede");
         public static final Alg AES = new Alg("AES");
         public static final Alg RC2 = new Alg("RC2");
+        public static final Alg ChaCha20Poly1305 = new Alg("ChaCha20-Poly1305");
     }
 
     public static class Padding {
@@ -244,11 +247,16 @@ public class EncryptionAlgorithm extends Algorithm {
     {
         int len = algList.size();
         Alg alg = Alg.fromString(algName);
-        Mode mode = Mode.fromString(modeName);
-        Padding padding = Padding.fromString(paddingName);
 
-        if (paddingName == null || paddingName.equals(""))
-            padding = Padding.NONE;
+        // Stream and AEAD ciphers such as ChaCha20-Poly1305 are usually
+        // requested without mode and padding.
+        Mode mode = Mode.NONE;
+        if (modeName != null && !modeName.equals(""))
+            mode = Mode.fromString(modeName);
+
+        Padding padding = Padding.NONE;
+        if (paddingName != null && !paddingName.equals(""))
+            padding = Padding.fromString(paddingName);
 
         int i;
         for(i = 0; i < len; ++i ) {
@@ -291,6 +299,17 @@ public class EncryptionAlgorithm extends Algorithm {
         return padding;
     }
 
+    /**
+     * @return <code>true</code> if this is an authenticated encryption
+     * (AEAD) algorithm such as AES/GCM or ChaCha20-Poly1305. AEAD
+     * algorithms take a fresh IV (nonce) for every message, accept
+     * additional authenticated data, and append an authentication tag to
+     * the ciphertext.
+     */
+    public boolean isAEAD() {
+        return mode == Mode.GCM || alg == Alg.ChaCha20Poly1305;
+    }
+
     private static Class<?>[] IVParameterSpecClasses = null;
     static {
         IVParameterSpecClasses = new Class[2];
@@ -298,6 +317,24 @@ public class EncryptionAlgorithm extends Algorithm {
         IVParameterSpecClasses[1] = IvParameterSpec.class;
     }
 
+    private static Class<?>[] GCMParameterSpecClasses = null;
+    static {
+        GCMParameterSpecClasses = new Class[1];
+        GCMParameterSpecClasses[0] = GCMParameterSpec.class;
+    }
+
+    /**
+     * Length in bytes of the IV (nonce) generated for AEAD algorithms when
+     * none is given, and the only IV length ChaCha20-Poly1305 accepts.
+     */
+    public static final int AEAD_IV_LENGTH = 12;
+
+    /**
+     * Length in bytes of the AEAD authentication tag, unless a different
+     * length is specified via GCMParameterSpec.
+     */
+    public static final int AEAD_TAG_LENGTH = 16;
+
     /**
      * Returns the number of bytes that this algorithm expects in
      * its initialization vector.
@@ -412,4 +449,28 @@ public class EncryptionAlgorithm extends Algorithm {
         Padding.PKCS5, IVParameterSpecClasses, 16,
         AES_ROOT_OID.subBranch(42), 256);
 
+    public static final EncryptionAlgorithm
+    AES_128_GCM = new EncryptionAlgorithm(CKM_AES_GCM,
+        Alg.AES, Mode.GCM,
+        Padding.NONE, GCMParameterSpecClasses, 16,
+        AES_ROOT_OID.subBranch(6), 128);
+
+    public static final EncryptionAlgorithm
+    AES_192_GCM = new EncryptionAlgorithm(CKM_AES_GCM,
+        Alg.AES, Mode.GCM,
+        Padding.NONE, GCMParameterSpecClasses, 16,
+        AES_ROOT_OID.subBranch(26), 192);
+
+    public static final EncryptionAlgorithm
+    AES_256_GCM = new EncryptionAlgorithm(CKM_AES_GCM,
+        Alg.AES, Mode.GCM,
+        Padding.NONE, GCMParameterSpecClasses, 16,
+        AES_ROOT_OID.subBranch(46), 256);
+
+    public static final EncryptionAlgorithm
+    CHACHA20_POLY1305 = new EncryptionAlgorithm(CKM_CHACHA20_POLY1305,
+        Alg.ChaCha20Poly1305, Mode.NONE,
+        Padding.NONE, IVParameterSpecClasses, 1,
+        new OBJECT_IDENTIFIER("1.2.840.113549.1.9.16.3.18"), 256);
+
 }
@@ -115,4 +115,17 @@ public abstract class JSSMessageDigest {
     public int getOutputSize() {
         return getAlgorithm().getOutputSize();
     }
+
+    /**
+     * Returns an independent copy of this digest, including any input
+     * digested so far. This allows digesting a common prefix once and
+     * then completing several digests from it.
+     *
+     * @return A copy of this digest.
+     * @exception CloneNotSupportedException If the digest state can't be
+     *      copied, for instance because the token doesn't support it.
+     */
+    public JSSMessageDigest clone() throws CloneNotSupportedException {
+        throw new CloneNotSupportedException();
+    }
 }
@@ -204,6 +204,15 @@ public class KeyGenAlgorithm extends Algorithm {
         null
     );
     //////////////////////////////////////////////////////////////
+    public static final KeyGenAlgorithm
+    CHACHA20 = new KeyGenAlgorithm(
+        CKM_CHACHA20_KEY_GEN,
+        "ChaCha20",
+        new FixedKeyStrengthValidator(256),
+        null,
+        null
+    );
+    //////////////////////////////////////////////////////////////
     /////////////// GENERIC KBKDFs: NIST SP800-108 ///////////////
     //////////////////////////////////////////////////////////////
     public static final KeyGenAlgorithm
@@ -20,9 +20,6 @@ package org.mozilla.jss.netscape.security.pkcs;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
-import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.security.cert.CertificateException;
 
 import org.mozilla.jss.netscape.security.util.DerEncoder;
@@ -31,6 +28,7 @@ import org.mozilla.jss.netscape.security.util.DerOutputStream;
 import org.mozilla.jss.netscape.security.util.DerValue;
 import org.mozilla.jss.netscape.security.util.ObjectIdentifier;
 import org.mozilla.jss.netscape.security.x509.ACertAttrSet;
+import org.mozilla.jss.netscape.security.x509.AttributeFactory;
 import org.mozilla.jss.netscape.security.x509.CertAttrSet;
 import org.mozilla.jss.netscape.security.x509.Extensions;
 import org.mozilla.jss.netscape.security.x509.OIDMap;
@@ -109,30 +107,25 @@ public class PKCS10Attribute implements DerEncoder, Serializable {
                 throw new IOException(e.toString());
             }
         }
-        byte[] val = inAttrValue.toByteArray();
-        Class<?>[] params = { Object.class };
+        AttributeFactory factory;
         try {
-            @SuppressWarnings("unchecked")
-            Class<CertAttrSet> extClass = (Class<CertAttrSet>) OIDMap.getClass(attributeId);
-            if (extClass != null) {
-                Constructor<CertAttrSet> cons = extClass.getConstructor(params);
-                Object value = Array.newInstance(byte.class, val.length);
-                for (int i = 0; i < val.length; i++) {
-                    Array.setByte(value, i, val[i]);
-                }
-                Object[] passed = new Object[] { value };
-                attributeValue = cons.newInstance(passed);
-            } else {
+            factory = OIDMap.getAttributeFactory(attributeId);
+            if (factory == null) {
                 // attribute classes are usable for PKCS10 attributes.
                 // this is used where the attributes are not actual
                 // implemented extensions.
                 attributeValue = new ACertAttrSet(inAttrValue);
+                return;
             }
-        } catch (InvocationTargetException invk) {
-            throw new IOException(invk.getTargetException().getMessage(), invk);
         } catch (Exception e) {
             throw new IOException(e.toString());
         }
+
+        try {
+            attributeValue = factory.create(inAttrValue.toByteArray());
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
     }
 
     /**
@@ -0,0 +1,43 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2007 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+
+/**
+ * Creates a PKCS #10 attribute from its encoded value. This is the
+ * (Object value) constructor of an attribute class registered in the
+ * OIDMap, as a function.
+ *
+ * @see OIDMap#getAttributeFactory(org.mozilla.jss.netscape.security.util.ObjectIdentifier)
+ */
+@FunctionalInterface
+public interface AttributeFactory {
+
+    /**
+     * Creates the attribute.
+     *
+     * @param value the DER encoded value of the attribute, as a byte array.
+     * @return the decoded attribute.
+     * @exception IOException on decoding errors.
+     * @exception CertificateException on certificate errors.
+     */
+    CertAttrSet create(Object value)
+            throws IOException, CertificateException;
+}
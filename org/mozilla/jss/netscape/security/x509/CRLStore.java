@@ -0,0 +1,508 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2026 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CRLException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.mozilla.jss.netscape.security.util.Utils;
+
+/**
+ * Keeps the revoked serial numbers of CRL issuers in memory-mapped files.
+ *
+ * Each issuer has a file in the store's directory holding its revoked
+ * serial numbers in sorted, fixed-width records, along with the number
+ * and dates of the CRL they come from. Lookups are binary searches over
+ * the mapped file, so they need neither locking nor heap for the
+ * entries.
+ *
+ * CRLs are applied with {@link #update(Path, PublicKey)}, which streams
+ * them with X509CRLReader:
+ *
+ * <ul>
+ * <li>A full CRL replaces the issuer's set, unless the store already
+ *  has the same or a newer CRL number.
+ * <li>A delta CRL is merged into the issuer's set if the set is at least
+ *  as recent as the delta's base CRL; its <em>removeFromCRL</em> entries
+ *  remove serial numbers from the set. The set then has the delta's CRL
+ *  number.
+ * </ul>
+ *
+ * An updated set is written to a new file which then atomically
+ * replaces the old one, so a crash never leaves a partial set behind
+ * and concurrent lookups keep using the previous mapping until the new
+ * one is in place.
+ */
+public class CRLStore {
+
+    public static final String FILE_SUFFIX = ".crls";
+
+    // file layout: a header, then the serial numbers in the order of
+    // RevokedCertIndex.compare, each with a length octet and padded
+    // to the record width
+    private static final byte[] MAGIC = "JSSCRLS1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_SIZE = 64;
+    private static final int WIDTH_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int THIS_UPDATE_OFFSET = 16;
+    private static final int NEXT_UPDATE_OFFSET = 24;
+    private static final int NUMBER_OFFSET = 32;
+    private static final int MAX_NUMBER_LENGTH = HEADER_SIZE - NUMBER_OFFSET - 1;
+
+    private static final int REMOVE_FROM_CRL = RevocationReason.REMOVE_FROM_CRL.getCode();
+
+    private final Path directory;
+    private final ConcurrentHashMap<String, Index> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a store, mapping the sets already in the directory.
+     *
+     * @param directory the directory holding the sets; it is created if
+     *            necessary.
+     * @exception IOException if the directory or a set can't be read.
+     */
+    public CRLStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String key = name.substring(0, name.length() - FILE_SUFFIX.length());
+                indexes.put(key, Index.map(file));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a serial number is on the stored CRL of an issuer.
+     *
+     * @return true if the serial number is revoked, false if it isn't or
+     *         the store has no CRL for the issuer.
+     */
+    public boolean isRevoked(X500Name issuer, BigInteger serialNumber) throws IOException {
+        Index index = indexes.get(getKey(issuer));
+        return index != null && index.contains(serialNumber.toByteArray());
+    }
+
+    /**
+     * Checks whether a certificate is on the stored CRL of its issuer.
+     */
+    public boolean isRevoked(X509Certificate cert) {
+        Index index = indexes.get(getKey(cert.getIssuerX500Principal()));
+        return index != null && index.contains(cert.getSerialNumber().toByteArray());
+    }
+
+    /**
+     * @return the number of the CRL stored for an issuer, or null if the
+     *         store has no CRL for the issuer or the CRL has no number.
+     */
+    public BigInteger getCRLNumber(X500Name issuer) throws IOException {
+        Index index = indexes.get(getKey(issuer));
+        return index == null ? null : index.number;
+    }
+
+    /**
+     * @return the nextUpdate of the CRL stored for an issuer, or null.
+     */
+    public Date getNextUpdate(X500Name issuer) throws IOException {
+        Index index = indexes.get(getKey(issuer));
+        return index == null || index.nextUpdate < 0 ? null : new Date(index.nextUpdate);
+    }
+
+    /**
+     * @return the number of serial numbers stored for an issuer.
+     */
+    public int getNumberOfRevokedCertificates(X500Name issuer) throws IOException {
+        Index index = indexes.get(getKey(issuer));
+        return index == null ? 0 : index.count;
+    }
+
+    /**
+     * Applies a full or delta CRL from a file.
+     *
+     * @param crlFile the DER encoded CRL.
+     * @param issuerKey the key to verify the CRL with, or null if it was
+     *            already verified.
+     * @return true if the CRL was applied, false if the store already
+     *         had the same or a newer CRL.
+     * @exception CRLException if the CRL is invalid, or is a delta CRL
+     *                whose base is newer than the stored CRL.
+     */
+    public boolean update(Path crlFile, PublicKey issuerKey)
+            throws IOException, CRLException, GeneralSecurityException, X509ExtensionException {
+        try (X509CRLReader reader = X509CRLReader.open(crlFile)) {
+            return update(reader, issuerKey);
+        }
+    }
+
+    /**
+     * Applies a full or delta CRL from a stream.
+     *
+     * @see #update(Path, PublicKey)
+     */
+    public boolean update(InputStream in, PublicKey issuerKey)
+            throws IOException, CRLException, GeneralSecurityException, X509ExtensionException {
+        try (X509CRLReader reader = new X509CRLReader(in)) {
+            return update(reader, issuerKey);
+        }
+    }
+
+    private synchronized boolean update(X509CRLReader reader, PublicKey issuerKey)
+            throws IOException, CRLException, GeneralSecurityException, X509ExtensionException {
+
+        if (issuerKey != null) {
+            reader.initVerify(issuerKey, null);
+        }
+
+        String key = getKey(reader.getIssuer());
+        Entries entries = Entries.read(reader);
+        if (issuerKey != null) {
+            reader.verify();
+        }
+
+        BigInteger number = reader.getCRLNumber();
+        BigInteger base = reader.getDeltaBaseCRLNumber();
+        Index current = indexes.get(key);
+
+        if (base == null) {
+            if (current != null && current.number != null && number != null
+                    && number.compareTo(current.number) <= 0) {
+                return false;
+            }
+            current = null;
+
+        } else {
+            if (current == null || current.number == null) {
+                throw new CRLException("No base CRL for delta CRL " + number);
+            }
+            if (number == null || number.compareTo(current.number) <= 0) {
+                return false;
+            }
+            if (base.compareTo(current.number) > 0) {
+                throw new CRLException("Delta CRL " + number + " requires base CRL " + base
+                        + " but the store has CRL " + current.number);
+            }
+        }
+
+        Date nextUpdate = reader.getNextUpdate();
+        Path file = directory.resolve(key + FILE_SUFFIX);
+        Path tmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            write(tmp, current, entries, number, reader.getThisUpdate().getTime(),
+                    nextUpdate == null ? -1 : nextUpdate.getTime());
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+
+        indexes.put(key, Index.map(file));
+        return true;
+    }
+
+    /*
+     * Writes the merge of the current set, if any, with the entries.
+     */
+    private static void write(Path file, Index current, Entries entries,
+            BigInteger number, long thisUpdate, long nextUpdate) throws IOException {
+
+        byte[] numberBytes = number == null ? new byte[0] : number.toByteArray();
+        if (numberBytes.length > MAX_NUMBER_LENGTH) {
+            throw new IOException("CRL number too large: " + number);
+        }
+
+        int width = Math.max(2, entries.maxLength + 1);
+        if (current != null) {
+            width = Math.max(width, current.width);
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.position(HEADER_SIZE);
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 65536);
+            byte[] record = new byte[width];
+            long count = 0;
+
+            int i = 0; // current set
+            int j = 0; // entries
+            int currentCount = current == null ? 0 : current.count;
+            while (i < currentCount || j < entries.count) {
+                int cmp;
+                if (i == currentCount) {
+                    cmp = 1;
+                } else if (j == entries.count) {
+                    cmp = -1;
+                } else {
+                    cmp = current.compare(i, entries.data, entries.serialOffset(j),
+                            entries.serialLength(j));
+                }
+
+                if (cmp < 0) {
+                    current.copy(i++, record);
+                } else {
+                    // an entry replaces the same serial number in the set
+                    if (cmp == 0) {
+                        i++;
+                    }
+                    int reason = entries.reason(j);
+                    int len = entries.serialLength(j);
+                    int off = entries.serialOffset(j);
+                    j++;
+                    if (reason == REMOVE_FROM_CRL) {
+                        continue;
+                    }
+                    Arrays.fill(record, (byte) 0);
+                    record[0] = (byte) len;
+                    System.arraycopy(entries.data, off, record, 1, len);
+                }
+                out.write(record);
+                count++;
+            }
+            out.flush();
+
+            if (count > (Integer.MAX_VALUE - HEADER_SIZE) / width) {
+                throw new IOException("Too many revoked certificates: " + count);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.put(MAGIC);
+            header.putInt(WIDTH_OFFSET, width);
+            header.putInt(COUNT_OFFSET, (int) count);
+            header.putLong(THIS_UPDATE_OFFSET, thisUpdate);
+            header.putLong(NEXT_UPDATE_OFFSET, nextUpdate);
+            header.put(NUMBER_OFFSET, (byte) numberBytes.length);
+            header.position(NUMBER_OFFSET + 1);
+            header.put(numberBytes);
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    private static String getKey(X500Name issuer) throws IOException {
+        return getKey(new X500Principal(issuer.getEncoded()));
+    }
+
+    /*
+     * Names the file of an issuer after a digest of its canonical name,
+     * so that equivalent encodings of the name share a file.
+     */
+    private static String getKey(X500Principal issuer) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] name = issuer.getName(X500Principal.CANONICAL).getBytes(StandardCharsets.UTF_8);
+            return Utils.HexEncode(digest.digest(name));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Unable to hash issuer name: " + e.getMessage(), e);
+        }
+    }
+
+    /*
+     * A mapped set of serial numbers. It is never modified.
+     */
+    private static final class Index {
+
+        private final ByteBuffer buffer;
+        private final int width;
+        private final int count;
+        private final long nextUpdate;
+        private final BigInteger number;
+
+        private Index(ByteBuffer buffer) throws IOException {
+            this.buffer = buffer;
+
+            if (buffer.capacity() < HEADER_SIZE) {
+                throw new IOException("Invalid CRL store file");
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (buffer.get(i) != MAGIC[i]) {
+                    throw new IOException("Invalid CRL store file");
+                }
+            }
+            width = buffer.getInt(WIDTH_OFFSET);
+            count = buffer.getInt(COUNT_OFFSET);
+            nextUpdate = buffer.getLong(NEXT_UPDATE_OFFSET);
+
+            int numberLength = buffer.get(NUMBER_OFFSET);
+            if (width < 2 || width > 256 || count < 0
+                    || numberLength < 0 || numberLength > MAX_NUMBER_LENGTH
+                    || buffer.capacity() != HEADER_SIZE + (long) width * count) {
+                throw new IOException("Invalid CRL store file");
+            }
+
+            if (numberLength == 0) {
+                number = null;
+            } else {
+                byte[] numberBytes = new byte[numberLength];
+                for (int i = 0; i < numberLength; i++) {
+                    numberBytes[i] = buffer.get(NUMBER_OFFSET + 1 + i);
+                }
+                number = new BigInteger(numberBytes);
+            }
+        }
+
+        static Index map(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("CRL store file too large: " + file);
+                }
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new Index(buffer);
+            }
+        }
+
+        boolean contains(byte[] serial) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, serial, 0, serial.length);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /*
+         * Compares the serial number of a record with a serial number,
+         * in the order of RevokedCertIndex.compare. Reads the buffer
+         * with absolute gets only, so that it can be shared.
+         */
+        int compare(int record, byte[] serial, int off, int len) {
+            int pos = HEADER_SIZE + record * width;
+            int recordLen = buffer.get(pos) & 0xff;
+            if (recordLen != len) {
+                return recordLen < len ? -1 : 1;
+            }
+            for (int i = 0; i < len; i++) {
+                int diff = (buffer.get(pos + 1 + i) & 0xff) - (serial[off + i] & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        }
+
+        void copy(int record, byte[] dest) {
+            Arrays.fill(dest, (byte) 0);
+            int pos = HEADER_SIZE + record * width;
+            for (int i = 0; i < width; i++) {
+                dest[i] = buffer.get(pos + i);
+            }
+        }
+    }
+
+    /*
+     * The entries of a CRL being applied, sorted by serial number: each
+     * is a reason octet, a length octet and the serial number octets.
+     */
+    private static final class Entries {
+
+        private byte[] data = new byte[4096];
+        private int size;
+        private int[] offsets = new int[256];
+        private int count;
+        private int maxLength;
+
+        static Entries read(X509CRLReader reader)
+                throws IOException, CRLException, X509ExtensionException {
+            Entries entries = new Entries();
+            RevokedCertImpl entry;
+            while ((entry = reader.nextEntry()) != null) {
+                entries.add(entry.getSerialNumber().toByteArray(), getReason(entry));
+            }
+            entries.count = RevokedCertIndex.sort(entries.offsets, entries.count,
+                    (a, b) -> RevokedCertIndex.compare(
+                            entries.data, a + 2, entries.data[a + 1] & 0xff,
+                            entries.data, b + 2, entries.data[b + 1] & 0xff));
+            return entries;
+        }
+
+        private void add(byte[] serial, int reason) throws CRLException {
+            if (serial.length > 255) {
+                throw new CRLException("Serial number too long");
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            if (size + 2 + serial.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 2 + serial.length));
+            }
+            offsets[count++] = size;
+            data[size++] = (byte) reason;
+            data[size++] = (byte) serial.length;
+            System.arraycopy(serial, 0, data, size, serial.length);
+            size += serial.length;
+            maxLength = Math.max(maxLength, serial.length);
+        }
+
+        int reason(int index) {
+            return data[offsets[index]];
+        }
+
+        int serialLength(int index) {
+            return data[offsets[index] + 1] & 0xff;
+        }
+
+        int serialOffset(int index) {
+            return offsets[index] + 2;
+        }
+
+        private static int getReason(RevokedCertImpl entry) {
+            CRLExtensions exts = entry.getExtensions();
+            if (exts == null) {
+                return -1;
+            }
+            for (Extension ext : exts) {
+                if (ext instanceof CRLReasonExtension) {
+                    return ((CRLReasonExtension) ext).getReason().getCode();
+                }
+            }
+            return -1;
+        }
+    }
+}
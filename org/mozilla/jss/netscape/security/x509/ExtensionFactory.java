@@ -0,0 +1,46 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2026 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+
+/**
+ * Creates an extension from its encoded value. This is the
+ * (Boolean critical, Object value) constructor which every extension
+ * class registered in the OIDMap provides, as a function, so that
+ * extensions can be decoded without looking the constructor up
+ * reflectively.
+ *
+ * @see OIDMap#getExtensionFactory(org.mozilla.jss.netscape.security.util.ObjectIdentifier)
+ */
+@FunctionalInterface
+public interface ExtensionFactory {
+
+    /**
+     * Creates the extension.
+     *
+     * @param critical true if the extension is to be treated as critical.
+     * @param value the DER encoded value of the extension, as a byte array.
+     * @return the decoded extension.
+     * @exception IOException on decoding errors.
+     * @exception CertificateException on certificate errors.
+     */
+    CertAttrSet create(Boolean critical, Object value)
+            throws IOException, CertificateException;
+}
@@ -20,9 +20,6 @@ package org.mozilla.jss.netscape.security.x509;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.security.cert.CertificateException;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -61,9 +58,8 @@ public class Extensions extends Vector<Extension>
     // Parse the encoded extension
     public void parseExtension(Extension ext) throws IOException {
         try {
-            @SuppressWarnings("unchecked")
-            Class<CertAttrSet> extClass = (Class<CertAttrSet>) OIDMap.getClass(ext.getExtensionId());
-            if (extClass == null) { // Unsupported extension
+            ExtensionFactory factory = OIDMap.getExtensionFactory(ext.getExtensionId());
+            if (factory == null) { // Unsupported extension
                 if (ext.isCritical()) {
                     throw new IOException("Unsupported CRITICAL extension: "
                                           + ext.getExtensionId());
@@ -73,26 +69,12 @@ public class Extensions extends Vector<Extension>
                     return;
                 }
             }
-            Class<?>[] params = { Boolean.class, Object.class };
-            Constructor<CertAttrSet> cons = extClass.getConstructor(params);
 
-            byte[] extData = ext.getExtensionValue();
-            int extLen = extData.length;
-            Object value = Array.newInstance(byte.class, extLen);
-
-            for (int i = 0; i < extLen; i++) {
-                Array.setByte(value, i, extData[i]);
-            }
-            Object[] passed = new Object[] { Boolean.valueOf(ext.isCritical()),
-                                                        value };
-            CertAttrSet certExt = cons.newInstance(passed);
+            CertAttrSet certExt = factory.create(Boolean.valueOf(ext.isCritical()),
+                    ext.getExtensionValue());
             map.put(certExt.getName(), (Extension) certExt);
             addElement((Extension) certExt);
 
-        } catch (NoSuchMethodException nosuch) {
-            throw new IOException(nosuch.toString());
-        } catch (InvocationTargetException invk) {
-            throw new IOException(invk.getTargetException().toString());
         } catch (Exception e) {
             throw new IOException(e.toString());
         }
@@ -20,11 +20,20 @@ package org.mozilla.jss.netscape.security.x509;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.security.cert.CertificateException;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.mozilla.jss.netscape.security.extensions.CertificateScopeOfUseExtension;
+import org.mozilla.jss.netscape.security.extensions.ExtendedKeyUsageExtension;
+import org.mozilla.jss.netscape.security.extensions.InhibitAnyPolicyExtension;
+import org.mozilla.jss.netscape.security.extensions.OCSPNoCheckExtension;
 import org.mozilla.jss.netscape.security.util.ObjectIdentifier;
 
 /**
@@ -91,17 +100,96 @@ public class OIDMap {
     private static final String CRL_REASON = ROOT + "." +
                                           CRLReasonExtension.NAME;
 
-    private static final Hashtable<ObjectIdentifier, String> oid2Name = new Hashtable<ObjectIdentifier, String>();
-    private static final Hashtable<String, ObjectIdentifier> name2OID = new Hashtable<String, ObjectIdentifier>();
-    private static final Hashtable<String, String> name2Class = new Hashtable<String, String>();
+    private static final ConcurrentHashMap<ObjectIdentifier, String> oid2Name = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, ObjectIdentifier> name2OID = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, String> name2Class = new ConcurrentHashMap<>();
+
+    // Factories of the extension classes shipped with JSS, by class name.
+    // They are used whenever a name maps to one of these classes, so that
+    // decoding the standard extensions involves no reflection.
+    private static final Map<String, ExtensionFactory> builtinFactories = new HashMap<>();
+
+    // Factories bound to registered OIDs. Once registered, the class of an
+    // OID never changes, so a factory is bound at most once per OID: when
+    // the map is loaded for the built-in classes, by addClass(), or on
+    // first use for classes registered by name. addExtensionFactory()
+    // replaces the factory of an OID.
+    private static final ConcurrentHashMap<ObjectIdentifier, ExtensionFactory> oid2Factory = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<ObjectIdentifier, AttributeFactory> oid2AttributeFactory = new ConcurrentHashMap<>();
 
     // Initialize recognized extensions from EXTENSIONS_{OIDS/CLASSES} files
     static {
+        loadBuiltinFactories();
         loadNames();
         loadClasses();
+        bindBuiltinFactories();
         addClass(CRLDistributionPointsExtension.class);
     }
 
+    private static void loadBuiltinFactories() {
+        builtinFactories.put(AuthorityKeyIdentifierExtension.class.getName(),
+                AuthorityKeyIdentifierExtension::new);
+        builtinFactories.put(SubjectKeyIdentifierExtension.class.getName(),
+                SubjectKeyIdentifierExtension::new);
+        builtinFactories.put(KeyUsageExtension.class.getName(),
+                KeyUsageExtension::new);
+        builtinFactories.put(PrivateKeyUsageExtension.class.getName(),
+                PrivateKeyUsageExtension::new);
+        builtinFactories.put(PolicyMappingsExtension.class.getName(),
+                PolicyMappingsExtension::new);
+        builtinFactories.put(SubjectAlternativeNameExtension.class.getName(),
+                SubjectAlternativeNameExtension::new);
+        builtinFactories.put(IssuerAlternativeNameExtension.class.getName(),
+                IssuerAlternativeNameExtension::new);
+        builtinFactories.put(BasicConstraintsExtension.class.getName(),
+                BasicConstraintsExtension::new);
+        builtinFactories.put(NameConstraintsExtension.class.getName(),
+                NameConstraintsExtension::new);
+        builtinFactories.put(PolicyConstraintsExtension.class.getName(),
+                PolicyConstraintsExtension::new);
+        builtinFactories.put(CertificatePoliciesExtension.class.getName(),
+                CertificatePoliciesExtension::new);
+        builtinFactories.put(SubjectDirAttributesExtension.class.getName(),
+                SubjectDirAttributesExtension::new);
+        builtinFactories.put(ExtendedKeyUsageExtension.class.getName(),
+                ExtendedKeyUsageExtension::new);
+        builtinFactories.put(CRLNumberExtension.class.getName(),
+                CRLNumberExtension::new);
+        builtinFactories.put(CRLReasonExtension.class.getName(),
+                CRLReasonExtension::new);
+        builtinFactories.put(CRLDistributionPointsExtension.class.getName(),
+                CRLDistributionPointsExtension::new);
+        builtinFactories.put(DeltaCRLIndicatorExtension.class.getName(),
+                DeltaCRLIndicatorExtension::new);
+        builtinFactories.put(HoldInstructionExtension.class.getName(),
+                HoldInstructionExtension::new);
+        builtinFactories.put(CertificateIssuerExtension.class.getName(),
+                CertificateIssuerExtension::new);
+        builtinFactories.put(FreshestCRLExtension.class.getName(),
+                FreshestCRLExtension::new);
+        builtinFactories.put(IssuingDistributionPointExtension.class.getName(),
+                IssuingDistributionPointExtension::new);
+        builtinFactories.put(InvalidityDateExtension.class.getName(),
+                InvalidityDateExtension::new);
+        builtinFactories.put(OCSPNoCheckExtension.class.getName(),
+                OCSPNoCheckExtension::new);
+        builtinFactories.put(InhibitAnyPolicyExtension.class.getName(),
+                InhibitAnyPolicyExtension::new);
+        builtinFactories.put(CertificateScopeOfUseExtension.class.getName(),
+                CertificateScopeOfUseExtension::new);
+    }
+
+    // Bind the factories of the loaded names which map to built-in classes
+    private static void bindBuiltinFactories() {
+        for (Map.Entry<ObjectIdentifier, String> entry : oid2Name.entrySet()) {
+            String className = name2Class.get(entry.getValue());
+            ExtensionFactory factory = className == null ? null : builtinFactories.get(className);
+            if (factory != null) {
+                oid2Factory.put(entry.getKey(), factory);
+            }
+        }
+    }
+
     // Load the default name to oid map (EXTENSIONS_OIDS)
     private static void loadNamesDefault(Properties props) {
         props.put(SUB_KEY_IDENTIFIER, "2.5.29.14");
@@ -235,15 +323,42 @@ public class OIDMap {
      */
     public static void addClass(Class<? extends Extension> clazz) {
         try {
-            addAttribute(clazz.getName(),
-                (String) clazz.getField("OID").get(null),
+            String oid = (String) clazz.getField("OID").get(null);
+            addAttribute(clazz.getName(), oid,
                 (String) clazz.getField("NAME").get(null));
+
+            ExtensionFactory factory = builtinFactories.get(clazz.getName());
+            if (factory == null) {
+                factory = bindExtension(clazz);
+            }
+            oid2Factory.putIfAbsent(new ObjectIdentifier(oid), factory);
         } catch (Throwable e) {
             System.out.println(
                 "Error adding class " + clazz.getName() + " to OIDMap: " + e);
         }
     }
 
+    /**
+     * Register the factory creating extensions for the object identifier,
+     * replacing any factory bound to it so far. Classes registered with
+     * addClass() or addAttribute() are otherwise created through their
+     * (Boolean critical, Object value) constructor, which is looked up once
+     * but still invoked reflectively; registering a factory, typically a
+     * constructor reference, avoids that.
+     *
+     * The factory is used to decode extensions with this object identifier
+     * even if no class or name is registered for it.
+     *
+     * @param oid the object identifier of the extension.
+     * @param factory the factory creating the extension.
+     */
+    public static void addExtensionFactory(ObjectIdentifier oid, ExtensionFactory factory) {
+        if (oid == null || factory == null) {
+            throw new NullPointerException("Object identifier and factory must not be null");
+        }
+        oid2Factory.put(oid, factory);
+    }
+
     /**
      * Add a name to lookup table.
      *
@@ -254,7 +369,7 @@ public class OIDMap {
      * @param name the name of the attribute.
      * @exception CertificateException on errors.
      */
-    public static void addAttribute(String className, String oid, String name)
+    public static synchronized void addAttribute(String className, String oid, String name)
             throws CertificateException {
         ObjectIdentifier objId = new ObjectIdentifier(oid);
         if (oid2Name.get(objId) != null) {
@@ -334,4 +449,127 @@ public class OIDMap {
                                    + name + " " + e.toString());
         }
     }
+
+    /**
+     * Return the factory creating extensions for the object identifier.
+     * Decoders should prefer this to getClass(), as the factory is only
+     * bound once.
+     *
+     * @param oid the object identifier of the extension.
+     * @return the factory or null if no class is registered for this oid.
+     * @exception CertificateException if the class cannot be loaded.
+     */
+    public static ExtensionFactory getExtensionFactory(ObjectIdentifier oid)
+            throws CertificateException {
+        ExtensionFactory factory = oid2Factory.get(oid);
+        if (factory != null) {
+            return factory;
+        }
+
+        // Registered by name: bind once, on first use.
+        Class<?> extClass = getClass(oid);
+        if (extClass == null) {
+            return null;
+        }
+
+        factory = builtinFactories.get(extClass.getName());
+        if (factory == null) {
+            factory = bindExtension(extClass);
+        }
+
+        ExtensionFactory existing = oid2Factory.putIfAbsent(oid, factory);
+        return existing != null ? existing : factory;
+    }
+
+    /**
+     * Return the factory creating PKCS #10 attributes for the object
+     * identifier, from the (Object value) constructor of the class.
+     *
+     * @param oid the object identifier of the attribute.
+     * @return the factory or null if no class is registered for this oid.
+     * @exception CertificateException if the class cannot be loaded.
+     */
+    public static AttributeFactory getAttributeFactory(ObjectIdentifier oid)
+            throws CertificateException {
+        AttributeFactory factory = oid2AttributeFactory.get(oid);
+        if (factory != null) {
+            return factory;
+        }
+
+        Class<?> attrClass = getClass(oid);
+        if (attrClass == null) {
+            return null;
+        }
+
+        factory = bindAttribute(attrClass);
+        AttributeFactory existing = oid2AttributeFactory.putIfAbsent(oid, factory);
+        return existing != null ? existing : factory;
+    }
+
+    private static AttributeFactory bindAttribute(Class<?> attrClass) {
+        MethodHandle cons;
+        try {
+            cons = findConstructor(attrClass, Object.class);
+        } catch (ReflectiveOperationException e) {
+            return value -> {
+                throw new IOException(e.toString(), e);
+            };
+        }
+        return value -> {
+            try {
+                return (CertAttrSet) cons.invokeExact(value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        };
+    }
+
+    // Bind the (Boolean critical, Object value) constructor of a class
+    // registered without a factory. A missing constructor only fails
+    // when an extension is decoded, as it did before factories existed.
+    private static ExtensionFactory bindExtension(Class<?> extClass) {
+        MethodHandle cons;
+        try {
+            cons = findConstructor(extClass, Boolean.class, Object.class);
+        } catch (ReflectiveOperationException e) {
+            return (critical, value) -> {
+                throw new IOException(e.toString(), e);
+            };
+        }
+        return (critical, value) -> {
+            try {
+                return (CertAttrSet) cons.invokeExact(critical, value);
+            } catch (Throwable t) {
+                throw rethrow(t);
+            }
+        };
+    }
+
+    // Look up a public constructor once, adapted to return CertAttrSet so
+    // that it can be invoked exactly. Classes which aren't a CertAttrSet
+    // fail with a ClassCastException when invoked, as they did before.
+    private static MethodHandle findConstructor(Class<?> clazz, Class<?>... params)
+            throws ReflectiveOperationException {
+        MethodHandle cons = MethodHandles.publicLookup().findConstructor(clazz,
+                MethodType.methodType(void.class, params));
+        return cons.asType(MethodType.methodType(CertAttrSet.class, params));
+    }
+
+    // Constructors are invoked directly, so their exceptions arrive
+    // unwrapped.
+    private static IOException rethrow(Throwable t) throws CertificateException {
+        if (t instanceof IOException) {
+            return (IOException) t;
+        }
+        if (t instanceof CertificateException) {
+            throw (CertificateException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new IOException(t.toString(), t);
+    }
 }
@@ -0,0 +1,345 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2026 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+import java.util.function.IntBinaryOperator;
+
+import org.mozilla.jss.netscape.security.util.DerValue;
+
+/**
+ * A compact index of the <code>revokedCertificates</code> of a CRL.
+ *
+ * Rather than decoding each entry into a RevokedCertImpl, the index keeps
+ * the DER encoding of the entries and the offset of each entry in it,
+ * sorted by serial number. Serial numbers are looked up by binary search
+ * over the encoded bytes, and entries are only decoded when they are
+ * requested. The index is immutable, so lookups need no locking.
+ */
+final class RevokedCertIndex {
+
+    static final RevokedCertIndex EMPTY = new RevokedCertIndex();
+
+    private final byte[] der;
+    private final int offset;
+    private final int length;
+
+    // offsets of the entries in der, sorted by serial number
+    private final int[] entries;
+
+    private RevokedCertIndex() {
+        der = new byte[0];
+        offset = 0;
+        length = 0;
+        entries = new int[0];
+    }
+
+    /**
+     * Indexes the entries of a <code>revokedCertificates</code> SEQUENCE
+     * OF. The array is kept, and must not be modified afterwards.
+     *
+     * @param der the array holding the encoding.
+     * @param offset offset of the contents of the SEQUENCE OF.
+     * @param length length of the contents.
+     * @param allowExtensions whether entries may have extensions.
+     * @exception CRLException on parsing errors.
+     */
+    RevokedCertIndex(byte[] der, int offset, int length, boolean allowExtensions)
+            throws CRLException {
+        this.der = der;
+        this.offset = offset;
+        this.length = length;
+
+        int[] offsets = new int[16];
+        int count = 0;
+        int end = offset + length;
+        int pos = offset;
+
+        while (pos < end) {
+            if (count == offsets.length) {
+                int[] grown = new int[count * 2];
+                System.arraycopy(offsets, 0, grown, 0, count);
+                offsets = grown;
+            }
+            offsets[count++] = pos;
+            pos = checkEntry(pos, end, allowExtensions);
+        }
+
+        entries = sort(offsets, count);
+    }
+
+    /**
+     * @return the number of revoked certificates.
+     */
+    int size() {
+        return entries.length;
+    }
+
+    /**
+     * @return true if the serial number is on the CRL.
+     */
+    boolean contains(BigInteger serialNumber) {
+        return find(serialNumber.toByteArray()) >= 0;
+    }
+
+    /**
+     * Decodes the entry for a serial number.
+     *
+     * @return the entry, or null if the serial number is not on the CRL.
+     */
+    RevokedCertImpl get(BigInteger serialNumber)
+            throws CRLException, X509ExtensionException {
+        int index = find(serialNumber.toByteArray());
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * Decodes the entry at a position in serial number order.
+     */
+    RevokedCertImpl get(int index)
+            throws CRLException, X509ExtensionException {
+        int start = entries[index];
+        int end = start + headerLength(start) + contentLength(start);
+        try {
+            return new RevokedCertImpl(new DerValue(der, start, end - start));
+        } catch (IOException e) {
+            throw new CRLException("Parsing error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the contents of the indexed SEQUENCE OF, exactly as they were
+     * encoded.
+     */
+    void encode(OutputStream out) throws IOException {
+        out.write(der, offset, length);
+    }
+
+    /*
+     * Checks the structure of the entry at pos and returns the offset
+     * following it. Contents are decoded later, by RevokedCertImpl.
+     */
+    private int checkEntry(int pos, int end, boolean allowExtensions)
+            throws CRLException {
+        if (der[pos] != DerValue.tag_Sequence) {
+            throw new CRLException("Invalid encoded RevokedCertificate, " +
+                                  "starting sequence tag missing.");
+        }
+        int next = checkLength(pos, end);
+        int field = pos + headerLength(pos);
+
+        // serial number
+        if (field >= next || der[field] != DerValue.tag_Integer) {
+            throw new CRLException("Invalid encoding for RevokedCertificates");
+        }
+        int serialEnd = checkLength(field, next);
+        if (serialEnd == field + headerLength(field)) {
+            throw new CRLException("Empty serial number in RevokedCertificates");
+        }
+        field = serialEnd;
+
+        // revocationDate
+        if (field >= next || (der[field] != DerValue.tag_UtcTime
+                && der[field] != DerValue.tag_GeneralizedTime)) {
+            throw new CRLException("Invalid encoding for RevokedCertificates");
+        }
+        field = checkLength(field, next);
+
+        // crlEntryExtensions
+        if (field < next) {
+            if (!allowExtensions) {
+                throw new CRLException("Invalid encoding, extensions" +
+                        " not supported in CRL v1 entries.");
+            }
+            if (der[field] != DerValue.tag_Sequence
+                    || checkLength(field, next) != next) {
+                throw new CRLException("Invalid encoding for RevokedCertificates");
+            }
+        }
+
+        return next;
+    }
+
+    /*
+     * Returns the offset following the value at pos, checking that it
+     * ends by the given offset.
+     */
+    private int checkLength(int pos, int end) throws CRLException {
+        if (pos + 1 >= end) {
+            throw new CRLException("Truncated RevokedCertificates");
+        }
+        int lenByte = der[pos + 1] & 0xff;
+        if (lenByte > 0x84 || lenByte == 0x80 || pos + 2 + (lenByte & 0x7f) > end) {
+            throw new CRLException("Invalid length in RevokedCertificates");
+        }
+        long next = (long) pos + headerLength(pos) + contentLength(pos);
+        if (contentLength(pos) < 0 || next > end) {
+            throw new CRLException("Truncated RevokedCertificates");
+        }
+        return (int) next;
+    }
+
+    private int headerLength(int pos) {
+        int lenByte = der[pos + 1] & 0xff;
+        return lenByte < 0x80 ? 2 : 2 + (lenByte & 0x7f);
+    }
+
+    private int contentLength(int pos) {
+        int lenByte = der[pos + 1] & 0xff;
+        if (lenByte < 0x80) {
+            return lenByte;
+        }
+        int len = 0;
+        for (int i = 0; i < (lenByte & 0x7f); i++) {
+            len = (len << 8) | (der[pos + 2 + i] & 0xff);
+        }
+        return len;
+    }
+
+    /*
+     * Returns the offset of the serial number contents of the entry at
+     * pos in the high half and their length in the low half, skipping
+     * redundant sign octets so that equal numbers compare equal.
+     */
+    private long serial(int pos) {
+        int field = pos + headerLength(pos);
+        int start = field + headerLength(field);
+        int len = contentLength(field);
+        while (len > 1 && (der[start] == 0 && der[start + 1] >= 0
+                || der[start] == -1 && der[start + 1] < 0)) {
+            start++;
+            len--;
+        }
+        return ((long) start << 32) | len;
+    }
+
+    /*
+     * Orders serial numbers by the length of their minimal two's
+     * complement encoding, then by its unsigned octets. This isn't
+     * numerical order, but it is a total order consistent with equality.
+     */
+    private int compare(int a, int b) {
+        long sa = serial(a);
+        long sb = serial(b);
+        return compare(der, (int) (sa >>> 32), (int) sa,
+                der, (int) (sb >>> 32), (int) sb);
+    }
+
+    /**
+     * Compares serial numbers given as minimal two's complement octets.
+     */
+    static int compare(byte[] a, int aOff, int aLen,
+            byte[] b, int bOff, int bLen) {
+        if (aLen != bLen) {
+            return aLen < bLen ? -1 : 1;
+        }
+        for (int i = 0; i < aLen; i++) {
+            int diff = (a[aOff + i] & 0xff) - (b[bOff + i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    private int find(byte[] key) {
+        int low = 0;
+        int high = entries.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long s = serial(entries[mid]);
+            int cmp = compare(der, (int) (s >>> 32), (int) s, key, 0, key.length);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Sorts the entry offsets by serial number. A serial number listed
+     * more than once keeps its last entry, as it would in a Hashtable.
+     */
+    private int[] sort(int[] offsets, int count) {
+        count = sort(offsets, count, this::compare);
+        if (count == offsets.length) {
+            return offsets;
+        }
+        int[] result = new int[count];
+        System.arraycopy(offsets, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Sorts the first count values of an array with a stable sort, and
+     * drops all but the last of the values which compare equal.
+     *
+     * @return the number of values left.
+     */
+    static int sort(int[] values, int count, IntBinaryOperator comparator) {
+        boolean sorted = true;
+        for (int i = 1; i < count && sorted; i++) {
+            sorted = comparator.applyAsInt(values[i - 1], values[i]) < 0;
+        }
+        if (sorted) {
+            return count;
+        }
+
+        mergeSort(values, new int[count], 0, count, comparator);
+
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && comparator.applyAsInt(values[i], values[i + 1]) == 0) {
+                continue;
+            }
+            values[unique++] = values[i];
+        }
+        return unique;
+    }
+
+    private static void mergeSort(int[] a, int[] tmp, int from, int to,
+            IntBinaryOperator comparator) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(a, tmp, from, mid, comparator);
+        mergeSort(a, tmp, mid, to, comparator);
+        if (comparator.applyAsInt(a[mid - 1], a[mid]) <= 0) {
+            return;
+        }
+
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || i < mid && comparator.applyAsInt(tmp[i], tmp[j]) <= 0) {
+                a[k] = tmp[i++];
+            } else {
+                a[k] = tmp[j++];
+            }
+        }
+    }
+}
@@ -105,6 +105,8 @@ public class X509CRLImpl extends X509CRL {
     //    private static CRLExtensions    extensions = null;
     private CRLExtensions extensions = null;
     private boolean entriesIncluded = true;
+    // entries of a CRL parsed in compact mode, instead of revokedCerts
+    private RevokedCertIndex revokedIndex = null;
     private final static boolean isExplicit = true;
 
     private boolean readOnly = false;
@@ -145,6 +147,35 @@ public class X509CRLImpl extends X509CRL {
         }
     }
 
+    /**
+     * Unmarshals an X.509 CRL from its encoded form, optionally indexing
+     * its entries compactly. A compact CRL keeps the encoded entries sorted
+     * by serial number rather than a RevokedCertImpl per entry, which
+     * takes a fraction of the memory for large CRLs: isRevoked looks
+     * serial numbers up without locking, and entries are decoded when
+     * they are requested. The CRL keeps crlData, which must not be
+     * modified afterwards.
+     *
+     * @param crlData the encoded bytes, with no trailing padding.
+     * @param includeEntries whether to parse the revoked certificates.
+     * @param compactEntries whether to index them compactly.
+     * @exception CRLException on parsing errors.
+     * @exception X509ExtensionException on extension handling errors.
+     */
+    public X509CRLImpl(byte[] crlData, boolean includeEntries,
+            boolean compactEntries)
+            throws CRLException, X509ExtensionException {
+        try {
+            entriesIncluded = includeEntries;
+            DerValue in = new DerValue(crlData);
+
+            parse(in, includeEntries, compactEntries);
+            signedCRL = crlData;
+        } catch (IOException e) {
+            throw new CRLException("Parsing error: " + e.getMessage());
+        }
+    }
+
     /**
      * Unmarshals an X.509 CRL from an input stream. Only one CRL
      * is expected at the end of the input stream.
@@ -341,7 +372,10 @@ public class X509CRLImpl extends X509CRL {
             if (nextUpdate != null)
                 tmp.putUTCTime(nextUpdate);
 
-            if (!revokedCerts.isEmpty()) {
+            if (revokedIndex != null && revokedIndex.size() > 0) {
+                revokedIndex.encode(rCerts);
+                tmp.write(DerValue.tag_Sequence, rCerts);
+            } else if (!revokedCerts.isEmpty()) {
                 for (Enumeration<RevokedCertificate> e = revokedCerts.elements(); e.hasMoreElements();)
                     ((RevokedCertImpl) e.nextElement()).encode(rCerts);
                 tmp.write(DerValue.tag_Sequence, rCerts);
@@ -403,6 +437,25 @@ public class X509CRLImpl extends X509CRL {
         }
         Signature sigVerf = null;
 
+        String sigAlg = getSignatureAlgorithm(sigAlgId, sigProvider);
+        sigVerf = Signature.getInstance(sigAlg, sigProvider);
+        sigVerf.initVerify(key);
+
+        if (tbsCertList == null)
+            throw new CRLException("Uninitialized CRL");
+
+        sigVerf.update(tbsCertList, 0, tbsCertList.length);
+
+        if (!sigVerf.verify(signature)) {
+            throw new CRLException("Signature does not match.");
+        }
+    }
+
+    /**
+     * Returns the name of the signature algorithm to request from the
+     * given provider for verifying a CRL.
+     */
+    static String getSignatureAlgorithm(AlgorithmId sigAlgId, String sigProvider) {
         String sigAlg = sigAlgId.getName();
         if (sigProvider != null && sigProvider.equals("Mozilla-JSS")) {
             if (sigAlg.equals("MD5withRSA")) {
@@ -429,17 +482,7 @@ public class X509CRLImpl extends X509CRL {
                 sigAlg = "SHA512/EC";
             }
         }
-        sigVerf = Signature.getInstance(sigAlg, sigProvider);
-        sigVerf.initVerify(key);
-
-        if (tbsCertList == null)
-            throw new CRLException("Uninitialized CRL");
-
-        sigVerf.update(tbsCertList, 0, tbsCertList.length);
-
-        if (!sigVerf.verify(signature)) {
-            throw new CRLException("Signature does not match.");
-        }
+        return sigAlg;
     }
 
     /**
@@ -532,7 +575,11 @@ public class X509CRLImpl extends X509CRL {
                 + "\n");
         if (nextUpdate != null)
             sb.append("Next Update: " + nextUpdate + "\n");
-        if (revokedCerts.isEmpty())
+        if (revokedIndex != null && revokedIndex.size() > 0) {
+            sb.append("\nRevoked Certificates:\n");
+            for (int i = 0; i < revokedIndex.size(); i++)
+                sb.append(getIndexedEntry(i));
+        } else if (revokedCerts.isEmpty())
             sb.append("\nNO certificates have been revoked\n");
         else {
             sb.append("\nRevoked Certificates:\n");
@@ -560,6 +607,8 @@ public class X509CRLImpl extends X509CRL {
      *         false otherwise.
      */
     public boolean isRevoked(BigInteger serialNumber) {
+        if (revokedIndex != null)
+            return revokedIndex.contains(serialNumber);
         if (revokedCerts == null || revokedCerts.isEmpty())
             return false;
         return revokedCerts.containsKey(serialNumber);
@@ -657,6 +706,8 @@ public class X509CRLImpl extends X509CRL {
      * @see RevokedCertificate
      */
     public X509CRLEntry getRevokedCertificate(BigInteger serialNumber) {
+        if (revokedIndex != null)
+            return getIndexedEntry(serialNumber);
         if (revokedCerts == null || revokedCerts.isEmpty())
             return null;
         return revokedCerts.get(serialNumber);
@@ -671,6 +722,14 @@ public class X509CRLImpl extends X509CRL {
      * @see RevokedCertificate
      */
     public Set<RevokedCertificate> getRevokedCertificates() {
+        if (revokedIndex != null) {
+            if (revokedIndex.size() == 0)
+                return null;
+            Set<RevokedCertificate> certSet = new LinkedHashSet<RevokedCertificate>();
+            for (int i = 0; i < revokedIndex.size(); i++)
+                certSet.add(getIndexedEntry(i));
+            return certSet;
+        }
         if (revokedCerts == null || revokedCerts.isEmpty())
             return null;
         else {
@@ -681,6 +740,14 @@ public class X509CRLImpl extends X509CRL {
 
     @SuppressWarnings("unchecked")
     public Hashtable<BigInteger, RevokedCertificate> getListOfRevokedCertificates() {
+        if (revokedIndex != null) {
+            Hashtable<BigInteger, RevokedCertificate> list = new Hashtable<BigInteger, RevokedCertificate>();
+            for (int i = 0; i < revokedIndex.size(); i++) {
+                RevokedCertImpl entry = getIndexedEntry(i);
+                list.put(entry.getSerialNumber(), entry);
+            }
+            return list;
+        }
         if (revokedCerts == null) {
             return null;
         } else {
@@ -689,6 +756,8 @@ public class X509CRLImpl extends X509CRL {
     }
 
     public int getNumberOfRevokedCertificates() {
+        if (revokedIndex != null)
+            return revokedIndex.size();
         if (revokedCerts == null)
             return -1;
         else
@@ -947,6 +1016,33 @@ public class X509CRLImpl extends X509CRL {
         return entriesIncluded;
     }
 
+    /**
+     * Returns true if the entries of this CRL are indexed compactly.
+     */
+    public boolean areEntriesCompact() {
+        return revokedIndex != null;
+    }
+
+    /*
+     * Decodes an entry of a compact CRL. The index checked the structure
+     * of the entries, so this only fails on malformed contents.
+     */
+    private RevokedCertImpl getIndexedEntry(BigInteger serialNumber) {
+        try {
+            return revokedIndex.get(serialNumber);
+        } catch (CRLException | X509ExtensionException e) {
+            throw new RuntimeException("Unable to decode CRL entry: " + e.getMessage(), e);
+        }
+    }
+
+    private RevokedCertImpl getIndexedEntry(int index) {
+        try {
+            return revokedIndex.get(index);
+        } catch (CRLException | X509ExtensionException e) {
+            throw new RuntimeException("Unable to decode CRL entry: " + e.getMessage(), e);
+        }
+    }
+
     /*********************************************************************/
     /*
      * Parses an X.509 CRL, should be used only by constructors.
@@ -958,11 +1054,19 @@ public class X509CRLImpl extends X509CRL {
 
     private void parse(DerValue val, boolean includeEntries)
             throws CRLException, IOException, X509ExtensionException {
+        parse(val, includeEntries, false);
+    }
+
+    private void parse(DerValue val, boolean includeEntries,
+            boolean compactEntries)
+            throws CRLException, IOException, X509ExtensionException {
         // check if can over write the certificate
         if (readOnly)
             throw new CRLException("cannot over-write existing CRL");
 
         readOnly = true;
+        if (includeEntries && compactEntries)
+            revokedIndex = RevokedCertIndex.EMPTY;
         DerValue seq[] = new DerValue[3];
 
         seq[0] = val.data.getDerValue();
@@ -1044,7 +1148,18 @@ public class X509CRLImpl extends X509CRL {
         nextByte = (byte) derStrm.peekByte();
         if ((nextByte == DerValue.tag_SequenceOf)
                 && (!((nextByte & 0x0c0) == 0x080))) {
-            if (includeEntries) {
+            if (includeEntries && compactEntries) {
+                // index the entries where they are in tbsCertList
+                int start = tbsCertList.length - derStrm.available();
+                derStrm.skipSequence(4);
+                int end = tbsCertList.length - derStrm.available();
+
+                int contents = start + 2;
+                if ((tbsCertList[start + 1] & 0x80) != 0)
+                    contents += tbsCertList[start + 1] & 0x7f;
+                revokedIndex = new RevokedCertIndex(tbsCertList, contents,
+                        end - contents, version != 0);
+            } else if (includeEntries) {
                 DerValue[] badCerts = derStrm.getSequence(4);
                 for (int i = 0; i < badCerts.length; i++) {
                     RevokedCertImpl entry = new RevokedCertImpl(badCerts[i]);
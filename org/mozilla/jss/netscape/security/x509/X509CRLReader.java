@@ -0,0 +1,571 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2026 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.util.Date;
+import java.util.Enumeration;
+
+import org.mozilla.jss.netscape.security.util.DerInputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+
+/**
+ * Reads an X.509 CRL from a stream, one revoked certificate at a time.
+ *
+ * Unlike X509CRLImpl, which holds the whole CRL and all of its entries,
+ * the reader only holds the entry being decoded, so CRLs of any size can
+ * be processed in constant memory. The fields preceding the entries are
+ * available once the reader is created; the entries are then returned by
+ * {@link #nextEntry()}, and the CRL extensions and signature follow them:
+ *
+ * <pre>
+ * try (X509CRLReader reader = X509CRLReader.open(path)) {
+ *     reader.initVerify(issuerKey, null);
+ *     RevokedCertImpl entry;
+ *     while ((entry = reader.nextEntry()) != null) {
+ *         ...
+ *     }
+ *     reader.verify();
+ * }
+ * </pre>
+ *
+ * The signature is computed over the <code>tbsCertList</code> as it is
+ * read, so verifying it doesn't require reading the CRL twice.
+ *
+ * @see X509CRLImpl
+ */
+public class X509CRLReader implements Closeable {
+
+    // Files are mapped this much at a time.
+    private static final int MAP_SIZE = 64 << 20;
+
+    private final InputStream in;
+    private int peeked = -1;
+
+    // bytes left in the CertificateList, the tbsCertList (-1 until its
+    // length is read), and the revokedCertificates
+    private long remaining;
+    private long tbsRemaining = -1;
+    private long entriesRemaining;
+    private final byte[] header = new byte[6];
+
+    // tbsCertList bytes read before initVerify, or null once entries
+    // have been read
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private Signature verifier;
+    private boolean finished;
+
+    private int version;
+    private AlgorithmId infoSigAlgId;
+    private X500Name issuer;
+    private Date thisUpdate;
+    private Date nextUpdate;
+    private CRLExtensions extensions;
+    private AlgorithmId sigAlgId;
+    private byte[] signature;
+
+    /**
+     * Starts reading a CRL from a stream, up to its revoked certificates.
+     * The stream is buffered if necessary, and closed with the reader.
+     *
+     * @param in the stream holding the CRL.
+     * @exception IOException on I/O errors.
+     * @exception CRLException on parsing errors.
+     */
+    public X509CRLReader(InputStream in) throws IOException, CRLException {
+        if (in instanceof BufferedInputStream || in instanceof ByteArrayInputStream
+                || in instanceof MappedInputStream) {
+            this.in = in;
+        } else {
+            this.in = new BufferedInputStream(in);
+        }
+        parseHeader();
+    }
+
+    /**
+     * Starts reading a CRL from a file, which is memory-mapped a part at
+     * a time.
+     *
+     * @param file the file holding the CRL.
+     * @exception IOException on I/O errors.
+     * @exception CRLException on parsing errors.
+     */
+    public static X509CRLReader open(Path file) throws IOException, CRLException {
+        MappedInputStream in = new MappedInputStream(
+                FileChannel.open(file, StandardOpenOption.READ));
+        try {
+            return new X509CRLReader(in);
+        } catch (IOException | CRLException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public AlgorithmId getInfoSigAlgId() {
+        return infoSigAlgId;
+    }
+
+    public X500Name getIssuer() {
+        return issuer;
+    }
+
+    public Date getThisUpdate() {
+        return new Date(thisUpdate.getTime());
+    }
+
+    /**
+     * @return the nextUpdate date, or null if not present.
+     */
+    public Date getNextUpdate() {
+        return nextUpdate == null ? null : new Date(nextUpdate.getTime());
+    }
+
+    /**
+     * Prepares to verify the signature of the CRL as it is read. This
+     * must be called before the entries are read.
+     *
+     * @param key the public key of the issuer.
+     * @param sigProvider the name of the signature provider, or null for
+     *            the default.
+     */
+    public void initVerify(PublicKey key, String sigProvider)
+            throws NoSuchAlgorithmException, NoSuchProviderException,
+            InvalidKeyException, SignatureException {
+        if (pending == null) {
+            throw new IllegalStateException(
+                    "Verification must start before the entries are read");
+        }
+
+        String sigAlg = X509CRLImpl.getSignatureAlgorithm(infoSigAlgId, sigProvider);
+        Signature sigVerf = sigProvider == null
+                ? Signature.getInstance(sigAlg)
+                : Signature.getInstance(sigAlg, sigProvider);
+        sigVerf.initVerify(key);
+        sigVerf.update(pending.toByteArray());
+
+        verifier = sigVerf;
+        pending = null;
+    }
+
+    /**
+     * Reads the next revoked certificate.
+     *
+     * @return the entry, or null once all entries have been read.
+     * @exception IOException on I/O errors.
+     * @exception CRLException on parsing errors.
+     * @exception X509ExtensionException on extension handling errors.
+     */
+    public RevokedCertImpl nextEntry()
+            throws IOException, CRLException, X509ExtensionException {
+        pending = null;
+        if (entriesRemaining == 0) {
+            return null;
+        }
+
+        byte[] encoded = readValue(true, entriesRemaining);
+        entriesRemaining -= encoded.length;
+
+        RevokedCertImpl entry = new RevokedCertImpl(new DerValue(encoded));
+        if (entry.hasExtensions() && version == 0) {
+            throw new CRLException("Invalid encoding, extensions" +
+                    " not supported in CRL v1 entries.");
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the CRL extensions, skipping any entries not read yet.
+     *
+     * @return the extensions, or null if there are none.
+     */
+    public CRLExtensions getExtensions()
+            throws IOException, CRLException, X509ExtensionException {
+        finish();
+        return extensions;
+    }
+
+    /**
+     * Returns the CRL number, skipping any entries not read yet.
+     *
+     * @return the number, or null if the CRL has none.
+     */
+    public BigInteger getCRLNumber()
+            throws IOException, CRLException, X509ExtensionException {
+        finish();
+        if (extensions == null)
+            return null;
+        for (Enumeration<Extension> e = extensions.getElements(); e.hasMoreElements();) {
+            Extension ext = e.nextElement();
+            if (ext instanceof CRLNumberExtension)
+                return (BigInteger) ((CRLNumberExtension) ext).get(CRLNumberExtension.NUMBER);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the base CRL number of a delta CRL, skipping any entries
+     * not read yet.
+     *
+     * @return the number, or null if this isn't a delta CRL.
+     */
+    public BigInteger getDeltaBaseCRLNumber()
+            throws IOException, CRLException, X509ExtensionException {
+        finish();
+        if (extensions == null)
+            return null;
+        for (Enumeration<Extension> e = extensions.getElements(); e.hasMoreElements();) {
+            Extension ext = e.nextElement();
+            if (ext instanceof DeltaCRLIndicatorExtension)
+                return (BigInteger) ((DeltaCRLIndicatorExtension) ext).get(DeltaCRLIndicatorExtension.NUMBER);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the signature algorithm of the CRL, skipping any entries
+     * not read yet.
+     */
+    public AlgorithmId getSigAlgId()
+            throws IOException, CRLException, X509ExtensionException {
+        finish();
+        return sigAlgId;
+    }
+
+    /**
+     * Returns the raw signature bits, skipping any entries not read yet.
+     */
+    public byte[] getSignature()
+            throws IOException, CRLException, X509ExtensionException {
+        finish();
+        return signature.clone();
+    }
+
+    /**
+     * Reads the rest of the CRL, skipping any entries not read yet, and
+     * checks its signature.
+     *
+     * @exception CRLException on parsing errors, or if the signature
+     *                doesn't match.
+     * @exception SignatureException on signature errors.
+     */
+    public void verify() throws IOException, CRLException,
+            X509ExtensionException, SignatureException {
+        if (verifier == null) {
+            throw new IllegalStateException("Verification was not started");
+        }
+        finish();
+        if (!verifier.verify(signature)) {
+            throw new CRLException("Signature does not match.");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void parseHeader() throws IOException, CRLException {
+        if (readByte(false) != DerValue.tag_Sequence)
+            throw new CRLException("signed CRL fields invalid");
+        remaining = readLength(false);
+
+        if (readByte(true) != DerValue.tag_Sequence)
+            throw new CRLException("signed CRL fields invalid");
+        tbsRemaining = readLength(true);
+        if (tbsRemaining > remaining)
+            throw new CRLException("TBSCertList overrun");
+
+        // version (optional if v1)
+        version = 0;
+        if (peekByte() == DerValue.tag_Integer) {
+            version = new DerValue(readValue(true)).getInteger().toInt();
+            if (version != 1) // i.e. v2
+                throw new CRLException("Invalid version");
+        }
+
+        // signature
+        infoSigAlgId = AlgorithmId.parse(new DerValue(readValue(true)));
+
+        // issuer
+        issuer = new X500Name(readValue(true));
+
+        // thisUpdate
+        int nextByte = peekByte();
+        if (nextByte == DerValue.tag_UtcTime) {
+            thisUpdate = new DerInputStream(readValue(true)).getUTCTime();
+        } else if (nextByte == DerValue.tag_GeneralizedTime) {
+            thisUpdate = new DerInputStream(readValue(true)).getGeneralizedTime();
+        } else {
+            throw new CRLException("Invalid encoding for thisUpdate"
+                                   + " (tag=" + nextByte + ")");
+        }
+
+        // nextUpdate (optional)
+        if (tbsRemaining == 0)
+            return;
+        nextByte = peekByte();
+        if (nextByte == DerValue.tag_UtcTime) {
+            nextUpdate = new DerInputStream(readValue(true)).getUTCTime();
+        } else if (nextByte == DerValue.tag_GeneralizedTime) {
+            nextUpdate = new DerInputStream(readValue(true)).getGeneralizedTime();
+        }
+
+        // revokedCertificates (optional)
+        if (tbsRemaining == 0)
+            return;
+        if (peekByte() == DerValue.tag_SequenceOf) {
+            readByte(true);
+            entriesRemaining = readLength(true);
+            if (entriesRemaining > tbsRemaining)
+                throw new CRLException("RevokedCertificates overrun");
+        }
+    }
+
+    /*
+     * Reads the fields following the entries.
+     */
+    private void finish() throws IOException, CRLException, X509ExtensionException {
+        if (finished) {
+            return;
+        }
+        pending = null;
+
+        // skip the remaining entries
+        byte[] skipped = new byte[8192];
+        while (entriesRemaining > 0) {
+            int len = (int) Math.min(entriesRemaining, skipped.length);
+            read(skipped, 0, len, true);
+            entriesRemaining -= len;
+        }
+
+        // crlExtensions (optional)
+        if (tbsRemaining > 0) {
+            DerValue tmp = new DerValue(readValue(true));
+            if (tmp.isConstructed() && tmp.isContextSpecific((byte) 0)) {
+                if (version == 0)
+                    throw new CRLException("Invalid encoding, extensions not" +
+                                       " supported in CRL v1.");
+                extensions = new CRLExtensions(tmp.data);
+            }
+        }
+        if (tbsRemaining != 0)
+            throw new CRLException("TBSCertList overrun");
+
+        sigAlgId = AlgorithmId.parse(new DerValue(readValue(false)));
+        signature = new DerValue(readValue(false)).getBitString();
+
+        if (remaining != 0)
+            throw new CRLException("signed overrun, bytes = " + remaining);
+        if (!sigAlgId.equals(infoSigAlgId))
+            throw new CRLException("Signature algorithm mismatch");
+
+        finished = true;
+    }
+
+    /*
+     * Reads a complete DER value, including its tag and length.
+     */
+    private byte[] readValue(boolean tbs) throws IOException, CRLException {
+        return readValue(tbs, -1);
+    }
+
+    /*
+     * Reads a complete DER value of at most limit bytes, including its tag
+     * and length, or of any size if limit is negative. The length is
+     * checked against the enclosing structures before anything is
+     * allocated for it.
+     */
+    private byte[] readValue(boolean tbs, long limit)
+            throws IOException, CRLException {
+        if (limit >= 0 && limit < 2)
+            throw new CRLException("RevokedCertificates overrun");
+        read(header, 0, 2, tbs);
+        int headerLen = 2;
+
+        int b = header[1] & 0xff;
+        long length = b;
+        if (b >= 0x80) {
+            int n = b & 0x7f;
+            if (n == 0 || n > 4)
+                throw new CRLException("Invalid length in CRL");
+            read(header, headerLen, n, tbs);
+            length = 0;
+            for (int i = 0; i < n; i++) {
+                length = (length << 8) | (header[headerLen + i] & 0xff);
+            }
+            headerLen += n;
+        }
+        if (limit >= 0 && length > limit - headerLen)
+            throw new CRLException("RevokedCertificates overrun");
+        if (tbs && tbsRemaining >= 0 && length > tbsRemaining)
+            throw new CRLException("TBSCertList overrun");
+        if (length > remaining)
+            throw new CRLException("signed overrun");
+        if (length > Integer.MAX_VALUE - headerLen)
+            throw new CRLException("CRL field too large");
+
+        byte[] value = new byte[headerLen + (int) length];
+        System.arraycopy(header, 0, value, 0, headerLen);
+        read(value, headerLen, (int) length, tbs);
+        return value;
+    }
+
+    /*
+     * Reads a DER length, which may be too large for an array.
+     */
+    private long readLength(boolean tbs) throws IOException, CRLException {
+        int b = readByte(tbs);
+        if (b < 0x80)
+            return b;
+
+        int n = b & 0x7f;
+        if (n == 0 || n > 8)
+            throw new CRLException("Invalid length in CRL");
+        long length = 0;
+        for (int i = 0; i < n; i++) {
+            length = (length << 8) | readByte(tbs);
+        }
+        if (length < 0)
+            throw new CRLException("Invalid length in CRL");
+        return length;
+    }
+
+    private int peekByte() throws IOException {
+        if (peeked < 0) {
+            peeked = in.read();
+            if (peeked < 0)
+                throw new EOFException("Unexpected end of CRL");
+        }
+        return peeked;
+    }
+
+    private int readByte(boolean tbs) throws IOException, CRLException {
+        read(header, 0, 1, tbs);
+        return header[0] & 0xff;
+    }
+
+    /*
+     * Reads exactly len bytes, accounting for them in the CertificateList
+     * and, if they are part of it, the tbsCertList.
+     */
+    private void read(byte[] b, int off, int len, boolean tbs)
+            throws IOException, CRLException {
+        int pos = off;
+        int end = off + len;
+        if (peeked >= 0 && pos < end) {
+            b[pos++] = (byte) peeked;
+            peeked = -1;
+        }
+        while (pos < end) {
+            int n = in.read(b, pos, end - pos);
+            if (n < 0)
+                throw new EOFException("Unexpected end of CRL");
+            pos += n;
+        }
+
+        remaining -= len;
+        if (tbs) {
+            if (tbsRemaining >= 0) {
+                tbsRemaining -= len;
+                if (tbsRemaining < 0)
+                    throw new CRLException("TBSCertList overrun");
+            }
+            if (verifier != null) {
+                try {
+                    verifier.update(b, off, len);
+                } catch (SignatureException e) {
+                    throw new CRLException("Unable to verify CRL: " + e.getMessage());
+                }
+            } else if (pending != null) {
+                pending.write(b, off, len);
+            }
+        }
+    }
+
+    /*
+     * Reads a file through successive read-only mappings.
+     */
+    private static class MappedInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long size;
+        private long position;
+        private MappedByteBuffer buffer;
+
+        MappedInputStream(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer != null && buffer.hasRemaining())
+                return true;
+            if (position >= size)
+                return false;
+
+            long len = Math.min(MAP_SIZE, size - position);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, len);
+            position += len;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            if (!fill())
+                return -1;
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            buffer = null;
+            channel.close();
+        }
+    }
+}
@@ -4,6 +4,7 @@
 #include <jni.h>
 
 #include "jssutil.h"
+#include "jss_exceptions.h"
 #include "BufferProxy.h"
 #include "j_buffer.h"
 
@@ -139,6 +140,112 @@ Java_org_mozilla_jss_nss_Buffer_Write(JNIEnv *env, jclass clazz, jobject buf, jb
     return write_amount;
 }
 
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_ReadDirect(JNIEnv *env, jclass clazz,
+    jobject buf, jobject output, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *real_output = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL && output != NULL);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return 0;
+    }
+
+    if (!JSS_RefDirectBuffer(env, output, offset, length, &real_output)) {
+        return 0;
+    }
+
+    return jb_read(real_buf, real_output, (size_t) length);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_WriteDirect(JNIEnv *env, jclass clazz,
+    jobject buf, jobject input, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *real_input = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL && input != NULL);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    if (!JSS_RefDirectBuffer(env, input, offset, length, &real_input)) {
+        return -1;
+    }
+
+    return jb_write(real_buf, real_input, (size_t) length);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_ReadArray(JNIEnv *env, jclass clazz,
+    jobject buf, jbyteArray output, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    jbyte *real_output = NULL;
+    jsize output_length = 0;
+    size_t read_amount = 0;
+
+    PR_ASSERT(env != NULL && buf != NULL && output != NULL);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return 0;
+    }
+
+    if (!JSS_RefByteArray(env, output, &real_output, &output_length)) {
+        return 0;
+    }
+
+    if (offset < 0 || length < 0 || offset + length > output_length) {
+        JSS_DerefByteArray(env, output, real_output, JNI_ABORT);
+        JSS_throwMsg(env, INDEX_OUT_OF_BOUNDS_EXCEPTION,
+            "Region exceeds the length of the output array.");
+        return 0;
+    }
+
+    read_amount = jb_read(real_buf, (uint8_t *) real_output + offset,
+                          (size_t) length);
+    JSS_DerefByteArray(env, output, real_output, 0);
+
+    return read_amount;
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_WriteArray(JNIEnv *env, jclass clazz,
+    jobject buf, jbyteArray input, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    jbyte *real_input = NULL;
+    jsize input_length = 0;
+    size_t write_amount = 0;
+
+    PR_ASSERT(env != NULL && buf != NULL && input != NULL);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    if (!JSS_RefByteArray(env, input, &real_input, &input_length)) {
+        return -1;
+    }
+
+    if (offset < 0 || length < 0 || offset + length > input_length) {
+        JSS_DerefByteArray(env, input, real_input, JNI_ABORT);
+        JSS_throwMsg(env, INDEX_OUT_OF_BOUNDS_EXCEPTION,
+            "Region exceeds the length of the input array.");
+        return -1;
+    }
+
+    write_amount = jb_write(real_buf, (uint8_t *) real_input + offset,
+                            (size_t) length);
+    JSS_DerefByteArray(env, input, real_input, JNI_ABORT);
+
+    return write_amount;
+}
+
 JNIEXPORT jint JNICALL
 Java_org_mozilla_jss_nss_Buffer_Get(JNIEnv *env, jclass clazz, jobject buf)
 {
@@ -167,6 +274,25 @@ Java_org_mozilla_jss_nss_Buffer_Put(JNIEnv *env, jclass clazz, jobject buf, jbyt
     return jb_put(real_buf, (uint8_t) input);
 }
 
+JNIEXPORT jboolean JNICALL
+Java_org_mozilla_jss_nss_Buffer_Resize(JNIEnv *env, jclass clazz, jobject buf,
+    jlong length)
+{
+    j_buffer *real_buf = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL);
+
+    if (length <= 0) {
+        return false;
+    }
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return false;
+    }
+
+    return jb_resize(real_buf, length);
+}
+
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_nss_Buffer_Free(JNIEnv *env, jclass clazz, jobject buf)
 {
@@ -1,5 +1,8 @@
 package org.mozilla.jss.nss;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
 public class Buffer {
     /**
      * Create a new j_buffer object with the specified number of bytes.
@@ -59,6 +62,116 @@ public class Buffer {
      */
     public static native long Write(BufferProxy buf, byte[] input);
 
+    /**
+     * Read bytes from the buffer into the remaining space of output,
+     * advancing its position by the number of bytes read.
+     *
+     * Direct buffers are filled in place; heap buffers with an accessible
+     * backing array are filled via that array. Otherwise, this falls back
+     * to an intermediate copy.
+     *
+     * See also: jb_read in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static long Read(BufferProxy buf, ByteBuffer output) {
+        if (output.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        int length = output.remaining();
+        if (length == 0) {
+            return 0;
+        }
+
+        int position = output.position();
+        long read;
+
+        if (output.isDirect()) {
+            read = ReadDirect(buf, output, position, length);
+        } else if (output.hasArray()) {
+            read = ReadArray(buf, output.array(), output.arrayOffset() + position, length);
+        } else {
+            byte[] data = Read(buf, length);
+            output.put(data);
+            return data.length;
+        }
+
+        output.position(position + (int) read);
+        return read;
+    }
+
+    /**
+     * Write the remaining bytes of input to the buffer, advancing its
+     * position by the number of bytes written. Returns the number of bytes
+     * written; this might be less than input.remaining() when the buffer
+     * is nearly full.
+     *
+     * See also: jb_write in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static long Write(BufferProxy buf, ByteBuffer input) {
+        int position = input.position();
+        int length = input.remaining();
+        long written;
+
+        if (length == 0) {
+            return 0;
+        }
+
+        if (input.isDirect()) {
+            written = WriteDirect(buf, input, position, length);
+        } else if (input.hasArray()) {
+            written = WriteArray(buf, input.array(), input.arrayOffset() + position, length);
+        } else {
+            // Read-only heap buffers don't expose their backing array;
+            // copy only as much as can be written.
+            length = (int) Math.min(length, WriteCapacity(buf));
+            if (length == 0) {
+                return 0;
+            }
+
+            byte[] data = new byte[length];
+            input.duplicate().get(data);
+            written = Write(buf, data);
+        }
+
+        if (written > 0) {
+            input.position(position + (int) written);
+        }
+
+        return written;
+    }
+
+    /**
+     * Read up to length bytes from the buffer into the direct ByteBuffer
+     * output, starting at the absolute index offset. Doesn't update the
+     * position of output.
+     *
+     * See also: jb_read in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native long ReadDirect(BufferProxy buf, ByteBuffer output, int offset, int length);
+
+    /**
+     * Write length bytes from the direct ByteBuffer input, starting at the
+     * absolute index offset. Doesn't update the position of input.
+     *
+     * See also: jb_write in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native long WriteDirect(BufferProxy buf, ByteBuffer input, int offset, int length);
+
+    /**
+     * Read up to length bytes from the buffer into output, starting at
+     * the specified offset.
+     *
+     * See also: jb_read in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native long ReadArray(BufferProxy buf, byte[] output, int offset, int length);
+
+    /**
+     * Write length bytes from input, starting at the specified offset.
+     *
+     * See also: jb_write in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native long WriteArray(BufferProxy buf, byte[] input, int offset, int length);
+
     /**
      * Get a single character from the buffer.
      *
@@ -73,6 +186,15 @@ public class Buffer {
      */
     public static native int Put(BufferProxy buf, byte input);
 
+    /**
+     * Change the capacity of a buffer object, preserving its unread
+     * contents. Returns false, leaving the buffer unchanged, if the unread
+     * contents don't fit into the new capacity.
+     *
+     * See also: jb_resize in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native boolean Resize(BufferProxy buf, long length);
+
     /**
      * Destroy a buffer object, freeing its resources.
      *
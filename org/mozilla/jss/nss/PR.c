@@ -134,24 +134,20 @@ Java_org_mozilla_jss_nss_PR_Shutdown(JNIEnv *env, jclass clazz, jobject fd,
     return PR_Shutdown(real_fd, how);
 }
 
-JNIEXPORT jobject JNICALL
-Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
-    jint amount)
+/*
+ * Read up to amount bytes from real_fd into buffer. Returns the number of
+ * bytes read, or -1 when an error occurred; the NSPR error is left set in
+ * that case.
+ */
+static int
+jss_pr_read(PRFileDesc *real_fd, uint8_t *buffer, int amount)
 {
-    PRFileDesc *real_fd = NULL;
-    jobject result = NULL;
     int read_amount = 0;
     int this_read = 0;
-    uint8_t *buffer = NULL;
     PRSocketOptionData opt = { 0 };
     PRDescType fd_type;
 
-    PR_ASSERT(env != NULL && fd != NULL && amount >= 0);
-    PR_SetError(0, 0);
-
-    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
-        return NULL;
-    }
+    PR_ASSERT(real_fd != NULL && amount >= 0);
 
     fd_type = PR_GetDescType(real_fd);
     opt.value.non_blocking = PR_FALSE;
@@ -167,10 +163,6 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
         }
     }
 
-    PR_ASSERT(real_fd != NULL);
-
-    buffer = calloc(amount, sizeof(uint8_t));
-
     /* Work around a bug in NSS/NSPR: sometimes PR_Read returns a much smaller
      * read than expected, when it could read much more. */
     while (read_amount < amount) {
@@ -188,7 +180,7 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
                 break;
             }
 
-            goto done;
+            return -1;
         } else {
             read_amount += this_read;
 
@@ -201,6 +193,34 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
         }
     }
 
+    return read_amount;
+}
+
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
+    jint amount)
+{
+    PRFileDesc *real_fd = NULL;
+    jobject result = NULL;
+    int read_amount = 0;
+    uint8_t *buffer = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && amount >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return NULL;
+    }
+
+    PR_ASSERT(real_fd != NULL);
+
+    buffer = calloc(amount, sizeof(uint8_t));
+
+    read_amount = jss_pr_read(real_fd, buffer, amount);
+    if (read_amount < 0) {
+        goto done;
+    }
+
     result = JSS_ToByteArray(env, buffer, read_amount);
 
 done:
@@ -208,6 +228,65 @@ done:
     return result;
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_ReadDirect(JNIEnv *env, jclass clazz, jobject fd,
+    jobject buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *buffer = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return -1;
+    }
+
+    PR_ASSERT(real_fd != NULL);
+
+    if (!JSS_RefDirectBuffer(env, buf, offset, length, &buffer)) {
+        return -1;
+    }
+
+    return jss_pr_read(real_fd, buffer, length);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_ReadArray(JNIEnv *env, jclass clazz, jobject fd,
+    jbyteArray buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    jbyte *buffer = NULL;
+    jsize buffer_length = 0;
+    int result = 0;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return -1;
+    }
+
+    PR_ASSERT(real_fd != NULL);
+
+    if (!JSS_RefByteArray(env, buf, &buffer, &buffer_length)) {
+        return -1;
+    }
+
+    if (offset < 0 || length < 0 || offset + length > buffer_length) {
+        JSS_DerefByteArray(env, buf, buffer, JNI_ABORT);
+        JSS_throwMsg(env, INDEX_OUT_OF_BOUNDS_EXCEPTION,
+            "Region exceeds the length of the array.");
+        return -1;
+    }
+
+    result = jss_pr_read(real_fd, (uint8_t *) buffer + offset, length);
+
+    /* Only copy back when we've placed data into the array. */
+    JSS_DerefByteArray(env, buf, buffer, result > 0 ? 0 : JNI_ABORT);
+    return result;
+}
+
 JNIEXPORT int JNICALL
 Java_org_mozilla_jss_nss_PR_Write(JNIEnv *env, jclass clazz, jobject fd,
     jbyteArray buf)
@@ -249,6 +328,64 @@ Java_org_mozilla_jss_nss_PR_Write(JNIEnv *env, jclass clazz, jobject fd,
     return result;
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_WriteDirect(JNIEnv *env, jclass clazz, jobject fd,
+    jobject buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *buffer = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return 0;
+    }
+
+    PR_ASSERT(real_fd != NULL);
+
+    if (!JSS_RefDirectBuffer(env, buf, offset, length, &buffer)) {
+        return 0;
+    }
+
+    return PR_Write(real_fd, buffer, length);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_WriteArray(JNIEnv *env, jclass clazz, jobject fd,
+    jbyteArray buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    jbyte *buffer = NULL;
+    jsize buffer_length = 0;
+    int result = 0;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return 0;
+    }
+
+    PR_ASSERT(real_fd != NULL);
+
+    if (!JSS_RefByteArray(env, buf, &buffer, &buffer_length)) {
+        return 0;
+    }
+
+    if (offset < 0 || length < 0 || offset + length > buffer_length) {
+        JSS_DerefByteArray(env, buf, buffer, JNI_ABORT);
+        JSS_throwMsg(env, INDEX_OUT_OF_BOUNDS_EXCEPTION,
+            "Region exceeds the length of the array.");
+        return 0;
+    }
+
+    result = PR_Write(real_fd, (uint8_t *) buffer + offset, length);
+    JSS_DerefByteArray(env, buf, buffer, JNI_ABORT);
+
+    return result;
+}
+
 JNIEXPORT jobject JNICALL
 Java_org_mozilla_jss_nss_PR_Recv(JNIEnv *env, jclass clazz, jobject fd,
     jint amount, jint flags, jlong timeout)
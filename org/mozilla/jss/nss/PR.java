@@ -1,5 +1,8 @@
 package org.mozilla.jss.nss;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
 /**
  * This class provides static access to raw NSPS calls with the PR prefix,
  * and handles the usage of NativeProxy objects.
@@ -117,6 +120,67 @@ public class PR {
      */
     public static native byte[] Read(PRFDProxy fd, int amount);
 
+    /**
+     * Read up to buf.remaining() bytes from a PRFDProxy into buf, advancing
+     * its position by the number of bytes read. Returns the number of bytes
+     * read or -1 on error; check GetError() for details.
+     *
+     * Direct buffers are filled in place, without an intermediate copy;
+     * heap buffers are filled via their backing array.
+     *
+     * See also: PR_Read in /usr/include/nspr4/prio.h
+     */
+    public static int Read(PRFDProxy fd, ByteBuffer buf) {
+        if (buf.isReadOnly()) {
+            throw new ReadOnlyBufferException();
+        }
+
+        int position = buf.position();
+        int length = buf.remaining();
+        int read;
+
+        if (length == 0) {
+            return 0;
+        }
+
+        if (buf.isDirect()) {
+            read = ReadDirect(fd, buf, position, length);
+        } else if (buf.hasArray()) {
+            read = ReadArray(fd, buf.array(), buf.arrayOffset() + position, length);
+        } else {
+            byte[] data = Read(fd, length);
+            if (data == null) {
+                return -1;
+            }
+
+            buf.put(data);
+            return data.length;
+        }
+
+        if (read > 0) {
+            buf.position(position + read);
+        }
+
+        return read;
+    }
+
+    /**
+     * Read up to length bytes from a PRFDProxy into the direct ByteBuffer
+     * buf, starting at the absolute index offset. Doesn't update the
+     * position of buf.
+     *
+     * See also: PR_Read in /usr/include/nspr4/prio.h
+     */
+    public static native int ReadDirect(PRFDProxy fd, ByteBuffer buf, int offset, int length);
+
+    /**
+     * Read up to length bytes from a PRFDProxy into buf, starting at the
+     * specified offset.
+     *
+     * See also: PR_Read in /usr/include/nspr4/prio.h
+     */
+    public static native int ReadArray(PRFDProxy fd, byte[] buf, int offset, int length);
+
     /**
      * Recv up to amount bytes from a PRFDProxy, given the specified receive
      * flags and timeout value.
@@ -136,6 +200,61 @@ public class PR {
      */
     public static native int Write(PRFDProxy fd, byte[] buf);
 
+    /**
+     * Write up to length bytes from buf to the PRFDProxy, advancing the
+     * position of buf by the number of bytes written. Returns the result of
+     * PR_Write: the number of bytes written or -1 on error.
+     *
+     * Direct buffers are passed to NSPR in place, without an intermediate
+     * copy; heap buffers are passed via their backing array.
+     *
+     * See also: PR_Write in /usr/include/nspr4/prio.h
+     */
+    public static int Write(PRFDProxy fd, ByteBuffer buf, int length) {
+        int position = buf.position();
+        int written;
+
+        length = Math.min(length, buf.remaining());
+        if (length <= 0) {
+            // Preserve the flushing semantics of an empty PR_Write.
+            return Write(fd, (byte[]) null);
+        }
+
+        if (buf.isDirect()) {
+            written = WriteDirect(fd, buf, position, length);
+        } else if (buf.hasArray()) {
+            written = WriteArray(fd, buf.array(), buf.arrayOffset() + position, length);
+        } else {
+            // Read-only heap buffers don't expose their backing array.
+            byte[] data = new byte[length];
+            buf.duplicate().get(data);
+            written = Write(fd, data);
+        }
+
+        if (written > 0) {
+            buf.position(position + written);
+        }
+
+        return written;
+    }
+
+    /**
+     * Write length bytes from the direct ByteBuffer buf to the PRFDProxy,
+     * starting at the absolute index offset. Doesn't update the position
+     * of buf.
+     *
+     * See also: PR_Write in /usr/include/nspr4/prio.h
+     */
+    public static native int WriteDirect(PRFDProxy fd, ByteBuffer buf, int offset, int length);
+
+    /**
+     * Write length bytes from buf to the PRFDProxy, starting at the
+     * specified offset.
+     *
+     * See also: PR_Write in /usr/include/nspr4/prio.h
+     */
+    public static native int WriteArray(PRFDProxy fd, byte[] buf, int offset, int length);
+
     /**
      * Send the specified bytes via the PRFDProxy, given the specified
      * send flags and timeout value.
@@ -0,0 +1,34 @@
+package org.mozilla.jss.nss;
+
+/**
+ * SNIHandler enables selecting the server configuration from the server
+ * names requested by the client, from a NSS SNI socket config hook.
+ *
+ * The return value of select is the index of the accepted name in the
+ * names array, CURRENT_CONFIG_IS_USED to continue with the current server
+ * configuration without acknowledging any name, or SEND_ALERT to abort
+ * the handshake.
+ *
+ * As with CertAuthHandler, this is invoked synchronously from NSS as
+ * called by Java. Certain operations may or may not succeed or work as
+ * expected (such as raising an exception, acquiring locks already held,
+ * etc.).
+ */
+public abstract class SNIHandler {
+    /**
+     * See also: SSL_SNI_CURRENT_CONFIG_IS_USED in /usr/include/nss3/ssl.h
+     */
+    public static final int CURRENT_CONFIG_IS_USED = -1;
+
+    /**
+     * See also: SSL_SNI_SEND_ALERT in /usr/include/nss3/ssl.h
+     */
+    public static final int SEND_ALERT = -2;
+
+    /**
+     * Selects the server configuration for the given requested server
+     * names. Entries of names are null when the requested name isn't a
+     * valid host name.
+     */
+    public abstract int select(SSLFDProxy fd, String[] names);
+}
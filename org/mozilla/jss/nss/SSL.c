@@ -718,6 +718,126 @@ Java_org_mozilla_jss_nss_SSL_ConfigServerSessionIDCache(JNIEnv *env, jclass claz
     return ret;
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_ReconfigFD(JNIEnv *env, jclass clazz,
+    jobject model, jobject fd)
+{
+    PRFileDesc *real_model = NULL;
+    PRFileDesc *real_fd = NULL;
+
+    PR_ASSERT(env != NULL && model != NULL && fd != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, model, &real_model) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    if (SSL_ReconfigFD(real_model, real_fd) == NULL) {
+        return SECFailure;
+    }
+
+    return SECSuccess;
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_ConfigSNICallback(JNIEnv *env, jclass clazz,
+    jobject fd)
+{
+    PRFileDesc *real_fd = NULL;
+    jobject fd_ref = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    if (JSS_NSS_getGlobalRef(env, fd, &fd_ref) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    return SSL_SNISocketConfigHook(real_fd, JSSL_SSLFDSNICallback, fd_ref);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_SetSockPeerID(JNIEnv *env, jclass clazz,
+    jobject fd, jstring peerID)
+{
+    PRFileDesc *real_fd = NULL;
+    SECStatus ret = SECFailure;
+    const char *real_peer_id = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return ret;
+    }
+
+    real_peer_id = JSS_RefJString(env, peerID);
+    if (real_peer_id == NULL) {
+        return ret;
+    }
+
+    ret = SSL_SetSockPeerID(real_fd, real_peer_id);
+    JSS_DerefJString(env, peerID, real_peer_id);
+    return ret;
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_SetResumptionToken(JNIEnv *env, jclass clazz,
+    jobject fd, jbyteArray token)
+{
+    PRFileDesc *real_fd = NULL;
+    SECStatus ret = SECFailure;
+    jbyte *real_token = NULL;
+    jsize token_len = 0;
+
+    PR_ASSERT(env != NULL && fd != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return ret;
+    }
+
+    if (!JSS_RefByteArray(env, token, &real_token, &token_len)) {
+        return ret;
+    }
+
+    ret = SSL_SetResumptionToken(real_fd, (const PRUint8 *)real_token,
+                                 token_len);
+
+    JSS_DerefByteArray(env, token, real_token, JNI_ABORT);
+    return ret;
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_SSL_EnableResumptionTokenCallback(JNIEnv *env,
+    jclass clazz, jobject fd)
+{
+    PRFileDesc *real_fd = NULL;
+    jobject fd_ref = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    if (JSS_NSS_getGlobalRef(env, fd, &fd_ref) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    return SSL_SetResumptionTokenCallback(real_fd,
+        JSSL_SSLFDResumptionTokenCallback, fd_ref);
+}
+
 JNIEXPORT int JNICALL
 Java_org_mozilla_jss_nss_SSL_InvalidateSession(JNIEnv *env, jclass clazz,
     jobject fd)
@@ -375,6 +375,48 @@ public class SSL {
     public synchronized static native int ConfigServerSessionIDCache(int maxCacheEntries,
         long timeout, long ssl3_timeout, String directory);
 
+    /**
+     * Copy the configuration of model, including its server certificates,
+     * onto fd. Note that this replaces the options, version range, cipher
+     * suite preferences and certificate authentication hook of fd as well.
+     *
+     * See also: SSL_ReconfigFD in /usr/include/nss3/ssl.h
+     */
+    public static native int ReconfigFD(SSLFDProxy model, SSLFDProxy fd);
+
+    /**
+     * Use the SNIHandler of this SSLFDProxy to select the server
+     * certificate from the server names requested by the client.
+     *
+     * See also: SSL_SNISocketConfigHook in /usr/include/nss3/ssl.h
+     */
+    public static native int ConfigSNICallback(SSLFDProxy fd);
+
+    /**
+     * Set the peer ID of this socket. NSS only resumes sessions from its
+     * client session cache whose peer ID matches.
+     *
+     * See also: SSL_SetSockPeerID in /usr/include/nss3/ssl.h
+     */
+    public static native int SetSockPeerID(SSLFDProxy fd, String peerID);
+
+    /**
+     * Offer the session described by the given resumption token in the
+     * next handshake on this client socket.
+     *
+     * See also: SSL_SetResumptionToken in /usr/include/nss3/sslexp.h
+     */
+    public static native int SetResumptionToken(SSLFDProxy fd, byte[] token);
+
+    /**
+     * Enable the resumption token callback on this client socket. Tokens
+     * issued by the server are stored in the resumptionToken field of the
+     * SSLFDProxy instead of in NSS's client session cache.
+     *
+     * See also: SSL_SetResumptionTokenCallback in /usr/include/nss3/sslexp.h
+     */
+    public static native int EnableResumptionTokenCallback(SSLFDProxy fd);
+
     /**
      * Invalidate the SSL session associated with this socket.
      *
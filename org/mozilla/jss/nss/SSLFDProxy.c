@@ -4,6 +4,8 @@
 #include <pk11pub.h>
 #include <jni.h>
 #include <secerr.h>
+#include <stdlib.h>
+#include <string.h>
 
 #include "java_ids.h"
 #include "jssutil.h"
@@ -272,6 +274,142 @@ JSSL_SSLFDHandshakeComplete(PRFileDesc *fd, void *client_data)
     (*env)->SetBooleanField(env, sslfd_proxy, handshakeCompleteField, JNI_TRUE);
 }
 
+PRInt32
+JSSL_SSLFDSNICallback(PRFileDesc *fd, const SECItem *srvNameArr,
+                      PRUint32 srvNameArrSize, void *arg)
+{
+    /* We know that arg is our GlobalRefProxy instance pointing to the
+     * SSLFDProxy class instance. Convert the requested server names to a
+     * String[] and let SSLFDProxy@fd_ref's invokeSNIHandler(...) method
+     * pick the certificate. Names which aren't printable ASCII (and thus
+     * can't be host names) are passed as null. */
+    JNIEnv *env = NULL;
+    jobject sslfd_proxy = (jobject) arg;
+    jclass sslfdProxyClass;
+    jclass stringClass;
+    jmethodID sniHandlerMethod;
+    jobjectArray names;
+    PRUint32 index;
+    jint ret;
+
+    if (arg == NULL || fd == NULL || JSS_javaVM == NULL) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    if (srvNameArr == NULL || srvNameArrSize == 0) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    if ((*JSS_javaVM)->AttachCurrentThread(JSS_javaVM, (void**)&env, NULL) != JNI_OK || env == NULL) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    sslfdProxyClass = (*env)->GetObjectClass(env, sslfd_proxy);
+    if (sslfdProxyClass == NULL) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    sniHandlerMethod = (*env)->GetMethodID(env, sslfdProxyClass,
+        "invokeSNIHandler", "([Ljava/lang/String;)I");
+    if (sniHandlerMethod == NULL) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    stringClass = (*env)->FindClass(env, "java/lang/String");
+    if (stringClass == NULL) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    names = (*env)->NewObjectArray(env, srvNameArrSize, stringClass, NULL);
+    if (names == NULL) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    for (index = 0; index < srvNameArrSize; index++) {
+        const SECItem *item = &srvNameArr[index];
+        char *name = NULL;
+        jstring java_name = NULL;
+        unsigned int offset;
+        bool printable = item->data != NULL && item->len > 0;
+
+        for (offset = 0; printable && offset < item->len; offset++) {
+            printable = item->data[offset] > 0x20 && item->data[offset] < 0x7f;
+        }
+
+        if (!printable) {
+            continue;
+        }
+
+        name = calloc(item->len + 1, sizeof(char));
+        if (name == NULL) {
+            return SSL_SNI_CURRENT_CONFIG_IS_USED;
+        }
+
+        memcpy(name, item->data, item->len);
+        java_name = (*env)->NewStringUTF(env, name);
+        free(name);
+
+        if (java_name == NULL) {
+            return SSL_SNI_CURRENT_CONFIG_IS_USED;
+        }
+
+        (*env)->SetObjectArrayElement(env, names, index, java_name);
+        (*env)->DeleteLocalRef(env, java_name);
+    }
+
+    ret = (*env)->CallIntMethod(env, sslfd_proxy, sniHandlerMethod, names);
+    if ((*env)->ExceptionOccurred(env) != NULL) {
+        return SSL_SNI_SEND_ALERT;
+    }
+
+    if (ret < SSL_SNI_SEND_ALERT || ret >= (jint) srvNameArrSize) {
+        return SSL_SNI_CURRENT_CONFIG_IS_USED;
+    }
+
+    return ret;
+}
+
+SECStatus
+JSSL_SSLFDResumptionTokenCallback(PRFileDesc *fd, const PRUint8 *resumptionToken,
+                                  unsigned int len, void *ctx)
+{
+    JNIEnv *env = NULL;
+    jobject sslfd_proxy = (jobject)ctx;
+    jclass sslfdProxyClass;
+    jfieldID tokenField;
+    jbyteArray token;
+
+    if (fd == NULL || resumptionToken == NULL || ctx == NULL || JSS_javaVM == NULL) {
+        return SECFailure;
+    }
+
+    if ((*JSS_javaVM)->AttachCurrentThread(JSS_javaVM, (void**)&env, NULL) != JNI_OK || env == NULL) {
+        return SECFailure;
+    }
+
+    sslfdProxyClass = (*env)->GetObjectClass(env, sslfd_proxy);
+    if (sslfdProxyClass == NULL) {
+        return SECFailure;
+    }
+
+    tokenField = (*env)->GetFieldID(env, sslfdProxyClass,
+                                    SSLFD_PROXY_RESUMPTION_TOKEN_FIELD,
+                                    SSLFD_PROXY_RESUMPTION_TOKEN_SIG);
+    if (tokenField == NULL) {
+        return SECFailure;
+    }
+
+    /* Only the most recent token is kept; with TLS 1.3, the server may
+     * send several tickets and any of them may be used to resume. */
+    token = JSS_ToByteArray(env, resumptionToken, len);
+    if (token == NULL) {
+        return SECFailure;
+    }
+
+    (*env)->SetObjectField(env, sslfd_proxy, tokenField, token);
+    return SECSuccess;
+}
+
 SECStatus
 JSSL_SSLFDAsyncCertAuthCallback(void *arg, PRFileDesc *fd, PRBool checkSig, PRBool isServer)
 {
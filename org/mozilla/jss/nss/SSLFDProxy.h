@@ -30,6 +30,14 @@ JSSL_SSLFDCertSelectionCallback(void *arg,
 void
 JSSL_SSLFDHandshakeComplete(PRFileDesc *fd, void *client_data);
 
+PRInt32
+JSSL_SSLFDSNICallback(PRFileDesc *fd, const SECItem *srvNameArr,
+                      PRUint32 srvNameArrSize, void *arg);
+
+SECStatus
+JSSL_SSLFDResumptionTokenCallback(PRFileDesc *fd, const PRUint8 *resumptionToken,
+                                  unsigned int len, void *ctx);
+
 SECStatus
 JSSL_SSLFDAsyncCertAuthCallback(void *arg, PRFileDesc *fd, PRBool checkSig, PRBool isServer);
 
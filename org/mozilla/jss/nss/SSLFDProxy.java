@@ -23,8 +23,11 @@ public class SSLFDProxy extends PRFDProxy {
     public int badCertError;
     public boolean handshakeComplete;
 
+    public byte[] resumptionToken;
+
     public CertAuthHandler certAuthHandler;
     public BadCertHandler badCertHandler;
+    public SNIHandler sniHandler;
 
     public SSLFDProxy(byte[] pointer) {
         super(pointer);
@@ -60,4 +63,8 @@ public class SSLFDProxy extends PRFDProxy {
     public int invokeBadCertHandler(int error) {
         return badCertHandler.check(this, error);
     }
+
+    public int invokeSNIHandler(String[] names) {
+        return sniHandler.select(this, names);
+    }
 }
@@ -24,10 +24,10 @@
 
 /*
  * Class:     org_mozilla_jss_pkcs11_PK11Cert
- * Method:    getEncoded
+ * Method:    getEncodedNative
  * Signature: ()[B
  */
-JNIEXPORT jbyteArray JNICALL Java_org_mozilla_jss_pkcs11_PK11Cert_getEncoded
+JNIEXPORT jbyteArray JNICALL Java_org_mozilla_jss_pkcs11_PK11Cert_getEncodedNative
   (JNIEnv *env, jobject this)
 {
 	PRThread * VARIABLE_MAY_NOT_BE_USED pThread;
@@ -70,6 +70,20 @@ finish:
 	return derArray;
 }
 
+/*
+ * Former name of getEncodedNative. PK11Cert no longer declares it, but the
+ * symbol was exported by earlier releases (JSS_3.0 in jss.map), so it stays
+ * defined for them.
+ */
+JNIEXPORT jbyteArray JNICALL Java_org_mozilla_jss_pkcs11_PK11Cert_getEncoded
+  (JNIEnv *env, jobject this);
+
+JNIEXPORT jbyteArray JNICALL Java_org_mozilla_jss_pkcs11_PK11Cert_getEncoded
+  (JNIEnv *env, jobject this)
+{
+	return Java_org_mozilla_jss_pkcs11_PK11Cert_getEncodedNative(env, this);
+}
+
 /*
  * Class:     org_mozilla_jss_pkcs11_PK11Cert
  * Method:    getVersion
@@ -24,12 +24,30 @@ public class PK11Cert
 {
     public static Logger logger = LoggerFactory.getLogger(PK11Cert.class);
 
-    // Internal X509CertImpl to handle java.security.cert.X509Certificate
+    // Decoded form of this certificate, shared with every other PK11Cert
+    // wrapping the same DER; it handles the java.security.cert.X509Certificate
     // methods.
-    private X509CertImpl x509 = null;
+    private volatile PK11CertView view;
 
     @Override
-    public native byte[] getEncoded() throws CertificateEncodingException;
+    public byte[] getEncoded() throws CertificateEncodingException {
+        return view().getDER().clone();
+    }
+
+    private native byte[] getEncodedNative() throws CertificateEncodingException;
+
+    /**
+     * Returns the shared view of this certificate, copying the DER out of
+     * NSS on first use only.
+     */
+    PK11CertView view() throws CertificateEncodingException {
+        PK11CertView result = view;
+        if (result == null) {
+            result = PK11CertView.intern(getEncodedNative());
+            view = result;
+        }
+        return result;
+    }
 
     //public native byte[] getUniqueID();
 
@@ -39,7 +57,7 @@ public class PK11Cert
 
     public int hashCode() {
         try {
-            return Arrays.hashCode(getEncoded());
+            return view().getHash();
         } catch (CertificateEncodingException cee) {
             throw new RuntimeException(cee.getMessage(), cee);
         }
@@ -52,7 +70,15 @@ public class PK11Cert
 
         PK11Cert p_other = (PK11Cert) other;
         try {
-            return Arrays.equals(getEncoded(), p_other.getEncoded());
+            PK11CertView v = view();
+            PK11CertView o = p_other.view();
+            if (v == o) {
+                return true;
+            }
+
+            // Views are interned by DER, so distinct live views almost
+            // always mean distinct certificates.
+            return v.getHash() == o.getHash() && Arrays.equals(v.getDER(), o.getDER());
         } catch (CertificateEncodingException cee) {
             throw new RuntimeException(cee.getMessage(), cee);
         }
@@ -89,17 +115,29 @@ public class PK11Cert
 
     public Principal
     getSubjectDN() {
-        return new StringPrincipal( getSubjectDNString() );
+        try {
+            return new StringPrincipal( view().getSubjectDN(this) );
+        } catch (CertificateEncodingException cee) {
+            throw new RuntimeException(cee.getMessage(), cee);
+        }
     }
 
     public Principal
     getIssuerDN() {
-        return new StringPrincipal( getIssuerDNString() );
+        try {
+            return new StringPrincipal( view().getIssuerDN(this) );
+        } catch (CertificateEncodingException cee) {
+            throw new RuntimeException(cee.getMessage(), cee);
+        }
     }
 
     public BigInteger
     getSerialNumber() {
-        return new BigInteger( getSerialNumberByteArray() );
+        try {
+            return view().getSerialNumber(this);
+        } catch (CertificateEncodingException cee) {
+            throw new RuntimeException(cee.getMessage(), cee);
+        }
     }
     protected native byte[] getSerialNumberByteArray();
 
@@ -114,9 +152,7 @@ public class PK11Cert
     /* Begin methods necessary for java.security.cert.X509Certificate */
     public int getBasicConstraints() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getBasicConstraints();
         } catch (Exception e) {
@@ -126,9 +162,7 @@ public class PK11Cert
 
     public boolean[] getKeyUsage() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getKeyUsage();
         } catch (Exception e) {
@@ -138,9 +172,7 @@ public class PK11Cert
 
     public boolean[] getSubjectUniqueID() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getSubjectUniqueID();
         } catch (Exception e) {
@@ -150,9 +182,7 @@ public class PK11Cert
 
     public boolean[] getIssuerUniqueID() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getIssuerUniqueID();
         } catch (Exception e) {
@@ -162,9 +192,7 @@ public class PK11Cert
 
     public byte[] getSigAlgParams() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getSigAlgParams();
         } catch (Exception e) {
@@ -174,9 +202,7 @@ public class PK11Cert
 
     public String getSigAlgName() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getSigAlgName();
         } catch (Exception e) {
@@ -186,9 +212,7 @@ public class PK11Cert
 
     public String getSigAlgOID() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getSigAlgOID();
         } catch (Exception e) {
@@ -198,9 +222,7 @@ public class PK11Cert
 
     public byte[] getSignature() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.getSignature();
         } catch (Exception e) {
@@ -210,11 +232,7 @@ public class PK11Cert
 
     public byte[] getTBSCertificate() throws CertificateEncodingException {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getTBSCertificate();
+            return view().getTBSCertificate();
         } catch (CertificateEncodingException cee) {
             throw cee;
         } catch (Exception e) {
@@ -224,11 +242,11 @@ public class PK11Cert
 
     public Date getNotAfter() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
-            return x509.getNotAfter();
+            // The parsed Date is shared by every PK11Cert with this view.
+            Date date = x509.getNotAfter();
+            return date == null ? null : (Date) date.clone();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -236,11 +254,11 @@ public class PK11Cert
 
     public Date getNotBefore() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
-            return x509.getNotBefore();
+            // The parsed Date is shared by every PK11Cert with this view.
+            Date date = x509.getNotBefore();
+            return date == null ? null : (Date) date.clone();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -250,9 +268,7 @@ public class PK11Cert
             throws CertificateExpiredException, CertificateNotYetValidException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             x509.checkValidity();
         } catch (CertificateExpiredException cee) {
@@ -268,9 +284,7 @@ public class PK11Cert
             throws CertificateExpiredException, CertificateNotYetValidException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             x509.checkValidity(date);
         } catch (CertificateExpiredException cee) {
@@ -284,9 +298,7 @@ public class PK11Cert
 
     public String toString() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.toString();
         } catch (Exception e) {
@@ -299,9 +311,7 @@ public class PK11Cert
             InvalidKeyException, NoSuchProviderException, SignatureException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             x509.verify(key);
         } catch (NoSuchAlgorithmException nsae) {
@@ -324,9 +334,7 @@ public class PK11Cert
             InvalidKeyException, NoSuchProviderException, SignatureException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             x509.verify(key, sigProvider);
         } catch (NoSuchAlgorithmException nsae) {
@@ -346,11 +354,7 @@ public class PK11Cert
 
     public byte[] getExtensionValue(String oid) {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getExtensionValue(oid);
+            return view().getExtensionValue(oid);
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -358,11 +362,7 @@ public class PK11Cert
 
     public Set<String> getCriticalExtensionOIDs() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getCriticalExtensionOIDs();
+            return view().getCriticalExtensionOIDs();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -370,11 +370,7 @@ public class PK11Cert
 
     public Set<String> getNonCriticalExtensionOIDs() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getNonCriticalExtensionOIDs();
+            return view().getNonCriticalExtensionOIDs();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -382,9 +378,7 @@ public class PK11Cert
 
     public boolean hasUnsupportedCriticalExtension() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
+            X509CertImpl x509 = view().getX509();
 
             return x509.hasUnsupportedCriticalExtension();
         } catch (Exception e) {
@@ -0,0 +1,250 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.pkcs11;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.math.BigInteger;
+import java.security.cert.CertificateEncodingException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+/**
+ * The decoded form of a certificate, shared by all PK11Cert instances
+ * wrapping the same DER encoding.
+ *
+ * NSS hands out a new CERTCertificate reference, and so a new PK11Cert,
+ * every time a certificate is looked up or received from a peer. Rather than
+ * copying and parsing the DER for each of them, PK11Certs intern their DER
+ * here and share the resulting view. Views are only weakly referenced by
+ * the cache: once no PK11Cert uses a view, it is collected and its entry is
+ * purged on a later lookup.
+ *
+ * A view is immutable once created. Everything derived from the DER is
+ * computed lazily, at most once per view in the common case; concurrent
+ * first uses may race to compute the same value, which is harmless. Values
+ * handed out by PK11Cert are copies whenever they are mutable.
+ */
+final class PK11CertView {
+
+    private static final ConcurrentHashMap<Key, ViewReference> cache =
+            new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<PK11CertView> queue =
+            new ReferenceQueue<>();
+
+    // Marks an extension which isn't present in the certificate, as the
+    // cache of extension values can't store nulls.
+    private static final byte[] NO_EXTENSION = new byte[0];
+
+    private final Key key;
+
+    private volatile X509CertImpl x509;
+    private volatile String subjectDN;
+    private volatile String issuerDN;
+    private volatile BigInteger serialNumber;
+    private volatile byte[] tbsCertificate;
+    private volatile Set<String> criticalExtensionOIDs;
+    private volatile Set<String> nonCriticalExtensionOIDs;
+
+    private final ConcurrentHashMap<String, byte[]> extensionValues =
+            new ConcurrentHashMap<>();
+
+    private PK11CertView(Key key) {
+        this.key = key;
+    }
+
+    /**
+     * Returns the view of the given DER encoding, creating it if no live
+     * view exists. The array is retained by the view and must not be
+     * modified afterwards.
+     */
+    static PK11CertView intern(byte[] der) {
+        purge();
+
+        Key key = new Key(der);
+        while (true) {
+            ViewReference ref = cache.get(key);
+            PK11CertView view = ref == null ? null : ref.get();
+            if (view != null) {
+                return view;
+            }
+
+            view = new PK11CertView(key);
+            ViewReference created = new ViewReference(view, key, queue);
+
+            if (ref == null) {
+                if (cache.putIfAbsent(key, created) == null) {
+                    return view;
+                }
+            } else if (cache.replace(key, ref, created)) {
+                return view;
+            }
+
+            // Lost a race against another thread interning the same
+            // certificate; use its view instead.
+        }
+    }
+
+    private static void purge() {
+        ViewReference ref;
+        while ((ref = (ViewReference) queue.poll()) != null) {
+            cache.remove(ref.key, ref);
+        }
+    }
+
+    byte[] getDER() {
+        return key.der;
+    }
+
+    int getHash() {
+        return key.hash;
+    }
+
+    X509CertImpl getX509() throws CertificateEncodingException {
+        X509CertImpl result = x509;
+        if (result == null) {
+            try {
+                result = new X509CertImpl(key.der);
+            } catch (Exception e) {
+                throw new CertificateEncodingException(e.getMessage(), e);
+            }
+            x509 = result;
+        }
+        return result;
+    }
+
+    String getSubjectDN(PK11Cert cert) {
+        String result = subjectDN;
+        if (result == null) {
+            result = cert.getSubjectDNString();
+            subjectDN = result;
+        }
+        return result;
+    }
+
+    String getIssuerDN(PK11Cert cert) {
+        String result = issuerDN;
+        if (result == null) {
+            result = cert.getIssuerDNString();
+            issuerDN = result;
+        }
+        return result;
+    }
+
+    BigInteger getSerialNumber(PK11Cert cert) {
+        BigInteger result = serialNumber;
+        if (result == null) {
+            result = new BigInteger(cert.getSerialNumberByteArray());
+            serialNumber = result;
+        }
+        return result;
+    }
+
+    byte[] getTBSCertificate() throws CertificateEncodingException {
+        byte[] result = tbsCertificate;
+        if (result == null) {
+            result = getX509().getTBSCertificate();
+            tbsCertificate = result;
+        }
+        return result.clone();
+    }
+
+    Set<String> getCriticalExtensionOIDs() throws CertificateEncodingException {
+        Set<String> result = criticalExtensionOIDs;
+        if (result == null) {
+            result = freeze(getX509().getCriticalExtensionOIDs());
+            criticalExtensionOIDs = result;
+        }
+        return thaw(result);
+    }
+
+    Set<String> getNonCriticalExtensionOIDs() throws CertificateEncodingException {
+        Set<String> result = nonCriticalExtensionOIDs;
+        if (result == null) {
+            result = freeze(getX509().getNonCriticalExtensionOIDs());
+            nonCriticalExtensionOIDs = result;
+        }
+        return thaw(result);
+    }
+
+    byte[] getExtensionValue(String oid) throws CertificateEncodingException {
+        if (oid == null) {
+            return null;
+        }
+
+        byte[] result = extensionValues.get(oid);
+        if (result == null) {
+            result = getX509().getExtensionValue(oid);
+            if (result == null) {
+                result = NO_EXTENSION;
+            }
+            extensionValues.putIfAbsent(oid, result);
+        }
+
+        return result == NO_EXTENSION ? null : result.clone();
+    }
+
+    // X509CertImpl reports a missing extensions block as a null set; keep
+    // that distinction, using an empty set only as the cached marker.
+    private static Set<String> freeze(Set<String> oids) {
+        if (oids == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(oids));
+    }
+
+    private static Set<String> thaw(Set<String> oids) {
+        if (oids == Collections.<String>emptySet()) {
+            return null;
+        }
+        return new LinkedHashSet<>(oids);
+    }
+
+    /**
+     * Cache key comparing DER encodings by content.
+     */
+    private static final class Key {
+        private final byte[] der;
+        private final int hash;
+
+        Key(byte[] der) {
+            this.der = der;
+            this.hash = Arrays.hashCode(der);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Key o = (Key) other;
+            return hash == o.hash && Arrays.equals(der, o.der);
+        }
+    }
+
+    private static final class ViewReference extends WeakReference<PK11CertView> {
+        private final Key key;
+
+        ViewReference(PK11CertView view, Key key, ReferenceQueue<PK11CertView> queue) {
+            super(view, queue);
+            this.key = key;
+        }
+    }
+}
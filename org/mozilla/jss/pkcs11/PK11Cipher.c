@@ -4,12 +4,16 @@
 
 #include "_jni/org_mozilla_jss_pkcs11_PK11Cipher.h"
 
+#include <string.h>
 #include <nspr.h>
 #include <plarena.h>
 #include <seccomon.h>
 #include <pk11func.h>
+#include <pkcs11n.h>
 #include <secitem.h>
 
+#include "jssconfig.h"
+
 /* JSS includes */
 #include <java_ids.h>
 #include <jss_exceptions.h>
@@ -112,6 +116,199 @@ finish:
     return contextObj;
 }
 
+/***********************************************************************
+ *
+ * PK11Cipher.initAEADContext
+ *
+ * Creates an NSS message context for an AEAD mechanism. Unlike the
+ * contexts created by initContext, the IV and AAD aren't bound to the
+ * context; they're passed to PK11_AEADOp with each message, so the same
+ * context serves any number of messages under the same key.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_initAEADContext
+    (JNIEnv *env, jclass clazz, jboolean encrypt, jobject keyObj,
+        jobject algObj)
+{
+#ifdef HAVE_NSS_AEAD
+    CK_MECHANISM_TYPE mech;
+    PK11SymKey *key = NULL;
+    SECItem param = { siBuffer, NULL, 0 };
+    PK11Context *context = NULL;
+    CK_ATTRIBUTE_TYPE op;
+    jobject contextObj = NULL;
+
+    PR_ASSERT(env!=NULL && clazz!=NULL && keyObj!=NULL && algObj!=NULL);
+
+    /* get mechanism */
+    mech = JSS_getPK11MechFromAlg(env, algObj);
+    if(mech == CKM_INVALID_MECHANISM) {
+        JSS_throwMsg(env, TOKEN_EXCEPTION, "Unable to resolve algorithm to"
+            " PKCS #11 mechanism");
+        goto finish;
+    }
+
+    /* get operation type */
+    if( encrypt ) {
+        op = CKA_NSS_MESSAGE | CKA_ENCRYPT;
+    } else {
+        op = CKA_NSS_MESSAGE | CKA_DECRYPT;
+    }
+
+    /* get key */
+    if( JSS_PK11_getSymKeyPtr(env, keyObj, &key) != PR_SUCCESS) {
+        goto finish;
+    }
+
+    /* create message context */
+    context = PK11_CreateContextBySymKey(mech, op, key, &param);
+    if(context == NULL ) {
+        JSS_throwMsgPrErrArg(env, TOKEN_EXCEPTION,
+            "Failed to generate AEAD crypto context", PR_GetError());
+        goto finish;
+    }
+
+    /* wrap crypto context. This sets context to NULL. */
+    contextObj = JSS_PK11_wrapCipherContextProxy(env, &context);
+
+finish:
+    PR_ASSERT( contextObj || (*env)->ExceptionOccurred(env) );
+    return contextObj;
+#else
+    JSS_throwMsg(env, TOKEN_EXCEPTION, "AEAD ciphers require NSS v3.52 "
+        "or later");
+    return NULL;
+#endif
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.aeadOp
+ *
+ * Encrypts or decrypts a single message with PK11_AEADOp. When
+ * encrypting, the result is the ciphertext followed by the tag; when
+ * decrypting, the input is the ciphertext followed by the tag and the
+ * result is the plaintext. A tag mismatch raises AEADBadTagException.
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_aeadOp
+    (JNIEnv *env, jclass clazz, jobject contextObj, jboolean encrypt,
+        jbyteArray ivBA, jbyteArray aadBA, jbyteArray inputBA, jint tagLen)
+{
+#ifdef HAVE_NSS_AEAD
+    PK11Context *context = NULL;
+    jbyte *iv = NULL;
+    jsize ivLen = 0;
+    jbyte *aad = NULL;
+    jsize aadLen = 0;
+    jbyte *input = NULL;
+    jsize inputLen = 0;
+    unsigned char *outBuf = NULL;
+    unsigned char tag[16];
+    unsigned char *tagPtr;
+    int dataLen = 0;
+    int outLen = 0;
+    SECStatus status;
+    jbyteArray outArray = NULL;
+
+    PR_ASSERT(env!=NULL && contextObj!=NULL && ivBA!=NULL && aadBA!=NULL &&
+        inputBA!=NULL);
+
+    if (tagLen <= 0 || tagLen > (jint)sizeof(tag)) {
+        JSS_throwMsg(env, ILLEGAL_ARGUMENT_EXCEPTION,
+            "Invalid authentication tag length");
+        goto finish;
+    }
+
+    /* get the context */
+    if( JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        goto finish;
+    }
+
+    /* The AAD and input may be empty; JSS_RefByteArray refuses empty
+     * arrays, so only reference non-empty ones. */
+    if (!JSS_RefByteArray(env, ivBA, &iv, &ivLen)) {
+        JSS_throwMsg(env, ILLEGAL_ARGUMENT_EXCEPTION, "Missing AEAD IV");
+        goto finish;
+    }
+
+    aadLen = (*env)->GetArrayLength(env, aadBA);
+    if (aadLen > 0 && !JSS_RefByteArray(env, aadBA, &aad, &aadLen)) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    inputLen = (*env)->GetArrayLength(env, inputBA);
+    if (inputLen > 0 && !JSS_RefByteArray(env, inputBA, &input, &inputLen)) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    if (encrypt) {
+        dataLen = inputLen;
+    } else {
+        if (inputLen < tagLen) {
+            JSS_throwMsg(env, AEAD_BAD_TAG_EXCEPTION,
+                "Input is shorter than the authentication tag");
+            goto finish;
+        }
+        dataLen = inputLen - tagLen;
+    }
+
+    /* The output holds the ciphertext and tag when encrypting; AEAD
+     * ciphers don't change the length of the data. */
+    outBuf = PR_Malloc(dataLen + tagLen);
+    if (outBuf == NULL) {
+        JSS_throw(env, OUT_OF_MEMORY_ERROR);
+        goto finish;
+    }
+
+    if (encrypt) {
+        tagPtr = tag;
+    } else {
+        tagPtr = (unsigned char *)input + dataLen;
+    }
+
+    status = PK11_AEADOp(context, CKG_NO_GENERATE, 0,
+        (unsigned char *)iv, ivLen, (unsigned char *)aad, aadLen,
+        outBuf, &outLen, dataLen, tagPtr, tagLen,
+        (unsigned char *)input, dataLen);
+    if (status != SECSuccess) {
+        if (encrypt) {
+            JSS_throwMsgPrErrArg(env, TOKEN_EXCEPTION,
+                "AEAD encryption failed", PR_GetError());
+        } else {
+            JSS_throwMsgPrErrArg(env, AEAD_BAD_TAG_EXCEPTION,
+                "AEAD decryption failed: authentication tag mismatch",
+                PR_GetError());
+        }
+        goto finish;
+    }
+
+    if (encrypt) {
+        memcpy(outBuf + outLen, tag, tagLen);
+        outLen += tagLen;
+    }
+
+    outArray = JSS_ToByteArray(env, outBuf, outLen);
+
+finish:
+    if (outBuf != NULL) {
+        memset(outBuf, 0, dataLen + tagLen);
+        PR_Free(outBuf);
+    }
+    JSS_DerefByteArray(env, inputBA, input, JNI_ABORT);
+    JSS_DerefByteArray(env, aadBA, aad, JNI_ABORT);
+    JSS_DerefByteArray(env, ivBA, iv, JNI_ABORT);
+    PR_ASSERT( outArray || (*env)->ExceptionOccurred(env) );
+    return outArray;
+#else
+    JSS_throwMsg(env, TOKEN_EXCEPTION, "AEAD ciphers require NSS v3.52 "
+        "or later");
+    return NULL;
+#endif
+}
+
 /***********************************************************************
  *
  * PK11Cipher.updateContext
@@ -177,6 +374,143 @@ finish:
     return outArray;
 }
 
+/*
+ * Runs PK11_CipherOp on input and output regions which may overlap, for
+ * instance when a caller encrypts a buffer in place. NSS may write output
+ * before reading all of its input (such as when releasing a block held
+ * back while decrypting with padding), so overlapping input is processed
+ * from a copy. Makes no JNI calls.
+ */
+static SECStatus
+cipherOpInto(PK11Context *context, unsigned char *out, int *outlen,
+    int maxout, unsigned char *in, int inlen)
+{
+    unsigned char *copy = NULL;
+    SECStatus status;
+
+    if (in < out + maxout && out < in + inlen) {
+        copy = PR_Malloc(inlen);
+        if (copy == NULL) {
+            PR_SetError(PR_OUT_OF_MEMORY_ERROR, 0);
+            return SECFailure;
+        }
+        memcpy(copy, in, inlen);
+        in = copy;
+    }
+
+    status = PK11_CipherOp(context, out, outlen, maxout, in, inlen);
+
+    if (copy != NULL) {
+        PR_Free(copy);
+    }
+    return status;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.updateContextArray
+ *
+ * Like updateContext, but reads the input from and writes the output to
+ * regions of caller-supplied byte arrays. The caller checks that both
+ * regions lie within their arrays and that outputLen is large enough.
+ * Returns the number of bytes written.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_updateContextArray
+    (JNIEnv *env, jclass clazz, jobject contextObj, jbyteArray inputBA,
+    jint inputOffset, jint inputLen, jbyteArray outputBA, jint outputOffset,
+    jint outputLen)
+{
+    PK11Context *context=NULL;
+    jbyte *inbuf=NULL;
+    jbyte *outbuf=NULL;
+    int outlen = 0;
+    SECStatus status;
+
+    PR_ASSERT(env!=NULL && clazz!=NULL && contextObj!=NULL && inputBA!=NULL
+        && outputBA!=NULL);
+
+    /* get the context */
+    if( JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return 0;
+    }
+
+    /* Pin the arrays rather than copying them. No JNI calls may be made
+     * until both are released. */
+    inbuf = (*env)->GetPrimitiveArrayCritical(env, inputBA, NULL);
+    if(inbuf == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return 0;
+    }
+    outbuf = (*env)->GetPrimitiveArrayCritical(env, outputBA, NULL);
+    if(outbuf == NULL) {
+        (*env)->ReleasePrimitiveArrayCritical(env, inputBA, inbuf, JNI_ABORT);
+        ASSERT_OUTOFMEM(env);
+        return 0;
+    }
+
+    /* do the operation */
+    status = cipherOpInto(context,
+        (unsigned char*)outbuf + outputOffset, &outlen, outputLen,
+        (unsigned char*)inbuf + inputOffset, inputLen);
+
+    (*env)->ReleasePrimitiveArrayCritical(env, outputBA, outbuf, 0);
+    (*env)->ReleasePrimitiveArrayCritical(env, inputBA, inbuf, JNI_ABORT);
+
+    if( status != SECSuccess ) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Cipher context update failed",
+            PR_GetError());
+        return 0;
+    }
+
+    return outlen;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.updateContextDirect
+ *
+ * Like updateContextArray, but for direct ByteBuffers. Offsets are
+ * relative to the start of each buffer.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_updateContextDirect
+    (JNIEnv *env, jclass clazz, jobject contextObj, jobject input,
+    jint inputOffset, jint inputLen, jobject output, jint outputOffset,
+    jint outputLen)
+{
+    PK11Context *context=NULL;
+    uint8_t *inbuf=NULL;
+    uint8_t *outbuf=NULL;
+    int outlen = 0;
+
+    PR_ASSERT(env!=NULL && clazz!=NULL && contextObj!=NULL && input!=NULL
+        && output!=NULL);
+
+    /* get the context */
+    if( JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return 0;
+    }
+
+    if( !JSS_RefDirectBuffer(env, input, inputOffset, inputLen, &inbuf) ||
+        !JSS_RefDirectBuffer(env, output, outputOffset, outputLen, &outbuf) )
+    {
+        return 0;
+    }
+
+    /* do the operation */
+    if( cipherOpInto(context, outbuf, &outlen, outputLen,
+            inbuf, inputLen) != SECSuccess) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Cipher context update failed",
+            PR_GetError());
+        return 0;
+    }
+
+    return outlen;
+}
+
 /***********************************************************************
  *
  * PK11Cipher.finalizeContext
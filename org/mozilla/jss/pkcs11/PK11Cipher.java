@@ -4,12 +4,17 @@
 
 package org.mozilla.jss.pkcs11;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.RC2ParameterSpec;
 
@@ -45,6 +50,29 @@ public final class PK11Cipher
     // modified by various operations
     private int state=UNINITIALIZED;
 
+    // AEAD only: NSS message context, kept across initXXX() calls with the
+    // same key and direction, so each message only costs a PK11_AEADOp.
+    private CipherContextProxy aeadContext = null;
+    private SymmetricKey aeadContextKey = null;
+    private boolean aeadContextEncrypt;
+
+    // AEAD only: set with initXXX()
+    private int tagLength;
+
+    // AEAD only: PK11_AEADOp processes a whole message at once, so the
+    // AAD and input are buffered until doFinal().
+    private ByteArrayOutputStream aad = new ByteArrayOutputStream();
+    private ByteArrayOutputStream aeadInput = new ByteArrayOutputStream();
+
+    // AEAD only: set once a message has been encrypted; encrypting another
+    // message requires a new IV.
+    private boolean aeadDone;
+
+    // AEAD only: the key and IV of the last encryption, to refuse
+    // encrypting two messages with the same key and IV.
+    private SymmetricKey lastEncryptKey = null;
+    private byte[] lastEncryptIV = null;
+
     // States
     private static final int UNINITIALIZED=0;
     private static final int ENCRYPT=1;
@@ -97,6 +125,11 @@ public final class PK11Cipher
         checkKey(key);
         checkParams(parameters);
 
+        if( algorithm.isAEAD() ) {
+            initAEAD(true, key, parameters);
+            return;
+        }
+
         IV = getIVFromParams(parameters);
         this.key = key;
         this.parameters = parameters;
@@ -126,6 +159,11 @@ public final class PK11Cipher
         checkKey(key);
         checkParams(parameters);
 
+        if( algorithm.isAEAD() ) {
+            initAEAD(false, key, parameters);
+            return;
+        }
+
         IV = getIVFromParams(parameters);
         this.key = key;
         this.parameters = parameters;
@@ -149,12 +187,22 @@ public final class PK11Cipher
             throw new IllegalStateException();
         }
 
+        if( algorithm.isAEAD() ) {
+            return update(bytes, 0, bytes.length);
+        }
+
         return updateContext( contextProxy, bytes, algorithm.getBlockSize());
     }
 
     public byte[] update(byte[] bytes, int offset, int length)
         throws IllegalStateException, TokenException
     {
+        if( algorithm.isAEAD() ) {
+            checkAEADState();
+            aeadInput.write(bytes, offset, length);
+            return new byte[0];
+        }
+
         byte[] sub = new byte[length];
 
         System.arraycopy( bytes, offset, sub, 0, length );
@@ -162,6 +210,93 @@ public final class PK11Cipher
         return update(sub);
     }
 
+    /**
+     * Encrypts or decrypts directly into <code>output</code> when it has
+     * room for the largest possible result; otherwise falls back to
+     * allocating the result first.
+     */
+    @Override
+    public int update(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, TokenException, ShortBufferException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        if( inputOffset < 0 || inputLength < 0 ||
+                inputOffset > input.length - inputLength ) {
+            throw new IndexOutOfBoundsException("Invalid input region");
+        }
+        if( outputOffset < 0 || outputOffset > output.length ) {
+            throw new IndexOutOfBoundsException("Invalid output offset");
+        }
+
+        if( algorithm.isAEAD() ) {
+            update(input, inputOffset, inputLength);
+            return 0;
+        }
+
+        if( inputLength == 0 ) {
+            return 0;
+        }
+
+        int available = output.length - outputOffset;
+        if( available < maxUpdateOutput(inputLength) ) {
+            return super.update(input, inputOffset, inputLength, output,
+                outputOffset);
+        }
+
+        return updateContextArray(contextProxy, input, inputOffset,
+            inputLength, output, outputOffset, available);
+    }
+
+    /**
+     * Direct buffers are passed to NSS as they are, and heap buffers via
+     * their backing arrays, so no intermediate copies are made.
+     */
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, TokenException, ShortBufferException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        int length = input.remaining();
+        int available = output.remaining();
+        if( algorithm.isAEAD() || length == 0 || output.isReadOnly() ||
+                available < maxUpdateOutput(length) ) {
+            return super.update(input, output);
+        }
+
+        int inputPos = input.position();
+        int outputPos = output.position();
+        int written;
+        if( input.isDirect() && output.isDirect() ) {
+            written = updateContextDirect(contextProxy, input, inputPos,
+                length, output, outputPos, available);
+        } else if( input.hasArray() && output.hasArray() ) {
+            written = updateContextArray(contextProxy, input.array(),
+                input.arrayOffset() + inputPos, length, output.array(),
+                output.arrayOffset() + outputPos, available);
+        } else {
+            return super.update(input, output);
+        }
+
+        input.position(inputPos + length);
+        output.position(outputPos + written);
+        return written;
+    }
+
+    /**
+     * NSS may release a block held back by an earlier update, so an
+     * update can produce up to one block more than its input.
+     */
+    private int maxUpdateOutput(int inputLength) {
+        return inputLength + algorithm.getBlockSize();
+    }
+
     /**
      * @deprecated isPadded() in EncryptionAlgorithm has been deprecated
      */
@@ -174,6 +309,12 @@ public final class PK11Cipher
             throw new IllegalStateException();
         }
 
+        if( algorithm.isAEAD() ) {
+            checkAEADState();
+            aeadInput.write(bytes, 0, bytes.length);
+            return finalizeAEAD();
+        }
+
         byte[] first = update(bytes);
 
         byte[] last = finalizeContext(contextProxy, algorithm.getBlockSize(),
@@ -196,6 +337,65 @@ public final class PK11Cipher
         return doFinal(sub);
     }
 
+    @Override
+    public int doFinal(byte[] input, int inputOffset, int inputLength,
+            byte[] output, int outputOffset)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, TokenException, ShortBufferException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        if( algorithm.isAEAD() ) {
+            return super.doFinal(input, inputOffset, inputLength, output,
+                outputOffset);
+        }
+
+        int written = update(input, inputOffset, inputLength, output,
+            outputOffset);
+        return written + finalizeInto(output, outputOffset + written);
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, TokenException, ShortBufferException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        if( algorithm.isAEAD() ) {
+            return super.doFinal(input, output);
+        }
+
+        int written = update(input, output);
+        byte[] last = finalizeContext(contextProxy, algorithm.getBlockSize(),
+                    algorithm.isPadded() );
+        if( last.length > output.remaining() ) {
+            throw new ShortBufferException(last.length + " needed, " +
+                output.remaining() + " supplied");
+        }
+        output.put(last);
+        return written + last.length;
+    }
+
+    private int finalizeInto(byte[] output, int outputOffset)
+        throws TokenException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException
+    {
+        // At most one block remains, so this allocation is small.
+        byte[] last = finalizeContext(contextProxy, algorithm.getBlockSize(),
+                    algorithm.isPadded() );
+        if( last.length > output.length - outputOffset ) {
+            throw new ShortBufferException(last.length + " needed, " +
+                (output.length - outputOffset) + " supplied");
+        }
+        System.arraycopy(last, 0, output, outputOffset, last.length);
+        return last.length;
+    }
+
     /**
      * @deprecated isPadded() in EncryptionAlgorithm has been deprecated
      */
@@ -207,10 +407,139 @@ public final class PK11Cipher
         if( state == UNINITIALIZED ) {
             throw new IllegalStateException();
         }
+
+        if( algorithm.isAEAD() ) {
+            checkAEADState();
+            return finalizeAEAD();
+        }
+
         return finalizeContext(contextProxy, algorithm.getBlockSize(),
                     algorithm.isPadded() );
     }
 
+    @Override
+    public void updateAAD(byte[] bytes, int offset, int length)
+        throws IllegalStateException, TokenException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        if( !algorithm.isAEAD() ) {
+            super.updateAAD(bytes, offset, length);
+            return;
+        }
+
+        checkAEADState();
+        if( aeadInput.size() > 0 ) {
+            throw new IllegalStateException(
+                "AAD must be supplied before any data");
+        }
+
+        aad.write(bytes, offset, length);
+    }
+
+    /**
+     * Initializes an AEAD operation. The IV (nonce) and tag length come
+     * from a GCMParameterSpec for AES/GCM, or from an IvParameterSpec with
+     * a 16-byte tag for ChaCha20-Poly1305.
+     */
+    private void initAEAD(boolean encrypt, SymmetricKey key,
+            AlgorithmParameterSpec parameters)
+        throws InvalidAlgorithmParameterException, TokenException
+    {
+        byte[] iv;
+        int tagBits;
+        if( parameters instanceof GCMParameterSpec ) {
+            iv = ((GCMParameterSpec)parameters).getIV();
+            tagBits = ((GCMParameterSpec)parameters).getTLen();
+            if( iv.length == 0 ) {
+                throw new InvalidAlgorithmParameterException(
+                    algorithm + " requires a non-empty IV");
+            }
+        } else {
+            iv = getIVFromParams(parameters);
+            tagBits = EncryptionAlgorithm.AEAD_TAG_LENGTH * 8;
+            if( iv == null || iv.length != EncryptionAlgorithm.AEAD_IV_LENGTH ) {
+                throw new InvalidAlgorithmParameterException(
+                    algorithm + " requires a " +
+                    EncryptionAlgorithm.AEAD_IV_LENGTH + "-byte nonce");
+            }
+        }
+
+        // Same tag lengths as SunJCE; see NIST SP 800-38D.
+        if( tagBits != 128 && tagBits != 120 && tagBits != 112 &&
+                tagBits != 104 && tagBits != 96 && tagBits != 64 &&
+                tagBits != 32 ) {
+            throw new InvalidAlgorithmParameterException(
+                "Unsupported authentication tag length: " + tagBits);
+        }
+
+        if( encrypt ) {
+            // Encrypting two messages under the same key and IV breaks
+            // both confidentiality and authenticity.
+            if( key == lastEncryptKey && Arrays.equals(iv, lastEncryptIV) ) {
+                throw new InvalidAlgorithmParameterException(
+                    "Cannot reuse IV for " + algorithm +
+                    " encryption with the same key");
+            }
+            lastEncryptKey = key;
+            lastEncryptIV = iv.clone();
+        }
+
+        if( aeadContext == null || aeadContextKey != key ||
+                aeadContextEncrypt != encrypt ) {
+            closeAEADContext();
+            aeadContext = initAEADContext(encrypt, key, algorithm);
+            aeadContextKey = key;
+            aeadContextEncrypt = encrypt;
+        }
+
+        IV = iv;
+        tagLength = tagBits / 8;
+        this.key = key;
+        this.parameters = parameters;
+        state = encrypt ? ENCRYPT : DECRYPT;
+    }
+
+    private void checkAEADState() {
+        if( aeadDone ) {
+            throw new IllegalStateException(
+                "Cipher must be reinitialized with a new IV after " +
+                algorithm + " encryption");
+        }
+    }
+
+    private byte[] finalizeAEAD()
+        throws TokenException, BadPaddingException
+    {
+        byte[] input = aeadInput.toByteArray();
+        byte[] ad = aad.toByteArray();
+        aeadInput.reset();
+        aad.reset();
+
+        // Decryption may be repeated with the same IV; encryption may not.
+        if( state == ENCRYPT ) {
+            aeadDone = true;
+        }
+
+        return aeadOp(aeadContext, state == ENCRYPT, IV, ad, input,
+                tagLength);
+    }
+
+    private void closeAEADContext() {
+        if (aeadContext != null) {
+            try {
+                aeadContext.close();
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            } finally {
+                aeadContext = null;
+                aeadContextKey = null;
+            }
+        }
+    }
+
     private static native CipherContextProxy
     initContext(boolean encrypt, SymmetricKey key, EncryptionAlgorithm alg,
                  byte[] IV, boolean padded)
@@ -222,10 +551,36 @@ public final class PK11Cipher
                 EncryptionAlgorithm alg, byte[] IV, int keyBits, boolean padded)
         throws TokenException;
 
+    private static native CipherContextProxy
+    initAEADContext(boolean encrypt, SymmetricKey key, EncryptionAlgorithm alg)
+        throws TokenException;
+
+    // Encrypts input into ciphertext followed by the tag, or decrypts
+    // ciphertext followed by the tag into plaintext.
+    private static native byte[]
+    aeadOp(CipherContextProxy context, boolean encrypt, byte[] IV,
+            byte[] aad, byte[] input, int tagLength)
+        throws TokenException, BadPaddingException;
+
     private static native byte[]
     updateContext( CipherContextProxy context, byte[] input, int blocksize )
         throws TokenException;
 
+    // Writes the output into the given region and returns its length. The
+    // caller checks the regions; outputLength must allow for one block
+    // more than inputLength.
+    private static native int
+    updateContextArray( CipherContextProxy context, byte[] input,
+            int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength )
+        throws TokenException;
+
+    private static native int
+    updateContextDirect( CipherContextProxy context, ByteBuffer input,
+            int inputOffset, int inputLength, ByteBuffer output,
+            int outputOffset, int outputLength )
+        throws TokenException;
+
     private static native byte[]
     finalizeContext( CipherContextProxy context, int blocksize, boolean padded)
         throws TokenException, IllegalBlockSizeException, BadPaddingException;
@@ -236,6 +591,10 @@ public final class PK11Cipher
         IV = null;
         state = UNINITIALIZED;
         contextProxy = null;
+        tagLength = 0;
+        aad.reset();
+        aeadInput.reset();
+        aeadDone = false;
     }
 
     /**
@@ -290,12 +649,16 @@ public final class PK11Cipher
 
     @Override
     public void close() throws Exception {
-        if (contextProxy != null) {
-            try {
-                contextProxy.close();
-            } finally {
-                contextProxy = null;
+        try {
+            if (contextProxy != null) {
+                try {
+                    contextProxy.close();
+                } finally {
+                    contextProxy = null;
+                }
             }
+        } finally {
+            closeAEADContext();
         }
     }
 }
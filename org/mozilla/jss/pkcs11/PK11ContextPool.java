@@ -0,0 +1,346 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.pkcs11;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.crypto.Algorithm;
+import org.mozilla.jss.crypto.DigestAlgorithm;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+import org.mozilla.jss.util.NativeProxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of idle native digest, HMAC and signature contexts, shared by all
+ * threads.
+ *
+ * Creating a native context is comparatively expensive, and a context
+ * which is simply dropped is only freed by the finalizer. Instead,
+ * PK11MessageDigest restarts its context and returns it here once a digest
+ * completes or is reset; the next digest with the same algorithm and token
+ * (and, for HMAC, the same key) reuses it, on whichever thread it runs.
+ * PK11Signature does the same with its signing or verification context
+ * once a signature is computed or verified, keyed on the key it was
+ * initialized with.
+ * The pool is shared rather than per thread so that it also serves
+ * virtual threads, and so that its size doesn't grow with the number of
+ * threads.
+ *
+ * The pool keeps at most getMaxEntries() idle contexts per algorithm,
+ * token and key; surplus contexts are closed right away. As HMAC and
+ * signature contexts are specific to their key, it also pools contexts for
+ * at most MAX_KEYS combinations, closing those of the least recently used
+ * one, so at most MAX_KEYS keys are kept alive by the pool. clear() closes
+ * all idle contexts and releases the keys they reference.
+ *
+ * RSA-PSS signature contexts depend on parameters set after the key, so
+ * PK11Signature doesn't pool them.
+ */
+public final class PK11ContextPool {
+
+    public static Logger logger = LoggerFactory.getLogger(PK11ContextPool.class);
+
+    /**
+     * Default maximum number of idle contexts per algorithm, token and
+     * key.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 4;
+
+    /**
+     * Maximum number of algorithm, token and key combinations pooled.
+     */
+    public static final int MAX_KEYS = 32;
+
+    private static volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * Idle contexts, least recently used combination first. Guarded by
+     * its own lock; contexts are only closed outside of it.
+     */
+    private static final Pool pool = new Pool();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong returns = new AtomicLong();
+    private static final AtomicLong discards = new AtomicLong();
+
+    private PK11ContextPool() { }
+
+    /**
+     * Sets the maximum number of idle contexts per algorithm, token and
+     * key. Zero disables pooling. Surplus contexts are closed right away.
+     */
+    public static void setMaxEntries(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Maximum pool size must not be negative: " + max);
+        }
+        maxEntries = max;
+
+        List<NativeProxy> surplus = new ArrayList<>();
+        synchronized (pool) {
+            Iterator<ArrayDeque<NativeProxy>> it = pool.values().iterator();
+            while (it.hasNext()) {
+                ArrayDeque<NativeProxy> idle = it.next();
+                while (idle.size() > max) {
+                    surplus.add(idle.pollLast());
+                }
+                if (idle.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+
+        discardAll(surplus);
+    }
+
+    public static int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Number of contexts taken from the pool instead of being created.
+     */
+    public static long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of contexts which had to be created because no idle context
+     * was pooled.
+     */
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Number of contexts returned to the pool.
+     */
+    public static long getReturns() {
+        return returns.get();
+    }
+
+    /**
+     * Number of contexts closed because the pool was full or the context
+     * couldn't be restarted.
+     */
+    public static long getDiscards() {
+        return discards.get();
+    }
+
+    /**
+     * Number of idle contexts in the pool.
+     */
+    public static int size() {
+        int count = 0;
+        synchronized (pool) {
+            for (ArrayDeque<NativeProxy> idle : pool.values()) {
+                count += idle.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Closes all idle contexts, releasing the HMAC keys they reference.
+     */
+    public static void clear() {
+        List<NativeProxy> idle = new ArrayList<>();
+        synchronized (pool) {
+            for (ArrayDeque<NativeProxy> contexts : pool.values()) {
+                idle.addAll(contexts);
+            }
+            pool.clear();
+        }
+
+        for (NativeProxy proxy : idle) {
+            close(proxy);
+        }
+    }
+
+    /**
+     * Takes an idle context from the pool, or returns null when there is
+     * none and the caller has to create one. key is null for plain
+     * digests.
+     */
+    static CipherContextProxy acquire(PK11Token token, DigestAlgorithm alg, PK11SymKey key) {
+        return (CipherContextProxy) acquire(new PoolKey(token, alg, key));
+    }
+
+    /**
+     * Takes an idle signing or verification context for the given key from
+     * the pool, or returns null when there is none and the caller has to
+     * create one.
+     */
+    static SigContextProxy acquire(PK11Token token, SignatureAlgorithm alg, PK11Key key) {
+        return (SigContextProxy) acquire(new PoolKey(token, alg, key));
+    }
+
+    private static NativeProxy acquire(PoolKey poolKey) {
+        NativeProxy proxy = null;
+
+        synchronized (pool) {
+            ArrayDeque<NativeProxy> idle = pool.get(poolKey);
+            if (idle != null) {
+                proxy = idle.pollFirst();
+                if (idle.isEmpty()) {
+                    pool.remove(poolKey);
+                }
+            }
+        }
+
+        if (proxy == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return proxy;
+    }
+
+    /**
+     * Returns a restarted context to the pool, closing it if the pool is
+     * full.
+     */
+    static void release(PK11Token token, DigestAlgorithm alg, PK11SymKey key, CipherContextProxy proxy) {
+        release(new PoolKey(token, alg, key), proxy);
+    }
+
+    /**
+     * Returns a restarted signing or verification context to the pool,
+     * closing it if the pool is full.
+     */
+    static void release(PK11Token token, SignatureAlgorithm alg, PK11Key key, SigContextProxy proxy) {
+        release(new PoolKey(token, alg, key), proxy);
+    }
+
+    private static void release(PoolKey poolKey, NativeProxy proxy) {
+        int max = maxEntries;
+        boolean pooled = false;
+        List<NativeProxy> evicted = null;
+
+        if (max > 0) {
+            synchronized (pool) {
+                ArrayDeque<NativeProxy> idle =
+                    pool.computeIfAbsent(poolKey, k -> new ArrayDeque<>());
+                if (idle.size() < max) {
+                    idle.addFirst(proxy);
+                    pooled = true;
+                }
+                evicted = pool.takeEvicted();
+            }
+        }
+
+        if (pooled) {
+            returns.incrementAndGet();
+        } else {
+            discard(proxy);
+        }
+
+        discardAll(evicted);
+    }
+
+    /**
+     * Closes a context which can't be pooled.
+     */
+    static void discard(NativeProxy proxy) {
+        discards.incrementAndGet();
+        close(proxy);
+    }
+
+    private static void discardAll(List<NativeProxy> proxies) {
+        if (proxies == null) {
+            return;
+        }
+
+        for (NativeProxy proxy : proxies) {
+            discard(proxy);
+        }
+    }
+
+    private static void close(NativeProxy proxy) {
+        try {
+            proxy.close();
+        } catch (Exception e) {
+            logger.warn("PK11ContextPool: unable to close context: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Pool extends LinkedHashMap<PoolKey, ArrayDeque<NativeProxy>> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Contexts of evicted combinations, to be closed once the lock is
+         * released.
+         */
+        private List<NativeProxy> evicted;
+
+        Pool() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PoolKey, ArrayDeque<NativeProxy>> eldest) {
+            if (size() <= MAX_KEYS) {
+                return false;
+            }
+
+            if (evicted == null) {
+                evicted = new ArrayList<>();
+            }
+            evicted.addAll(eldest.getValue());
+            return true;
+        }
+
+        List<NativeProxy> takeEvicted() {
+            List<NativeProxy> result = evicted;
+            evicted = null;
+            return result;
+        }
+    }
+
+    /**
+     * Tokens and keys are compared by identity: HMAC and verification
+     * contexts hold their own copy of the key they were created with.
+     * Signing contexts use the private key of the PK11PrivKey without
+     * copying it, which the reference held here keeps alive while they
+     * are pooled.
+     */
+    private static final class PoolKey {
+        private final PK11Token token;
+        private final Algorithm alg;
+        private final Object key;
+
+        PoolKey(PK11Token token, Algorithm alg, Object key) {
+            this.token = token;
+            this.alg = alg;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PoolKey)) {
+                return false;
+            }
+
+            PoolKey other = (PoolKey) obj;
+            return token == other.token && alg == other.alg && key == other.key;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(token);
+            result = 31 * result + System.identityHashCode(alg);
+            result = 31 * result + System.identityHashCode(key);
+            return result;
+        }
+    }
+}
@@ -100,6 +100,61 @@ finish:
 }
 
 
+/***********************************************************************
+ *
+ * PK11MessageDigest.cloneContext
+ *
+ */
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_pkcs11_PK11MessageDigest_cloneContext
+    (JNIEnv *env, jclass clazz, jobject proxyObj)
+{
+    PK11Context *context = NULL;
+    PK11Context *copy = NULL;
+
+    if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS ) {
+        /* exception was thrown */
+        return NULL;
+    }
+
+    /* This saves and restores the operation state, which not all tokens
+     * support. */
+    copy = PK11_CloneContext(context);
+    if( copy == NULL ) {
+        JSS_throwMsgPrErrArg(env, DIGEST_EXCEPTION,
+            "Unable to clone digest context", PR_GetError());
+        return NULL;
+    }
+
+    return JSS_PK11_wrapCipherContextProxy(env, &copy);
+}
+
+
+/***********************************************************************
+ *
+ * PK11MessageDigest.resetContext
+ *
+ * Restarts a digest or HMAC context, discarding any input, so that it
+ * can be reused for a new operation.
+ */
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_pkcs11_PK11MessageDigest_resetContext
+    (JNIEnv *env, jclass clazz, jobject proxyObj)
+{
+    PK11Context *context = NULL;
+
+    if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS ) {
+        /* exception was thrown */
+        return;
+    }
+
+    if( PK11_DigestBegin(context) != SECSuccess ) {
+        JSS_throwMsgPrErrArg(env, DIGEST_EXCEPTION,
+            "Unable to reset digest context", PR_GetError());
+    }
+}
+
+
 /***********************************************************************
  *
  * PK11MessageDigest.update
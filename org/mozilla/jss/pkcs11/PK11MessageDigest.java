@@ -11,6 +11,10 @@ import java.security.InvalidKeyException;
 
 /**
  * Message Digesting with PKCS #11.
+ *
+ * The native context is taken from PK11ContextPool when first needed and
+ * returned there, restarted, when a digest completes or is reset, so
+ * short-lived digests don't each create and leak a context.
  */
 public final class PK11MessageDigest
     extends JSSMessageDigest
@@ -18,6 +22,7 @@ public final class PK11MessageDigest
 {
 
     private PK11Token token;
+    // null until needed; see context()
     private CipherContextProxy digestProxy;
     private PK11SymKey hmacKey;
     private DigestAlgorithm alg;
@@ -31,15 +36,22 @@ public final class PK11MessageDigest
         if( ! token.doesAlgorithm(alg) ) {
             throw new NoSuchAlgorithmException();
         }
+    }
 
-        reset();
+    private PK11MessageDigest(PK11MessageDigest other,
+            CipherContextProxy digestProxy)
+    {
+        this.token = other.token;
+        this.alg = other.alg;
+        this.hmacKey = other.hmacKey;
+        this.digestProxy = digestProxy;
     }
 
     public void initHMAC(SymmetricKey key)
         throws DigestException, InvalidKeyException
     {
 
-        if( ! (alg instanceof HMACAlgorithm || alg instanceof CMACAlgorithm) ) {
+        if( ! isMAC() ) {
             throw new DigestException("Digest is not an HMAC or CMAC digest");
         }
 
@@ -47,61 +59,120 @@ public final class PK11MessageDigest
             throw new InvalidKeyException("HMAC key is not a PKCS #11 key");
         }
 
+        // The context of the previous key, if any, can serve other
+        // digests with that key.
+        reset();
+
         hmacKey = (PK11SymKey) key;
-        this.digestProxy = initHMAC(token, alg, hmacKey);
+
+        // Create the context right away, so an unusable key is reported
+        // here rather than on first use.
+        context();
     }
 
     public void update(byte[] input, int offset, int len)
         throws DigestException
     {
-        if( digestProxy == null ) {
-            throw new DigestException("Digest not correctly initialized");
-        }
         if( input.length < offset+len ) {
             throw new IllegalArgumentException(
                 "Input buffer is not large enough for offset and length");
         }
 
-        update(digestProxy, input, offset, len);
+        update(context(), input, offset, len);
     }
 
     public int digest(byte[] outbuf, int offset, int len)
         throws DigestException
     {
-        if( digestProxy == null ) {
-            throw new DigestException("Digest not correctly initialized");
-        }
         if( outbuf.length < offset+len ) {
             throw new IllegalArgumentException(
                 "Output buffer is not large enough for offset and length");
         }
 
-        int retval = digest(digestProxy, outbuf, offset, len);
+        int retval = digest(context(), outbuf, offset, len);
 
         reset();
 
         return retval;
     }
 
+    /**
+     * Returns the context to the pool; the next operation takes a fresh
+     * one.
+     */
     public void reset() throws DigestException {
-        if( ! (alg instanceof HMACAlgorithm || alg instanceof CMACAlgorithm) ) {
-            // This is a regular digest, so we have enough information
-            // to initialize the context
-            this.digestProxy = initDigest(alg);
-        } else if( hmacKey != null ) {
-            // This is an HMAC digest, and we have a key
-            this.digestProxy = initHMAC(token, alg, hmacKey);
-        } else {
-            // this is an HMAC digest for which we don't have the key yet,
-            // we have to wait to construct the context
-            this.digestProxy = null;
+        CipherContextProxy proxy = digestProxy;
+        if( proxy == null ) {
+            return;
         }
+        digestProxy = null;
+
+        try {
+            resetContext(proxy);
+        } catch( DigestException de ) {
+            PK11ContextPool.discard(proxy);
+            throw de;
+        }
+        PK11ContextPool.release(token, alg, hmacKey, proxy);
+    }
+
+    private boolean isMAC() {
+        return alg instanceof HMACAlgorithm || alg instanceof CMACAlgorithm;
+    }
+
+    /**
+     * Returns the current context, taking one from the pool or creating
+     * one if there is none.
+     */
+    private CipherContextProxy context() throws DigestException {
+        if( digestProxy != null ) {
+            return digestProxy;
+        }
+
+        if( isMAC() && hmacKey == null ) {
+            // this is an HMAC digest for which we don't have the key yet
+            throw new DigestException("Digest not correctly initialized");
+        }
+
+        CipherContextProxy proxy = PK11ContextPool.acquire(token, alg, hmacKey);
+        if( proxy == null ) {
+            if( isMAC() ) {
+                proxy = initHMAC(token, alg, hmacKey);
+            } else {
+                proxy = initDigest(alg);
+            }
+        }
+
+        digestProxy = proxy;
+        return proxy;
     }
 
     public DigestAlgorithm getAlgorithm() {
         return alg;
     }
 
+    /**
+     * Copies the digest state with PK11_CloneContext, so input digested
+     * so far isn't digested again.
+     */
+    @Override
+    public PK11MessageDigest clone() throws CloneNotSupportedException {
+        if( digestProxy == null ) {
+            // Nothing has been digested since the last reset; the copy
+            // takes its own context when first used.
+            return new PK11MessageDigest(this, null);
+        }
+
+        try {
+            return new PK11MessageDigest(this, cloneContext(digestProxy));
+        } catch (DigestException de) {
+            CloneNotSupportedException e =
+                new CloneNotSupportedException(de.getMessage());
+            e.initCause(de);
+            throw e;
+        }
+    }
+
     private static native CipherContextProxy
     initDigest(DigestAlgorithm alg)
         throws DigestException;
@@ -110,6 +181,14 @@ public final class PK11MessageDigest
     initHMAC(PK11Token token, DigestAlgorithm alg, PK11SymKey key)
         throws DigestException;
 
+    private static native CipherContextProxy
+    cloneContext(CipherContextProxy proxy)
+        throws DigestException;
+
+    private static native void
+    resetContext(CipherContextProxy proxy)
+        throws DigestException;
+
     private static native void
     update(CipherContextProxy proxy, byte[] inbuf, int offset, int len);
 
@@ -3,7 +3,10 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.mozilla.jss.pkcs11;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
 
 import org.mozilla.jss.crypto.CryptoToken;
@@ -39,8 +42,8 @@ public final class PK11Module {
      *
      * @return An enumeration of CryptoTokens that come from this module.
      */
-    public synchronized Enumeration<CryptoToken> getTokens() {
-        return tokenVector.elements();
+    public Enumeration<CryptoToken> getTokens() {
+        return Collections.enumeration(tokens);
     }
 
     /**
@@ -48,12 +51,15 @@ public final class PK11Module {
      * to JSS.
      */
     public synchronized void reloadTokens() {
-        tokenVector = new Vector<>();
+        Vector<CryptoToken> tokenVector = new Vector<>();
         putTokensInVector(tokenVector);
+        tokens = Collections.unmodifiableList(new ArrayList<>(tokenVector));
     }
 
     private native void putTokensInVector(Vector<CryptoToken> tokens);
 
-    private Vector<CryptoToken> tokenVector;
+    // Immutable; replaced as a whole by reloadTokens(), so readers need
+    // no lock.
+    private volatile List<CryptoToken> tokens;
     private ModuleProxy moduleProxy;
 }
@@ -322,6 +322,39 @@ finish:
     return sigArray;
 }
 
+/**********************************************************************
+ *
+ * PK11Signature.restartContext
+ *
+ * Restarts a signing or verification context, discarding any input, so
+ * that it can be reused for a new operation with the same key.
+ */
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_restartContext
+    (JNIEnv *env, jclass clazz, jobject proxyObj)
+{
+    void *ctxt = NULL;
+    SigContextType type;
+    SECStatus rv;
+
+    if( JSS_PK11_getSigContext(env, proxyObj, &ctxt, &type) != PR_SUCCESS ) {
+        /* exception was thrown */
+        return;
+    }
+
+    if( type == SGN_CONTEXT ) {
+        rv = SGN_Begin((SGNContext*)ctxt);
+    } else {
+        PR_ASSERT( type == VFY_CONTEXT );
+        rv = VFY_Begin((VFYContext*)ctxt);
+    }
+
+    if( rv != SECSuccess ) {
+        JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
+            "Unable to restart signature context");
+    }
+}
+
 JNIEXPORT jboolean JNICALL
 Java_org_mozilla_jss_pkcs11_PK11Signature_engineVerifyNative
 	(JNIEnv *env, jobject this, jbyteArray sigArray)
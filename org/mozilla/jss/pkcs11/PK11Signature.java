@@ -25,6 +25,8 @@ public final class PK11Signature
     implements java.lang.AutoCloseable
 {
 
+    public static Logger logger = LoggerFactory.getLogger(PK11Signature.class);
+
     public PK11Signature(PK11Token token, SignatureAlgorithm algorithm)
         throws NoSuchAlgorithmException, TokenException
     {
@@ -105,13 +107,19 @@ public final class PK11Signature
             throw new InvalidKeyException("Unknown algorithm: " + algorithm, e);
         }
 
+        // The context of the previous key, if any, can serve other
+        // signatures with that key.
+        releaseContext();
+
         // Finally, the key is OK
 		key = privKey;
 
         // Now initialize the signature context
         if( ! raw ) {
-            sigContext = null;
-            initSigContext();
+            sigContext = acquireContext();
+            if( sigContext == null ) {
+                initSigContext();
+            }
         }
 
         // Don't set state until we know everything worked
@@ -175,11 +183,15 @@ public final class PK11Signature
             throw new InvalidKeyException("Unknown algorithm: " + algorithm, e);
         }
 
+        releaseContext();
+
 		key = pubKey;
 
         if( ! raw ) {
-            sigContext = null;
-            initVfyContext();
+            sigContext = acquireContext();
+            if( sigContext == null ) {
+                initVfyContext();
+            }
         }
 
         // Don't set state until we know everything worked.
@@ -246,10 +258,13 @@ public final class PK11Signature
                 rawInput.toByteArray());
             rawInput.reset();
         } else {
-            result = engineSignNative();
+            try {
+                result = engineSignNative();
+            } finally {
+                releaseContext();
+            }
         }
 		state = UNINITIALIZED;
-		sigContext = null;
 
 		return result;
     }
@@ -315,10 +330,13 @@ public final class PK11Signature
                 rawInput.toByteArray(), sigBytes);
             rawInput.reset();
         } else {
-            result = engineVerifyNative(sigBytes);
+            try {
+                result = engineVerifyNative(sigBytes);
+            } finally {
+                releaseContext();
+            }
         }
 		state = UNINITIALIZED;
-		sigContext = null;
 
 		return result;
     }
@@ -381,6 +399,50 @@ public final class PK11Signature
         return hashAlg;
     }
 
+    /**
+     * Takes an idle context for the current key from PK11ContextPool, or
+     * returns null if a new one has to be created.
+     */
+    private SigContextProxy acquireContext() {
+        if( isRSAPSSAlgorithm((SignatureAlgorithm) algorithm) ) {
+            // the context depends on the PSS parameters too
+            return null;
+        }
+        return PK11ContextPool.acquire(token, (SignatureAlgorithm) algorithm, key);
+    }
+
+    /**
+     * Restarts the current context and returns it to PK11ContextPool, so
+     * the next signature with the same key and algorithm reuses it.
+     */
+    private void releaseContext() {
+        SigContextProxy proxy = sigContext;
+        if( proxy == null ) {
+            return;
+        }
+        sigContext = null;
+
+        if( isRSAPSSAlgorithm((SignatureAlgorithm) algorithm) ) {
+            PK11ContextPool.discard(proxy);
+            return;
+        }
+
+        try {
+            restartContext(proxy);
+        } catch( SignatureException e ) {
+            logger.debug("PK11Signature: unable to restart context: " + e.getMessage());
+            PK11ContextPool.discard(proxy);
+            return;
+        }
+        PK11ContextPool.release(token, (SignatureAlgorithm) algorithm, key, proxy);
+    }
+
+    /**
+     * Restarts a signing or verification context, discarding any input.
+     */
+    private static native void restartContext(SigContextProxy proxy)
+        throws SignatureException;
+
     private boolean isRSAPSSAlgorithm(SignatureAlgorithm algorithm) {
         if (algorithm == null) {
             return false;
@@ -386,10 +386,10 @@ JSS_PK11_getStoreSlotPtr(JNIEnv *env, jobject store, PK11SlotInfo **slot)
 }
 
 /**********************************************************************
- * PK11Store.deletePrivateKey
+ * PK11Store.deletePrivateKeyNative
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_deletePrivateKey
+Java_org_mozilla_jss_pkcs11_PK11Store_deletePrivateKeyNative
     (JNIEnv *env, jobject this, jobject privateKeyObj)
 {
     PK11SlotInfo *slot;
@@ -477,13 +477,13 @@ finish:
 }
 
 /**********************************************************************
- * PK11Store.deleteCert
+ * PK11Store.deleteCertNative
  *
  * This function deletes the specified certificate and its associated 
  * private key.
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_deleteCert
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertNative
     (JNIEnv *env, jobject this, jobject certObject)
 {
     CERTCertificate *cert;
@@ -508,12 +508,12 @@ finish:
 }
 
 /**********************************************************************
- * PK11Store.deleteCertOnly
+ * PK11Store.deleteCertOnlyNative
  *
  * This function deletes the specified certificate only.
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnly
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnlyNative
     (JNIEnv *env, jobject this, jobject certObject)
 {
     CERTCertificate *cert;
@@ -541,10 +541,10 @@ finish:
 int PK11_NumberObjectsFor(PK11SlotInfo*, CK_ATTRIBUTE*, int);
 
 /***********************************************************************
- * PK11Store.importdPrivateKey
+ * PK11Store.importPrivateKeyNative
  */
 JNIEXPORT jobject JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_importPrivateKey
+Java_org_mozilla_jss_pkcs11_PK11Store_importPrivateKeyNative
     (   JNIEnv *env,
         jobject this,
         jbyteArray keyArray,
@@ -720,7 +720,7 @@ finish:
 
 
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_importEncryptedPrivateKeyInfo(
+Java_org_mozilla_jss_pkcs11_PK11Store_importEncryptedPrivateKeyInfoNative(
     JNIEnv *env,
     jobject this,
     jobject conv,
@@ -50,8 +50,19 @@ public final class PK11Store implements CryptoStore {
         return importPrivateKey(key, type, false);
     }
 
-    public native PrivateKey
+    public PrivateKey
     importPrivateKey(
+        byte[] key, PrivateKey.Type type, boolean temporary)
+        throws TokenException,KeyAlreadyImportedException {
+        PrivateKey privateKey = importPrivateKeyNative(key, type, temporary);
+        if (!temporary) {
+            certDBModified();
+        }
+        return privateKey;
+    }
+
+    private native PrivateKey
+    importPrivateKeyNative(
         byte[] key, PrivateKey.Type type, boolean temporary)
         throws TokenException,KeyAlreadyImportedException;
 
@@ -132,7 +143,16 @@ public final class PK11Store implements CryptoStore {
     protected native void putSymKeysInVector(Vector<SymmetricKey> symKeys) throws TokenException;
 
 
-    public native void deletePrivateKey(PrivateKey privateKey)
+    public void deletePrivateKey(PrivateKey privateKey)
+        throws NoSuchItemOnTokenException, TokenException {
+        try {
+            deletePrivateKeyNative(privateKey);
+        } finally {
+            certDBModified();
+        }
+    }
+
+    private native void deletePrivateKeyNative(PrivateKey privateKey)
         throws NoSuchItemOnTokenException, TokenException;
 
     public native void deletePublicKey(PublicKey publicKey)
@@ -161,7 +181,20 @@ public final class PK11Store implements CryptoStore {
         int n,
         PrivateKey k);
 
-    public native void importEncryptedPrivateKeyInfo(
+    public void importEncryptedPrivateKeyInfo(
+        KeyGenerator.CharToByteConverter conv,
+        Password pw,
+        String nickname,
+        PublicKey pubKey,
+        byte[] epkiBytes) {
+        try {
+            importEncryptedPrivateKeyInfoNative(conv, pw, nickname, pubKey, epkiBytes);
+        } finally {
+            certDBModified();
+        }
+    }
+
+    private native void importEncryptedPrivateKeyInfoNative(
         KeyGenerator.CharToByteConverter conv,
         Password pw,
         String nickname,
@@ -193,7 +226,16 @@ public final class PK11Store implements CryptoStore {
      */
 	// Currently have to use PK11_DeleteTokenObject + PK11_FindObjectForCert
 	// or maybe SEC_DeletePermCertificate.
-    public native void deleteCert(X509Certificate cert)
+    public void deleteCert(X509Certificate cert)
+        throws NoSuchItemOnTokenException, TokenException {
+        try {
+            deleteCertNative(cert);
+        } finally {
+            certDBModified();
+        }
+    }
+
+    private native void deleteCertNative(X509Certificate cert)
         throws NoSuchItemOnTokenException, TokenException;
 
     /**
@@ -203,9 +245,32 @@ public final class PK11Store implements CryptoStore {
      * @exception NoSuchItemOnTokenException If the certificate not found
      * @exception TokenException General token error
      */
-    public native void deleteCertOnly(X509Certificate cert)
+    public void deleteCertOnly(X509Certificate cert)
+        throws NoSuchItemOnTokenException, TokenException {
+        try {
+            deleteCertOnlyNative(cert);
+        } finally {
+            certDBModified();
+        }
+    }
+
+    private native void deleteCertOnlyNative(X509Certificate cert)
         throws NoSuchItemOnTokenException, TokenException;
 
+    /**
+     * Tells the CryptoManager that certificates or their keys changed, so
+     * that caches derived from the certificate database are rebuilt. This
+     * is done even when the native call fails, as it may have made some of
+     * its changes.
+     */
+    private void certDBModified() {
+        try {
+            CryptoManager.getInstance().certDBModified();
+        } catch (NotInitializedException e) {
+            // nothing can have cached the certificate database
+        }
+    }
+
 	////////////////////////////////////////////////////////////
 	// Construction
 	////////////////////////////////////////////////////////////
@@ -302,6 +302,16 @@ Java_org_mozilla_jss_pkcs11_PK11SymKey_getKeyType
           case CKK_AES:
             typeFieldName = AES_KEYTYPE_FIELD;
             break;
+#ifdef CKK_CHACHA20
+          case CKK_CHACHA20:
+            typeFieldName = CHACHA20_KEYTYPE_FIELD;
+            break;
+#endif
+#ifdef CKK_NSS_CHACHA20
+          case CKK_NSS_CHACHA20:
+            typeFieldName = CHACHA20_KEYTYPE_FIELD;
+            break;
+#endif
           case CKK_DES2:
              typeFieldName = DES3_KEYTYPE_FIELD;
              break;
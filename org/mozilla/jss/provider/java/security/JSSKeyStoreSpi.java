@@ -23,6 +23,7 @@ import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.jss.CryptoManager;
@@ -72,6 +73,16 @@ import org.slf4j.LoggerFactory;
  *
  * <li>load updates the token in the keystore.
  *
+ * <li>aliases, containsAlias, and size are answered from an alias index
+ * built by scanning the token(s) once. The index is rebuilt after load,
+ * deleteEntry, and setKeyEntry, after invalidateAliases() is called, and,
+ * when a refresh interval is configured (see
+ * JSSLoadStoreParameter.setAliasRefreshInterval), once the index is older
+ * than that interval. containsAlias also notices certificates imported
+ * on this KeyStore's token(s) outside of this KeyStore, rescanning at most
+ * once per alias until the index is rebuilt; other outside changes are
+ * only seen once the index is rebuilt.
+ *
  * <li>store is a no-op.
  *
  * <li>setCertificateEntry doesn't work.NSS doesn't have a way of storing a
@@ -89,6 +100,18 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
     CryptoToken token;
     protected TokenProxy proxy;
 
+    // Aliases of all entries, or null when the index must be rebuilt.
+    private volatile Set<String> aliasIndex;
+    private volatile long aliasIndexTime;
+
+    // Aliases which containsAlias() found by nickname but which a rescan
+    // didn't add to the current index.
+    private volatile Set<String> aliasMisses = ConcurrentHashMap.newKeySet();
+
+    // Maximum age of the alias index in milliseconds; zero or less keeps
+    // it until it is invalidated.
+    private volatile long aliasRefreshInterval;
+
     public JSSKeyStoreSpi() {
 
         logger.debug("JSSKeyStoreSpi: <init>()");
@@ -126,12 +149,76 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
     public Enumeration<String> engineAliases() {
         logger.debug("JSSKeyStoreSpi: engineAliases()");
-        return Collections.enumeration(getAliases());
+        return Collections.enumeration(getAliasIndex());
     }
 
     public Collection<String> getAliases() {
-
         logger.debug("JSSKeyStoreSpi: getAliases()");
+        return new LinkedHashSet<>(getAliasIndex());
+    }
+
+    /**
+     * Discards the alias index so that the next alias query scans the
+     * token(s) again. Entries set or deleted through this KeyStore
+     * invalidate the index automatically; call this after modifying the
+     * token(s) by other means.
+     */
+    public void invalidateAliases() {
+        logger.debug("JSSKeyStoreSpi: invalidating alias index");
+        aliasIndex = null;
+    }
+
+    /**
+     * Invalidates the alias index and tells the CryptoManager that the
+     * certificate database changed, so that other caches derived from it,
+     * such as the SNI index of JSSTokenKeyManager, are rebuilt too.
+     */
+    void entriesModified() {
+        invalidateAliases();
+
+        try {
+            CryptoManager.getInstance().certDBModified();
+        } catch (NotInitializedException e) {
+            // nothing can have cached the certificate database
+        }
+    }
+
+    /**
+     * Sets the maximum age of the alias index in milliseconds. Zero or
+     * less keeps the index until it is invalidated.
+     */
+    public void setAliasRefreshInterval(long millis) {
+        aliasRefreshInterval = millis;
+    }
+
+    public long getAliasRefreshInterval() {
+        return aliasRefreshInterval;
+    }
+
+    private Set<String> getAliasIndex() {
+
+        Set<String> index = aliasIndex;
+        long interval = aliasRefreshInterval;
+
+        if (index != null && interval > 0
+                && System.nanoTime() - aliasIndexTime > interval * 1000000L) {
+            logger.debug("JSSKeyStoreSpi: alias index expired");
+            index = null;
+        }
+
+        if (index == null) {
+            index = Collections.unmodifiableSet(loadAliases());
+            aliasMisses = ConcurrentHashMap.newKeySet();
+            aliasIndexTime = System.nanoTime();
+            aliasIndex = index;
+        }
+
+        return index;
+    }
+
+    private Set<String> loadAliases() {
+
+        logger.debug("JSSKeyStoreSpi: loading aliases");
         Set<String> aliases = new LinkedHashSet<>();
 
         try {
@@ -208,7 +295,45 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         logger.debug("JSSKeyStoreSpi: engineContainsAlias(" + alias + ")");
 
-        return getAliases().contains(alias);
+        if (getAliasIndex().contains(alias)) {
+            return true;
+        }
+
+        Set<String> misses = aliasMisses;
+        if (misses.contains(alias)) {
+            return false;
+        }
+
+        // A certificate may have been imported since the index was built;
+        // looking it up by nickname is much cheaper than a full scan.
+        try {
+            CryptoManager cm = CryptoManager.getInstance();
+            X509Certificate cert = cm.findCertByNickname(alias);
+
+            if (token != null && cert instanceof TokenCertificate
+                    && ((TokenCertificate) cert).getOwningToken() != token) {
+                // on another token, so not part of this KeyStore
+                return false;
+            }
+
+        } catch (ObjectNotFoundException e) {
+            return false;
+
+        } catch (NotInitializedException e) {
+            throw new RuntimeException(e);
+
+        } catch (TokenException e) {
+            throw new RuntimeException(e);
+        }
+
+        invalidateAliases();
+        if (getAliasIndex().contains(alias)) {
+            return true;
+        }
+
+        // Don't rescan for this alias again until the index is rebuilt.
+        aliasMisses.add(alias);
+        return false;
     }
 
     public void engineDeleteEntry(String alias) throws KeyStoreException {
@@ -295,6 +420,11 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         } catch (NoSuchItemOnTokenException e) {
             throw new KeyStoreException(e);
+
+        } finally {
+            // after the deletion, so a concurrent query can't rebuild the
+            // index from the old entries
+            entriesModified();
         }
     }
 
@@ -530,6 +660,7 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
         throws IOException
     {
         logger.debug("JSSKeyStoreSpi: engineLoad(stream, password)");
+        invalidateAliases();
     }
 
     public void engineLoad(KeyStore.LoadStoreParameter param)
@@ -543,6 +674,8 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         JSSLoadStoreParameter jssParam = (JSSLoadStoreParameter) param;
         token = jssParam.getToken();
+        aliasRefreshInterval = jssParam.getAliasRefreshInterval();
+        invalidateAliases();
 
         try {
             logger.debug("JSSKeyStoreSpi: token: " + token.getName());
@@ -584,11 +717,16 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         logger.debug("JSSKeyStoreSpi: engineSetKeyEntry(" + alias + ", key, password, chain)");
 
-        if( key instanceof SecretKeyFacade ) {
-            SecretKeyFacade skf = (SecretKeyFacade)key;
-            engineSetKeyEntryNative(alias, skf.key, password, chain);
-        } else {
-            engineSetKeyEntryNative(alias, key, password, chain);
+        try {
+            if( key instanceof SecretKeyFacade ) {
+                SecretKeyFacade skf = (SecretKeyFacade)key;
+                engineSetKeyEntryNative(alias, skf.key, password, chain);
+            } else {
+                engineSetKeyEntryNative(alias, key, password, chain);
+            }
+
+        } finally {
+            entriesModified();
         }
     }
 
@@ -599,7 +737,7 @@ public class JSSKeyStoreSpi extends java.security.KeyStoreSpi {
 
         logger.debug("JSSKeyStoreSpi: engineSize()");
 
-        return getAliases().size();
+        return getAliasIndex().size();
     }
 
     public void engineStore(OutputStream stream, char[] password)
@@ -12,11 +12,21 @@ import org.mozilla.jss.crypto.CryptoToken;
 public class JSSLoadStoreParameter implements LoadStoreParameter {
 
     CryptoToken token;
+    long aliasRefreshInterval;
 
     public JSSLoadStoreParameter(CryptoToken token) {
         this.token = token;
     }
 
+    /**
+     * Creates a parameter whose KeyStore rebuilds its alias index once it
+     * is older than the given number of milliseconds.
+     */
+    public JSSLoadStoreParameter(CryptoToken token, long aliasRefreshInterval) {
+        this.token = token;
+        this.aliasRefreshInterval = aliasRefreshInterval;
+    }
+
     @Override
     public ProtectionParameter getProtectionParameter() {
         return null;
@@ -25,4 +35,17 @@ public class JSSLoadStoreParameter implements LoadStoreParameter {
     public CryptoToken getToken() {
         return token;
     }
+
+    /**
+     * Maximum age of the KeyStore's alias index in milliseconds. Zero or
+     * less (the default) keeps the index until entries are set or deleted
+     * through the KeyStore, or until it is reloaded.
+     */
+    public long getAliasRefreshInterval() {
+        return aliasRefreshInterval;
+    }
+
+    public void setAliasRefreshInterval(long aliasRefreshInterval) {
+        this.aliasRefreshInterval = aliasRefreshInterval;
+    }
 }
@@ -16,7 +16,9 @@ import org.mozilla.jss.crypto.TokenException;
 import org.mozilla.jss.crypto.TokenRuntimeException;
 import org.mozilla.jss.crypto.TokenSupplierManager;
 
-public abstract class JSSMessageDigestSpi extends MessageDigestSpi {
+public abstract class JSSMessageDigestSpi extends MessageDigestSpi
+    implements Cloneable
+{
 
     private JSSMessageDigest digest;
 
@@ -48,7 +50,9 @@ public abstract class JSSMessageDigestSpi extends MessageDigestSpi {
     }
 
     public Object clone() throws CloneNotSupportedException {
-        throw new CloneNotSupportedException();
+        JSSMessageDigestSpi copy = (JSSMessageDigestSpi) super.clone();
+        copy.digest = digest.clone();
+        return copy;
     }
 
     public byte[] engineDigest() {
@@ -0,0 +1,185 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.provider.javax.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of certificate chains which were successfully validated.
+ *
+ * Entries are keyed on a SHA-256 hash of the DER encoding of the chain
+ * together with the requested usage (usually an extended key usage OID).
+ * Only positive results are stored. Each entry expires after the
+ * configured time-to-live, or when any certificate in the chain expires,
+ * whichever comes first. When the cache is full, the least
+ * recently used entry is evicted.
+ *
+ * The entries depend on the trust anchors, so JSSTrustManager includes
+ * their generation in the usage, and JSSTrustAnchors clears the shared
+ * cache whenever it reloads them.
+ */
+public class JSSChainCache {
+
+    final static Logger logger = LoggerFactory.getLogger(JSSChainCache.class);
+
+    public final static int DEFAULT_MAX_ENTRIES = 1024;
+    public final static long DEFAULT_TTL = 5 * 60 * 1000;
+
+    private static final JSSChainCache instance = new JSSChainCache();
+
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    private volatile long ttl = DEFAULT_TTL;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the cache shared by the JSS trust managers.
+     */
+    public static JSSChainCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the maximum number of cached chains. A value of zero or less
+     * disables caching.
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        trim();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the time-to-live of a cache entry, in milliseconds.
+     */
+    public void setTTL(long ttl) {
+        this.ttl = ttl;
+    }
+
+    public long getTTL() {
+        return ttl;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns true if the given chain was previously validated for the
+     * given usage and the result has not expired.
+     */
+    public boolean contains(X509Certificate[] chain, String usage) {
+
+        if (maxEntries <= 0 || chain == null || chain.length == 0) {
+            return false;
+        }
+
+        String key = getKey(chain, usage);
+        if (key == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Long expiration = entries.get(key);
+            if (expiration != null && now < expiration) {
+                hits.incrementAndGet();
+                return true;
+            }
+
+            if (expiration != null) {
+                entries.remove(key);
+            }
+        }
+
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records that the given chain was successfully validated for the
+     * given usage.
+     */
+    public void put(X509Certificate[] chain, String usage) {
+
+        if (maxEntries <= 0 || chain == null || chain.length == 0) {
+            return;
+        }
+
+        String key = getKey(chain, usage);
+        if (key == null) {
+            return;
+        }
+
+        long expiration = System.currentTimeMillis() + ttl;
+        for (X509Certificate cert : chain) {
+            expiration = Math.min(expiration, cert.getNotAfter().getTime());
+        }
+
+        synchronized (this) {
+            entries.put(key, expiration);
+            trim();
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (entries.size() > Math.max(maxEntries, 0) && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    static String getKey(X509Certificate[] chain, String usage) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // DER encodings are self-delimiting, so the concatenation
+            // identifies the chain unambiguously.
+            for (X509Certificate cert : chain) {
+                digest.update(cert.getEncoded());
+            }
+            digest.update((byte) 0);
+            if (usage != null) {
+                digest.update(usage.getBytes(StandardCharsets.UTF_8));
+            }
+            return Utils.HexEncode(digest.digest());
+
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            logger.debug("JSSChainCache: unable to hash certificate chain: " + e);
+            return null;
+        }
+    }
+}
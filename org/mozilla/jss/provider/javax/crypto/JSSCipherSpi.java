@@ -4,6 +4,7 @@
 
 package org.mozilla.jss.provider.javax.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -21,6 +22,7 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.RC2ParameterSpec;
 
@@ -55,6 +57,17 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
     private int blockSize;
     //keyStrength  is used for RC2ParameterSpec and EncryptionAlgorithm.lookup
     private int keyStrength;
+    // AEAD only: the tag length in bytes and the number of bytes buffered
+    // by update(), to compute output sizes
+    private int opmode;
+    private int tagLength;
+    private int aeadBuffered;
+    // the last key translated for engineInit() and its translation, so
+    // that re-initializing with an equal key (e.g. the same SecretKeySpec)
+    // reuses the token key; AEAD ciphers compare keys by identity to
+    // refuse IV reuse and to keep their native context
+    private Key importedKey;
+    private SecretKey importedFacade;
 
     protected JSSCipherSpi(String algFamily) {
         this.algFamily = algFamily;
@@ -94,14 +107,32 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
         }
     }
 
+    private SecretKey translateKey(Key key) throws InvalidKeyException {
+        if( importedKey != null &&
+                (importedKey == key || importedKey.equals(key)) ) {
+            return importedFacade;
+        }
+
+        SecretKey facade = importKey(key);
+        importedKey = key;
+        importedFacade = facade;
+        return facade;
+    }
+
     public void engineInit(int opmode, Key key,
         AlgorithmParameterSpec givenParams, SecureRandom random)
         throws InvalidKeyException, InvalidAlgorithmParameterException
     {
       try {
-        // throw away any previous state
+        // throw away any previous state; AEAD contexts are kept so their
+        // native context and IV reuse check survive re-initialization
+        org.mozilla.jss.crypto.Cipher previous = cipher;
+        EncryptionAlgorithm previousAlg = encAlg;
         cipher = null;
         wrapper = null;
+        this.opmode = opmode;
+        tagLength = 0;
+        aeadBuffered = 0;
 
         params = givenParams;
         if( algFamily==null ) {
@@ -127,7 +158,7 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
 
         if( opmode == Cipher.ENCRYPT_MODE || opmode == Cipher.DECRYPT_MODE ) {
             if( ! (key instanceof SecretKeyFacade) )  {
-                key = importKey(key);
+                key = translateKey(key);
             }
             SymmetricKey symkey = ((SecretKeyFacade)key).key;
 
@@ -143,7 +174,11 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
                     token.getName());
             }
 
-            cipher = token.getCipherContext(encAlg);
+            if( encAlg.isAEAD() && encAlg == previousAlg && previous != null ) {
+                cipher = previous;
+            } else {
+                cipher = token.getCipherContext(encAlg);
+            }
 
             if( opmode == Cipher.ENCRYPT_MODE ) {
                 if( params == noAlgParams ) {
@@ -157,6 +192,14 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
                 }
                 cipher.initDecrypt(symkey, params);
             }
+
+            if( encAlg.isAEAD() ) {
+                if( params instanceof GCMParameterSpec ) {
+                    tagLength = ((GCMParameterSpec)params).getTLen() / 8;
+                } else {
+                    tagLength = EncryptionAlgorithm.AEAD_TAG_LENGTH;
+                }
+            }
         } else {
             assert(
                 opmode==Cipher.WRAP_MODE || opmode==Cipher.UNWRAP_MODE);
@@ -217,9 +260,15 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             if (algFamily.compareToIgnoreCase("RC2") == 0) {
                 gp = givenParams.getParameterSpec(
                     javax.crypto.spec.RC2ParameterSpec.class );
+            } else if (algMode == null) {
+                // ChaCha20-Poly1305 takes its nonce as an IvParameterSpec
+                gp = givenParams.getParameterSpec(
+                             javax.crypto.spec.IvParameterSpec.class );
             } else if (algMode.compareToIgnoreCase("CBC") == 0) {
                  gp = givenParams.getParameterSpec(
                              javax.crypto.spec.IvParameterSpec.class );
+            } else if (algMode.compareToIgnoreCase("GCM") == 0) {
+                 gp = givenParams.getParameterSpec(GCMParameterSpec.class);
             }
 
             if (gp != null) {
@@ -250,8 +299,14 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             // no parameters are needed
             return null;
         }
-        // generate an IV
-        byte[] iv = new byte[blockSize];
+        // generate an IV; AEAD algorithms take a 96-bit nonce regardless
+        // of their block size
+        int ivLength = blockSize;
+        if( alg instanceof EncryptionAlgorithm &&
+                ((EncryptionAlgorithm)alg).isAEAD() ) {
+            ivLength = EncryptionAlgorithm.AEAD_IV_LENGTH;
+        }
+        byte[] iv = new byte[ivLength];
         try {
             SecureRandom random = SecureRandom.getInstance("pkcs11prng",
                                                        "Mozilla-JSS");
@@ -261,7 +316,11 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
         }
 
         for (int i = 0; i < paramClasses.length; i ++) {
-            if( paramClasses[i].equals( javax.crypto.spec.IvParameterSpec.class ) ) {
+            if( paramClasses[i].equals( GCMParameterSpec.class ) ) {
+                algParSpec = new GCMParameterSpec(
+                    EncryptionAlgorithm.AEAD_TAG_LENGTH * 8, iv);
+                break;
+            } else if( paramClasses[i].equals( javax.crypto.spec.IvParameterSpec.class ) ) {
                 algParSpec = new javax.crypto.spec.IvParameterSpec(iv);
                 break;
             } else if ( paramClasses[i].equals( RC2ParameterSpec.class ) ) {
@@ -286,6 +345,8 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
         }
         if( params instanceof IvParameterSpec) {
             return ((IvParameterSpec)params).getIV();
+        } else if( params instanceof GCMParameterSpec ) {
+            return ((GCMParameterSpec)params).getIV();
         } else if( params instanceof RC2ParameterSpec ) {
             return ((RC2ParameterSpec)params).getIV();
         } else {
@@ -296,7 +357,18 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
     public AlgorithmParameters engineGetParameters() {
         AlgorithmParameters algParams = null;
          try {
-            if(( params instanceof IvParameterSpec )
+            if( params instanceof GCMParameterSpec ) {
+                algParams = AlgorithmParameters.getInstance("GCM");
+                algParams.init(params);
+            } else if( encAlg != null && encAlg.isAEAD() ) {
+                // ChaCha20-Poly1305 parameters only exist on Java 11+
+                try {
+                    algParams = AlgorithmParameters.getInstance(algFamily);
+                    algParams.init(params);
+                } catch(NoSuchAlgorithmException e) {
+                    algParams = null;
+                }
+            } else if(( params instanceof IvParameterSpec )
                || ( params instanceof RC2ParameterSpec )) {
                 algParams = AlgorithmParameters.getInstance(algFamily);
                 algParams.init(params);
@@ -310,6 +382,16 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
     }
 
     public int engineGetOutputSize(int inputLen) {
+        if( cipher != null && encAlg.isAEAD() ) {
+            // The whole message is processed by doFinal(), which appends
+            // or strips the tag.
+            int total = aeadBuffered + inputLen;
+            if( opmode == Cipher.ENCRYPT_MODE ) {
+                return total + tagLength;
+            }
+            return Math.max(total - tagLength, 0);
+        }
+
         int total = (blockSize-1) + inputLen;
         return ((total / blockSize) + 1) * blockSize;
     }
@@ -321,22 +403,72 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             throw new IllegalStateException();
         }
         try {
+            if( encAlg.isAEAD() ) {
+                aeadBuffered += inputLen;
+            }
             return cipher.update(input, inputOffset, inputLen);
         } catch(TokenException te) {
             throw new TokenRuntimeException(te.getMessage());
         }
     }
 
+    public void engineUpdateAAD(byte[] src, int offset, int len) {
+        if( cipher == null ) {
+            throw new IllegalStateException();
+        }
+        try {
+            cipher.updateAAD(src, offset, len);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    public void engineUpdateAAD(ByteBuffer src) {
+        int len = src.remaining();
+        if( src.hasArray() ) {
+            engineUpdateAAD(src.array(), src.arrayOffset() + src.position(),
+                len);
+            src.position(src.limit());
+        } else {
+            byte[] bytes = new byte[len];
+            src.get(bytes);
+            engineUpdateAAD(bytes, 0, len);
+        }
+    }
+
     public int engineUpdate(byte[] input, int inputOffset, int inputLen,
         byte[] output, int outputOffset) throws ShortBufferException
     {
-        byte[] bytes = engineUpdate(input, inputOffset, inputLen);
-        if( bytes.length > output.length-outputOffset ) {
-            throw new ShortBufferException(bytes.length +  " needed, " +
-                (output.length-outputOffset) + " supplied");
+        if(cipher == null) {
+            throw new IllegalStateException();
+        }
+        try {
+            if( encAlg.isAEAD() ) {
+                aeadBuffered += inputLen;
+            }
+            return cipher.update(input, inputOffset, inputLen, output,
+                outputOffset);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    public int engineUpdate(ByteBuffer input, ByteBuffer output)
+        throws ShortBufferException
+    {
+        if(cipher == null) {
+            throw new IllegalStateException();
+        }
+        int inputLen = input.remaining();
+        checkOutputSize(inputLen, output);
+        try {
+            if( encAlg.isAEAD() ) {
+                aeadBuffered += inputLen;
+            }
+            return cipher.update(input, output);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
         }
-        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
-        return bytes.length;
     }
 
     public byte[] engineDoFinal(byte[] input, int inputOffset, int inputLen)
@@ -347,6 +479,7 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             // get here
             throw new IllegalStateException();
         }
+        aeadBuffered = 0;
         try {
             if( input == null || inputLen == 0) {
                 return cipher.doFinal();
@@ -367,13 +500,59 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             throws ShortBufferException, IllegalBlockSizeException,
             BadPaddingException
     {
-        byte[] bytes = engineDoFinal(input, inputOffset, inputLen);
-        if( bytes.length > output.length-outputOffset ) {
-            throw new ShortBufferException(bytes.length +  " needed, " +
-                (output.length-outputOffset) + " supplied");
+        if( cipher == null ) {
+            throw new IllegalStateException();
+        }
+        if( input == null ) {
+            input = new byte[0];
+            inputOffset = 0;
+            inputLen = 0;
+        }
+        aeadBuffered = 0;
+        try {
+            return cipher.doFinal(input, inputOffset, inputLen, output,
+                outputOffset);
+        } catch(IllegalStateException ise) {
+            throw ise;
+        } catch(org.mozilla.jss.crypto.IllegalBlockSizeException ibse) {
+            throw new IllegalBlockSizeException(ibse.getMessage());
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    public int engineDoFinal(ByteBuffer input, ByteBuffer output)
+            throws ShortBufferException, IllegalBlockSizeException,
+            BadPaddingException
+    {
+        if( cipher == null ) {
+            throw new IllegalStateException();
+        }
+        checkOutputSize(input.remaining(), output);
+        aeadBuffered = 0;
+        try {
+            return cipher.doFinal(input, output);
+        } catch(IllegalStateException ise) {
+            throw ise;
+        } catch(org.mozilla.jss.crypto.IllegalBlockSizeException ibse) {
+            throw new IllegalBlockSizeException(ibse.getMessage());
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    /**
+     * Like CipherSpi, refuses ByteBuffer operations up front when the
+     * output might not fit, so no input is consumed.
+     */
+    private void checkOutputSize(int inputLen, ByteBuffer output)
+        throws ShortBufferException
+    {
+        int needed = engineGetOutputSize(inputLen);
+        if( output.remaining() < needed ) {
+            throw new ShortBufferException(needed + " needed, " +
+                output.remaining() + " supplied");
         }
-        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
-        return bytes.length;
     }
 
     public byte[] engineWrap(Key key)
@@ -503,6 +682,18 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             super("AES");
         }
     }
+    static public class AES_GCM extends JSSCipherSpi {
+        public AES_GCM() {
+            super("AES");
+            engineSetMode("GCM");
+            engineSetPadding("NoPadding");
+        }
+    }
+    static public class ChaCha20Poly1305 extends JSSCipherSpi {
+        public ChaCha20Poly1305() {
+            super("ChaCha20-Poly1305");
+        }
+    }
     static public class RC4 extends JSSCipherSpi {
         public RC4() {
             super("RC4");
@@ -89,6 +89,11 @@ public class JSSKeyGeneratorSpi extends javax.crypto.KeyGeneratorSpi {
             super(KeyGenAlgorithm.AES);
         }
     }
+    public static class ChaCha20 extends JSSKeyGeneratorSpi {
+        public ChaCha20() {
+            super(KeyGenAlgorithm.CHACHA20);
+        }
+    }
     public static class RC4 extends JSSKeyGeneratorSpi {
         public RC4() {
             super(KeyGenAlgorithm.RC4);
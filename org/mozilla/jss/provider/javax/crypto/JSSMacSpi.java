@@ -21,7 +21,7 @@ import org.mozilla.jss.crypto.SymmetricKey;
 import org.mozilla.jss.crypto.TokenRuntimeException;
 import org.mozilla.jss.crypto.TokenSupplierManager;
 
-public class JSSMacSpi extends javax.crypto.MacSpi {
+public class JSSMacSpi extends javax.crypto.MacSpi implements Cloneable {
 
     private JSSMessageDigest digest=null;
     private DigestAlgorithm alg;
@@ -98,7 +98,9 @@ public class JSSMacSpi extends javax.crypto.MacSpi {
     }
 
     public Object clone() throws CloneNotSupportedException {
-        throw new CloneNotSupportedException();
+        JSSMacSpi copy = (JSSMacSpi) super.clone();
+        copy.digest = digest.clone();
+        return copy;
     }
 
     public static class HmacSHA1 extends JSSMacSpi {
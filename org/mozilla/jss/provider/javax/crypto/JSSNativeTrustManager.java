@@ -16,6 +16,10 @@ import javax.net.ssl.X509TrustManager;
  * this obeys. No other configuration is possible. This is more performant
  * than other TrustManagers, because it saves a JNI call and handles the NSS
  * callback directly.
+ *
+ * Because validation happens entirely within NSS, results are not stored in
+ * the JSSChainCache used by JSSTrustManager; applications
+ * which repeatedly see the same peer chains may prefer JSSTrustManager.
  */
 public class JSSNativeTrustManager implements X509TrustManager {
     private String error_msg = getClass().getName() + " should not be used "
@@ -26,8 +26,23 @@ import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
-import javax.net.ssl.X509KeyManager;
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.naming.ldap.Rdn;
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.StandardConstants;
+import javax.net.ssl.X509ExtendedKeyManager;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.NotInitializedException;
@@ -37,14 +52,28 @@ import org.mozilla.jss.pkcs11.PK11Cert;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class JSSTokenKeyManager implements JSSKeyManager {
+/**
+ * KeyManager backed by the NSS database, or by a JSS KeyStore on top of it.
+ *
+ * On the server side, the alias is selected from the host name the client
+ * requested via SNI: the first key entry whose certificate has a matching
+ * dNSName SubjectAltName (or, lacking SubjectAltNames, a matching CN) and
+ * a public key of the requested type is chosen. The key entries are indexed
+ * by the names their certificates serve; the index is rebuilt when
+ * CryptoManager reports a modification of the certificate database.
+ */
+public class JSSTokenKeyManager extends X509ExtendedKeyManager implements JSSKeyManager {
 
     final static Logger logger = LoggerFactory.getLogger(JSSTokenKeyManager.class);
 
+    final static int SAN_DNS_NAME = 2;
+
     private KeyStore jks;
     private CryptoManager cm;
     private char[] password;
 
+    private volatile ServerAliasIndex serverAliases;
+
     public JSSTokenKeyManager(KeyStore jssKeyStore, char[] password) {
         jks = jssKeyStore;
         this.password = password;
@@ -66,10 +95,225 @@ public class JSSTokenKeyManager implements JSSKeyManager {
 
     @Override
     public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
-        logger.debug("JSSKeyManager: chooseServerAlias() - not implemented");
+        logger.debug("JSSKeyManager: chooseServerAlias(" + keyType + ")");
+
+        if (!(socket instanceof SSLSocket)) {
+            return null;
+        }
+
+        return chooseServerAlias(keyType, ((SSLSocket) socket).getHandshakeSession());
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        logger.debug("JSSKeyManager: chooseEngineServerAlias(" + keyType + ")");
+
+        if (engine == null) {
+            return null;
+        }
+
+        return chooseServerAlias(keyType, engine.getHandshakeSession());
+    }
+
+    /**
+     * Returns the alias of the key entry serving the first host name
+     * requested in the given handshake session, or null when there is no
+     * such host name or entry.
+     */
+    String chooseServerAlias(String keyType, SSLSession session) {
+
+        if (!(session instanceof ExtendedSSLSession)) {
+            return null;
+        }
+
+        List<SNIServerName> names = ((ExtendedSSLSession) session).getRequestedServerNames();
+        for (SNIServerName name : names) {
+            if (name.getType() != StandardConstants.SNI_HOST_NAME) {
+                continue;
+            }
+
+            String host = ((SNIHostName) name).getAsciiName();
+            String alias = findServerAlias(keyType, host);
+            if (alias != null) {
+                logger.debug("JSSKeyManager: selected " + alias + " for " + host);
+                return alias;
+            }
+        }
+
         return null;
     }
 
+    /**
+     * Returns the alias of the first key entry whose certificate serves
+     * the given host name and has a key of the given type, or null when
+     * there is none.
+     */
+    public String findServerAlias(String keyType, String host) {
+
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) {
+            host = host.substring(0, host.length() - 1);
+        }
+
+        ServerAliasIndex index = getServerAliasIndex();
+        ServerAlias match = index.find(index.names.get(host), keyType, null);
+
+        int dot = host.indexOf('.');
+        if (dot > 0) {
+            match = index.find(index.wildcards.get(host.substring(dot)), keyType, match);
+        }
+
+        return match == null ? null : match.alias;
+    }
+
+    ServerAliasIndex getServerAliasIndex() {
+
+        long modCount = cm.getCertDBModCount();
+        ServerAliasIndex index = serverAliases;
+        if (index != null && index.modCount == modCount) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = serverAliases;
+            if (index == null || index.modCount != modCount) {
+                index = buildServerAliasIndex(modCount);
+                serverAliases = index;
+            }
+        }
+
+        return index;
+    }
+
+    ServerAliasIndex buildServerAliasIndex(long modCount) {
+
+        logger.debug("JSSKeyManager: indexing key entries by host name");
+        ServerAliasIndex index = new ServerAliasIndex(modCount);
+
+        int order = 0;
+        for (String alias : getKeyAliases()) {
+            X509Certificate cert;
+            try {
+                cert = (X509Certificate) getCertificate(alias);
+            } catch (Exception e) {
+                logger.debug("JSSKeyManager: unable to get certificate " + alias + ": " + e);
+                continue;
+            }
+
+            if (cert == null) {
+                continue;
+            }
+
+            ServerAlias entry = new ServerAlias(alias, cert, order++);
+            for (String name : getHostNames(cert)) {
+                Map<String, List<ServerAlias>> map = index.names;
+                if (name.startsWith("*.")) {
+                    map = index.wildcards;
+                    name = name.substring(1);
+                }
+
+                List<ServerAlias> entries = map.computeIfAbsent(name, n -> new ArrayList<>(1));
+                if (!entries.contains(entry)) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        return index;
+    }
+
+    List<String> getKeyAliases() {
+
+        List<String> aliases = new ArrayList<>();
+
+        try {
+            if (jks != null) {
+                Enumeration<String> e = jks.aliases();
+                while (e.hasMoreElements()) {
+                    String alias = e.nextElement();
+                    if (jks.isKeyEntry(alias)) {
+                        aliases.add(alias);
+                    }
+                }
+
+                return aliases;
+            }
+
+            for (org.mozilla.jss.crypto.X509Certificate cert : cm.getPermCerts()) {
+                String nickname = cert.getNickname();
+                if (nickname == null || aliases.contains(nickname)) {
+                    continue;
+                }
+
+                try {
+                    cm.findPrivKeyByCert(cert);
+                    aliases.add(nickname);
+                } catch (ObjectNotFoundException e) {
+                    // not a key entry
+                }
+            }
+
+        } catch (Exception e) {
+            logger.warn("JSSKeyManager: unable to list key entries: " + e.getMessage(), e);
+        }
+
+        return aliases;
+    }
+
+    /**
+     * Returns the lower-case host names a certificate serves: its dNSName
+     * SubjectAltNames or, lacking those, its CNs. A leading wildcard label
+     * matches exactly one label of the host name.
+     */
+    static List<String> getHostNames(X509Certificate cert) {
+
+        List<String> names = new ArrayList<>();
+
+        Collection<List<?>> sans = null;
+        try {
+            sans = cert.getSubjectAlternativeNames();
+        } catch (Exception e) {
+            logger.debug("JSSKeyManager: invalid SubjectAltName in " + cert.getSubjectDN() + ": " + e);
+        }
+
+        if (sans != null) {
+            for (List<?> san : sans) {
+                if (((Integer) san.get(0)) == SAN_DNS_NAME) {
+                    names.add(normalizeName((String) san.get(1)));
+                }
+            }
+
+            // Per RFC 6125, the CN is only consulted when there are no
+            // dNSName SubjectAltNames.
+            if (!names.isEmpty()) {
+                return names;
+            }
+        }
+
+        try {
+            LdapName dn = new LdapName(cert.getSubjectX500Principal().getName());
+            for (Rdn rdn : dn.getRdns()) {
+                if (rdn.getType().equalsIgnoreCase("CN")) {
+                    names.add(normalizeName(rdn.getValue().toString()));
+                }
+            }
+        } catch (InvalidNameException e) {
+            logger.debug("JSSKeyManager: invalid subject " + cert.getSubjectDN() + ": " + e);
+        }
+
+        return names;
+    }
+
+    static String normalizeName(String name) {
+
+        name = name.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+
+        return name;
+    }
+
     public org.mozilla.jss.crypto.X509Certificate getCertificate(String alias) {
         try {
             if (jks == null) {
@@ -135,4 +379,70 @@ public class JSSTokenKeyManager implements JSSKeyManager {
         logger.debug("JSSKeyManager: getServerAliases() - not implemented");
         return null;
     }
+
+    /**
+     * Key entries by the host names they serve, for one modification
+     * count of the certificate database. Wildcard names are keyed by the
+     * suffix following the wildcard label, including its leading dot.
+     */
+    static class ServerAliasIndex {
+        final long modCount;
+        final Map<String, List<ServerAlias>> names = new HashMap<>();
+        final Map<String, List<ServerAlias>> wildcards = new HashMap<>();
+
+        ServerAliasIndex(long modCount) {
+            this.modCount = modCount;
+        }
+
+        /**
+         * Returns the first of the given entries, in key entry order, that
+         * has a key of the given type and a currently valid certificate,
+         * unless the given match comes first.
+         */
+        ServerAlias find(List<ServerAlias> entries, String keyType, ServerAlias match) {
+            if (entries == null) {
+                return match;
+            }
+
+            for (ServerAlias entry : entries) {
+                if (match != null && match.order < entry.order) {
+                    break;
+                }
+
+                if (entry.accepts(keyType)) {
+                    return entry;
+                }
+            }
+
+            return match;
+        }
+    }
+
+    static class ServerAlias {
+        final String alias;
+        final X509Certificate cert;
+        final String keyType;
+        final int order;
+
+        ServerAlias(String alias, X509Certificate cert, int order) {
+            this.alias = alias;
+            this.cert = cert;
+            this.keyType = cert.getPublicKey().getAlgorithm();
+            this.order = order;
+        }
+
+        boolean accepts(String keyType) {
+            if (keyType != null && !keyType.equals(this.keyType)) {
+                return false;
+            }
+
+            try {
+                cert.checkValidity();
+            } catch (Exception e) {
+                return false;
+            }
+
+            return true;
+        }
+    }
 }
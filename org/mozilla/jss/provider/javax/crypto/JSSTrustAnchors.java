@@ -0,0 +1,407 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.provider.javax.crypto;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.NotInitializedException;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.mozilla.jss.netscape.security.x509.AuthorityKeyIdentifierExtension;
+import org.mozilla.jss.netscape.security.x509.KeyIdentifier;
+import org.mozilla.jss.netscape.security.x509.SubjectKeyIdentifierExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the trusted CA certificates in the NSS database.
+ *
+ * The CA certificates are loaded once from CryptoManager.getCACerts() and
+ * indexed by subject DN and by SubjectKeyIdentifier, so that the issuer of
+ * a certificate can be found from its issuer DN and AuthorityKeyIdentifier
+ * without trying a signature verification against every CA.
+ *
+ * The index is rebuilt when the refresh interval elapses, when certificates
+ * are imported through CryptoManager, when the certificate database files
+ * in the NSS database directory are modified, or when invalidate() is
+ * called. Each load has a new generation number, which JSSTrustManager
+ * includes in its JSSChainCache keys, so chains validated against other
+ * anchors are not reused. Reloading the index also clears the shared
+ * JSSChainCache to free their entries.
+ */
+public class JSSTrustAnchors {
+
+    final static Logger logger = LoggerFactory.getLogger(JSSTrustAnchors.class);
+
+    final static String SUBJECT_KEY_ID_OID = "2.5.29.14";
+    final static String AUTHORITY_KEY_ID_OID = "2.5.29.35";
+
+    /**
+     * Default interval after which the index is rebuilt unconditionally.
+     */
+    public final static long DEFAULT_REFRESH_INTERVAL = 60 * 60 * 1000;
+
+    /**
+     * Minimum interval between two checks of the NSS database files.
+     */
+    final static long DB_CHECK_INTERVAL = 5 * 1000;
+
+    final static String[] CERT_DB_FILES = { "cert9.db", "cert8.db" };
+
+    private static final JSSTrustAnchors instance = new JSSTrustAnchors();
+
+    /**
+     * Numbers the loaded indexes of all instances, so that results derived
+     * from one set of anchors can't be mistaken for those of another.
+     */
+    private static final AtomicLong generations = new AtomicLong();
+
+    private volatile long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+    private volatile Index index;
+
+    /**
+     * Returns the trust anchor index shared by all JSSTrustManagers.
+     */
+    public static JSSTrustAnchors getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the interval, in milliseconds, after which the index is rebuilt
+     * even if no change to the NSS database was detected. A value of zero
+     * or less disables the periodic refresh.
+     */
+    public void setRefreshInterval(long refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    public long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Discards the current index; it will be rebuilt on next use.
+     */
+    public void invalidate() {
+        logger.debug("JSSTrustAnchors: invalidating trust anchors");
+        index = null;
+    }
+
+    /**
+     * Returns the valid CA certificates in the NSS database.
+     */
+    public X509Certificate[] getAnchors() {
+        return getIndex().anchors.clone();
+    }
+
+    /**
+     * Returns the trust anchors which may have issued the given
+     * certificate. If the certificate has an AuthorityKeyIdentifier
+     * matching the SubjectKeyIdentifier of a valid trust anchor, only the
+     * matching anchors are returned; otherwise the valid anchors whose
+     * subject matches the issuer of the certificate are returned, which
+     * includes anchors without a SubjectKeyIdentifier and renewed anchors
+     * replacing expired ones. Anchors which have expired since the index
+     * was built are skipped.
+     */
+    public X509Certificate[] getIssuers(X509Certificate cert) {
+
+        Index index = getIndex();
+        List<X509Certificate> issuers = null;
+
+        String aki = getAuthorityKeyID(cert);
+        if (aki != null) {
+            issuers = getValid(index.byKeyID.get(aki));
+        }
+
+        if (issuers == null || issuers.isEmpty()) {
+            String issuer = cert.getIssuerX500Principal().getName(X500Principal.CANONICAL);
+            issuers = getValid(index.bySubject.get(issuer));
+        }
+
+        return issuers.toArray(new X509Certificate[issuers.size()]);
+    }
+
+    static List<X509Certificate> getValid(List<X509Certificate> candidates) {
+
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+
+        List<X509Certificate> valid = new ArrayList<>(candidates.size());
+        for (X509Certificate candidate : candidates) {
+            try {
+                candidate.checkValidity();
+                valid.add(candidate);
+            } catch (Exception e) {
+                logger.debug("JSSTrustAnchors: invalid CA certificate: " + e);
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * Returns the CA certificates to index, by default those of the NSS
+     * database.
+     */
+    protected X509Certificate[] loadCACerts() throws NotInitializedException {
+
+        org.mozilla.jss.crypto.X509Certificate[] certs = CryptoManager.getInstance().getCACerts();
+
+        X509Certificate[] caCerts = new X509Certificate[certs.length];
+        for (int i = 0; i < certs.length; i++) {
+            caCerts[i] = (X509Certificate) certs[i];
+        }
+
+        return caCerts;
+    }
+
+    /**
+     * Returns a counter which changes whenever the CA certificates may
+     * have changed, by default CryptoManager.getCertDBModCount().
+     */
+    protected long getCertDBModCount() throws NotInitializedException {
+        return CryptoManager.getInstance().getCertDBModCount();
+    }
+
+    /**
+     * Returns the NSS database directory whose certificate database files
+     * are watched for changes, or null if there are none.
+     */
+    protected String getConfigDir() throws NotInitializedException {
+        return CryptoManager.getInstance().getConfigDir();
+    }
+
+    Index getIndex() {
+
+        Index current = index;
+        long now = System.currentTimeMillis();
+
+        if (current != null && !isStale(current, now)) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = index;
+            if (current == null || isStale(current, now)) {
+                current = load(now);
+                index = current;
+
+                // chains validated against the previous anchors may no
+                // longer be trusted
+                JSSChainCache.getInstance().clear();
+            }
+        }
+
+        return current;
+    }
+
+    boolean isStale(Index current, long now) {
+
+        long modCount;
+        try {
+            modCount = getCertDBModCount();
+        } catch (NotInitializedException e) {
+            return true;
+        }
+
+        return current.isStale(now, refreshInterval, modCount);
+    }
+
+    Index load(long now) {
+
+        logger.debug("JSSTrustAnchors: loading trust anchors:");
+
+        // Read the change markers before the certificates, so that a
+        // concurrent import causes another reload rather than being missed.
+        long modCount;
+        File[] dbFiles;
+        X509Certificate[] caCerts;
+        try {
+            modCount = getCertDBModCount();
+            dbFiles = getCertDBFiles(getConfigDir());
+            caCerts = loadCACerts();
+        } catch (NotInitializedException e) {
+            logger.error("JSSTrustAnchors: Unable to get CryptoManager: " + e, e);
+            throw new RuntimeException(e);
+        }
+        long dbModified = lastModified(dbFiles);
+
+        List<X509Certificate> anchors = new ArrayList<>();
+        Map<String, List<X509Certificate>> bySubject = new HashMap<>();
+        Map<String, List<X509Certificate>> byKeyID = new HashMap<>();
+
+        for (X509Certificate caCert : caCerts) {
+            logger.debug("JSSTrustAnchors:  - " + caCert.getSubjectDN());
+
+            try {
+                caCert.checkValidity();
+            } catch (Exception e) {
+                logger.debug("JSSTrustAnchors: invalid CA certificate: " + e);
+                continue;
+            }
+
+            anchors.add(caCert);
+
+            String subject = caCert.getSubjectX500Principal().getName(X500Principal.CANONICAL);
+            bySubject.computeIfAbsent(subject, k -> new ArrayList<>()).add(caCert);
+
+            String ski = getSubjectKeyID(caCert);
+            if (ski != null) {
+                byKeyID.computeIfAbsent(ski, k -> new ArrayList<>()).add(caCert);
+            }
+        }
+
+        logger.debug("JSSTrustAnchors: loaded " + anchors.size() + " trust anchors");
+
+        return new Index(
+                anchors.toArray(new X509Certificate[anchors.size()]),
+                Collections.unmodifiableMap(bySubject),
+                Collections.unmodifiableMap(byKeyID),
+                now, modCount, dbFiles, dbModified);
+    }
+
+    static File[] getCertDBFiles(String configDir) {
+
+        if (configDir == null || configDir.isEmpty()) {
+            return new File[0];
+        }
+
+        // strip NSS database type prefix, e.g. sql:/path/to/nssdb
+        int colon = configDir.indexOf(':');
+        if (colon > 0 && configDir.substring(0, colon).matches("[a-z]+")) {
+            configDir = configDir.substring(colon + 1);
+        }
+
+        File[] files = new File[CERT_DB_FILES.length];
+        for (int i = 0; i < CERT_DB_FILES.length; i++) {
+            files[i] = new File(configDir, CERT_DB_FILES[i]);
+        }
+
+        return files;
+    }
+
+    static long lastModified(File[] files) {
+
+        long result = 0;
+        for (File file : files) {
+            result = Math.max(result, file.lastModified());
+        }
+
+        return result;
+    }
+
+    static String getSubjectKeyID(X509Certificate cert) {
+
+        byte[] value = getExtensionValue(cert, SUBJECT_KEY_ID_OID);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            // (boolean, byte[]) would take the DER encoding as the key ID
+            SubjectKeyIdentifierExtension ext = new SubjectKeyIdentifierExtension(Boolean.FALSE, value);
+            KeyIdentifier id = (KeyIdentifier) ext.get(SubjectKeyIdentifierExtension.KEY_ID);
+            return id == null ? null : Utils.HexEncode(id.getIdentifier());
+
+        } catch (IOException e) {
+            logger.debug("JSSTrustAnchors: invalid SKI in " + cert.getSubjectDN() + ": " + e);
+            return null;
+        }
+    }
+
+    static String getAuthorityKeyID(X509Certificate cert) {
+
+        byte[] value = getExtensionValue(cert, AUTHORITY_KEY_ID_OID);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            AuthorityKeyIdentifierExtension ext = new AuthorityKeyIdentifierExtension(Boolean.FALSE, value);
+            KeyIdentifier id = (KeyIdentifier) ext.get(AuthorityKeyIdentifierExtension.KEY_ID);
+            return id == null ? null : Utils.HexEncode(id.getIdentifier());
+
+        } catch (IOException e) {
+            logger.debug("JSSTrustAnchors: invalid AKI in " + cert.getSubjectDN() + ": " + e);
+            return null;
+        }
+    }
+
+    static byte[] getExtensionValue(X509Certificate cert, String oid) {
+
+        // getExtensionValue() returns the extnValue OCTET STRING
+        byte[] encoded = cert.getExtensionValue(oid);
+        if (encoded == null) {
+            return null;
+        }
+
+        try {
+            return new DerValue(encoded).getOctetString();
+        } catch (IOException e) {
+            logger.debug("JSSTrustAnchors: invalid extension " + oid + ": " + e);
+            return null;
+        }
+    }
+
+    static class Index {
+
+        final X509Certificate[] anchors;
+        final Map<String, List<X509Certificate>> bySubject;
+        final Map<String, List<X509Certificate>> byKeyID;
+
+        final long generation = generations.incrementAndGet();
+        final long created;
+        final long modCount;
+        final File[] dbFiles;
+        final long dbModified;
+
+        volatile long lastDBCheck;
+
+        Index(X509Certificate[] anchors,
+                Map<String, List<X509Certificate>> bySubject,
+                Map<String, List<X509Certificate>> byKeyID,
+                long created, long modCount, File[] dbFiles, long dbModified) {
+            this.anchors = anchors;
+            this.bySubject = bySubject;
+            this.byKeyID = byKeyID;
+            this.created = created;
+            this.modCount = modCount;
+            this.dbFiles = dbFiles;
+            this.dbModified = dbModified;
+            this.lastDBCheck = created;
+        }
+
+        boolean isStale(long now, long refreshInterval, long currentModCount) {
+
+            if (refreshInterval > 0 && now - created >= refreshInterval) {
+                return true;
+            }
+
+            if (currentModCount != modCount) {
+                return true;
+            }
+
+            if (now - lastDBCheck < DB_CHECK_INTERVAL) {
+                return false;
+            }
+
+            lastDBCheck = now;
+            return lastModified(dbFiles) != dbModified;
+        }
+    }
+}
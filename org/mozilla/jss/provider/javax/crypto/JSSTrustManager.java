@@ -21,17 +21,13 @@ package org.mozilla.jss.provider.javax.crypto;
 
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 
 import javax.net.ssl.X509TrustManager;
 
-import org.mozilla.jss.CryptoManager;
-import org.mozilla.jss.NotInitializedException;
-import org.mozilla.jss.pkcs11.PK11Cert;
 import org.mozilla.jss.netscape.security.util.Cert;
+import org.mozilla.jss.netscape.security.x509.CRLStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,15 +35,117 @@ public class JSSTrustManager implements X509TrustManager {
 
     final static Logger logger = LoggerFactory.getLogger(JSSTrustManager.class);
 
-    final static String SERVER_AUTH_OID = "1.3.6.1.5.5.7.3.1";
-    final static String CLIENT_AUTH_OID = "1.3.6.1.5.5.7.3.2";
+    public final static String SERVER_AUTH_OID = "1.3.6.1.5.5.7.3.1";
+    public final static String CLIENT_AUTH_OID = "1.3.6.1.5.5.7.3.2";
 
     public boolean allowMissingExtendedKeyUsage = false;
 
+    JSSTrustAnchors trustAnchors = JSSTrustAnchors.getInstance();
+    JSSChainCache chainCache = JSSChainCache.getInstance();
+    CRLStore crlStore;
+
     public void configureAllowMissingExtendedKeyUsage(boolean allow) {
         allowMissingExtendedKeyUsage = allow;
     }
 
+    /**
+     * Sets the cache of validated certificate chains used by this trust
+     * manager. Passing null disables caching.
+     */
+    public void setChainCache(JSSChainCache chainCache) {
+        this.chainCache = chainCache;
+    }
+
+    public JSSChainCache getChainCache() {
+        return chainCache;
+    }
+
+    /**
+     * Sets the trust anchors chains are validated against. Cached results
+     * are only used while the anchors are unchanged.
+     */
+    public void setTrustAnchors(JSSTrustAnchors trustAnchors) {
+        this.trustAnchors = trustAnchors;
+    }
+
+    public JSSTrustAnchors getTrustAnchors() {
+        return trustAnchors;
+    }
+
+    /**
+     * Sets the store of CRLs that certificates are checked against,
+     * including those of cached chains. Passing null disables the check.
+     */
+    public void setCRLStore(CRLStore crlStore) {
+        this.crlStore = crlStore;
+    }
+
+    public CRLStore getCRLStore() {
+        return crlStore;
+    }
+
+    /**
+     * Returns true if the given chain was already validated by a
+     * JSSTrustManager with the same configuration for the given key usage
+     * and the cached result is still valid. The cache is shared between
+     * trust managers with different CRL stores, so a cached chain is only
+     * trusted if none of its certificates is revoked in this trust
+     * manager's CRL store.
+     */
+    public boolean isCachedTrusted(X509Certificate[] certChain, String keyUsage) {
+        JSSChainCache cache = chainCache;
+        if (cache == null) {
+            return false;
+        }
+
+        // results validated against other trust anchors don't match
+        long anchors = trustAnchors.getIndex().generation;
+
+        if (!cache.contains(certChain, getCacheUsage(keyUsage, anchors))) {
+            return false;
+        }
+
+        // revocations may have been added since the chain was cached
+        CRLStore store = crlStore;
+        if (store != null) {
+            for (X509Certificate cert : certChain) {
+                if (store.isRevoked(cert)) {
+                    logger.debug("JSSTrustManager: cached certificate revoked: " + cert.getSubjectDN());
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    String getCacheUsage(String keyUsage, long anchors) {
+        String usage = keyUsage + ";anchors=" + anchors;
+        if (allowMissingExtendedKeyUsage) {
+            return usage + ";allowMissingEKU";
+        }
+        return usage;
+    }
+
+    void checkCertChainCached(X509Certificate[] certChain, String keyUsage) throws Exception {
+
+        // read before validating, so that a result validated while the
+        // anchors were reloaded is never used with the new anchors
+        long anchors = trustAnchors.getIndex().generation;
+
+        if (isCachedTrusted(certChain, keyUsage)) {
+            logger.debug("JSSTrustManager: certificate chain found in cache");
+            return;
+        }
+
+        checkCertChain(certChain, keyUsage);
+
+        JSSChainCache cache = chainCache;
+        if (cache != null) {
+            cache.put(certChain, getCacheUsage(keyUsage, anchors));
+        }
+    }
+
     public void checkCertChain(X509Certificate[] certChain, String keyUsage) throws Exception {
 
         logger.debug("JSSTrustManager: checkCertChain(" + keyUsage + ")");
@@ -59,8 +157,8 @@ public class JSSTrustManager implements X509TrustManager {
             logger.debug("JSSTrustManager:  - " + cert.getSubjectDN());
         }
 
-        // get CA certs
-        X509Certificate[] caCerts = getAcceptedIssuers();
+        // find the trust anchors which may have issued the root
+        X509Certificate[] caCerts = trustAnchors.getIssuers(certChain[0]);
 
         // validating cert chain from root to leaf
         for (int i = 0; i < certChain.length; i++) {
@@ -115,6 +213,8 @@ public class JSSTrustManager implements X509TrustManager {
         logger.debug("JSSTrustManager:  - not after: " + cert.getNotAfter());
         cert.checkValidity();
 
+        checkRevocation(cert);
+
         if (keyUsage != null) {
 
             List<String> extendedKeyUsages = cert.getExtendedKeyUsage();
@@ -153,13 +253,20 @@ public class JSSTrustManager implements X509TrustManager {
         }
     }
 
+    void checkRevocation(X509Certificate cert) throws CertificateException {
+        CRLStore store = crlStore;
+        if (store != null && store.isRevoked(cert)) {
+            throw new CertificateException("Certificate revoked: " + cert.getSubjectDN());
+        }
+    }
+
     @Override
     public void checkClientTrusted(X509Certificate[] certChain, String authType) throws CertificateException {
 
         logger.debug("JSSTrustManager: checkClientTrusted(" + authType + "):");
 
         try {
-            checkCertChain(certChain, CLIENT_AUTH_OID);
+            checkCertChainCached(certChain, CLIENT_AUTH_OID);
             logger.debug("JSSTrustManager: SSL client certificate is valid");
 
         } catch (CertificateException e) {
@@ -178,7 +285,7 @@ public class JSSTrustManager implements X509TrustManager {
         logger.debug("JSSTrustManager: checkServerTrusted(" + certChain.length + ", " + authType + "):");
 
         try {
-            checkCertChain(certChain, SERVER_AUTH_OID);
+            checkCertChainCached(certChain, SERVER_AUTH_OID);
             logger.debug("JSSTrustManager: SSL server certificate is valid");
 
         } catch (CertificateException e) {
@@ -196,28 +303,12 @@ public class JSSTrustManager implements X509TrustManager {
 
         logger.debug("JSSTrustManager: getAcceptedIssuers():");
 
-        Collection<X509Certificate> caCerts = new ArrayList<>();
-
-        try {
-            CryptoManager manager = CryptoManager.getInstance();
-            for (org.mozilla.jss.crypto.X509Certificate cert : manager.getCACerts()) {
-                logger.debug("JSSTrustManager:  - " + cert.getSubjectDN());
+        X509Certificate[] caCerts = trustAnchors.getAnchors();
 
-                try {
-                    PK11Cert caCert = (PK11Cert) cert;
-                    caCert.checkValidity();
-                    caCerts.add(caCert);
-
-                } catch (Exception e) {
-                    logger.debug("JSSTrustManager: invalid CA certificate: " + e);
-                }
-            }
-
-        } catch (NotInitializedException e) {
-            logger.error("JSSTrustManager: Unable to get CryptoManager: " + e, e);
-            throw new RuntimeException(e);
+        for (X509Certificate caCert : caCerts) {
+            logger.debug("JSSTrustManager:  - " + caCert.getSubjectDN());
         }
 
-        return caCerts.toArray(new X509Certificate[caCerts.size()]);
+        return caCerts;
     }
 }
@@ -17,6 +17,7 @@ import org.mozilla.jss.ssl.javax.JSSEngine;
 import org.mozilla.jss.ssl.javax.JSSEngineReferenceImpl;
 import org.mozilla.jss.ssl.javax.JSSParameters;
 import org.mozilla.jss.ssl.javax.JSSServerSocketFactory;
+import org.mozilla.jss.ssl.javax.JSSSessionContext;
 import org.mozilla.jss.ssl.javax.JSSSocketFactory;
 import org.mozilla.jss.ssl.SSLVersion;
 
@@ -28,6 +29,9 @@ public class JSSContextSpi extends SSLContextSpi {
 
     SSLVersion protocol_version;
 
+    JSSSessionContext client_session_context = new JSSSessionContext(false);
+    JSSSessionContext server_session_context = new JSSSessionContext(true);
+
     public void engineInit(KeyManager[] kms, TrustManager[] tms, SecureRandom sr) throws KeyManagementException {
         logger.debug("JSSContextSpi.engineInit(" + kms + ", " + tms + ", " + sr + ")");
 
@@ -73,6 +77,8 @@ public class JSSContextSpi extends SSLContextSpi {
     private void initializeEngine(JSSEngine eng) {
         eng.setKeyManager(key_manager);
         eng.setTrustManagers(trust_managers);
+        eng.setSessionContext(client_session_context);
+        eng.setSessionContext(server_session_context);
 
         if (protocol_version != null) {
             eng.setEnabledProtocols(protocol_version, protocol_version);
@@ -80,13 +86,13 @@ public class JSSContextSpi extends SSLContextSpi {
     }
 
     public SSLSessionContext engineGetClientSessionContext() {
-        logger.debug("JSSContextSpi.engineGetClientSessionContext() - not implemented");
-        return null;
+        logger.debug("JSSContextSpi.engineGetClientSessionContext()");
+        return client_session_context;
     }
 
     public SSLSessionContext engineGetServerSessionContext() {
-        logger.debug("JSSContextSpi.engineGetServerSessionContext() - not implemented");
-        return null;
+        logger.debug("JSSContextSpi.engineGetServerSessionContext()");
+        return server_session_context;
     }
 
     public SSLServerSocketFactory engineGetServerSocketFactory() {
@@ -272,6 +272,30 @@ finish:
     return;
 }
 
+JNIEXPORT jboolean JNICALL
+Java_org_mozilla_jss_ssl_SSLSocket_advanceHandshake(JNIEnv *env, jobject self)
+{
+    JSSL_SocketData *sock = NULL;
+    jboolean done = JNI_FALSE;
+    int rv;
+
+    if( JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL) goto finish;
+
+    /* On a non-blocking socket, this makes as much progress as the
+     * socket allows and reports PR_WOULD_BLOCK_ERROR if it has to wait. */
+    rv = SSL_ForceHandshake(sock->fd);
+    if( rv == SECSuccess ) {
+        done = JNI_TRUE;
+    } else if( PR_GetError() != PR_WOULD_BLOCK_ERROR ) {
+        JSSL_throwSSLSocketException(env, "SSL_ForceHandshake failed");
+        goto finish;
+    }
+
+finish:
+    EXCEPTION_CHECK(env, sock)
+    return done;
+}
+
 /*
  * linger
  *      The linger time, in seconds.
@@ -938,7 +962,11 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketRead(JNIEnv *env, jobject self,
     if( nread < 0 ) {
         PRErrorCode err = PR_GetError();
 
-        if( err == PR_PENDING_INTERRUPT_ERROR ) {
+        if( err == PR_WOULD_BLOCK_ERROR ) {
+            /* non-blocking socket with nothing to read yet */
+            nread = 0;
+            goto finish;
+        } else if( err == PR_PENDING_INTERRUPT_ERROR ) {
 #ifdef WINNT
             /* Clean up after PR_interrupt called by abortReadWrite. */
             PR_NT_CancelIo(sock->fd);
@@ -992,7 +1020,7 @@ finish:
     return available;
 }
 
-JNIEXPORT void JNICALL 
+JNIEXPORT jint JNICALL 
 Java_org_mozilla_jss_ssl_SSLSocket_socketWrite(JNIEnv *env, jobject self, 
     jbyteArray bufBA, jint off, jint len, jint timeout)
 {
@@ -1001,7 +1029,7 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketWrite(JNIEnv *env, jobject self,
     jint size;
     PRIntervalTime ivtimeout;
     PRThread *me;
-    PRInt32 numwrit;
+    PRInt32 numwrit = 0;
 
     if (!JSS_RefByteArray(env, bufBA, &buf, &size)) {
         goto finish;
@@ -1040,7 +1068,11 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketWrite(JNIEnv *env, jobject self,
 
     if( numwrit < 0 ) {
         PRErrorCode err = PR_GetError();
-        if( err == PR_PENDING_INTERRUPT_ERROR ) {
+        numwrit = 0;
+        if( err == PR_WOULD_BLOCK_ERROR ) {
+            /* non-blocking socket which can't take more data yet */
+            goto finish;
+        } else if( err == PR_PENDING_INTERRUPT_ERROR ) {
 #ifdef WINNT
             /* clean up after PR_Interrupt called by abortReadWrite. */
             PR_NT_CancelIo(sock->fd);
@@ -1062,12 +1094,58 @@ Java_org_mozilla_jss_ssl_SSLSocket_socketWrite(JNIEnv *env, jobject self,
         }
         goto finish;
     }
-    /* PR_Send is supposed to block until it sends everything */
-    PR_ASSERT(numwrit == len);
+    /* PR_Send blocks until it sends everything, unless the socket is
+     * non-blocking */
 
 finish:
     JSS_DerefByteArray(env, bufBA, buf, JNI_ABORT);
     EXCEPTION_CHECK(env, sock)
+    return numwrit;
+}
+
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_ssl_SSLSocket_setBlockingNative(JNIEnv *env,
+    jobject self, jboolean blocking)
+{
+    PRSocketOptionData sockOptions;
+    PRStatus status;
+    JSSL_SocketData *sock = NULL;
+
+    if( JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL ) {
+        goto finish;
+    }
+
+    sockOptions.option = PR_SockOpt_Nonblocking;
+    sockOptions.value.non_blocking = !blocking;
+
+    status = PR_SetSocketOption(sock->fd, &sockOptions);
+
+    if( status != PR_SUCCESS ) {
+        JSSL_throwSSLSocketException(env, "PR_SetSocketOption failed");
+        goto finish;
+    }
+
+finish:
+    EXCEPTION_CHECK(env, sock)
+    return;
+}
+
+JNIEXPORT jboolean JNICALL
+Java_org_mozilla_jss_ssl_SSLSocket_isNativeSocket(JNIEnv *env, jobject self)
+{
+    JSSL_SocketData *sock = NULL;
+    jboolean result = JNI_FALSE;
+
+    if( JSSL_getSockData(env, self, &sock) != PR_SUCCESS || sock == NULL ) {
+        goto finish;
+    }
+
+    /* Java socket wrappers have private data for the upcalls */
+    result = (sock->jsockPriv == NULL) ? JNI_TRUE : JNI_FALSE;
+
+finish:
+    EXCEPTION_CHECK(env, sock)
+    return result;
 }
 
 JNIEXPORT void JNICALL
@@ -11,6 +11,8 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -374,6 +376,9 @@ public class SSLSocket extends java.net.Socket {
     private boolean open = false;
     private boolean handshakeAsClient = true;
     private SocketBase base = new SocketBase();
+    private SocketChannel channel;
+    private SSLSocketChannel sslChannel;
+    private volatile boolean blocking = true;
     static final public int SSL_REQUIRE_NEVER =
            org.mozilla.jss.ssl.SocketBase.SSL_REQUIRE_NEVER;
     static final public int SSL_REQUIRE_ALWAYS =
@@ -613,6 +618,72 @@ public class SSLSocket extends java.net.Socket {
         resetHandshake();
     }
 
+    /**
+     * Creates an SSL client socket on the given connected socket channel.
+     *  Installs the given callbacks for certificate approval and client
+     *  certificate selection.
+     *
+     * <p>Unlike a socket wrapping a <code>java.net.Socket</code>, whose
+     *  reads and writes call back into the Java socket's streams for every
+     *  TLS record, this socket performs its I/O directly on the OS socket
+     *  of the channel when the platform allows it. The channel must be in
+     *  blocking mode and must not be used for I/O afterwards; it is closed
+     *  along with this socket. Use the <code>java.net.Socket</code>
+     *  constructor for sockets provided by socket factories or other
+     *  implementations which aren't backed by an OS socket.
+     *
+     * @param channel The connected socket channel to use for I/O.
+     * @param host The hostname of the remote side of the connection.
+     *      This name is used to verify the server's certificate.
+     * @param certApprovalCallback A callback that can be used to override
+     *      approval of the peer's certificate.
+     * @param clientCertSelectionCallback A callback to select the client
+     *      certificate to present to the peer.
+     */
+    public SSLSocket(SocketChannel channel, String host,
+        SSLCertificateApprovalCallback certApprovalCallback,
+        SSLClientCertificateSelectionCallback clientCertSelectionCallback)
+            throws IOException
+    {
+        if( !channel.isConnected() ) {
+            throw new SocketException("Socket channel is not connected");
+        }
+        if( !channel.isBlocking() ) {
+            throw new IllegalBlockingModeException();
+        }
+        this.channel = channel;
+
+        // create the socket
+        sockProxy =
+            new SocketProxy(
+                base.socketCreate(
+                    this, certApprovalCallback, clientCertSelectionCallback,
+                    channel, channel.socket(), host, SocketBase.SSL_AF_INET ) );
+
+        base.setProxy(sockProxy);
+        resetHandshake();
+    }
+
+    /**
+     * Returns a channel view of this socket, which can switch NSPR to
+     *  non-blocking I/O and register the underlying socket channel with a
+     *  <code>java.nio.channels.Selector</code>. Only sockets created on a
+     *  <code>SocketChannel</code> whose OS socket NSPR uses directly
+     *  have one.
+     *
+     * @return The channel, or null if this socket has none.
+     * @see SSLSocketChannel
+     */
+    public SSLSocketChannel getSSLChannel() throws SocketException {
+        synchronized (this) {
+            if( sslChannel == null && channel != null && !isClosed
+                    && isNativeSocket() ) {
+                sslChannel = new SSLSocketChannel(this, channel);
+            }
+            return sslChannel;
+        }
+    }
+
     /**
      * @return The remote peer's IP address or null if the SSLSocket is closed.
      */
@@ -787,6 +858,11 @@ public class SSLSocket extends java.net.Socket {
                 base.setProxy(null);
             }
         }
+
+        if( channel != null ) {
+            // NSPR closed its own descriptor for the channel's socket.
+            channel.close();
+        }
     }
 
     private native void socketConnect(byte[] addr, String hostname, int port)
@@ -1492,6 +1568,26 @@ public class SSLSocket extends java.net.Socket {
         throws IOException;
 
     int read(byte[] b, int off, int len)
+        throws IOException, SocketTimeoutException {
+        if( !blocking ) {
+            throw new IllegalBlockingModeException();
+        }
+        return channelRead(b, off, len);
+    }
+
+    void write(byte[] b, int off, int len)
+        throws IOException, SocketTimeoutException {
+        if( !blocking ) {
+            throw new IllegalBlockingModeException();
+        }
+        channelWrite(b, off, len);
+    }
+
+    /**
+     * Reads into the array. In non-blocking mode, returns 0 if no data
+     * is available yet.
+     */
+    int channelRead(byte[] b, int off, int len)
         throws IOException, SocketTimeoutException {
         synchronized (readLock) {
             synchronized (this) {
@@ -1519,7 +1615,11 @@ public class SSLSocket extends java.net.Socket {
         }
     }
 
-    void write(byte[] b, int off, int len)
+    /**
+     * Writes from the array. In non-blocking mode, returns the number of
+     * bytes the socket accepted, which may be less than len.
+     */
+    int channelWrite(byte[] b, int off, int len)
         throws IOException, SocketTimeoutException {
         synchronized (writeLock) {
             synchronized (this) {
@@ -1530,7 +1630,7 @@ public class SSLSocket extends java.net.Socket {
                 inWrite = true;
             }
             try {
-                socketWrite(b, off, len, base.getTimeout());
+                return socketWrite(b, off, len, base.getTimeout());
             } catch (SocketTimeoutException ste) {
                 throw new SocketTimeoutException(
                     "SocketTimeoutException cannot write on socket: " + ste);
@@ -1545,10 +1645,55 @@ public class SSLSocket extends java.net.Socket {
         }
     }
 
+    /**
+     * Switches NSPR between blocking and non-blocking I/O on this socket.
+     */
+    void setBlocking(boolean blocking) throws SocketException {
+        synchronized (readLock) {
+            synchronized (writeLock) {
+                setBlockingNative(blocking);
+                this.blocking = blocking;
+            }
+        }
+    }
+
+    boolean isBlocking() {
+        return blocking;
+    }
+
+    /**
+     * Makes progress on the handshake without blocking on a non-blocking
+     * socket.
+     *
+     * @return true once the handshake has completed.
+     */
+    boolean handshake() throws SocketException {
+        synchronized (readLock) {
+            synchronized (writeLock) {
+                return advanceHandshake();
+            }
+        }
+    }
+
+    private native void setBlockingNative(boolean blocking)
+        throws SocketException;
+
+    /**
+     * Returns whether NSPR performs this socket's I/O directly on an OS
+     *  socket. This is false for sockets wrapping a
+     *  <code>java.net.Socket</code>, and for sockets created on a
+     *  <code>SocketChannel</code> whose OS socket couldn't be determined,
+     *  which call back into the Java socket's streams for every read and
+     *  write.
+     */
+    public native boolean isNativeSocket() throws SocketException;
+
+    private native boolean advanceHandshake() throws SocketException;
+
     private native int socketRead(byte[] b, int off, int len, int timeout)
         throws IOException;
 
-    private native void socketWrite(byte[] b, int off, int len, int timeout)
+    private native int socketWrite(byte[] b, int off, int len, int timeout)
         throws IOException;
 
     /**
@@ -0,0 +1,286 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.ssl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A non-blocking channel view of a legacy {@link SSLSocket}.
+ *
+ * <p>The socket must have been created on a <code>SocketChannel</code>, so
+ * that NSPR performs its I/O directly on the channel's OS socket; see
+ * {@link SSLSocket#getSSLChannel()}. In non-blocking mode, NSPR returns
+ * instead of waiting, and a single thread can serve many connections
+ * with a <code>Selector</code>:
+ *
+ * <ul>
+ * <li>{@link #read(ByteBuffer)} returns 0 and {@link #write(ByteBuffer)}
+ *  accepts fewer bytes than offered when the socket would block.
+ * <li>{@link #handshake()} advances the handshake and returns whether it
+ *  has completed. Reads and writes also advance it implicitly.
+ * <li>NSS decrypts whole records, so plaintext may remain buffered while
+ *  the OS socket has nothing more to read, and a selector won't report
+ *  the socket as readable. Only wait for <code>OP_READ</code> after
+ *  {@link #read(ByteBuffer)} has returned 0; {@link #available()} tells
+ *  how much buffered plaintext is left.
+ * </ul>
+ *
+ * <p>This isn't a <code>SelectableChannel</code>: JDK selectors only
+ * accept channels of their own provider, so selection is performed on the
+ * underlying <code>SocketChannel</code>. {@link #register(Selector, int)}
+ * registers that channel with this one as the attachment; the
+ * <code>channel()</code> of the resulting key is the
+ * <code>SocketChannel</code>, and its readiness is that of the OS socket.
+ *
+ * <p>The socket's streams can't be used while the channel is in
+ * non-blocking mode. Closing the channel closes the socket, along with the
+ * underlying <code>SocketChannel</code>.
+ */
+public class SSLSocketChannel implements ByteChannel {
+
+    // Size of the buffers used for direct ByteBuffers: a TLS record's
+    // worth of plaintext.
+    private static final int BOUNCE_SIZE = 16384;
+
+    private final SSLSocket socket;
+    private final SocketChannel channel;
+    private final Object blockingLock = new Object();
+    private volatile boolean open = true;
+
+    // Bounce data between direct buffers and the native code, which
+    // reads and writes Java arrays.
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+    private byte[] readBuffer;
+    private byte[] writeBuffer;
+
+    SSLSocketChannel(SSLSocket socket, SocketChannel channel) {
+        this.socket = socket;
+        this.channel = channel;
+    }
+
+    /**
+     * Creates an SSL client socket on the given connected socket channel
+     * and returns its channel view.
+     *
+     * @see SSLSocket#SSLSocket(SocketChannel, String,
+     *      SSLCertificateApprovalCallback, SSLClientCertificateSelectionCallback)
+     * @throws IOException If the socket can't be created, or NSPR can't
+     *      use the OS socket of the channel directly.
+     */
+    public static SSLSocketChannel open(SocketChannel channel, String host,
+            SSLCertificateApprovalCallback certApprovalCallback,
+            SSLClientCertificateSelectionCallback clientCertSelectionCallback)
+            throws IOException {
+        SSLSocket socket = new SSLSocket(channel, host, certApprovalCallback,
+                clientCertSelectionCallback);
+        SSLSocketChannel result = socket.getSSLChannel();
+        if (result == null) {
+            socket.close();
+            throw new IOException("Unable to use the OS socket of the channel");
+        }
+        return result;
+    }
+
+    /**
+     * @return The SSL socket this is a view of.
+     */
+    public SSLSocket socket() {
+        return socket;
+    }
+
+    /**
+     * @return The underlying socket channel, on which selection happens.
+     */
+    public SocketChannel getSocketChannel() {
+        return channel;
+    }
+
+    /**
+     * Makes progress on the handshake. In blocking mode, this completes
+     * the handshake; in non-blocking mode, it returns as soon as the
+     * socket would block.
+     *
+     * @return true once the handshake has completed.
+     */
+    public boolean handshake() throws IOException {
+        ensureOpen();
+        return socket.handshake();
+    }
+
+    /**
+     * @return The number of decrypted bytes which can be read without
+     *      reading from the OS socket.
+     */
+    public int available() throws IOException {
+        ensureOpen();
+        return socket.socketAvailable();
+    }
+
+    /**
+     * Reads decrypted data into the buffer.
+     *
+     * @return The number of bytes read, 0 if a non-blocking read would
+     *      block, or -1 at the end of the stream.
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        int len = dst.remaining();
+        if (len == 0) {
+            return 0;
+        }
+
+        if (dst.hasArray()) {
+            int read = socket.channelRead(dst.array(),
+                    dst.arrayOffset() + dst.position(), len);
+            if (read > 0) {
+                dst.position(dst.position() + read);
+            }
+            return read;
+        }
+
+        synchronized (readLock) {
+            if (readBuffer == null) {
+                readBuffer = new byte[BOUNCE_SIZE];
+            }
+            int read = socket.channelRead(readBuffer, 0, Math.min(len, BOUNCE_SIZE));
+            if (read > 0) {
+                dst.put(readBuffer, 0, read);
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Encrypts and writes data from the buffer.
+     *
+     * @return The number of bytes written, which in non-blocking mode may
+     *      be less than the bytes remaining, or 0.
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+
+        int len = src.remaining();
+        if (len == 0) {
+            return 0;
+        }
+
+        if (src.hasArray()) {
+            int written = socket.channelWrite(src.array(),
+                    src.arrayOffset() + src.position(), len);
+            src.position(src.position() + written);
+            return written;
+        }
+
+        synchronized (writeLock) {
+            if (writeBuffer == null) {
+                writeBuffer = new byte[BOUNCE_SIZE];
+            }
+
+            int total = 0;
+            while (src.hasRemaining()) {
+                int position = src.position();
+                int chunk = Math.min(src.remaining(), BOUNCE_SIZE);
+                src.get(writeBuffer, 0, chunk);
+
+                int written = socket.channelWrite(writeBuffer, 0, chunk);
+                src.position(position + written);
+                total += written;
+
+                if (written < chunk) {
+                    // non-blocking socket is full
+                    break;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Registers the underlying socket channel with the selector, with this
+     * channel as the attachment of the key. This channel must be in
+     * non-blocking mode.
+     *
+     * @param sel The selector.
+     * @param ops The interest set, of <code>OP_READ</code> and
+     *      <code>OP_WRITE</code>.
+     * @return The key of the underlying socket channel.
+     */
+    public SelectionKey register(Selector sel, int ops)
+            throws ClosedChannelException {
+        if ((ops & ~(SelectionKey.OP_READ | SelectionKey.OP_WRITE)) != 0) {
+            throw new IllegalArgumentException("Invalid operations: " + ops);
+        }
+
+        synchronized (blockingLock) {
+            ensureOpen();
+            if (isBlocking()) {
+                throw new IllegalBlockingModeException();
+            }
+            return channel.register(sel, ops, this);
+        }
+    }
+
+    /**
+     * Switches NSPR between blocking and non-blocking I/O. The underlying
+     * socket channel is switched to non-blocking mode along with it, so
+     * that it can be registered; NSPR never relies on the OS socket to
+     * block.
+     */
+    public SSLSocketChannel configureBlocking(boolean block) throws IOException {
+        synchronized (blockingLock) {
+            ensureOpen();
+            if (block == isBlocking()) {
+                return this;
+            }
+            if (block && channel.isRegistered()) {
+                throw new IllegalBlockingModeException();
+            }
+
+            if (!block) {
+                channel.configureBlocking(false);
+            }
+            socket.setBlocking(block);
+            return this;
+        }
+    }
+
+    public boolean isBlocking() {
+        return socket.isBlocking();
+    }
+
+    @Override
+    public boolean isOpen() {
+        // closing the socket closes the underlying channel
+        return open && channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (blockingLock) {
+            if (!open) {
+                return;
+            }
+            open = false;
+        }
+        socket.close();
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+}
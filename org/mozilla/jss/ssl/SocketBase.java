@@ -11,6 +11,7 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.nio.channels.SocketChannel;
 import java.util.Enumeration;
 
 import org.mozilla.jss.CryptoManager;
@@ -39,18 +40,35 @@ class SocketBase {
         this.sockProxy = sockProxy;
     }
 
+    /**
+     * Creates the NSPR socket. When a channel is given, the socket is built
+     * on the OS descriptor of the channel and I/O doesn't go through Java;
+     * if the descriptor isn't available, the Java socket is wrapped
+     * instead, and every read and write calls back into its streams. With
+     * neither, a new native TCP socket is created.
+     */
     native byte[] socketCreate(Object socketObject,
             SSLCertificateApprovalCallback certApprovalCallback,
             SSLClientCertificateSelectionCallback clientCertSelectionCallback,
-            java.net.Socket javaSock, String host, int family)
+            SocketChannel channel, java.net.Socket javaSock, String host,
+            int family)
             throws SocketException;
 
+    byte[] socketCreate(Object socketObject,
+            SSLCertificateApprovalCallback certApprovalCallback,
+            SSLClientCertificateSelectionCallback clientCertSelectionCallback,
+            java.net.Socket javaSock, String host, int family)
+            throws SocketException {
+        return socketCreate(socketObject, certApprovalCallback,
+                clientCertSelectionCallback, null, javaSock, host, family);
+    }
+
     byte[] socketCreate(Object socketObject,
             SSLCertificateApprovalCallback certApprovalCallback,
             SSLClientCertificateSelectionCallback clientCertSelectionCallback, int family)
             throws SocketException {
         return socketCreate(socketObject, certApprovalCallback,
-                clientCertSelectionCallback, null, null, family);
+                clientCertSelectionCallback, null, null, null, family);
     }
 
     native void socketBind(byte[] addrBA, int port) throws SocketException;
@@ -115,7 +115,8 @@ finish:
 JNIEXPORT jbyteArray JNICALL
 Java_org_mozilla_jss_ssl_SocketBase_socketCreate(JNIEnv *env, jobject self,
     jobject sockObj, jobject certApprovalCallback,
-    jobject clientCertSelectionCallback, jobject javaSock, jstring host,jint family)
+    jobject clientCertSelectionCallback, jobject channel, jobject javaSock,
+    jstring host, jint family)
 {
     jbyteArray sdArray = NULL;
     JSSL_SocketData *sockdata = NULL;
@@ -135,7 +136,16 @@ Java_org_mozilla_jss_ssl_SocketBase_socketCreate(JNIEnv *env, jobject self,
     else
        socketFamily = PR_AF_INET6;
 
-    if( javaSock == NULL ) {
+    if( channel != NULL ) {
+        /* use the OS socket of the channel directly, so that I/O doesn't
+         * call back into Java; fall back to the Java socket if the
+         * descriptor isn't available. */
+        newFD = JSS_SSL_channelToPRFD(env, channel);
+    }
+
+    if( newFD != NULL ) {
+        /* I/O goes straight to the OS socket */
+    } else if( javaSock == NULL ) {
         /* create a TCP socket */
         newFD = PR_OpenTCPSocket(socketFamily);
         if( newFD == NULL ) {
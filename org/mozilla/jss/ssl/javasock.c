@@ -11,6 +11,12 @@
 #include <prerr.h>
 #include <nss.h>
 #include <ssl.h>
+#include <private/pprio.h>
+
+#ifndef WIN32
+#include <unistd.h>
+#include <sys/socket.h>
+#endif
 
 #include "jssutil.h"
 #include "java_ids.h"
@@ -992,3 +998,90 @@ JSS_SSL_javasockToPRFD(JNIEnv *env, jobject sockObj)
     }
     return fd;
 }
+
+/*
+ * Returns the OS descriptor of a SocketChannel, read from the fields of
+ * the JDK implementation, or -1 if it can't be determined. Field lookups
+ * through JNI aren't subject to module access checks.
+ */
+static int
+getChannelOSFD(JNIEnv *env, jobject channel)
+{
+    jclass clazz;
+    jfieldID fieldID;
+    jobject fdObj;
+
+    clazz = (*env)->GetObjectClass(env, channel);
+    if( clazz == NULL ) {
+        return -1;
+    }
+
+    /* sun.nio.ch.SocketChannelImpl caches the descriptor as an int */
+    fieldID = (*env)->GetFieldID(env, clazz, "fdVal", "I");
+    if( fieldID != NULL ) {
+        return (*env)->GetIntField(env, channel, fieldID);
+    }
+    (*env)->ExceptionClear(env);
+
+    fieldID = (*env)->GetFieldID(env, clazz, "fd", "Ljava/io/FileDescriptor;");
+    if( fieldID == NULL ) {
+        (*env)->ExceptionClear(env);
+        return -1;
+    }
+    fdObj = (*env)->GetObjectField(env, channel, fieldID);
+    if( fdObj == NULL ) {
+        return -1;
+    }
+
+    clazz = (*env)->GetObjectClass(env, fdObj);
+    fieldID = (*env)->GetFieldID(env, clazz, "fd", "I");
+    if( fieldID == NULL ) {
+        (*env)->ExceptionClear(env);
+        return -1;
+    }
+    return (*env)->GetIntField(env, fdObj, fieldID);
+}
+
+PRFileDesc*
+JSS_SSL_channelToPRFD(JNIEnv *env, jobject channel)
+{
+#ifdef WIN32
+    /* Socket handles can't be duplicated here; use the Java socket. */
+    return NULL;
+#else
+    PRFileDesc *fd;
+    int osfd;
+    int type = 0;
+    socklen_t typeLen = sizeof(type);
+
+    osfd = getChannelOSFD(env, channel);
+    if( osfd < 0 ) {
+        return NULL;
+    }
+
+    /*
+     * The descriptor comes from private fields of the JDK, which may change
+     * meaning in other releases; only use it if it's a stream socket.
+     */
+    if( getsockopt(osfd, SOL_SOCKET, SO_TYPE, &type, &typeLen) != 0 ||
+        type != SOCK_STREAM ) {
+        return NULL;
+    }
+
+    /*
+     * NSPR owns the descriptor it imports and closes it with the
+     * PRFileDesc, while the channel still closes its own. Give NSPR a
+     * duplicate so that neither closes a descriptor reused by the other.
+     */
+    osfd = dup(osfd);
+    if( osfd < 0 ) {
+        return NULL;
+    }
+
+    fd = PR_ImportTCPSocket(osfd);
+    if( fd == NULL ) {
+        close(osfd);
+    }
+    return fd;
+#endif
+}
@@ -32,12 +32,40 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
     public static Logger logger = LoggerFactory.getLogger(JSSEngine.class);
 
     /**
-     * Size of the underlying BUFFERs.
+     * System property overriding the default size of the underlying
+     * BUFFERs, in bytes.
+     */
+    public static final String BUFFER_SIZE_PROPERTY = "org.mozilla.jss.ssl.javax.JSSEngine.bufferSize";
+
+    /**
+     * System property enabling adaptive buffer sizing by default.
+     */
+    public static final String ADAPTIVE_BUFFERS_PROPERTY = "org.mozilla.jss.ssl.javax.JSSEngine.adaptiveBuffers";
+
+    /**
+     * Size of the largest TLS record on the wire: a 16KB payload plus the
+     * maximum expansion allowed by the protocol and the record header.
+     */
+    public static final int MAX_RECORD_SIZE = (1 << 14) + 2048 + 5;
+
+    /**
+     * Default size of the underlying BUFFERs.
      *
      * Helps to be large enough to fit most common SSL packets during the
-     * initial handshake.
+     * initial handshake. Can be overridden via BUFFER_SIZE_PROPERTY.
      */
-    protected static int BUFFER_SIZE = 1 << 12;
+    protected static int BUFFER_SIZE = Integer.getInteger(BUFFER_SIZE_PROPERTY, 1 << 12);
+
+    /**
+     * Size of the underlying BUFFERs of this engine; see setBufferSize.
+     */
+    protected int buffer_size = BUFFER_SIZE > 0 ? BUFFER_SIZE : 1 << 12;
+
+    /**
+     * Whether the underlying BUFFERs grow to full record size under bulk
+     * transfer and shrink back when idle; see setAdaptiveBuffers.
+     */
+    protected boolean adaptive_buffers = Boolean.getBoolean(ADAPTIVE_BUFFERS_PROPERTY);
 
     /**
      * Whether or not this SSLEngine is acting as the client end of the
@@ -87,6 +115,13 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      */
     protected X509TrustManager[] trust_managers;
 
+    /**
+     * Session contexts tracking the sessions of this JSSEngine, depending
+     * on whether it ends up as a client or a server. Either may be null.
+     */
+    protected JSSSessionContext client_session_context;
+    protected JSSSessionContext server_session_context;
+
     /**
      * Whether or not we should fail to handshake if client authentication
      * is not passed by the peer and we are a server; if we are a client,
@@ -172,10 +207,10 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
     protected HashMap<Integer, Integer> config;
 
     /**
-     * Set of cached server sockets based on the PK11Cert they were
-     * initialized with.
+     * Cache of server sockets based on the PK11Cert they were initialized
+     * with, shared by all server-side JSSEngines.
      */
-    protected static HashMap<PK11Cert, SSLFDProxy> serverTemplates = new HashMap<PK11Cert, SSLFDProxy>();
+    protected static JSSServerTemplateCache serverTemplates = new JSSServerTemplateCache();
 
     /**
      * Whether or not the session cache has been initialized already.
@@ -196,7 +231,7 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
     public JSSEngine() {
         super();
 
-        session = new JSSSession(this, BUFFER_SIZE);
+        session = new JSSSession(this, getSessionBufferSize());
         config = getDefaultConfiguration();
     }
 
@@ -210,7 +245,7 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
     public JSSEngine(String peerHost, int peerPort) {
         super(peerHost, peerPort);
 
-        session = new JSSSession(this, BUFFER_SIZE);
+        session = new JSSSession(this, getSessionBufferSize());
         session.setPeerHost(peerHost);
         session.setPeerPort(peerPort);
         config = getDefaultConfiguration();
@@ -232,12 +267,68 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         cert = (PK11Cert) localCert;
         key = (PK11PrivKey) localKey;
 
-        session = new JSSSession(this, BUFFER_SIZE);
+        session = new JSSSession(this, getSessionBufferSize());
         session.setPeerHost(peerHost);
         session.setPeerPort(peerPort);
         config = getDefaultConfiguration();
     }
 
+    /**
+     * Sets the size, in bytes, of the buffers between this engine and NSS.
+     *
+     * Larger buffers let a full TLS record pass through wrap and unwrap in
+     * a single step at the expense of memory per connection. When adaptive
+     * buffers are enabled, this is the size the buffers start out with and
+     * shrink back to when idle. Takes effect when the handshake begins.
+     */
+    public void setBufferSize(int size) throws IllegalArgumentException {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + size);
+        }
+
+        logger.debug("JSSEngine: setBufferSize(" + size + ")");
+        buffer_size = size;
+        updateSessionBufferSize();
+    }
+
+    public int getBufferSize() {
+        return buffer_size;
+    }
+
+    /**
+     * Sets whether the buffers between this engine and NSS grow to the size
+     * of a full TLS record (MAX_RECORD_SIZE) during bulk transfers and
+     * shrink back to getBufferSize() once the connection is idle.
+     */
+    public void setAdaptiveBuffers(boolean adaptive) {
+        logger.debug("JSSEngine: setAdaptiveBuffers(" + adaptive + ")");
+        adaptive_buffers = adaptive;
+        updateSessionBufferSize();
+    }
+
+    public boolean getAdaptiveBuffers() {
+        return adaptive_buffers;
+    }
+
+    /**
+     * Buffer size to report via JSSSession: the largest size the buffers
+     * can reach.
+     */
+    protected int getSessionBufferSize() {
+        if (adaptive_buffers) {
+            return Math.max(buffer_size, MAX_RECORD_SIZE);
+        }
+
+        return buffer_size;
+    }
+
+    private void updateSessionBufferSize() {
+        if (session != null) {
+            session.setApplicationBufferSize(getSessionBufferSize());
+            session.setPacketBufferSize(getSessionBufferSize());
+        }
+    }
+
     /**
      * Gets the error text from the NSPR layer
      */
@@ -298,6 +389,7 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      *  - certificate alias
      *  - peer's hostname
      *  - ALPN protocols
+     *  - buffer size and adaptive buffers
      */
     public JSSParameters getSSLParameters() {
         JSSParameters ret = new JSSParameters();
@@ -312,6 +404,8 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
 
         ret.setAlias(certAlias);
         ret.setHostname(hostname);
+        ret.setBufferSize(buffer_size);
+        ret.setAdaptiveBuffers(adaptive_buffers);
 
         return ret;
     }
@@ -332,7 +426,9 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      *
      * Unlike the parent, this also understands:
      *  - setCertFromAlias when getAlias is non-null,
-     * - setHostname when getHostname is non-null.
+     * - setHostname when getHostname is non-null,
+     * - setBufferSize when getBufferSize is positive, and
+     * - setAdaptiveBuffers when getAdaptiveBuffers is non-null.
      *
      * Note: this implementation overrides the one in SSLEngine so that we
      * create a JSSParameters object from the passed SSLParameters (if it is
@@ -383,6 +479,14 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         if (parsed.getHostname() != null) {
             setHostname(parsed.getHostname());
         }
+
+        if (parsed.getBufferSize() > 0) {
+            setBufferSize(parsed.getBufferSize());
+        }
+
+        if (parsed.getAdaptiveBuffers() != null) {
+            setAdaptiveBuffers(parsed.getAdaptiveBuffers());
+        }
     }
 
     /**
@@ -804,6 +908,33 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         trust_managers = xtms;
     }
 
+    /**
+     * Set the session context which tracks this JSSEngine's session. Client
+     * and server contexts are kept separately; the one matching the mode
+     * of this engine is used once the handshake completes.
+     */
+    public void setSessionContext(JSSSessionContext context) {
+        if (context == null) {
+            logger.debug("JSSEngine: setSessionContext(null)");
+            return;
+        }
+
+        logger.debug("JSSEngine: setSessionContext(" + (context.isServer() ? "server" : "client") + ")");
+        if (context.isServer()) {
+            server_session_context = context;
+        } else {
+            client_session_context = context;
+        }
+    }
+
+    /**
+     * Get the session context matching the current mode of this JSSEngine,
+     * or null if none was set.
+     */
+    public JSSSessionContext getSessionContext() {
+        return as_server ? server_session_context : client_session_context;
+    }
+
     /**
      * Gets the JSSSession object which reflects the status of this
      * JSS Engine's session.
@@ -813,6 +944,22 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         return session;
     }
 
+    /**
+     * Gets the JSSSession object of the handshake in progress, or null
+     * when no handshake is in progress.
+     *
+     * On the server side, this exposes the server names requested by the
+     * client to X509ExtendedKeyManager.chooseEngineServerAlias(...).
+     */
+    public JSSSession getHandshakeSession() {
+        logger.debug("JSSEngine: getHandshakeSession()");
+        if (ssl_fd == null || ssl_fd.handshakeComplete) {
+            return null;
+        }
+
+        return session;
+    }
+
     /**
      * Whether or not to enable this SSLEngine instance to create new
      * sessions.
@@ -975,28 +1122,25 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
     }
 
     /**
-     * Returns the templated server certificate, if one exists.
+     * Returns the cache of server templates shared by all server-side
+     * JSSEngines, e.g., to invalidate the template of a rotated
+     * certificate or to inspect its metrics.
      */
-    protected static SSLFDProxy getServerTemplate(PK11Cert cert, PK11PrivKey key) {
+    public static JSSServerTemplateCache getServerTemplateCache() {
+        return serverTemplates;
+    }
+
+    /**
+     * Acquires the templated server certificate, creating it if necessary.
+     * The caller must close the template after passing it to
+     * SSL.ImportFD(...) or SSL.ReconfigFD(...).
+     */
+    protected static JSSServerTemplateCache.Template acquireServerTemplate(PK11Cert cert, PK11PrivKey key) {
         if (cert == null || key == null) {
             return null;
         }
 
-        SSLFDProxy fd = serverTemplates.get(cert);
-        if (fd == null) {
-            PRFDProxy base = PR.NewTCPSocket();
-            fd = SSL.ImportFD(null, base);
-            if (SSL.ConfigServerCert(fd, cert, key) != SSL.SECSuccess) {
-                String msg = "Unable to configure certificate and key on ";
-                msg += "model SSL PRFileDesc proxy: ";
-                msg += errorText(PR.GetError());
-                throw new RuntimeException(msg);
-            }
-
-            serverTemplates.put(cert, fd);
-        }
-
-        return fd;
+        return serverTemplates.acquire(cert, key);
     }
 
     /**
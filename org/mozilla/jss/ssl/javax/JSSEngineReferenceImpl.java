@@ -54,6 +54,12 @@ public class JSSEngineReferenceImpl extends JSSEngine {
      */
     private String peer_info;
 
+    /**
+     * NSS peer ID of this client connection; identifies the peer and the
+     * configuration sessions with it were established under.
+     */
+    private String peer_id;
+
     /**
      * Whether or not the underlying ssl_fd is closed or not.
      *
@@ -72,6 +78,29 @@ public class JSSEngineReferenceImpl extends JSSEngine {
      */
     private BufferProxy write_buf;
 
+    /**
+     * Current capacities of read_buf and write_buf; these differ from
+     * buffer_size only with adaptive buffers.
+     */
+    private int read_buf_size;
+    private int write_buf_size;
+
+    /**
+     * Number of consecutive wrap/unwrap calls with no more than
+     * buffer_size bytes of pending data, while the buffers are grown.
+     */
+    private int idle_buffer_calls;
+
+    /**
+     * Number of idle calls after which grown buffers shrink back.
+     */
+    private static final int BUFFER_SHRINK_THRESHOLD = 16;
+
+    /**
+     * Key types of the server certificates SNI selection may switch to.
+     */
+    private static final String[] SERVER_KEY_TYPES = { "RSA", "EC" };
+
     /**
      * Number of times heuristic has not matched the current state.
      *
@@ -207,16 +236,41 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         debug("JSSEngine: constructor(" + peerHost + ", " + peerPort + ", " + localCert + ", " + localKey + ")");
     }
 
+    // Logging helpers. These check the level before prefixing the message,
+    // and the parameterized variants defer formatting to SLF4J, so neither
+    // allocates when the level is disabled. Messages built by concatenation
+    // at the call site (or with boxed primitives or errorText(...), which
+    // calls into NSPR) are still built eagerly; on the wrap()/unwrap() path,
+    // guard those with logger.isDebugEnabled().
+
     private void debug(String msg) {
-        logger.debug(prefix + msg);
+        if (logger.isDebugEnabled()) {
+            logger.debug(prefix + msg);
+        }
+    }
+
+    private void debug(String format, Object arg) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(prefix + format, arg);
+        }
+    }
+
+    private void debug(String format, Object arg1, Object arg2) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(prefix + format, arg1, arg2);
+        }
     }
 
     private void info(String msg) {
-        logger.info(prefix + msg);
+        if (logger.isInfoEnabled()) {
+            logger.info(prefix + msg);
+        }
     }
 
     private void warn(String msg) {
-        logger.warn(prefix + msg);
+        if (logger.isWarnEnabled()) {
+            logger.warn(prefix + msg);
+        }
     }
 
     /**
@@ -230,6 +284,24 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         prefix = "[" + this.name + "] " + prefix;
     }
 
+    /**
+     * Returns the current capacity of the buffer holding data from the
+     * peer. This only differs from getBufferSize() with adaptive buffers,
+     * and is zero before the handshake begins.
+     */
+    public int getReadBufferSize() {
+        return read_buf_size;
+    }
+
+    /**
+     * Returns the current capacity of the buffer holding data for the
+     * peer. This only differs from getBufferSize() with adaptive buffers,
+     * and is zero before the handshake begins.
+     */
+    public int getWriteBufferSize() {
+        return write_buf_size;
+    }
+
     private void init() throws SSLException {
         debug("JSSEngine: init()");
 
@@ -269,6 +341,10 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // initClient() for the workaround.
         applyHosts();
 
+        // Key session resumption to the peer and our configuration; this
+        // has to happen after the above options are applied.
+        applyResumption();
+
         // Apply TrustManager(s) information for validating the peer's
         // certificate.
         applyTrustManagers();
@@ -285,12 +361,65 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         if (read_buf != null) {
             Buffer.Free(read_buf);
         }
-        read_buf = Buffer.Create(BUFFER_SIZE);
+        read_buf = Buffer.Create(buffer_size);
+        read_buf_size = buffer_size;
 
         if (write_buf != null) {
             Buffer.Free(write_buf);
         }
-        write_buf = Buffer.Create(BUFFER_SIZE);
+        write_buf = Buffer.Create(buffer_size);
+        write_buf_size = buffer_size;
+
+        idle_buffer_calls = 0;
+    }
+
+    /**
+     * With adaptive buffers, grows the buffer about to receive pending
+     * bytes (read_buf when inbound, else write_buf) to full record size, so
+     * bulk transfers take fewer passes and JNI calls through wrap and
+     * unwrap. Once BUFFER_SHRINK_THRESHOLD consecutive calls had no more
+     * than buffer_size bytes pending, grown buffers shrink back to
+     * buffer_size, as soon as their unread contents fit.
+     */
+    private void adaptBuffers(int pending, boolean inbound) {
+        if (!adaptive_buffers || read_buf == null || write_buf == null) {
+            return;
+        }
+
+        int max_size = Math.max(buffer_size, MAX_RECORD_SIZE);
+
+        if (pending > buffer_size) {
+            idle_buffer_calls = 0;
+
+            if (inbound && read_buf_size < max_size && Buffer.Resize(read_buf, max_size)) {
+                debug("JSSEngine.adaptBuffers(): grew read_buf to " + max_size);
+                read_buf_size = max_size;
+            } else if (!inbound && write_buf_size < max_size && Buffer.Resize(write_buf, max_size)) {
+                debug("JSSEngine.adaptBuffers(): grew write_buf to " + max_size);
+                write_buf_size = max_size;
+            }
+
+            return;
+        }
+
+        if (read_buf_size == buffer_size && write_buf_size == buffer_size) {
+            return;
+        }
+
+        idle_buffer_calls += 1;
+        if (idle_buffer_calls < BUFFER_SHRINK_THRESHOLD) {
+            return;
+        }
+
+        if (read_buf_size != buffer_size && Buffer.Resize(read_buf, buffer_size)) {
+            debug("JSSEngine.adaptBuffers(): shrank read_buf to " + buffer_size);
+            read_buf_size = buffer_size;
+        }
+
+        if (write_buf_size != buffer_size && Buffer.Resize(write_buf, buffer_size)) {
+            debug("JSSEngine.adaptBuffers(): shrank write_buf to " + buffer_size);
+            write_buf_size = buffer_size;
+        }
     }
 
     private void createBufferFD() throws SSLException {
@@ -312,18 +441,27 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             throw new SSLException("Error creating buffer-backed PRFileDesc.");
         }
 
-        SSLFDProxy model = null;
+        JSSServerTemplateCache.Template template = null;
         if (as_server) {
             // As a performance improvement, we can copy the server template
             // (containing the desired key and certificate) rather than
             // re-creating it from scratch. This saves a significant amount of
             // time during construction. The implementation lives in JSSEngine,
             // to be shared by all other JSSEngine implementations.
-            model = getServerTemplate(cert, key);
+            template = acquireServerTemplate(cert, key);
+        }
+
+        // Initialize ssl_fd from the model Buffer-backed PRFileDesc. NSS
+        // copies the model's configuration, so the template can be
+        // released right away.
+        try {
+            ssl_fd = SSL.ImportFD(template == null ? null : template.getFD(), fd);
+        } finally {
+            if (template != null) {
+                template.close();
+            }
         }
 
-        // Initialize ssl_fd from the model Buffer-backed PRFileDesc.
-        ssl_fd = SSL.ImportFD(model, fd);
         if (ssl_fd == null) {
             PR.Close(fd);
             throw new SSLException("Error creating SSL socket on top of buffer-backed PRFileDesc.");
@@ -397,12 +535,58 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
         session.setLocalCertificates(new PK11Cert[]{ cert } );
 
-        // Create a small server session cache.
-        //
-        // TODO: Make this configurable.
-        initializeSessionCache(1, 100, null);
+        // Create the server session cache. When created through an
+        // SSLContext, size it from the server session context; otherwise
+        // a small cache suffices.
+        if (server_session_context != null) {
+            initializeSessionCache(server_session_context.getSessionCacheSize(),
+                                   server_session_context.getSessionTimeout(), null);
+        } else {
+            initializeSessionCache(1, 100, null);
+        }
 
         configureClientAuth();
+
+        // With KeyManagers available, let the client's requested server
+        // name select among their certificates. Otherwise, cert is the
+        // only certificate we could serve anyways.
+        if (key_managers != null && key_managers.length > 0) {
+            ssl_fd.sniHandler = new SNISelectionTask();
+            if (SSL.ConfigSNICallback(ssl_fd) == SSL.SECFailure) {
+                throw new SSLException("Unable to configure SNI callback on this JSSEngine: " + errorText(PR.GetError()));
+            }
+        }
+    }
+
+    /**
+     * Re-applies our configuration to ssl_fd after SSL.ReconfigFD(...)
+     * replaced it with the configuration of a server template.
+     */
+    private void reapplyConfiguration() throws SSLException {
+        applyProtocols();
+        applyCiphers();
+        applyConfig();
+        applyTrustManagers();
+        configureClientAuth();
+    }
+
+    private void updateSessionContext() {
+        boolean resumed = false;
+        try {
+            SSLChannelInfo info = session.getChannelInfo();
+            resumed = info != null && info.getResumed();
+        } catch (Exception e) {
+            debug("JSSEngine: unable to determine whether session was resumed: " + e.getMessage());
+        }
+
+        session.setResumed(resumed);
+
+        JSSSessionContext context = getSessionContext();
+        if (context != null) {
+            context.handshakeCompleted(session, resumed);
+        }
+
+        saveResumptionToken();
     }
 
     private void configureClientAuth() throws SSLException {
@@ -521,6 +705,85 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         }
     }
 
+    private void applyResumption() throws SSLException {
+        debug("JSSEngine: applyResumption()");
+
+        // Resumption can only be keyed when we're a client with known peer
+        // information; otherwise leave it up to NSS.
+        if (as_server || peer_info == null || peer_info.length() == 0) {
+            return;
+        }
+
+        peer_id = computePeerID();
+        if (SSL.SetSockPeerID(ssl_fd, peer_id) == SSL.SECFailure) {
+            throw new SSLException("Unable to set peer ID: " + errorText(PR.GetError()));
+        }
+
+        if (client_session_context == null) {
+            return;
+        }
+
+        // Have NSS hand us the tickets for this connection, rather than
+        // caching them itself, and offer the last one this peer gave us.
+        if (SSL.EnableResumptionTokenCallback(ssl_fd) == SSL.SECFailure) {
+            throw new SSLException("Unable to enable resumption token callback: " + errorText(PR.GetError()));
+        }
+
+        byte[] token = client_session_context.takeResumptionToken(peer_id);
+        if (token == null) {
+            return;
+        }
+
+        if (SSL.SetResumptionToken(ssl_fd, token) == SSL.SECFailure) {
+            // The token has most likely expired; this only costs us a full
+            // handshake.
+            debug("JSSEngine: unable to use resumption token: " + errorText(PR.GetError()));
+            return;
+        }
+
+        session.setResumptionOffered(true);
+    }
+
+    private String computePeerID() {
+        StringBuilder id = new StringBuilder(peer_info);
+
+        if (hostname != null) {
+            id.append('|').append(hostname);
+        }
+
+        id.append('|').append(min_protocol).append('-').append(max_protocol);
+
+        id.append('|');
+        if (enabled_ciphers != null) {
+            for (SSLCipher suite : enabled_ciphers) {
+                if (suite != null) {
+                    id.append(Integer.toHexString(suite.getID())).append(',');
+                }
+            }
+        }
+
+        id.append('|').append(new TreeMap<Integer, Integer>(config));
+
+        if (cert != null) {
+            id.append('|').append(cert.getIssuerDN()).append('/').append(cert.getSerialNumber());
+        }
+
+        return id.toString();
+    }
+
+    private void saveResumptionToken() {
+        if (ssl_fd == null || ssl_fd.resumptionToken == null) {
+            return;
+        }
+
+        if (peer_id != null && client_session_context != null) {
+            debug("JSSEngine: storing resumption token for " + peer_info);
+            client_session_context.putResumptionToken(peer_id, ssl_fd.resumptionToken);
+        }
+
+        ssl_fd.resumptionToken = null;
+    }
+
     private void applyTrustManagers() throws SSLException {
         debug("JSSEngine: applyTrustManagers()");
 
@@ -577,17 +840,17 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         try {
             ss_socket = new ServerSocket(debug_port);
             ss_socket.setReuseAddress(true);
-            ss_socket.setReceiveBufferSize(BUFFER_SIZE);
+            ss_socket.setReceiveBufferSize(buffer_size);
 
             c_socket = new Socket(ss_socket.getInetAddress(), ss_socket.getLocalPort());
             c_socket.setReuseAddress(true);
-            c_socket.setReceiveBufferSize(BUFFER_SIZE);
-            c_socket.setSendBufferSize(BUFFER_SIZE);
+            c_socket.setReceiveBufferSize(buffer_size);
+            c_socket.setSendBufferSize(buffer_size);
 
             s_socket = ss_socket.accept();
             s_socket.setReuseAddress(true);
-            s_socket.setReceiveBufferSize(BUFFER_SIZE);
-            s_socket.setSendBufferSize(BUFFER_SIZE);
+            s_socket.setReceiveBufferSize(buffer_size);
+            s_socket.setSendBufferSize(buffer_size);
 
             s_istream = s_socket.getInputStream();
             s_ostream = s_socket.getOutputStream();
@@ -761,7 +1024,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 return true;
             }
 
-            debug("JSSEngine: checkNeedCertValidation() - task done with code " + task.result);
+            if (logger.isDebugEnabled()) {
+                debug("JSSEngine: checkNeedCertValidation() - task done with code {}", task.result);
+            }
 
             // Since the task has finished, we now need to inform NSS about
             // the results of our certificate validation step.
@@ -854,7 +1119,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         int result = 0;
 
         if (buffers == null || buffers.length == 0) {
-            debug("JSSEngine.compueSize(): no buffers - result=" + result);
+            debug("JSSEngine.computeSize(): no buffers - result=0");
             return result;
         }
 
@@ -877,7 +1142,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 // everything else. This commonly happens when null is passed
                 // as the src parameter to wrap or when null is passed as the
                 // dst parameter to unwrap.
-                debug("JSSEngine.computeSize(): null first buffer - result=" + result);
+                debug("JSSEngine.computeSize(): null first buffer - result=0");
                 return result;
             }
 
@@ -888,57 +1153,54 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             result += buffers[index].remaining();
         }
 
-        debug("JSSEngine.computeSize(): result=" + result);
+        if (logger.isDebugEnabled()) {
+            debug("JSSEngine.computeSize(): result=" + result);
+        }
 
         return result;
     }
 
-    private int putData(byte[] data, ByteBuffer[] buffers, int offset, int length) {
-        debug("JSSEngine: putData()");
-        // Handle the rather unreasonable task of moving data into the buffers.
-        // We assume the buffer parameters have already been checked by
+    private int readData(ByteBuffer[] buffers, int offset, int length) {
+        debug("JSSEngine: readData()");
+        // Move decrypted data from ssl_fd straight into the buffers. We
+        // assume the buffer parameters have already been checked by
         // computeSize(...); that is, offset/length contracts hold and that
         // each buffer in the range is non-null.
         //
-        // We also assume that data.length does not exceed the total number
-        // of bytes the buffers can hold; this is what computeSize(...)'s
-        // return value should ensure. This directly means that the inner
-        // while loop won't exceed the bounds of offset+length.
-
-        int buffer_index = offset;
-        int data_index = 0;
-
-        if (data == null || buffers == null) {
-            return data_index;
-        }
+        // Each PR.Read(...) call fills the buffer in place (directly for
+        // direct buffers, else through the backing array), so no
+        // intermediate byte[] is allocated per call. Returns the number of
+        // bytes read or -1 if the first read failed; check PR.GetError() for
+        // the reason.
+        int data_length = 0;
 
-        for (data_index = 0; data_index < data.length;) {
-            // Ensure we have have a buffer with capacity.
-            while ((buffers[buffer_index] == null || buffers[buffer_index].remaining() <= 0) &&
-                    (buffer_index < offset + length)) {
-                buffer_index += 1;
-            }
-            if (buffer_index >= offset + length) {
-                break;
+        for (int index = offset; index < offset + length; index++) {
+            ByteBuffer buffer = buffers[index];
+            if (buffer == null || buffer.remaining() <= 0) {
+                continue;
             }
 
-            // Compute the size of the put: it is the minimum of the space
-            // remaining in this buffer and the bytes remaining in the data
-            // array.
-            int put_size = buffers[buffer_index].remaining();
-            if (put_size > (data.length - data_index)) {
-                put_size = data.length - data_index;
+            int expected_read = buffer.remaining();
+            int this_read = PR.Read(ssl_fd, buffer);
+            if (this_read < 0) {
+                return data_length > 0 ? data_length : -1;
             }
 
-            buffers[buffer_index].put(data, data_index, put_size);
-            data_index += put_size;
+            data_length += this_read;
+
+            if (this_read < expected_read) {
+                // ssl_fd has no more data for us right now.
+                break;
+            }
         }
 
-        return data_index;
+        return data_length;
     }
 
     private SSLException checkSSLAlerts() {
-        debug("JSSEngine: Checking inbound and outbound SSL Alerts. Have " + ssl_fd.inboundAlerts.size() + " inbound and " + ssl_fd.outboundAlerts.size() + " outbound alerts.");
+        if (logger.isDebugEnabled()) {
+            debug("JSSEngine: Checking inbound and outbound SSL Alerts. Have " + ssl_fd.inboundAlerts.size() + " inbound and " + ssl_fd.outboundAlerts.size() + " outbound alerts.");
+        }
 
         // Prefer inbound alerts to outbound alerts.
         while (ssl_fd.inboundOffset < ssl_fd.inboundAlerts.size()) {
@@ -950,7 +1212,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 closeInbound();
             }
 
-            debug("JSSEngine: Got inbound alert: " + event);
+            debug("JSSEngine: Got inbound alert: {}", event);
 
             // Not every SSL Alert is fatal; toException() only returns a
             // SSLException on fatal instances. We shouldn't return NULL
@@ -970,7 +1232,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 closeOutbound();
             }
 
-            debug("JSSEngine: Got outbound alert: " + event);
+            debug("JSSEngine: Got outbound alert: {}", event);
 
             SSLException exception = event.toException();
             if (exception != null) {
@@ -1043,13 +1305,17 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         }
 
         // Check if we've just finished handshaking.
-        debug("JSSEngine.updateHandshakeState() - read_buf.read=" + Buffer.ReadCapacity(read_buf) + " read_buf.write=" + Buffer.WriteCapacity(read_buf) + " write_buf.read=" + Buffer.ReadCapacity(write_buf) + " write_buf.write=" + Buffer.WriteCapacity(write_buf));
+        if (logger.isDebugEnabled()) {
+            debug("JSSEngine.updateHandshakeState() - read_buf.read=" + Buffer.ReadCapacity(read_buf) + " read_buf.write=" + Buffer.WriteCapacity(read_buf) + " write_buf.read=" + Buffer.ReadCapacity(write_buf) + " write_buf.write=" + Buffer.WriteCapacity(write_buf));
+        }
 
         // Set NEED_WRAP when we have data to send to the client.
         if (Buffer.ReadCapacity(write_buf) > 0 && handshake_state != SSLEngineResult.HandshakeStatus.NEED_WRAP) {
             // Can't write; to read, we need to call wrap to provide more
             // data to write.
-            debug("JSSEngine.updateHandshakeState() - can write " + Buffer.ReadCapacity(write_buf) + " bytes, NEED_WRAP to process");
+            if (logger.isDebugEnabled()) {
+                debug("JSSEngine.updateHandshakeState() - can write " + Buffer.ReadCapacity(write_buf) + " bytes, NEED_WRAP to process");
+            }
             handshake_state = SSLEngineResult.HandshakeStatus.NEED_WRAP;
             unknown_state_count = 0;
             return;
@@ -1063,7 +1329,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // but we haven't yet gotten around to doing so if we're in a WRAP()
         // call.
         if (ssl_fd.handshakeComplete && Buffer.ReadCapacity(write_buf) == 0) {
-            debug("JSSEngine.updateHandshakeState() - handshakeComplete is " + ssl_fd.handshakeComplete + ", so we've just finished handshaking");
+            debug("JSSEngine.updateHandshakeState() - handshakeComplete is {}, so we've just finished handshaking", ssl_fd.handshakeComplete);
             step_handshake = false;
             handshake_state = SSLEngineResult.HandshakeStatus.FINISHED;
             unknown_state_count = 0;
@@ -1083,13 +1349,16 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
             // Also update our session information here.
             session.refreshData();
+            updateSessionContext();
 
             return;
         }
 
         if (Buffer.ReadCapacity(read_buf) == 0 && handshake_state != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
             // Set NEED_UNWRAP when we have no data to read from the client.
-            debug("JSSEngine.updateHandshakeState() - can read " + Buffer.ReadCapacity(read_buf) + " bytes, NEED_UNWRAP to give us more");
+            if (logger.isDebugEnabled()) {
+                debug("JSSEngine.updateHandshakeState() - can read " + Buffer.ReadCapacity(read_buf) + " bytes, NEED_UNWRAP to give us more");
+            }
             handshake_state = SSLEngineResult.HandshakeStatus.NEED_UNWRAP;
             unknown_state_count = 0;
             return;
@@ -1136,7 +1405,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
     }
 
     public SSLEngineResult unwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) throws IllegalArgumentException, SSLException {
-        debug("JSSEngine: unwrap(ssl_fd=" + ssl_fd + ")");
+        debug("JSSEngine: unwrap(ssl_fd={})", ssl_fd);
 
         // In this method, we're taking the network wire contents of src and
         // passing them as the read side of our buffer. If there's any data
@@ -1160,6 +1429,8 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         boolean handshake_already_complete = ssl_fd.handshakeComplete;
         int src_capacity = src.remaining();
 
+        adaptBuffers(src_capacity, true);
+
         logUnwrap(src);
 
         // Order of operations:
@@ -1195,15 +1466,16 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             if (src != null) {
                 this_src_write = Math.min((int) Buffer.WriteCapacity(read_buf), src.remaining());
 
-                // When we have data from src, write it to read_buf.
+                // When we have data from src, write it to read_buf. This
+                // copies directly out of src (without an intermediate
+                // byte[]) and advances its position by the amount written.
                 if (this_src_write > 0) {
-                    byte[] wire_buffer = new byte[this_src_write];
-                    src.get(wire_buffer);
-
-                    this_src_write = (int) Buffer.Write(read_buf, wire_buffer);
+                    this_src_write = (int) Buffer.Write(read_buf, src);
 
                     wire_data += this_src_write;
-                    debug("JSSEngine.unwrap(): Wrote " + this_src_write + " bytes to read_buf.");
+                    if (logger.isDebugEnabled()) {
+                        debug("JSSEngine.unwrap(): Wrote " + this_src_write + " bytes to read_buf.");
+                    }
                 }
             }
 
@@ -1212,13 +1484,20 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             updateHandshakeState();
 
             int max_dst_size = computeSize(dsts, offset, length);
-            byte[] app_buffer = PR.Read(ssl_fd, max_dst_size);
+            if (max_dst_size <= 0) {
+                continue;
+            }
+
+            this_dst_write = readData(dsts, offset, length);
             int error = PR.GetError();
-            debug("JSSEngine.unwrap() - " + app_buffer + " error=" + errorText(error));
-            if (app_buffer != null) {
-                this_dst_write = putData(app_buffer, dsts, offset, length);
+            if (logger.isDebugEnabled()) {
+                debug("JSSEngine.unwrap() - " + this_dst_write + " error=" + errorText(error));
+            }
+            if (this_dst_write >= 0) {
                 app_data += this_dst_write;
-            } else if (max_dst_size > 0) {
+            } else {
+                this_dst_write = 0;
+
                 // There are two scenarios we need to ignore here:
                 //  1. WOULD_BLOCK_ERRORs are safe, because we're expecting
                 //     not to block. Usually this means we don't have space
@@ -1263,11 +1542,13 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // Need a way to introspect the open/closed state of the TLS
         // connection.
 
-        debug("JSSEngine.unwrap() - Finished");
-        debug(" - Status: " + handshake_status);
-        debug(" - Handshake State: " + handshake_state);
-        debug(" - wire_data: " + wire_data);
-        debug(" - app_data: " + app_data);
+        if (logger.isDebugEnabled()) {
+            debug("JSSEngine.unwrap() - Finished");
+            debug(" - Status: " + handshake_status);
+            debug(" - Handshake State: " + handshake_state);
+            debug(" - wire_data: " + wire_data);
+            debug(" - app_data: " + app_data);
+        }
 
         if (handshake_state == SSLEngineResult.HandshakeStatus.FINISHED) {
             returned_finished = true;
@@ -1310,39 +1591,32 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 index += 1;
                 continue;
             }
-            debug("JSSEngine.writeData(): index=" + index + " max_index=" + max_index);
+            if (logger.isDebugEnabled()) {
+                debug("JSSEngine.writeData(): index=" + index + " max_index=" + max_index);
+            }
 
             // We expect (i.e., need to construct a buffer) to write up to
             // this much. Note that this is non-zero since we're taking the
             // max here and we guarantee with the previous statement that
             // srcs[index].remaining() > 0. There's no point in getting more
-            // than BUFFER_SIZE bytes either; so cap at the minimum of the
+            // than write_buf can hold either; so cap at the minimum of the
             // two sizes.
-            int expected_write = Math.min(srcs[index].remaining(), BUFFER_SIZE);
-            debug("JSSEngine.writeData(): expected_write=" + expected_write + " write_cap=" + Buffer.WriteCapacity(write_buf) + " read_cap=" + Buffer.ReadCapacity(read_buf));
-
-            // Get data from our current srcs[index] buffer.
-            byte[] app_data = new byte[expected_write];
-            srcs[index].get(app_data);
+            int expected_write = Math.min(srcs[index].remaining(), write_buf_size);
+            if (logger.isDebugEnabled()) {
+                debug("JSSEngine.writeData(): expected_write=" + expected_write + " write_cap=" + Buffer.WriteCapacity(write_buf) + " read_cap=" + Buffer.ReadCapacity(read_buf));
+            }
 
             // Actual amount written. Since this is a PR.Write call, mark
-            // attempted_write.
-            int this_write = PR.Write(ssl_fd, app_data);
+            // attempted_write. PR.Write(...) hands the contents of
+            // srcs[index] to NSS in place and only advances its position by
+            // the amount actually written, so a sub-optimal write leaves the
+            // remainder in the buffer for the next call.
+            int this_write = PR.Write(ssl_fd, srcs[index], expected_write);
             attempted_write = true;
 
-            // Reset our buffer's position in event of sub-optimal write.
-            if (this_write < expected_write) {
-                int pos = srcs[index].position();
-
-                // When this_write < 0, we want to reset to the beginning
-                // because we assume we haven't written any data due to an
-                // error before writing.
-                int delta = expected_write - Math.max(0, this_write);
-
-                srcs[index].position(pos - delta);
+            if (logger.isDebugEnabled()) {
+                debug("JSSEngine.writeData(): this_write=" + this_write);
             }
-
-            debug("JSSEngine.writeData(): this_write=" + this_write);
             if (this_write < 0) {
                 int error = PR.GetError();
                 if (error == PRErrors.SOCKET_SHUTDOWN_ERROR) {
@@ -1373,7 +1647,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             PR.Write(ssl_fd, null);
         }
 
-        debug("JSSEngine.writeData(): data_length=" + data_length);
+        if (logger.isDebugEnabled()) {
+            debug("JSSEngine.writeData(): data_length=" + data_length);
+        }
 
         return data_length;
     }
@@ -1410,7 +1686,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
     }
 
     public SSLEngineResult wrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) throws IllegalArgumentException, SSLException {
-        debug("JSSEngine: wrap(ssl_fd=" + ssl_fd + ")");
+        debug("JSSEngine: wrap(ssl_fd={})", ssl_fd);
         // In this method, we're taking the application data from the various
         // srcs and writing it to the remote peer (via ssl_fd). If there's any
         // data for us to send to the remote peer, we place it in dst.
@@ -1463,6 +1739,10 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             closeOutbound();
         }
 
+        if (adaptive_buffers) {
+            adaptBuffers(computeSize(srcs, offset, length), false);
+        }
+
         int this_src_write;
         int this_dst_write;
         do {
@@ -1499,9 +1779,14 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             this_src_write = writeData(srcs, offset, length);
             if (this_src_write > 0) {
                 app_data += this_src_write;
-                debug("JSSEngine.wrap(): wrote " + this_src_write + " from srcs to buffer.");
-            } else {
-                debug("JSSEngine.wrap(): not writing from srcs to buffer: this_src_write=" + this_src_write);
+            }
+
+            if (logger.isDebugEnabled()) {
+                if (this_src_write > 0) {
+                    debug("JSSEngine.wrap(): wrote " + this_src_write + " from srcs to buffer.");
+                } else {
+                    debug("JSSEngine.wrap(): not writing from srcs to buffer: this_src_write=" + this_src_write);
+                }
             }
 
             if (dst != null) {
@@ -1513,13 +1798,13 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 // Try reading data from write_buf to dst; always do this, even
                 // if we didn't write.
                 if (this_dst_write > 0) {
-                    byte[] wire_buffer = Buffer.Read(write_buf, this_dst_write);
-                    dst.put(wire_buffer);
-                    this_dst_write = wire_buffer.length;
+                    this_dst_write = (int) Buffer.Read(write_buf, dst);
                     wire_data += this_dst_write;
 
-                    debug("JSSEngine.wrap() - Wrote " + wire_buffer.length + " bytes to dst.");
-                } else {
+                    if (logger.isDebugEnabled()) {
+                        debug("JSSEngine.wrap() - Wrote " + this_dst_write + " bytes to dst.");
+                    }
+                } else if (logger.isDebugEnabled()) {
                     debug("JSSEngine.wrap(): not writing from write_buf into dst: this_dst_write=0 write_buf.read_capacity=" + Buffer.ReadCapacity(write_buf) + " dst.remaining=" + dst.remaining());
                 }
             } else {
@@ -1560,11 +1845,13 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             handshake_status = SSLEngineResult.Status.CLOSED;
         }
 
-        debug("JSSEngine.wrap() - Finished");
-        debug(" - Status: " + handshake_status);
-        debug(" - Handshake State: " + handshake_state);
-        debug(" - wire_data: " + wire_data);
-        debug(" - app_data: " + app_data);
+        if (logger.isDebugEnabled()) {
+            debug("JSSEngine.wrap() - Finished");
+            debug(" - Status: " + handshake_status);
+            debug(" - Handshake State: " + handshake_state);
+            debug(" - wire_data: " + wire_data);
+            debug(" - app_data: " + app_data);
+        }
 
         if (handshake_state == SSLEngineResult.HandshakeStatus.FINISHED) {
             returned_finished = true;
@@ -1609,6 +1896,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // First cleanup any debugging ports, if any.
         cleanupLoggingSocket();
 
+        // Keep any ticket the server sent after the handshake.
+        saveResumptionToken();
+
         // Then clean up the NSS state.
         cleanupSSLFD();
 
@@ -1659,6 +1949,128 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         }
     }
 
+    private class SNISelectionTask extends SNIHandler {
+        public int select(SSLFDProxy fd, String[] names) {
+            try {
+                return selectCertificate(names);
+            } catch (Exception e) {
+                // Failing to switch certificates isn't fatal: the client
+                // may still accept the default certificate.
+                debug("JSSEngine: unable to select certificate from SNI: " + e.getMessage());
+                return SNIHandler.CURRENT_CONFIG_IS_USED;
+            }
+        }
+    }
+
+    /**
+     * Selects the server certificate from the server names requested by
+     * the client, switching ssl_fd over to the matching server template.
+     *
+     * Returns the index of the first acknowledged name, or
+     * SNIHandler.CURRENT_CONFIG_IS_USED when none of the KeyManagers chose
+     * a certificate for the requested names.
+     */
+    private int selectCertificate(String[] names) throws Exception {
+        debug("JSSEngine: selectCertificate(" + Arrays.toString(names) + ")");
+
+        int first = -1;
+        List<SNIServerName> requested = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] == null) {
+                continue;
+            }
+
+            try {
+                requested.add(new SNIHostName(names[i]));
+                if (first == -1) {
+                    first = i;
+                }
+            } catch (IllegalArgumentException iae) {
+                debug("JSSEngine: ignoring invalid server name: " + names[i]);
+            }
+        }
+
+        session.setRequestedServerNames(requested);
+        if (first == -1) {
+            return SNIHandler.CURRENT_CONFIG_IS_USED;
+        }
+
+        // Prefer a certificate of the same type as the current one, but
+        // fall back to the other server key types: a name may only be
+        // served by, e.g., an EC certificate while the default is RSA.
+        List<String> keyTypes = new ArrayList<>(SERVER_KEY_TYPES.length + 1);
+        keyTypes.add(cert.getPublicKey().getAlgorithm());
+        for (String keyType : SERVER_KEY_TYPES) {
+            if (!keyTypes.contains(keyType)) {
+                keyTypes.add(keyType);
+            }
+        }
+
+        for (String keyType : keyTypes) {
+            int selected = selectCertificate(keyType, first);
+            if (selected != SNIHandler.CURRENT_CONFIG_IS_USED) {
+                return selected;
+            }
+        }
+
+        return SNIHandler.CURRENT_CONFIG_IS_USED;
+    }
+
+    private int selectCertificate(String keyType, int first) throws Exception {
+        for (X509KeyManager key_manager : key_managers) {
+            if (!(key_manager instanceof JSSKeyManager)) {
+                continue;
+            }
+
+            String alias;
+            if (key_manager instanceof X509ExtendedKeyManager) {
+                X509ExtendedKeyManager xkm = (X509ExtendedKeyManager) key_manager;
+                alias = xkm.chooseEngineServerAlias(keyType, null, this);
+            } else {
+                alias = key_manager.chooseServerAlias(keyType, null, null);
+            }
+
+            if (alias == null) {
+                continue;
+            }
+
+            JSSKeyManager jkm = (JSSKeyManager) key_manager;
+            PK11Cert new_cert = (PK11Cert) jkm.getCertificate(alias);
+            if (new_cert == null) {
+                continue;
+            }
+
+            if (new_cert.equals(cert)) {
+                debug("JSSEngine: requested server name served by current certificate");
+                return first;
+            }
+
+            PK11PrivKey new_key = (PK11PrivKey) jkm.getPrivateKey(alias);
+            if (new_key == null) {
+                continue;
+            }
+
+            try (JSSServerTemplateCache.Template template = acquireServerTemplate(new_cert, new_key)) {
+                if (SSL.ReconfigFD(template.getFD(), ssl_fd) == SSL.SECFailure) {
+                    throw new SSLException("Unable to switch to certificate " + alias + ": " + errorText(PR.GetError()));
+                }
+            }
+
+            debug("JSSEngine: switched to certificate " + alias);
+            cert = new_cert;
+            key = new_key;
+            certAlias = alias;
+            session.setLocalCertificates(new PK11Cert[]{ cert });
+
+            // SSL_ReconfigFD replaces the options, protocol range, cipher
+            // preferences, and certificate authentication hook.
+            reapplyConfiguration();
+            return first;
+        }
+
+        return SNIHandler.CURRENT_CONFIG_IS_USED;
+    }
+
     private class CertValidationTask extends CertAuthHandler {
         public CertValidationTask(SSLFDProxy fd) {
             super(fd);
@@ -26,6 +26,8 @@ public class JSSParameters extends SSLParameters {
     private SSLVersionRange range;
     private String alias;
     private String hostname;
+    private int bufferSize;
+    private Boolean adaptiveBuffers;
 
     public JSSParameters() {
         // Choose our default set of SSLParameters here; default to null
@@ -190,4 +192,28 @@ public class JSSParameters extends SSLParameters {
     public void setHostname(String server_hostname) {
         hostname = server_hostname;
     }
+
+    /**
+     * Size of the buffers between JSSEngine and NSS, in bytes; zero to
+     * use the engine's default.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int size) {
+        bufferSize = size;
+    }
+
+    /**
+     * Whether JSSEngine should grow and shrink its buffers with the
+     * traffic; null to use the engine's default.
+     */
+    public Boolean getAdaptiveBuffers() {
+        return adaptiveBuffers;
+    }
+
+    public void setAdaptiveBuffers(Boolean adaptive) {
+        adaptiveBuffers = adaptive;
+    }
 }
@@ -0,0 +1,329 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.mozilla.jss.nss.PR;
+import org.mozilla.jss.nss.PRFDProxy;
+import org.mozilla.jss.nss.SSL;
+import org.mozilla.jss.nss.SSLFDProxy;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.pkcs11.PK11PrivKey;
+
+/**
+ * Cache of model SSL PRFileDescs configured with a server certificate and
+ * key, shared by all server-side JSSEngines.
+ *
+ * Configuring a server certificate on a fresh SSL PRFileDesc is expensive;
+ * JSSEngines instead copy the configuration from a cached template via
+ * SSL_ImportFD or SSL_ReconfigFD. NSS only reads the template during those
+ * calls, so a template is held just for their duration:
+ *
+ *     try (JSSServerTemplateCache.Template template = cache.acquire(cert, key)) {
+ *         ssl_fd = SSL.ImportFD(template.getFD(), fd);
+ *     }
+ *
+ * Templates are built at most once per certificate, even when requested
+ * concurrently. When the cache exceeds its maximum size, the least recently
+ * used template is evicted. Evicted and invalidated templates are no longer
+ * handed out, and their native PRFileDesc is closed once the last engine
+ * holding them releases them.
+ *
+ * When a certificate is rotated or removed from the token, call
+ * invalidate(...) with the old certificate (or invalidateAll()) so that
+ * its template, which holds references to the old certificate and key, is
+ * released.
+ */
+public class JSSServerTemplateCache {
+
+    public static Logger logger = LoggerFactory.getLogger(JSSServerTemplateCache.class);
+
+    /**
+     * Default maximum number of cached templates.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final ConcurrentHashMap<PK11Cert, Template> templates = new ConcurrentHashMap<>();
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Sets the maximum number of cached templates. A value of zero or less
+     * disables the limit.
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+        trim(null);
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Number of cached templates.
+     */
+    public int size() {
+        return templates.size();
+    }
+
+    /**
+     * Number of templates built, i.e., cache misses.
+     */
+    public long getBuilds() {
+        return builds.get();
+    }
+
+    /**
+     * Number of acquisitions served by an existing template.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Number of templates evicted or invalidated.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the template for the given certificate, building it from the
+     * certificate and key if necessary. The caller must close the returned
+     * template once it no longer needs it.
+     */
+    public Template acquire(PK11Cert cert, PK11PrivKey key) {
+        if (cert == null || key == null) {
+            throw new IllegalArgumentException("Server templates require a certificate and key");
+        }
+
+        while (true) {
+            Template template = templates.computeIfAbsent(cert, c -> build(c, key));
+
+            if (template.retain()) {
+                trim(template);
+                return template;
+            }
+
+            // Evicted between the lookup and retain; it is no longer
+            // mapped, so the next lookup builds a fresh template.
+            templates.remove(cert, template);
+        }
+    }
+
+    /**
+     * Evicts the template of the given certificate, if any. Returns true
+     * when a template was evicted.
+     */
+    public boolean invalidate(PK11Cert cert) {
+        if (cert == null) {
+            return false;
+        }
+
+        Template template = templates.remove(cert);
+        if (template == null) {
+            return false;
+        }
+
+        evict(template);
+        return true;
+    }
+
+    /**
+     * Evicts all templates.
+     */
+    public void invalidateAll() {
+        for (Map.Entry<PK11Cert, Template> entry : templates.entrySet()) {
+            if (templates.remove(entry.getKey(), entry.getValue())) {
+                evict(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Evicts the templates whose certificate has expired. Returns the
+     * number of evicted templates.
+     */
+    public int invalidateExpired() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+
+        for (Map.Entry<PK11Cert, Template> entry : templates.entrySet()) {
+            if (entry.getKey().getNotAfter().getTime() >= now) {
+                continue;
+            }
+
+            if (templates.remove(entry.getKey(), entry.getValue())) {
+                evict(entry.getValue());
+                count += 1;
+            }
+        }
+
+        return count;
+    }
+
+    private Template build(PK11Cert cert, PK11PrivKey key) {
+        logger.debug("JSSServerTemplateCache: building template for " + cert.getSubjectDN());
+
+        PRFDProxy base = PR.NewTCPSocket();
+        SSLFDProxy fd = SSL.ImportFD(null, base);
+        if (fd == null) {
+            PR.Close(base);
+            String msg = "Unable to create model SSL PRFileDesc proxy: ";
+            msg += JSSEngine.errorText(PR.GetError());
+            throw new RuntimeException(msg);
+        }
+
+        if (SSL.ConfigServerCert(fd, cert, key) != SSL.SECSuccess) {
+            String msg = "Unable to configure certificate and key on ";
+            msg += "model SSL PRFileDesc proxy: ";
+            msg += JSSEngine.errorText(PR.GetError());
+            destroy(fd);
+            throw new RuntimeException(msg);
+        }
+
+        builds.incrementAndGet();
+        return new Template(cert, fd);
+    }
+
+    /**
+     * Evicts least recently used templates until the cache fits within
+     * its maximum size. The template which was just acquired is never
+     * evicted. The cache is small, so a linear scan suffices.
+     */
+    private void trim(Template current) {
+        int max = maxEntries;
+        if (max <= 0) {
+            return;
+        }
+
+        while (templates.size() > max) {
+            Map.Entry<PK11Cert, Template> oldest = null;
+            for (Map.Entry<PK11Cert, Template> entry : templates.entrySet()) {
+                if (entry.getValue() == current) {
+                    continue;
+                }
+
+                if (oldest == null || entry.getValue().lastUsed < oldest.getValue().lastUsed) {
+                    oldest = entry;
+                }
+            }
+
+            if (oldest == null) {
+                return;
+            }
+
+            if (templates.remove(oldest.getKey(), oldest.getValue())) {
+                evict(oldest.getValue());
+            }
+        }
+    }
+
+    private void evict(Template template) {
+        logger.debug("JSSServerTemplateCache: evicting template for " + template.cert.getSubjectDN());
+        evictions.incrementAndGet();
+        template.evict();
+    }
+
+    private static void destroy(SSLFDProxy fd) {
+        try {
+            PR.Close(fd);
+            fd.close();
+        } catch (Exception e) {
+            logger.warn("JSSServerTemplateCache: unable to close template: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A reference to a cached template. Closing it releases the reference;
+     * it doesn't close the template itself.
+     */
+    public class Template implements AutoCloseable {
+        private final PK11Cert cert;
+        private final SSLFDProxy fd;
+
+        private int refs;
+        private long uses;
+        private boolean evicted;
+        private boolean closed;
+
+        private volatile long lastUsed;
+
+        private Template(PK11Cert cert, SSLFDProxy fd) {
+            this.cert = cert;
+            this.fd = fd;
+        }
+
+        /**
+         * The model SSL PRFileDesc to pass to SSL.ImportFD(...) or
+         * SSL.ReconfigFD(...).
+         */
+        public SSLFDProxy getFD() {
+            return fd;
+        }
+
+        public PK11Cert getCertificate() {
+            return cert;
+        }
+
+        /**
+         * Whether the model PRFileDesc has been closed, i.e., the template
+         * was evicted and its last reference released.
+         */
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private synchronized boolean retain() {
+            if (evicted) {
+                return false;
+            }
+
+            // Every template is built for a caller which then retains it;
+            // all later uses are cache hits.
+            if (uses > 0) {
+                hits.incrementAndGet();
+            }
+
+            uses += 1;
+            refs += 1;
+            lastUsed = System.nanoTime();
+            return true;
+        }
+
+        private synchronized void evict() {
+            evicted = true;
+            if (refs == 0) {
+                destroyOnce();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (refs == 0) {
+                return;
+            }
+
+            refs -= 1;
+            if (evicted && refs == 0) {
+                destroyOnce();
+            }
+        }
+
+        private void destroyOnce() {
+            if (!closed) {
+                closed = true;
+                destroy(fd);
+            }
+        }
+    }
+}
@@ -4,7 +4,9 @@ import java.lang.AutoCloseable;
 import java.security.cert.Certificate;
 import javax.security.cert.X509Certificate;
 import java.security.Principal;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 
 import javax.net.ssl.*;
 
@@ -12,7 +14,7 @@ import org.mozilla.jss.nss.*;
 import org.mozilla.jss.pkcs11.*;
 import org.mozilla.jss.ssl.*;
 
-public class JSSSession implements SSLSession, AutoCloseable {
+public class JSSSession extends ExtendedSSLSession implements AutoCloseable {
     private JSSEngine parent;
 
     private int applicationBufferSize;
@@ -40,6 +42,13 @@ public class JSSSession implements SSLSession, AutoCloseable {
 
     private boolean closed;
 
+    private JSSSessionContext sessionContext;
+
+    private boolean resumptionOffered;
+    private boolean resumed;
+
+    private List<SNIServerName> requestedServerNames = Collections.emptyList();
+
     protected JSSSession(JSSEngine engine, int buffer_size) {
         this.parent = engine;
 
@@ -74,10 +83,18 @@ public class JSSSession implements SSLSession, AutoCloseable {
         return applicationBufferSize;
     }
 
+    protected void setApplicationBufferSize(int size) {
+        applicationBufferSize = size;
+    }
+
     public int getPacketBufferSize() {
         return packetBufferSize;
     }
 
+    protected void setPacketBufferSize(int size) {
+        packetBufferSize = size;
+    }
+
     public byte[] getId() {
         return sessionID;
     }
@@ -87,7 +104,48 @@ public class JSSSession implements SSLSession, AutoCloseable {
     }
 
     public SSLSessionContext getSessionContext() {
-        return null;
+        return sessionContext;
+    }
+
+    protected void setSessionContext(JSSSessionContext context) {
+        sessionContext = context;
+    }
+
+    /**
+     * Whether this session was resumed from an earlier one, as reported
+     * by NSS once the handshake completed.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    protected void setResumed(boolean resumed) {
+        this.resumed = resumed;
+    }
+
+    /**
+     * Whether a stored resumption token was offered to the peer during
+     * the handshake.
+     */
+    public boolean isResumptionOffered() {
+        return resumptionOffered;
+    }
+
+    protected void setResumptionOffered(boolean offered) {
+        resumptionOffered = offered;
+    }
+
+    /**
+     * Fraction of the handshakes tracked by this session's context which
+     * resumed an existing session, or zero when the session has no
+     * context.
+     */
+    public double getResumptionRate() {
+        if (sessionContext == null) {
+            return 0;
+        }
+
+        return sessionContext.getHitRatio();
     }
 
     public long getCreationTime() {
@@ -143,11 +201,19 @@ public class JSSSession implements SSLSession, AutoCloseable {
         if (parent.getSSLFDProxy() != null) {
              SSL.InvalidateSession(parent.getSSLFDProxy());
         }
+
+        if (sessionContext != null) {
+            sessionContext.remove(this);
+        }
     }
 
     public void close() {
         closed = true;
         setPeerCertificates(null);
+
+        if (sessionContext != null) {
+            sessionContext.remove(this);
+        }
     }
 
     public void putValue(String name, Object value) {
@@ -292,4 +358,26 @@ public class JSSSession implements SSLSession, AutoCloseable {
     public void setPeerPort(int port) {
         peerPort = port;
     }
+
+    /**
+     * Server names requested by the client through the SNI extension.
+     * Only populated on the server side, once the ClientHello has been
+     * processed.
+     */
+    public List<SNIServerName> getRequestedServerNames() {
+        return requestedServerNames;
+    }
+
+    protected void setRequestedServerNames(List<SNIServerName> names) {
+        requestedServerNames = Collections.unmodifiableList(names);
+    }
+
+    public String[] getLocalSupportedSignatureAlgorithms() {
+        // NSS doesn't expose the negotiated signature schemes.
+        return new String[0];
+    }
+
+    public String[] getPeerSupportedSignatureAlgorithms() {
+        return new String[0];
+    }
 }
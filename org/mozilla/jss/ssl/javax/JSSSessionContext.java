@@ -0,0 +1,345 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JSSSessionContext is the SSLSessionContext for JSSEngine instances
+ * created by the same SSLContext.
+ *
+ * NSS maintains the actual session caches used for resumption; this class
+ * tracks the live JSSSession objects by session ID, so they can be
+ * inspected through the standard JSSE APIs, and records how many completed
+ * handshakes resumed an existing session.
+ *
+ * The session cache size and timeout are mapped onto NSS as follows:
+ *  - For the server context, they're passed to
+ *    SSL.ConfigServerSessionIDCache(...) when the first server-side
+ *    JSSEngine is initialized. NSS only allows the server session cache
+ *    to be configured once per process; later changes only affect the
+ *    sessions tracked here.
+ *  - NSS doesn't expose the size or timeout of the client session cache.
+ *    Instead, client JSSEngines keep their sessions in the resumption
+ *    token store described below, which honors both limits.
+ *  - Sessions exceeding either limit are dropped from this context. They
+ *    aren't invalidated: each session belongs to another JSSEngine's
+ *    file descriptor, and NSS expires its own cache entries.
+ *
+ * The client context additionally stores the resumption tokens NSS hands
+ * out after each handshake, keyed by the peer ID the client JSSEngine
+ * derives from the peer's host and port and its protocol, cipher and
+ * client certificate configuration. The next JSSEngine connecting to the
+ * same peer with the same configuration offers the stored token, making
+ * resumption independent of NSS's process-wide client session cache. The
+ * token store is bounded by the same cache size and timeout.
+ *
+ * As with SSLSessionContext, a cache size or timeout of zero means no
+ * limit.
+ */
+public class JSSSessionContext implements SSLSessionContext {
+
+    public static Logger logger = LoggerFactory.getLogger(JSSSessionContext.class);
+
+    /**
+     * Default maximum number of tracked sessions; matches SunJSSE.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 20480;
+
+    /**
+     * Default session timeout, in seconds; matches SunJSSE and NSS.
+     */
+    public static final int DEFAULT_TIMEOUT = 86400;
+
+    private boolean server;
+
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private int timeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Sessions in the order their handshakes completed, so the oldest
+     * session is always first.
+     */
+    private LinkedHashMap<ByteBuffer, JSSSession> sessions = new LinkedHashMap<>();
+
+    /**
+     * Lower bound on the creation time of the tracked sessions. Resumed
+     * sessions keep their original creation time, so the map isn't sorted
+     * by it; this lets expire() skip the scan until something can expire.
+     */
+    private long oldestCreation = Long.MAX_VALUE;
+
+    /**
+     * Resumption tokens by peer ID, oldest first.
+     */
+    private LinkedHashMap<String, ResumptionToken> tokens = new LinkedHashMap<>();
+
+    private long resumed;
+    private long full;
+    private long offered;
+
+    public JSSSessionContext(boolean server) {
+        this.server = server;
+    }
+
+    /**
+     * Whether this context holds server-side sessions.
+     */
+    public boolean isServer() {
+        return server;
+    }
+
+    public synchronized SSLSession getSession(byte[] sessionId) {
+        if (sessionId == null) {
+            throw new NullPointerException("Session ID must not be null");
+        }
+
+        expire();
+        return sessions.get(ByteBuffer.wrap(sessionId));
+    }
+
+    public synchronized Enumeration<byte[]> getIds() {
+        expire();
+
+        List<byte[]> ids = new ArrayList<>(sessions.size());
+        for (ByteBuffer id : sessions.keySet()) {
+            ids.add(id.array().clone());
+        }
+
+        return Collections.enumeration(ids);
+    }
+
+    public synchronized void setSessionTimeout(int seconds) throws IllegalArgumentException {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Session timeout must not be negative: " + seconds);
+        }
+
+        logger.debug("JSSSessionContext: setSessionTimeout(" + seconds + ")");
+        timeout = seconds;
+        expire();
+        expireTokens();
+    }
+
+    public synchronized int getSessionTimeout() {
+        return timeout;
+    }
+
+    public synchronized void setSessionCacheSize(int size) throws IllegalArgumentException {
+        if (size < 0) {
+            throw new IllegalArgumentException("Session cache size must not be negative: " + size);
+        }
+
+        logger.debug("JSSSessionContext: setSessionCacheSize(" + size + ")");
+        cacheSize = size;
+        trim();
+        trimTokens();
+    }
+
+    public synchronized int getSessionCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Number of tracked sessions.
+     */
+    public synchronized int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Number of completed handshakes which resumed an existing session.
+     */
+    public synchronized long getResumedHandshakes() {
+        return resumed;
+    }
+
+    /**
+     * Number of completed handshakes which created a new session.
+     */
+    public synchronized long getFullHandshakes() {
+        return full;
+    }
+
+    /**
+     * Number of handshakes in which a stored resumption token was offered.
+     */
+    public synchronized long getResumptionAttempts() {
+        return offered;
+    }
+
+    /**
+     * Number of stored resumption tokens.
+     */
+    public synchronized int getResumptionTokenCount() {
+        return tokens.size();
+    }
+
+    /**
+     * Fraction of completed handshakes which resumed an existing session,
+     * or zero when no handshake has completed yet.
+     */
+    public synchronized double getHitRatio() {
+        long total = resumed + full;
+        if (total == 0) {
+            return 0;
+        }
+
+        return (double) resumed / total;
+    }
+
+    /**
+     * Called by JSSEngine after a handshake completes, with the refreshed
+     * session and whether NSS resumed an existing session.
+     */
+    protected synchronized void handshakeCompleted(JSSSession session, boolean wasResumed) {
+        if (wasResumed) {
+            resumed += 1;
+        } else {
+            full += 1;
+        }
+
+        session.setSessionContext(this);
+
+        byte[] id = session.getId();
+        if (id == null || id.length == 0) {
+            return;
+        }
+
+        sessions.put(ByteBuffer.wrap(id.clone()), session);
+        oldestCreation = Math.min(oldestCreation, session.getCreationTime());
+
+        expire();
+        trim();
+    }
+
+    /**
+     * Removes and returns the resumption token stored for the given peer
+     * ID, if any. Tokens are handed out only once, as TLS 1.3 tickets
+     * shouldn't be reused.
+     */
+    protected synchronized byte[] takeResumptionToken(String peerID) {
+        expireTokens();
+
+        ResumptionToken token = tokens.remove(peerID);
+        if (token == null) {
+            return null;
+        }
+
+        offered += 1;
+        return token.data;
+    }
+
+    /**
+     * Stores the latest resumption token issued by the given peer,
+     * replacing any previous one.
+     */
+    protected synchronized void putResumptionToken(String peerID, byte[] data) {
+        tokens.remove(peerID);
+        tokens.put(peerID, new ResumptionToken(data));
+
+        expireTokens();
+        trimTokens();
+    }
+
+    /**
+     * Called when a session is invalidated or closed along with its
+     * JSSEngine.
+     */
+    protected synchronized void remove(JSSSession session) {
+        byte[] id = session.getId();
+        if (id == null || id.length == 0) {
+            return;
+        }
+
+        sessions.remove(ByteBuffer.wrap(id), session);
+    }
+
+    private void expire() {
+        if (timeout == 0) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - timeout * 1000L;
+        if (oldestCreation >= cutoff) {
+            return;
+        }
+
+        long oldest = Long.MAX_VALUE;
+        Iterator<Map.Entry<ByteBuffer, JSSSession>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            JSSSession session = it.next().getValue();
+            long created = session.getCreationTime();
+            if (created >= cutoff) {
+                oldest = Math.min(oldest, created);
+                continue;
+            }
+
+            it.remove();
+            evict(session);
+        }
+
+        oldestCreation = oldest;
+    }
+
+    private void trim() {
+        if (cacheSize == 0) {
+            return;
+        }
+
+        Iterator<Map.Entry<ByteBuffer, JSSSession>> it = sessions.entrySet().iterator();
+        while (sessions.size() > cacheSize && it.hasNext()) {
+            JSSSession session = it.next().getValue();
+            it.remove();
+            evict(session);
+        }
+    }
+
+    private void expireTokens() {
+        if (timeout == 0) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - timeout * 1000L;
+        Iterator<ResumptionToken> it = tokens.values().iterator();
+        while (it.hasNext() && it.next().created < cutoff) {
+            it.remove();
+        }
+    }
+
+    private void trimTokens() {
+        if (cacheSize == 0) {
+            return;
+        }
+
+        Iterator<ResumptionToken> it = tokens.values().iterator();
+        while (tokens.size() > cacheSize && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private void evict(JSSSession session) {
+        logger.debug("JSSSessionContext: evicting session " + session);
+    }
+
+    private static class ResumptionToken {
+        byte[] data;
+        long created;
+
+        ResumptionToken(byte[] data) {
+            this.data = data;
+            this.created = System.currentTimeMillis();
+        }
+    }
+}
@@ -287,6 +287,44 @@ size_t jb_read(j_buffer *buf, uint8_t *output, size_t output_size) {
     return read_size + jb_read(buf, output, output_size);
 }
 
+bool jb_resize(j_buffer *buf, size_t length) {
+    if (buf == NULL || buf->contents == NULL || length == 0) {
+        return false;
+    }
+
+    size_t unread = jb_read_capacity(buf);
+    if (unread > length) {
+        return false;
+    }
+
+    if (length == buf->capacity) {
+        return true;
+    }
+
+    uint8_t *contents = calloc(length, sizeof(uint8_t));
+    if (contents == NULL) {
+        return false;
+    }
+
+    // Drain the unread bytes into the start of the new contents; this
+    // also linearizes any wrapped-around data.
+    size_t copied = jb_read(buf, contents, unread);
+
+    // Clear the old contents before freeing them, as in jb_free.
+    memset(buf->contents, 0, buf->capacity);
+    free(buf->contents);
+
+    buf->contents = contents;
+    buf->capacity = length;
+
+    // Same sentinel semantics as jb_alloc: read_pos == capacity when
+    // empty and write_pos == capacity when full.
+    buf->read_pos = copied == 0 ? length : 0;
+    buf->write_pos = copied == length ? length : copied;
+
+    return true;
+}
+
 void jb_free(j_buffer *buf) {
     // Safely handle partial or invalid structures.
     if (buf == NULL) {
@@ -72,6 +72,15 @@ int jb_get(j_buffer *buf);
  */
 size_t jb_read(j_buffer *buf, uint8_t *output, size_t output_size);
 
+/*
+ * Change the capacity of the buffer to length, preserving its unread
+ * contents. The buffer structure itself isn't reallocated, so existing
+ * references to it (e.g., from a BufferPRFD) remain valid. Returns false,
+ * leaving the buffer unchanged, when length is zero, when the unread
+ * contents don't fit into length bytes, or when allocation fails.
+ */
+bool jb_resize(j_buffer *buf, size_t length);
+
 /*
  * Free a buffer allocated with jb_alloc. This includes zeroing the contents
  * of the buffer in case any sensitive material was stored.
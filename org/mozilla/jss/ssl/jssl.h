@@ -126,6 +126,9 @@ JSSL_getSockAddr
 PRFileDesc*
 JSS_SSL_javasockToPRFD(JNIEnv *env, jobject sockObj);
 
+PRFileDesc*
+JSS_SSL_channelToPRFD(JNIEnv *env, jobject channel);
+
 jthrowable
 JSS_SSL_getException(PRFilePrivate *priv);
 
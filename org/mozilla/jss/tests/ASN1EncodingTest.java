@@ -0,0 +1,183 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.mozilla.jss.asn1.*;
+
+/**
+ * Checks that the length-precomputing encoders of SET, SEQUENCE and
+ * EXPLICIT produce the expected DER, and that the computed lengths match
+ * the encodings.
+ */
+public class ASN1EncodingTest {
+
+    public static void main(String[] args) throws Exception {
+        testNested();
+        testSetOrdering();
+        testSetTagOrdering();
+        testSetNullElements();
+        testLongLengths();
+        testEncodeIntoArray();
+    }
+
+    public static void testNested() throws Exception {
+        SEQUENCE inner = new SEQUENCE();
+        inner.addElement(new INTEGER(5));
+        inner.addElement(null);
+        inner.addElement(new Tag(1), new OCTET_STRING(new byte[] { 1, 2 }));
+
+        SEQUENCE outer = new SEQUENCE();
+        outer.addElement(new EXPLICIT(new Tag(0), inner));
+        outer.addElement(inner);
+
+        // 30 14
+        //    a0 09 30 07 02 01 05 81 02 01 02
+        //    30 07 02 01 05 81 02 01 02
+        byte[] expected = hex("3014a009300702010581020102300702010581020102");
+        check(outer, expected);
+
+        // Modifying an element after encoding must be reflected.
+        inner.addElement(new NULL());
+        expected = hex("3018a00b3009020105810201020500" + "3009020105810201020500");
+        check(outer, expected);
+    }
+
+    public static void testSetOrdering() throws Exception {
+        // SET OF: lexicographic order of the encodings
+        SET setOf = new SET();
+        setOf.addElement(new OCTET_STRING(new byte[] { 5, 1 }));
+        setOf.addElement(new OCTET_STRING(new byte[] { (byte) 0x90 }));
+        setOf.addElement(new OCTET_STRING(new byte[] { 5 }));
+        check(setOf, hex("310a04010504019004020501"));
+
+        // SET: order by tag class, then tag number
+        SET set = new SET();
+        set.addElement(new Tag(3), new INTEGER(1));
+        set.addElement(new INTEGER(2));
+        set.addElement(new Tag(Tag.Class.APPLICATION, 1), new INTEGER(3));
+        set.addElement(new Tag(0), new INTEGER(4));
+        check(set, hex("310c020102410103800104830101"));
+    }
+
+    public static void testSetTagOrdering() throws Exception {
+        // High tag numbers are ordered by number, not by their first
+        // identifier octet, which is the same for all of them.
+        SET set = new SET();
+        set.addElement(new Tag(200), new NULL());
+        set.addElement(new Tag(31), new NULL());
+        set.addElement(new Tag(30), new NULL());
+        check(set, hex("31099e00" + "9f1f00" + "9f814800"));
+
+        // More elements than the insertion sort handles, added in reverse.
+        set = new SET();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            set.addElement(new Tag(19 - i), new NULL());
+            expected.append(String.format("%02x00", 0x80 + i));
+        }
+        check(set, hex("3128" + expected));
+
+        // Elements with equal tags keep their insertion order.
+        set = new SET();
+        set.addElement(new Tag(1), new INTEGER(2));
+        set.addElement(new Tag(0), new INTEGER(1));
+        set.addElement(new Tag(1), new INTEGER(1));
+        check(set, hex("3109800101810102810101"));
+    }
+
+    public static void testSetNullElements() throws Exception {
+        // Null elements are skipped, whichever ordering applies.
+        SET setOf = new SET();
+        setOf.addElement((ASN1Value) null);
+        setOf.addElement(new OCTET_STRING(new byte[] { 2 }));
+        setOf.addElement(new Tag(4), null);
+        setOf.addElement(new OCTET_STRING(new byte[] { 1 }));
+        check(setOf, hex("3106040101040102"));
+
+        SET set = new SET();
+        set.addElement(new Tag(2), new NULL());
+        set.addElement(new Tag(1), new NULL());
+        set.addElement(new Tag(0), null);
+        check(set, hex("310481008200"));
+
+        // A SET of nothing but nulls is empty.
+        SET empty = new SET();
+        empty.addElement(new Tag(0), null);
+        empty.addElement(new Tag(1), null);
+        check(empty, hex("3100"));
+
+        // Also when nested, where the parent measures it first.
+        SEQUENCE seq = new SEQUENCE();
+        seq.addElement(setOf);
+        seq.addElement(empty);
+        check(seq, hex("300a" + "3106040101040102" + "3100"));
+    }
+
+    public static void testLongLengths() throws Exception {
+        SEQUENCE seq = new SEQUENCE();
+        for (int i = 0; i < 100; i++) {
+            seq.addElement(new OCTET_STRING(new byte[300]));
+        }
+
+        byte[] encoding = check(seq, null);
+        // 100 * (4 + 300) content bytes need a three-byte length
+        assert(encoding.length == 4 + 100 * 304);
+        assert((encoding[1] & 0xff) == 0x82);
+
+        // high tag numbers need more identifier octets
+        EXPLICIT high = new EXPLICIT(new Tag(200), new NULL());
+        check(high, hex("bf8148020500"));
+    }
+
+    public static void testEncodeIntoArray() throws Exception {
+        SEQUENCE seq = new SEQUENCE();
+        seq.addElement(new INTEGER(7));
+        byte[] expected = ASN1Util.encode(seq);
+
+        byte[] output = new byte[expected.length + 2];
+        int written = ASN1Util.encode(seq.getTag(), seq, output, 1);
+        assert(written == expected.length);
+        assert(Arrays.equals(Arrays.copyOfRange(output, 1, 1 + written), expected));
+
+        try {
+            ASN1Util.encode(seq.getTag(), seq, new byte[expected.length - 1], 0);
+            throw new RuntimeException("Expected encoding into a short array to fail");
+        } catch (java.io.IOException expectedException) {
+        }
+    }
+
+    private static byte[] check(ASN1Value value, byte[] expected) throws Exception {
+        byte[] encoding = ASN1Util.encode(value);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        value.encode(bos);
+
+        assert(Arrays.equals(encoding, bos.toByteArray()));
+        assert(value.getEncodedLength() == encoding.length);
+        if (expected != null && !Arrays.equals(encoding, expected)) {
+            throw new RuntimeException("Unexpected encoding: " + toHex(encoding));
+        }
+        return encoding;
+    }
+
+    private static byte[] hex(String value) {
+        byte[] result = new byte[value.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    private static String toHex(byte[] value) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+}
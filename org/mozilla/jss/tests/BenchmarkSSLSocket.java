@@ -3,8 +3,11 @@ package org.mozilla.jss.tests;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.security.KeyStore;
 import java.security.SecureRandom;
 import java.util.ArrayList;
@@ -12,6 +15,8 @@ import java.util.ArrayList;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -20,6 +25,7 @@ import javax.net.ssl.X509ExtendedKeyManager;
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.provider.javax.crypto.JSSKeyManager;
 import org.mozilla.jss.provider.javax.crypto.JSSNativeTrustManager;
+import org.mozilla.jss.ssl.javax.JSSEngine;
 
 /**
  * Utility for benchmarking the performance of SSLSocket implementations.
@@ -222,10 +228,217 @@ public class BenchmarkSSLSocket {
         }
     }
 
+    /**
+     * Benchmark bulk wrap/unwrap throughput of a pair of in-memory
+     * JSSEngines, without any sockets.
+     *
+     * When direct is true, all application and network buffers are direct
+     * ByteBuffers, exercising the zero-copy path into the NSS buffers;
+     * otherwise heap ByteBuffers are used. Here, port is the number of
+     * messages of size bytes to send from the client to the server.
+     */
+    public void runEngine(boolean direct) throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("NssX509");
+
+        SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        ctx.init(
+            kmf.getKeyManagers(),
+            new TrustManager[] { new JSSNativeTrustManager() },
+            null
+        );
+
+        JSSEngine server = (JSSEngine) ctx.createSSLEngine();
+        server.setUseClientMode(false);
+        server.setCertFromAlias(nickname);
+
+        SSLEngine client = ctx.createSSLEngine("localhost", 8443);
+        client.setUseClientMode(true);
+
+        int app_size = Math.max(size, client.getSession().getApplicationBufferSize());
+        int net_size = 4 * client.getSession().getPacketBufferSize();
+
+        ByteBuffer c2s = allocate(net_size, direct);
+        ByteBuffer s2c = allocate(net_size, direct);
+        ByteBuffer client_app = allocate(app_size, direct);
+        ByteBuffer server_app = allocate(app_size, direct);
+
+        handshake(client, server, c2s, s2c, client_app, server_app);
+
+        ByteBuffer payload = allocate(size, direct);
+        for (int i = 0; i < size; i++) {
+            payload.put((byte) 'a');
+        }
+
+        long total = 0;
+        long start = System.nanoTime();
+
+        for (int message = 0; message < port; message++) {
+            payload.clear();
+            while (payload.hasRemaining()) {
+                client.wrap(payload, c2s);
+
+                c2s.flip();
+                while (c2s.hasRemaining()) {
+                    server_app.clear();
+                    SSLEngineResult r = server.unwrap(c2s, server_app);
+                    total += r.bytesProduced();
+                    if (r.bytesConsumed() == 0 && r.bytesProduced() == 0) {
+                        break;
+                    }
+                }
+                c2s.compact();
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        double seconds = elapsed / 1e9;
+        double rate = (total / (1024.0 * 1024.0)) / seconds;
+
+        System.out.println(type + ": transferred " + total + " bytes in " +
+                           String.format("%.3f", seconds) + "s -- " +
+                           String.format("%.2f", rate) + " MiB/s");
+
+        client.closeOutbound();
+        server.closeOutbound();
+    }
+
+    /**
+     * Benchmark bulk throughput of the legacy SSLSocket as a client of a
+     * legacy SSLServerSocket in the same process.
+     *
+     * When channel is true, the client is created on a SocketChannel and
+     * does its I/O directly on the OS socket; otherwise it wraps a
+     * java.net.Socket, calling back into Java for every TLS record. Here,
+     * port is the number of messages of size bytes to send from the client
+     * to the server.
+     */
+    public void runLegacyClient(boolean channel) throws Exception {
+        org.mozilla.jss.ssl.SSLServerSocket server = new org.mozilla.jss.ssl.SSLServerSocket(0);
+        server.setReuseAddress(true);
+        server.requestClientAuth(false);
+        server.requireClientAuth(org.mozilla.jss.ssl.SSLSocket.SSL_REQUIRE_NEVER);
+        server.setUseClientMode(false);
+        server.setServerCertNickname(nickname);
+
+        long[] received = new long[1];
+        Thread reader = new Thread(() -> {
+            try (Socket peer = server.accept()) {
+                InputStream is = peer.getInputStream();
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    received[0] += read;
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        });
+        reader.start();
+
+        InetSocketAddress address = new InetSocketAddress("localhost", server.getLocalPort());
+        org.mozilla.jss.ssl.SSLCertificateApprovalCallback approveAll = (cert, status) -> true;
+
+        org.mozilla.jss.ssl.SSLSocket client;
+        if (channel) {
+            client = new org.mozilla.jss.ssl.SSLSocket(SocketChannel.open(address),
+                    "localhost", approveAll, null);
+        } else {
+            Socket sock = new Socket();
+            sock.connect(address);
+            client = new org.mozilla.jss.ssl.SSLSocket(sock, "localhost", approveAll, null);
+        }
+
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++) {
+            payload[i] = (byte) 'a';
+        }
+
+        client.forceHandshake();
+        OutputStream os = client.getOutputStream();
+
+        long start = System.nanoTime();
+
+        for (int message = 0; message < port; message++) {
+            os.write(payload);
+        }
+        client.close();
+        reader.join();
+
+        long elapsed = System.nanoTime() - start;
+        double seconds = elapsed / 1e9;
+        double rate = (received[0] / (1024.0 * 1024.0)) / seconds;
+
+        System.out.println(type + ": transferred " + received[0] + " bytes in " +
+                           String.format("%.3f", seconds) + "s -- " +
+                           String.format("%.2f", rate) + " MiB/s");
+
+        server.close();
+    }
+
+    private static ByteBuffer allocate(int size, boolean direct) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(size);
+        }
+
+        return ByteBuffer.allocate(size);
+    }
+
+    private static void handshake(SSLEngine client, SSLEngine server,
+                                  ByteBuffer c2s, ByteBuffer s2c,
+                                  ByteBuffer client_app, ByteBuffer server_app)
+        throws Exception
+    {
+        ByteBuffer empty = ByteBuffer.allocate(0);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int step = 0; step < 100; step++) {
+            boolean client_done = step(client, empty, c2s, s2c, client_app);
+            boolean server_done = step(server, empty, s2c, c2s, server_app);
+
+            if (client_done && server_done) {
+                return;
+            }
+        }
+
+        throw new RuntimeException("Unable to complete handshake between JSSEngines");
+    }
+
+    private static boolean step(SSLEngine engine, ByteBuffer empty,
+                                ByteBuffer out, ByteBuffer in,
+                                ByteBuffer app) throws Exception
+    {
+        SSLEngineResult.HandshakeStatus state = engine.getHandshakeStatus();
+        switch (state) {
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                break;
+            case NEED_WRAP:
+                engine.wrap(empty, out);
+                break;
+            case NEED_UNWRAP:
+                in.flip();
+                app.clear();
+                engine.unwrap(in, app);
+                in.compact();
+                break;
+            default:
+                return true;
+        }
+
+        return false;
+    }
+
     public static void main(String[] args) throws Exception {
         if (args.length < 4 || args.length > 5) {
             System.err.println("Usage: BenchmarkSSLSocket <type> [...args...]");
-            System.err.println("type: JSS.SSLSocket, JSS.legacy, or SunJSSE.SSLSocket\n");
+            System.err.println("type: JSS.SSLSocket, JSS.legacy, SunJSSE.SSLSocket,");
+            System.err.println("      JSSEngine.heap, JSSEngine.direct,");
+            System.err.println("      JSS.legacy.socket, or JSS.legacy.channel\n");
 
             System.err.println("When type is JSS.SSLSocket or JSS.legacy:");
             System.err.println("Usage: BenchmarkSSLSocket <type> <alias> <port> <size>");
@@ -239,6 +452,18 @@ public class BenchmarkSSLSocket {
             System.err.println("p12pass: password to access p12 file with; default: m1oZilla");
             System.err.println("port: What server port to listen on");
             System.err.println("size: bytes of body to send in reply (plus header size)\n");
+
+            System.err.println("When type is JSSEngine.heap or JSSEngine.direct:");
+            System.err.println("Usage: BenchmarkSSLSocket <type> <alias> <count> <size>");
+            System.err.println("alias: server certificate nickname");
+            System.err.println("count: number of messages to wrap and unwrap");
+            System.err.println("size: bytes in each message\n");
+
+            System.err.println("When type is JSS.legacy.socket or JSS.legacy.channel:");
+            System.err.println("Usage: BenchmarkSSLSocket <type> <alias> <count> <size>");
+            System.err.println("alias: server certificate nickname");
+            System.err.println("count: number of messages to send to the server");
+            System.err.println("size: bytes in each message\n");
             System.exit(1);
         }
 
@@ -258,6 +483,21 @@ public class BenchmarkSSLSocket {
             benchmark = new BenchmarkSSLSocket(type, path, password, port, size);
         }
 
-        benchmark.run();
+        switch (benchmark.type) {
+            case "JSSEngine.heap":
+                benchmark.runEngine(false);
+                break;
+            case "JSSEngine.direct":
+                benchmark.runEngine(true);
+                break;
+            case "JSS.legacy.socket":
+                benchmark.runLegacyClient(false);
+                break;
+            case "JSS.legacy.channel":
+                benchmark.runLegacyClient(true);
+                break;
+            default:
+                benchmark.run();
+        }
     }
 }
@@ -0,0 +1,162 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import org.mozilla.jss.CertificateUsage;
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.netscape.security.x509.CRLStore;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.provider.javax.crypto.JSSChainCache;
+import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
+
+/**
+ * Checks that a CRLStore makes JSSTrustManager reject a chain it has
+ * already cached, and makes the CryptoManager verification methods reject
+ * a certificate whose leaf or issuer is revoked.
+ */
+public class CRLRevocationTest {
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+        //  - nssdb password
+        //  - server cert
+        //  - CA cert
+
+        CryptoManager cm = CryptoManager.getInstance();
+        cm.setPasswordCallback(new FilePasswordCallback(args[1]));
+
+        PK11Cert server = (PK11Cert) cm.findCertByNickname(args[2]);
+        PK11Cert ca = (PK11Cert) cm.findCertByNickname(args[3]);
+
+        Path dir = Files.createTempDirectory("crlrevocation");
+        try {
+            // The CRLs are signed with a JDK key; the store doesn't need to
+            // verify them.
+            CRLStore leafRevoked = new CRLStore(dir.resolve("leaf"));
+            leafRevoked.update(new ByteArrayInputStream(buildCrl(ca, server.getSerialNumber())), null);
+
+            CRLStore caRevoked = new CRLStore(dir.resolve("ca"));
+            caRevoked.update(new ByteArrayInputStream(buildCrl(ca, ca.getSerialNumber())), null);
+
+            testTrustManager(new X509Certificate[] { server, ca }, leafRevoked);
+
+            testCryptoManager(cm, args[2], server, leafRevoked);
+            testCryptoManager(cm, args[2], server, caRevoked);
+
+        } finally {
+            cm.setCRLStore(null);
+
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    public static void testTrustManager(X509Certificate[] chain, CRLStore store) throws Exception {
+        JSSChainCache cache = new JSSChainCache();
+
+        JSSTrustManager trusting = new JSSTrustManager();
+        trusting.setChainCache(cache);
+
+        trusting.checkServerTrusted(chain, "RSA");
+        assert trusting.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+
+        // A trust manager sharing the cache but checking the CRLs doesn't
+        // trust the cached chain.
+        JSSTrustManager revoking = new JSSTrustManager();
+        revoking.setChainCache(cache);
+        revoking.setCRLStore(store);
+
+        assert !revoking.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+        try {
+            revoking.checkServerTrusted(chain, "RSA");
+            throw new RuntimeException("Expected a revoked cached chain to fail");
+        } catch (CertificateException expected) {
+        }
+
+        // Revocations added after a chain was cached apply too.
+        trusting.setCRLStore(store);
+        assert !trusting.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+        try {
+            trusting.checkServerTrusted(chain, "RSA");
+            throw new RuntimeException("Expected a chain revoked after caching to fail");
+        } catch (CertificateException expected) {
+        }
+
+        // And the chain is trusted again once the check is disabled.
+        trusting.setCRLStore(null);
+        assert trusting.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+        trusting.checkServerTrusted(chain, "RSA");
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void testCryptoManager(CryptoManager cm, String nickname,
+            PK11Cert server, CRLStore store) throws Exception {
+        cm.setCRLStore(null);
+        cm.verifyCertificate(nickname, true, CertificateUsage.SSLServer);
+        cm.verifyCertificate(server, true, CertificateUsage.SSLServer);
+        assert cm.isCertValid(nickname, true, CryptoManager.CertUsage.SSLServer);
+        assert cm.isCertValid(nickname, true, CertificateUsage.SSLServer);
+        assert cm.isCertValid(nickname, true) != CertificateUsage.basicCertificateUsages;
+        assert cm.isCertValid(server.getEncoded(), true, CryptoManager.CertUsage.SSLServer);
+
+        cm.setCRLStore(store);
+        try {
+            cm.verifyCertificate(nickname, true, CertificateUsage.SSLServer);
+            throw new RuntimeException("Expected verifying a revoked nickname to fail");
+        } catch (CertificateException expected) {
+        }
+        try {
+            cm.verifyCertificate(server, true, CertificateUsage.SSLServer);
+            throw new RuntimeException("Expected verifying a revoked certificate to fail");
+        } catch (CertificateException expected) {
+        }
+        assert !cm.isCertValid(nickname, true, CryptoManager.CertUsage.SSLServer);
+        assert !cm.isCertValid(nickname, true, CertificateUsage.SSLServer);
+        assert !cm.isCertValid(nickname, true, CertificateUsage.CheckAllUsages);
+        assert cm.isCertValid(nickname, true) == CertificateUsage.basicCertificateUsages;
+
+        // A package only holding the leaf can't see a revoked issuer.
+        boolean packageValid = cm.isCertValid(server.getEncoded(), true,
+                CryptoManager.CertUsage.SSLServer);
+        assert packageValid == !store.isRevoked(server);
+
+        cm.setCRLStore(null);
+    }
+
+    private static byte[] buildCrl(X509Certificate issuer, BigInteger serial) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair kp = generator.generateKeyPair();
+
+        X509CRLImpl crl = new X509CRLImpl(
+            new X500Name(issuer.getSubjectX500Principal().getEncoded()),
+            new Date(),
+            new Date(System.currentTimeMillis() + 86400000L),
+            new RevokedCertificate[] { new RevokedCertImpl(serial, new Date(), null) },
+            null
+        );
+        crl.sign(kp.getPrivate(), "SHA256withRSA");
+        return crl.getEncoded();
+    }
+}
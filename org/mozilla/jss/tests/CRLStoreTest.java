@@ -0,0 +1,172 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CRLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLNumberExtension;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.CRLStore;
+import org.mozilla.jss.netscape.security.x509.DeltaCRLIndicatorExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+/**
+ * Checks that CRLStore applies full and delta CRLs, and keeps the sets
+ * across instances.
+ */
+public class CRLStoreTest {
+
+    private static final X500Name ISSUER;
+    static {
+        try {
+            ISSUER = new X500Name("CN=Test CA, O=Example");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair kp = generator.generateKeyPair();
+
+        Path dir = Files.createTempDirectory("crlstore");
+        try {
+            CRLStore store = new CRLStore(dir);
+            assert(!store.isRevoked(ISSUER, BigInteger.ONE));
+
+            // a delta CRL needs a base
+            try {
+                store.update(new ByteArrayInputStream(buildCrl(kp, 2, 1, 10, 11)), kp.getPublic());
+                throw new RuntimeException("Expected a delta CRL without base to fail");
+            } catch (CRLException expected) {
+            }
+
+            // full CRL 1 revokes 1, 3, 5, ... 99 and a large serial
+            List<RevokedCertificate> entries = new ArrayList<>();
+            for (int i = 1; i < 100; i += 2) {
+                entries.add(entry(i, null));
+            }
+            entries.add(entry(-1, null));
+            assert(store.update(new ByteArrayInputStream(buildCrl(kp, 1, -1, entries)), kp.getPublic()));
+            assert(store.getCRLNumber(ISSUER).intValue() == 1);
+            assert(store.getNumberOfRevokedCertificates(ISSUER) == 51);
+            assert(store.isRevoked(ISSUER, BigInteger.valueOf(3)));
+            assert(!store.isRevoked(ISSUER, BigInteger.valueOf(4)));
+            assert(store.isRevoked(ISSUER, large()));
+            assert(!store.isRevoked(new X500Name("CN=Other"), BigInteger.valueOf(3)));
+
+            // the same CRL again is ignored
+            assert(!store.update(new ByteArrayInputStream(buildCrl(kp, 1, -1, entries)), kp.getPublic()));
+
+            // delta CRL 2 on base 1: revokes 4 and 200, removes 3
+            List<RevokedCertificate> delta = new ArrayList<>();
+            delta.add(entry(200, RevocationReason.KEY_COMPROMISE));
+            delta.add(entry(3, RevocationReason.REMOVE_FROM_CRL));
+            delta.add(entry(4, RevocationReason.CERTIFICATE_HOLD));
+            assert(store.update(new ByteArrayInputStream(buildCrl(kp, 2, 1, delta)), kp.getPublic()));
+            assert(store.getCRLNumber(ISSUER).intValue() == 2);
+            assert(store.getNumberOfRevokedCertificates(ISSUER) == 52);
+            assert(!store.isRevoked(ISSUER, BigInteger.valueOf(3)));
+            assert(store.isRevoked(ISSUER, BigInteger.valueOf(4)));
+            assert(store.isRevoked(ISSUER, BigInteger.valueOf(5)));
+            assert(store.isRevoked(ISSUER, BigInteger.valueOf(200)));
+            assert(store.isRevoked(ISSUER, large()));
+
+            // a delta CRL whose base is newer than the stored CRL
+            try {
+                store.update(new ByteArrayInputStream(buildCrl(kp, 6, 5, 10, 11)), kp.getPublic());
+                throw new RuntimeException("Expected a delta CRL on a newer base to fail");
+            } catch (CRLException expected) {
+            }
+
+            // a CRL with a bad signature leaves the store unchanged
+            byte[] modified = buildCrl(kp, 3, 2, 10, 11);
+            modified[modified.length - 10] ^= 1;
+            try {
+                store.update(new ByteArrayInputStream(modified), kp.getPublic());
+                throw new RuntimeException("Expected a modified CRL to fail");
+            } catch (CRLException expected) {
+            }
+            assert(!store.isRevoked(ISSUER, BigInteger.valueOf(10)));
+
+            // the sets are kept in the directory
+            CRLStore reopened = new CRLStore(dir);
+            assert(reopened.getCRLNumber(ISSUER).intValue() == 2);
+            assert(reopened.isRevoked(ISSUER, BigInteger.valueOf(4)));
+            assert(!reopened.isRevoked(ISSUER, BigInteger.valueOf(3)));
+
+            // a new full CRL replaces the set
+            assert(reopened.update(new ByteArrayInputStream(buildCrl(kp, 7, -1, 10, 11)), null));
+            assert(reopened.getNumberOfRevokedCertificates(ISSUER) == 2);
+            assert(!reopened.isRevoked(ISSUER, BigInteger.valueOf(4)));
+            assert(reopened.isRevoked(ISSUER, BigInteger.valueOf(11)));
+
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static BigInteger large() {
+        return BigInteger.ONE.shiftLeft(150).add(BigInteger.TEN);
+    }
+
+    private static RevokedCertificate entry(int serial, RevocationReason reason) throws Exception {
+        CRLExtensions exts = null;
+        if (reason != null) {
+            exts = new CRLExtensions();
+            exts.add(new CRLReasonExtension(reason));
+        }
+        BigInteger number = serial < 0 ? large() : BigInteger.valueOf(serial);
+        return new RevokedCertImpl(number, new Date(), exts);
+    }
+
+    private static byte[] buildCrl(KeyPair kp, int number, int base, int... serials) throws Exception {
+        List<RevokedCertificate> entries = new ArrayList<>();
+        for (int serial : serials) {
+            entries.add(entry(serial, null));
+        }
+        return buildCrl(kp, number, base, entries);
+    }
+
+    private static byte[] buildCrl(KeyPair kp, int number, int base,
+            List<RevokedCertificate> entries) throws Exception {
+        CRLExtensions crlExtensions = new CRLExtensions();
+        crlExtensions.add(new CRLNumberExtension(number));
+        if (base >= 0) {
+            crlExtensions.add(new DeltaCRLIndicatorExtension(base));
+        }
+
+        X509CRLImpl crl = new X509CRLImpl(
+            ISSUER,
+            new Date(),
+            new Date(System.currentTimeMillis() + 86400000L),
+            entries.toArray(new RevokedCertificate[] {}),
+            crlExtensions
+        );
+        crl.sign(kp.getPrivate(), "SHA256withRSA");
+        return crl.getEncoded();
+    }
+}
@@ -0,0 +1,196 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.nio.ByteBuffer;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.util.PasswordCallback;
+
+/**
+ * Checks the update and doFinal variants which write into caller buffers:
+ * array offsets, heap and direct ByteBuffers, and in-place operation,
+ * against the results of SunJCE.
+ */
+public class CipherBufferTest {
+
+    private static final byte[] KEY = hex("000102030405060708090a0b0c0d0e0f");
+    private static final byte[] IV = hex("0f0e0d0c0b0a09080706050403020100");
+
+    public static void main(String[] args) throws Exception {
+        CryptoManager cm = CryptoManager.getInstance();
+        CryptoToken tok = cm.getInternalKeyStorageToken();
+        PasswordCallback cb = new FilePasswordCallback(args[1]);
+        tok.login(cb);
+
+        for (String transformation : new String[] {
+                "AES/CBC/PKCS5Padding", "AES/CBC/NoPadding" }) {
+            // multiples of the block size, so NoPadding modes accept them
+            for (int length : new int[] { 16, 64, 4096, 65536 }) {
+                testArrayOffsets(transformation, length);
+                testByteBuffers(transformation, length, false, false);
+                testByteBuffers(transformation, length, true, true);
+                testByteBuffers(transformation, length, true, false);
+                testInPlace(transformation, length, 0);
+                testInPlace(transformation, length, 16);
+            }
+        }
+    }
+
+    public static void testArrayOffsets(String transformation, int length) throws Exception {
+        byte[] plaintext = data(length);
+        byte[] expected = reference(transformation, plaintext);
+
+        // Input and output live in the middle of larger arrays, and are
+        // passed in uneven chunks.
+        byte[] input = new byte[length + 13];
+        System.arraycopy(plaintext, 0, input, 7, length);
+        byte[] output = new byte[expected.length + 64];
+
+        Cipher cipher = jss(transformation, Cipher.ENCRYPT_MODE);
+        int written = 0;
+        int offset = 0;
+        int chunk = 5;
+        while (offset < length) {
+            int n = Math.min(chunk, length - offset);
+            written += cipher.update(input, 7 + offset, n, output, 11 + written);
+            offset += n;
+            chunk = chunk * 3 + 1;
+        }
+        written += cipher.doFinal(output, 11 + written);
+
+        assert written == expected.length;
+        assert Arrays.equals(Arrays.copyOfRange(output, 11, 11 + written), expected);
+
+        // The bytes around the output region are untouched.
+        for (int i = 0; i < 11; i++) {
+            assert output[i] == 0;
+        }
+
+        // Decrypting with an output that's only as large as the input
+        // goes through the fallback path.
+        cipher = jss(transformation, Cipher.DECRYPT_MODE);
+        byte[] decrypted = new byte[expected.length];
+        int dlen = cipher.update(expected, 0, expected.length, decrypted, 0);
+        dlen += cipher.doFinal(decrypted, dlen);
+        assert dlen == length;
+        assert Arrays.equals(Arrays.copyOf(decrypted, dlen), plaintext);
+    }
+
+    public static void testByteBuffers(String transformation, int length,
+            boolean directInput, boolean directOutput) throws Exception {
+        byte[] plaintext = data(length);
+        byte[] expected = reference(transformation, plaintext);
+
+        ByteBuffer input = allocate(length + 8, directInput);
+        input.position(8);
+        input.put(plaintext);
+        input.position(8);
+
+        ByteBuffer output = allocate(expected.length + 32, directOutput);
+        output.position(3);
+
+        Cipher cipher = jss(transformation, Cipher.ENCRYPT_MODE);
+        ByteBuffer first = input.duplicate();
+        first.limit(8 + length / 2);
+        int written = cipher.update(first, output);
+        input.position(first.position());
+        written += cipher.doFinal(input, output);
+
+        assert written == expected.length;
+        assert !input.hasRemaining();
+        assert output.position() == 3 + written;
+
+        byte[] actual = new byte[written];
+        output.position(3);
+        output.get(actual);
+        assert Arrays.equals(actual, expected);
+
+        // And back, from the output buffer into a fresh one.
+        output.position(3);
+        output.limit(3 + written);
+        ByteBuffer decrypted = allocate(written + 16, !directOutput);
+        cipher = jss(transformation, Cipher.DECRYPT_MODE);
+        int dlen = cipher.doFinal(output, decrypted);
+        assert dlen == length;
+
+        decrypted.flip();
+        byte[] roundtrip = new byte[dlen];
+        decrypted.get(roundtrip);
+        assert Arrays.equals(roundtrip, plaintext);
+    }
+
+    public static void testInPlace(String transformation, int length, int shift) throws Exception {
+        byte[] plaintext = data(length);
+        byte[] expected = reference(transformation, plaintext);
+
+        // The output region starts at or after the input region and
+        // overlaps it.
+        byte[] buffer = new byte[expected.length + shift + 16];
+        System.arraycopy(plaintext, 0, buffer, 0, length);
+
+        Cipher cipher = jss(transformation, Cipher.ENCRYPT_MODE);
+        int written = cipher.update(buffer, 0, length, buffer, shift);
+        written += cipher.doFinal(buffer, shift + written);
+
+        assert written == expected.length;
+        assert Arrays.equals(Arrays.copyOfRange(buffer, shift, shift + written), expected);
+
+        cipher = jss(transformation, Cipher.DECRYPT_MODE);
+        int dlen = cipher.update(buffer, shift, written, buffer, shift);
+        dlen += cipher.doFinal(buffer, shift + dlen);
+
+        assert dlen == length;
+        assert Arrays.equals(Arrays.copyOfRange(buffer, shift, shift + dlen), plaintext);
+    }
+
+    private static Cipher jss(String transformation, int mode) throws Exception {
+        Cipher cipher = Cipher.getInstance(transformation, "Mozilla-JSS");
+        cipher.init(mode, key(), spec());
+        return cipher;
+    }
+
+    private static byte[] reference(String transformation, byte[] plaintext) throws Exception {
+        Cipher cipher = Cipher.getInstance(transformation, "SunJCE");
+        cipher.init(Cipher.ENCRYPT_MODE, key(), spec());
+        return cipher.doFinal(plaintext);
+    }
+
+    private static Key key() {
+        return new SecretKeySpec(KEY, "AES");
+    }
+
+    private static AlgorithmParameterSpec spec() {
+        return new IvParameterSpec(IV);
+    }
+
+    private static ByteBuffer allocate(int size, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        return data;
+    }
+
+    private static byte[] hex(String value) {
+        byte[] result = new byte[value.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,102 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509CRLEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLReasonExtension;
+import org.mozilla.jss.netscape.security.x509.RevocationReason;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+/**
+ * Checks that a CRL parsed with compactly indexed entries answers like
+ * one parsed into a RevokedCertImpl per entry.
+ */
+public class CompactCRLTest {
+
+    public static void main(String[] args) throws Exception {
+        byte[] encoded = buildCrl();
+
+        X509CRLImpl full = new X509CRLImpl(encoded);
+        X509CRLImpl compact = new X509CRLImpl(encoded, true, true);
+
+        assert(!full.areEntriesCompact());
+        assert(compact.areEntriesCompact());
+        assert(compact.getNumberOfRevokedCertificates() == full.getNumberOfRevokedCertificates());
+        assert(compact.getRevokedCertificates().size() == full.getRevokedCertificates().size());
+        assert(compact.getListOfRevokedCertificates().equals(full.getListOfRevokedCertificates()));
+
+        for (int i = 0; i < 2000; i++) {
+            BigInteger serial = serial(i);
+            assert(compact.isRevoked(serial) == full.isRevoked(serial));
+
+            X509CRLEntry expected = full.getRevokedCertificate(serial);
+            X509CRLEntry actual = compact.getRevokedCertificate(serial);
+            if (expected == null) {
+                assert(actual == null);
+                continue;
+            }
+            assert(actual.getSerialNumber().equals(serial));
+            assert(actual.getRevocationDate().equals(expected.getRevocationDate()));
+            assert(Arrays.equals(actual.getExtensionValue("2.5.29.21"),
+                    expected.getExtensionValue("2.5.29.21")));
+        }
+
+        // the entries are kept as they were encoded
+        assert(Arrays.equals(compact.getTBSCertList(), full.getTBSCertList()));
+
+        // a CRL without entries
+        X509CRLImpl empty = new X509CRLImpl(buildCrl(new ArrayList<>()), true, true);
+        assert(empty.areEntriesCompact());
+        assert(empty.getNumberOfRevokedCertificates() == 0);
+        assert(empty.getRevokedCertificates() == null);
+        assert(!empty.isRevoked(BigInteger.ONE));
+    }
+
+    private static BigInteger serial(int i) {
+        // unsorted, and some large
+        return BigInteger.valueOf(i * 7919L % 1000).shiftLeft(i % 3 == 0 ? 80 : 0);
+    }
+
+    private static byte[] buildCrl() throws Exception {
+        List<RevokedCertificate> revokedCerts = new ArrayList<>();
+        for (int i = 0; i < 1000; i += 2) {
+            CRLExtensions entryExtensions = null;
+            if (i % 3 != 0) {
+                entryExtensions = new CRLExtensions();
+                entryExtensions.add(new CRLReasonExtension(RevocationReason.fromInt(1 + i % 5)));
+            }
+            revokedCerts.add(new RevokedCertImpl(serial(i), new Date(1000000L * i), entryExtensions));
+        }
+        return buildCrl(revokedCerts);
+    }
+
+    private static byte[] buildCrl(List<RevokedCertificate> revokedCerts) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair kp = generator.generateKeyPair();
+
+        X509CRLImpl crlImpl = new X509CRLImpl(
+            new X500Name("CN=Test"),
+            new Date(),
+            new Date(System.currentTimeMillis() + 86400000L),
+            revokedCerts.toArray(new RevokedCertificate[] {}),
+            null
+        );
+        crlImpl.sign(kp.getPrivate(), "SHA256withRSA");
+        return crlImpl.getEncoded();
+    }
+}
@@ -115,6 +115,52 @@ public class CrossHMACTest {
         }
     }
 
+    /**
+     * Checks that a cloned HMAC completes independently of the original,
+     * both before and after the key has been set.
+     */
+    public void cloneHMAC(String alg, SecretKeyFacade sk, String clearText)
+            throws Exception {
+        byte[] input = clearText.getBytes();
+        int half = input.length / 2;
+
+        Mac mozillaHmac = Mac.getInstance(alg, MOZ_PROVIDER_NAME);
+        Mac unkeyed = (Mac) mozillaHmac.clone();
+
+        mozillaHmac.init(sk);
+        byte[] expected = mozillaHmac.doFinal(input);
+        byte[] prefixOnly = mozillaHmac.doFinal(
+                java.util.Arrays.copyOf(input, half));
+
+        mozillaHmac.update(input, 0, half);
+        Mac copy = (Mac) mozillaHmac.clone();
+        copy.update(input, half, input.length - half);
+        if (!MessageDigest.isEqual(copy.doFinal(), expected)) {
+            throw new Exception("ERROR: cloned " + alg +
+                    " differs from the original");
+        }
+
+        if (!MessageDigest.isEqual(mozillaHmac.doFinal(), prefixOnly)) {
+            throw new Exception("ERROR: updating a cloned " + alg +
+                    " modified the original");
+        }
+
+        // A clone made before init() gets its own key and context.
+        unkeyed.init(sk);
+        if (!MessageDigest.isEqual(unkeyed.doFinal(input), expected)) {
+            throw new Exception("ERROR: " + alg +
+                    " cloned before init() differs from the original");
+        }
+
+        // And a completed clone can be reused like any other Mac.
+        if (!MessageDigest.isEqual(copy.doFinal(input), expected)) {
+            throw new Exception("ERROR: reused clone of " + alg +
+                    " differs from the original");
+        }
+
+        System.out.println(alg + " clones correctly");
+    }
+
     public boolean fipsMode() {
         return cm.FIPSEnabled();
     }
@@ -172,6 +218,7 @@ public class CrossHMACTest {
                         // no provider to compare results with so just test JSS
                         hmacTest.doHMAC(JSS_HMAC_Algs[i], sk, clearText);
                     }
+                    hmacTest.cloneHMAC(JSS_HMAC_Algs[i], sk, clearText);
                 }
             }
 
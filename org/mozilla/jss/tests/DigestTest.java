@@ -8,7 +8,12 @@ import java.security.MessageDigest;
 import java.security.Provider;
 import java.security.Security;
 
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.SecretKeySpec;
+
 import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.pkcs11.PK11ContextPool;
 
 public class DigestTest {
 
@@ -89,6 +94,132 @@ public class DigestTest {
         return true;
     }
 
+    /**
+     * Digests a common prefix once, clones the digest and checks that the
+     * original and the clone complete independently.
+     */
+    public static void testJSSDigestClone(String alg, byte[] toBeDigested)
+    throws Exception {
+        int half = toBeDigested.length / 2;
+
+        java.security.MessageDigest mozillaDigest =
+                java.security.MessageDigest.getInstance(alg, MOZ_PROVIDER_NAME);
+        byte[] expected = mozillaDigest.digest(toBeDigested);
+        byte[] prefixOnly = mozillaDigest.digest(
+                java.util.Arrays.copyOf(toBeDigested, half));
+
+        mozillaDigest.update(toBeDigested, 0, half);
+        java.security.MessageDigest copy =
+                (java.security.MessageDigest) mozillaDigest.clone();
+
+        copy.update(toBeDigested, half, toBeDigested.length - half);
+        if( !MessageDigest.isEqual(copy.digest(), expected) ) {
+            throw new Exception("ERROR: cloned " + alg +
+                                " digest differs from the original");
+        }
+
+        if( !MessageDigest.isEqual(mozillaDigest.digest(), prefixOnly) ) {
+            throw new Exception("ERROR: updating a cloned " + alg +
+                                " digest modified the original");
+        }
+
+        System.out.println(alg + " digest clones correctly");
+    }
+
+    /**
+     * Checks that a completed digest returns its native context to the
+     * pool, where the next digest picks it up.
+     */
+    public static void testContextReuse(byte[] toBeDigested)
+    throws Exception {
+        java.security.MessageDigest.getInstance("SHA-256", MOZ_PROVIDER_NAME)
+                .digest(toBeDigested);
+
+        long hits = PK11ContextPool.getHits();
+        if( PK11ContextPool.size() == 0 ) {
+            throw new Exception("ERROR: digest context wasn't pooled");
+        }
+
+        java.security.MessageDigest.getInstance("SHA-256", MOZ_PROVIDER_NAME)
+                .digest(toBeDigested);
+        if( PK11ContextPool.getHits() != hits + 1 ) {
+            throw new Exception("ERROR: pooled digest context wasn't reused");
+        }
+
+        System.out.println("Digest contexts are reused");
+    }
+
+    /**
+     * Checks that the pool is shared across threads, stays bounded as
+     * HMAC keys come and go, and releases everything on clear().
+     */
+    public static void testSharedPool(byte[] toBeDigested)
+    throws Exception {
+        PK11ContextPool.clear();
+
+        Exception[] failure = new Exception[1];
+        Thread thread = new Thread(() -> {
+            try {
+                java.security.MessageDigest.getInstance("SHA-256",
+                        MOZ_PROVIDER_NAME).digest(toBeDigested);
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        thread.start();
+        thread.join();
+        if( failure[0] != null ) {
+            throw failure[0];
+        }
+
+        long hits = PK11ContextPool.getHits();
+        java.security.MessageDigest.getInstance("SHA-256", MOZ_PROVIDER_NAME)
+                .digest(toBeDigested);
+        if( PK11ContextPool.getHits() != hits + 1 ) {
+            throw new Exception("ERROR: context pooled by another thread " +
+                                "wasn't reused");
+        }
+
+        // FIPS mode doesn't allow importing raw HMAC keys.
+        if( !CryptoManager.getInstance().FIPSEnabled() ) {
+            SecretKeyFactory factory =
+                    SecretKeyFactory.getInstance("HmacSHA1", MOZ_PROVIDER_NAME);
+            for( int i = 0; i < PK11ContextPool.MAX_KEYS + 8; i++ ) {
+                byte[] keyData = new byte[16];
+                keyData[0] = (byte) i;
+                Mac mac = Mac.getInstance("HmacSHA1", MOZ_PROVIDER_NAME);
+                mac.init(factory.generateSecret(
+                        new SecretKeySpec(keyData, "HmacSHA1")));
+                mac.doFinal(toBeDigested);
+            }
+            if( PK11ContextPool.size() > PK11ContextPool.MAX_KEYS ) {
+                throw new Exception("ERROR: pool holds " +
+                                    PK11ContextPool.size() + " contexts for " +
+                                    "at most " + PK11ContextPool.MAX_KEYS +
+                                    " keys");
+            }
+        }
+
+        PK11ContextPool.clear();
+        if( PK11ContextPool.size() != 0 ) {
+            throw new Exception("ERROR: clear() left idle contexts");
+        }
+
+        PK11ContextPool.setMaxEntries(0);
+        try {
+            java.security.MessageDigest.getInstance("SHA-256",
+                    MOZ_PROVIDER_NAME).digest(toBeDigested);
+            if( PK11ContextPool.size() != 0 ) {
+                throw new Exception("ERROR: context pooled while pooling " +
+                                    "is disabled");
+            }
+        } finally {
+            PK11ContextPool.setMaxEntries(
+                    PK11ContextPool.DEFAULT_MAX_ENTRIES);
+        }
+
+        System.out.println("Digest context pool is shared and bounded");
+    }
 
     public static void main(String []argv) {
 
@@ -124,8 +255,12 @@ public class DigestTest {
                     // no provider to compare results with
                     testJSSDigest(JSS_Digest_Algs[i], toBeDigested);
                 }
+                testJSSDigestClone(JSS_Digest_Algs[i], toBeDigested);
             }
 
+            testContextReuse(toBeDigested);
+            testSharedPool(toBeDigested);
+
             //HMAC examples in org.mozilla.jss.tests.HMACTest
 
         } catch( Exception e ) {
@@ -0,0 +1,181 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.cert.CertificateException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+
+import org.mozilla.jss.netscape.security.extensions.OCSPNoCheckExtension;
+import org.mozilla.jss.netscape.security.util.ObjectIdentifier;
+import org.mozilla.jss.netscape.security.x509.CertAttrSet;
+import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
+import org.mozilla.jss.netscape.security.x509.Extension;
+import org.mozilla.jss.netscape.security.x509.ExtensionFactory;
+import org.mozilla.jss.netscape.security.x509.KeyUsageExtension;
+import org.mozilla.jss.netscape.security.x509.OIDMap;
+import org.mozilla.jss.netscape.security.x509.PKIXExtensions;
+
+/**
+ * Checks that extensions are decoded through the factories registered in
+ * the OIDMap, both for built-in classes and for classes registered by name
+ * or with their own factory.
+ */
+public class ExtensionFactoryTest {
+
+    public static void main(String[] args) throws Exception {
+        testBuiltin();
+        testRegisteredByName();
+        testBoundConstructor();
+        testAddExtensionFactory();
+        testUnknown();
+    }
+
+    public static void testBuiltin() throws Exception {
+        ExtensionFactory factory = OIDMap.getExtensionFactory(PKIXExtensions.KeyUsage_Id);
+        assert(factory != null);
+        assert(factory == OIDMap.getExtensionFactory(PKIXExtensions.KeyUsage_Id));
+
+        KeyUsageExtension ku = new KeyUsageExtension(true,
+                new boolean[] { true, false, true });
+
+        CertificateExtensions exts = new CertificateExtensions();
+        exts.parseExtension(new Extension(ku));
+
+        Extension parsed = exts.elementAt(0);
+        assert(parsed instanceof KeyUsageExtension);
+        assert(parsed.isCritical());
+        assert(Arrays.equals(((KeyUsageExtension) parsed).getBits(), ku.getBits()));
+    }
+
+    public static void testRegisteredByName() throws Exception {
+        // Loading the class registers it.
+        OCSPNoCheckExtension ext = new OCSPNoCheckExtension(Boolean.TRUE);
+
+        ObjectIdentifier oid = new ObjectIdentifier(OCSPNoCheckExtension.OID);
+        ExtensionFactory factory = OIDMap.getExtensionFactory(oid);
+        assert(factory != null);
+        assert(factory == OIDMap.getExtensionFactory(oid));
+
+        Object created = factory.create(Boolean.FALSE, ext.getExtensionValue());
+        assert(created instanceof OCSPNoCheckExtension);
+        assert(!((Extension) created).isCritical());
+    }
+
+    public static void testBoundConstructor() throws Exception {
+        // A class outside of JSS, registered by name, is created through
+        // its constructor, looked up once.
+        OIDMap.addAttribute(TestExtension.class.getName(), TestExtension.OID,
+                TestExtension.NAME);
+
+        ObjectIdentifier oid = new ObjectIdentifier(TestExtension.OID);
+        ExtensionFactory factory = OIDMap.getExtensionFactory(oid);
+        assert(factory != null);
+        assert(factory == OIDMap.getExtensionFactory(oid));
+
+        byte[] value = { 5, 0 };
+        Object created = factory.create(Boolean.TRUE, value);
+        assert(created instanceof TestExtension);
+        assert(((Extension) created).isCritical());
+        assert(Arrays.equals(((Extension) created).getExtensionValue(), value));
+
+        // Exceptions thrown by the constructor aren't wrapped.
+        try {
+            factory.create(Boolean.FALSE, new byte[0]);
+            throw new RuntimeException("Expected an empty value to be rejected");
+        } catch (IOException e) {
+            assert(e.getMessage().equals("Empty value"));
+        }
+    }
+
+    public static void testAddExtensionFactory() throws Exception {
+        ObjectIdentifier oid = new ObjectIdentifier("1.2.3.4.5.6.8");
+        assert(OIDMap.getExtensionFactory(oid) == null);
+
+        ExtensionFactory factory = (critical, value) -> new TestExtension(critical, value, oid);
+        OIDMap.addExtensionFactory(oid, factory);
+        assert(OIDMap.getExtensionFactory(oid) == factory);
+
+        Extension ext = new Extension();
+        ext.setExtensionId(oid);
+        ext.setExtensionValue(new byte[] { 5, 0 });
+        CertificateExtensions exts = new CertificateExtensions();
+        exts.parseExtension(ext);
+        assert(exts.elementAt(0) instanceof TestExtension);
+
+        // A registered factory replaces the bound constructor.
+        ObjectIdentifier testOID = new ObjectIdentifier(TestExtension.OID);
+        OIDMap.addExtensionFactory(testOID, TestExtension::new);
+        assert(OIDMap.getExtensionFactory(testOID) != null);
+        assert(OIDMap.getExtensionFactory(testOID) != OIDMap.getExtensionFactory(oid));
+    }
+
+    public static void testUnknown() throws Exception {
+        ObjectIdentifier oid = new ObjectIdentifier("1.2.3.4.5.6.7");
+        assert(OIDMap.getExtensionFactory(oid) == null);
+
+        Extension unknown = new Extension();
+        unknown.setExtensionId(oid);
+        unknown.setExtensionValue(new byte[] { 5, 0 });
+        CertificateExtensions exts = new CertificateExtensions();
+        exts.parseExtension(unknown);
+        assert(exts.elementAt(0) == unknown);
+    }
+
+    public static class TestExtension extends Extension implements CertAttrSet {
+
+        private static final long serialVersionUID = 1L;
+
+        public static final String OID = "1.2.3.4.5.6.9";
+        public static final String NAME = "ExtensionFactoryTest";
+
+        public TestExtension(Boolean critical, Object value) throws IOException {
+            this(critical, value, new ObjectIdentifier(OID));
+        }
+
+        TestExtension(Boolean critical, Object value, ObjectIdentifier oid)
+                throws IOException {
+            byte[] bytes = (byte[]) value;
+            if (bytes.length == 0) {
+                throw new IOException("Empty value");
+            }
+            extensionId = oid;
+            this.critical = critical.booleanValue();
+            extensionValue = bytes.clone();
+        }
+
+        public void encode(OutputStream out) throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        public void decode(InputStream in) throws IOException {
+            throw new IOException("Not supported");
+        }
+
+        public void set(String name, Object obj) throws CertificateException {
+            throw new CertificateException("Not supported");
+        }
+
+        public Object get(String name) throws CertificateException {
+            throw new CertificateException("Not supported");
+        }
+
+        public void delete(String name) throws CertificateException {
+            throw new CertificateException("Not supported");
+        }
+
+        public Enumeration<String> getAttributeNames() {
+            return Collections.emptyEnumeration();
+        }
+
+        public String getName() {
+            return NAME;
+        }
+    }
+}
@@ -11,11 +11,16 @@ import java.security.Security;
 import java.security.Signature;
 import java.security.spec.MGF1ParameterSpec;
 import java.security.spec.PSSParameterSpec;
+import java.util.Arrays;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.InitializationValues;
 
+import org.mozilla.jss.crypto.CryptoToken;
 import org.mozilla.jss.crypto.Policy;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+import org.mozilla.jss.pkcs11.PK11ContextPool;
+import org.mozilla.jss.pkcs11.PK11PrivKey;
 
 
 public class JCASigTest {
@@ -65,6 +70,94 @@ public class JCASigTest {
         }
     }
 
+    /**
+     * Checks that completed signatures and verifications return their
+     * native contexts to PK11ContextPool, and that a reused context
+     * doesn't carry over input from its previous operation.
+     */
+    public static void contextReuseTest(KeyPair keyPair) throws Exception {
+        byte[] data = new byte[] {1,2,3,4,5,6,7,8,9};
+
+        PK11ContextPool.clear();
+
+        Signature signer = Signature.getInstance("SHA-256/RSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(data);
+        byte[] signature = signer.sign();
+        if (PK11ContextPool.size() != 1) {
+            throw new Exception("ERROR: signing context wasn't pooled");
+        }
+
+        // PKCS #1 v1.5 signatures are deterministic, so the reused
+        // context has to produce the same signature.
+        long hits = PK11ContextPool.getHits();
+        signer = Signature.getInstance("SHA-256/RSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(data);
+        if (!Arrays.equals(signer.sign(), signature)) {
+            throw new Exception("ERROR: reused signing context produced " +
+                "another signature");
+        }
+        if (PK11ContextPool.getHits() != hits + 1) {
+            throw new Exception("ERROR: pooled signing context wasn't reused");
+        }
+
+        // Input left by an abandoned operation is discarded when the
+        // signature is initialized again.
+        CryptoToken token = ((PK11PrivKey) keyPair.getPrivate()).getOwningToken();
+        org.mozilla.jss.crypto.Signature jssSigner =
+            token.getSignatureContext(SignatureAlgorithm.RSASignatureWithSHA256Digest);
+        jssSigner.initSign((PK11PrivKey) keyPair.getPrivate());
+        jssSigner.update(new byte[] {10,11,12});
+        jssSigner.initSign((PK11PrivKey) keyPair.getPrivate());
+        jssSigner.update(data);
+        if (!Arrays.equals(jssSigner.sign(), signature)) {
+            throw new Exception("ERROR: restarted signing context kept " +
+                "previous input");
+        }
+
+        Signature verifier = Signature.getInstance("SHA-256/RSA");
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        if (!verifier.verify(signature)) {
+            throw new Exception("ERROR: signature failed to verify");
+        }
+
+        // A failed verification doesn't spoil the context either.
+        hits = PK11ContextPool.getHits();
+        byte[] wrong = signature.clone();
+        wrong[0] ^= 1;
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        if (verifier.verify(wrong)) {
+            throw new Exception("ERROR: modified signature verified");
+        }
+        verifier.initVerify(keyPair.getPublic());
+        verifier.update(data);
+        if (!verifier.verify(signature)) {
+            throw new Exception("ERROR: signature failed to verify with " +
+                "a reused context");
+        }
+        if (PK11ContextPool.getHits() != hits + 2) {
+            throw new Exception("ERROR: pooled verification context " +
+                "wasn't reused");
+        }
+
+        // RSA-PSS contexts depend on their parameters and aren't pooled.
+        int size = PK11ContextPool.size();
+        sigTest("RSASSA-PSS", keyPair);
+        if (PK11ContextPool.size() != size) {
+            throw new Exception("ERROR: RSA-PSS context was pooled");
+        }
+
+        PK11ContextPool.clear();
+        if (PK11ContextPool.size() != 0) {
+            throw new Exception("ERROR: clear() left idle contexts");
+        }
+
+        System.out.println("Signature contexts are reused");
+    }
+
     public static void main(String args[]) throws Exception {
         CryptoManager manager;
         KeyPairGenerator kpgen;
@@ -111,6 +204,7 @@ public class JCASigTest {
         sigTest("SHA384withRSA/PSS", keyPair);
         sigTest("SHA512withRSA/PSS", keyPair);
         sigTest("RSASSA-PSS",keyPair);
+        contextReuseTest(keyPair);
 
         // Generate an DSA keypair
         kpgen = KeyPairGenerator.getInstance("DSA");
@@ -0,0 +1,294 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.netscape.security.x509.CRLStore;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.provider.javax.crypto.JSSChainCache;
+import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
+
+/**
+ * Checks the hits, misses, usage keys, expiry and size bound of
+ * JSSChainCache, and that JSSTrustManager doesn't trust a cached chain
+ * which was revoked or validated against other trust anchors.
+ */
+public class JSSChainCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+        //  - nssdb password
+        //  - server cert
+        //  - CA cert
+
+        KeyPair key = JSSTrustAnchorsTest.generateKeyPair();
+
+        testHitAndMiss(key);
+        testUsages(key);
+        testEviction(key);
+        testExpiry(key);
+
+        CryptoManager cm = CryptoManager.getInstance();
+        cm.setPasswordCallback(new FilePasswordCallback(args[1]));
+
+        X509Certificate server = (PK11Cert) cm.findCertByNickname(args[2]);
+        X509Certificate ca = (PK11Cert) cm.findCertByNickname(args[3]);
+        X509Certificate[] chain = new X509Certificate[] { server, ca };
+
+        testMissingEKUSeparation(chain);
+        testRevokedChain(chain);
+        testTrustAnchorsChange(chain);
+    }
+
+    public static void testHitAndMiss(KeyPair key) throws Exception {
+        JSSChainCache cache = new JSSChainCache();
+        X509Certificate[] chain = makeChain(key, "CN=Hit");
+        X509Certificate[] other = makeChain(key, "CN=Miss");
+
+        assert !cache.contains(chain, JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.getHits() == 0 && cache.getMisses() == 1;
+
+        cache.put(chain, JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.size() == 1;
+
+        assert cache.contains(chain, JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.getHits() == 1 && cache.getMisses() == 1;
+
+        // A chain with another certificate, or the same certificates in
+        // another order, is a different entry.
+        assert !cache.contains(other, JSSTrustManager.SERVER_AUTH_OID);
+        assert !cache.contains(new X509Certificate[] { chain[1], chain[0] },
+                JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.getHits() == 1 && cache.getMisses() == 3;
+
+        // Empty chains are never cached.
+        cache.put(new X509Certificate[0], JSSTrustManager.SERVER_AUTH_OID);
+        assert !cache.contains(new X509Certificate[0], JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.size() == 1;
+
+        cache.clear();
+        assert cache.size() == 0;
+        assert !cache.contains(chain, JSSTrustManager.SERVER_AUTH_OID);
+    }
+
+    public static void testUsages(KeyPair key) throws Exception {
+        JSSChainCache cache = new JSSChainCache();
+        X509Certificate[] chain = makeChain(key, "CN=Usages");
+
+        String strict = JSSTrustManager.SERVER_AUTH_OID;
+        String lenient = JSSTrustManager.SERVER_AUTH_OID + ";allowMissingEKU";
+
+        // A chain validated while allowing a missing EKU isn't valid for
+        // a trust manager requiring it, nor for another usage.
+        cache.put(chain, lenient);
+        assert cache.contains(chain, lenient);
+        assert !cache.contains(chain, strict);
+        assert !cache.contains(chain, JSSTrustManager.CLIENT_AUTH_OID + ";allowMissingEKU");
+        assert !cache.contains(chain, null);
+
+        cache.put(chain, strict);
+        assert cache.contains(chain, strict);
+        assert cache.size() == 2;
+    }
+
+    public static void testEviction(KeyPair key) throws Exception {
+        JSSChainCache cache = new JSSChainCache();
+        cache.setMaxEntries(3);
+
+        X509Certificate[][] chains = new X509Certificate[5][];
+        for (int i = 0; i < chains.length; i++) {
+            chains[i] = makeChain(key, "CN=Eviction " + i);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            cache.put(chains[i], JSSTrustManager.SERVER_AUTH_OID);
+        }
+        assert cache.size() == 3;
+
+        // Using the oldest entry makes the second one the least recently
+        // used, so that one is evicted first.
+        assert cache.contains(chains[0], JSSTrustManager.SERVER_AUTH_OID);
+        cache.put(chains[3], JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.size() == 3;
+        assert !cache.contains(chains[1], JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.contains(chains[0], JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.contains(chains[2], JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.contains(chains[3], JSSTrustManager.SERVER_AUTH_OID);
+
+        // Lowering the bound trims the cache to the most recently used.
+        cache.setMaxEntries(1);
+        assert cache.size() == 1;
+        assert cache.contains(chains[3], JSSTrustManager.SERVER_AUTH_OID);
+
+        // And a bound of zero disables it.
+        cache.setMaxEntries(0);
+        assert cache.size() == 0;
+        cache.put(chains[4], JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.size() == 0;
+        assert !cache.contains(chains[4], JSSTrustManager.SERVER_AUTH_OID);
+    }
+
+    public static void testExpiry(KeyPair key) throws Exception {
+        JSSChainCache cache = new JSSChainCache();
+        X509Certificate[] chain = makeChain(key, "CN=TTL");
+
+        cache.setTTL(200);
+        cache.put(chain, JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.contains(chain, JSSTrustManager.SERVER_AUTH_OID);
+
+        Thread.sleep(400);
+        assert !cache.contains(chain, JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.size() == 0;
+
+        // An entry doesn't outlive the certificates of its chain.
+        cache.setTTL(JSSChainCache.DEFAULT_TTL);
+
+        // Validity times have a resolution of a second.
+        Date expiry = new Date((System.currentTimeMillis() / 1000 + 2) * 1000);
+        X509Certificate expiring = JSSTrustAnchorsTest.makeCA("CN=Expiring", key,
+                JSSTrustAnchorsTest.id(1), expiry);
+        X509Certificate[] expiringChain = new X509Certificate[] { chain[0], expiring };
+
+        cache.put(expiringChain, JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.contains(expiringChain, JSSTrustManager.SERVER_AUTH_OID);
+
+        while (System.currentTimeMillis() <= expiry.getTime()) {
+            Thread.sleep(100);
+        }
+        assert !cache.contains(expiringChain, JSSTrustManager.SERVER_AUTH_OID);
+    }
+
+    public static void testMissingEKUSeparation(X509Certificate[] chain) throws Exception {
+        JSSChainCache cache = new JSSChainCache();
+
+        JSSTrustManager lenient = new JSSTrustManager();
+        lenient.setChainCache(cache);
+        lenient.configureAllowMissingExtendedKeyUsage(true);
+
+        JSSTrustManager strict = new JSSTrustManager();
+        strict.setChainCache(cache);
+
+        lenient.checkServerTrusted(chain, "RSA");
+        assert lenient.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+        assert !lenient.isCachedTrusted(chain, JSSTrustManager.CLIENT_AUTH_OID);
+
+        // The lenient result isn't reused by a trust manager requiring
+        // the EKU, which validates the chain itself.
+        assert !strict.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+        strict.checkServerTrusted(chain, "RSA");
+        assert strict.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+        assert cache.size() == 2;
+
+        long hits = cache.getHits();
+        strict.checkServerTrusted(chain, "RSA");
+        assert cache.getHits() == hits + 1;
+    }
+
+    public static void testRevokedChain(X509Certificate[] chain) throws Exception {
+        Path dir = Files.createTempDirectory("chaincache");
+        try {
+            // The CRL is signed with a JDK key; the store doesn't need to
+            // verify it.
+            CRLStore store = new CRLStore(dir);
+            store.update(new ByteArrayInputStream(buildCrl(chain[1], chain[0].getSerialNumber())), null);
+
+            JSSChainCache cache = new JSSChainCache();
+
+            JSSTrustManager tm = new JSSTrustManager();
+            tm.setChainCache(cache);
+            tm.checkServerTrusted(chain, "RSA");
+            assert tm.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+
+            // The entry is still in the cache, but isn't trusted once the
+            // leaf is revoked.
+            tm.setCRLStore(store);
+            assert !tm.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+            try {
+                tm.checkServerTrusted(chain, "RSA");
+                throw new RuntimeException("Expected a revoked cached chain to fail");
+            } catch (CertificateException expected) {
+            }
+            assert cache.size() == 1;
+
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : (Iterable<Path>) files.sorted((a, b) -> b.compareTo(a))::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    public static void testTrustAnchorsChange(X509Certificate[] chain) throws Exception {
+        JSSChainCache cache = new JSSChainCache();
+        JSSTrustAnchorsTest.Anchors anchors = new JSSTrustAnchorsTest.Anchors(chain[1]);
+
+        JSSTrustManager tm = new JSSTrustManager();
+        tm.setChainCache(cache);
+        tm.setTrustAnchors(anchors);
+
+        tm.checkServerTrusted(chain, "RSA");
+        assert tm.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+
+        // Once the anchors are reloaded, the cached result doesn't apply
+        // and the chain is validated against the new anchors.
+        anchors.certs.clear();
+        anchors.modCount++;
+        assert !tm.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+        try {
+            tm.checkServerTrusted(chain, "RSA");
+            throw new RuntimeException("Expected a chain without a trust anchor to fail");
+        } catch (CertificateException expected) {
+        }
+
+        // The same happens when the anchors are invalidated.
+        anchors.certs.add(chain[1]);
+        anchors.invalidate();
+        tm.checkServerTrusted(chain, "RSA");
+        assert tm.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+
+        anchors.invalidate();
+        assert !tm.isCachedTrusted(chain, JSSTrustManager.SERVER_AUTH_OID);
+    }
+
+    /**
+     * Returns a leaf and its issuer generated with the given JDK key.
+     */
+    static X509Certificate[] makeChain(KeyPair key, String issuer) throws Exception {
+        return new X509Certificate[] {
+            JSSTrustAnchorsTest.makeLeaf(issuer, key, null, null),
+            JSSTrustAnchorsTest.makeCA(issuer, key, null, null)
+        };
+    }
+
+    private static byte[] buildCrl(X509Certificate issuer, BigInteger serial) throws Exception {
+        KeyPair kp = JSSTrustAnchorsTest.generateKeyPair();
+
+        X509CRLImpl crl = new X509CRLImpl(
+            new X500Name(issuer.getSubjectX500Principal().getEncoded()),
+            new Date(),
+            new Date(System.currentTimeMillis() + 86400000L),
+            new RevokedCertificate[] { new RevokedCertImpl(serial, new Date(), null) },
+            null
+        );
+        crl.sign(kp.getPrivate(), "SHA256withRSA");
+        return crl.getEncoded();
+    }
+}
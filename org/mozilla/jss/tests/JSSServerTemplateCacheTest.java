@@ -0,0 +1,93 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.pkcs11.PK11PrivKey;
+import org.mozilla.jss.ssl.javax.JSSServerTemplateCache;
+
+/**
+ * Checks that JSSServerTemplateCache builds each template once, stays
+ * within its bound, and only closes evicted templates once their last
+ * reference is released.
+ */
+public class JSSServerTemplateCacheTest {
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+        //  - nssdb password
+        //  - first server cert
+        //  - second server cert
+
+        CryptoManager cm = CryptoManager.getInstance();
+        cm.setPasswordCallback(new FilePasswordCallback(args[1]));
+
+        PK11Cert first = (PK11Cert) cm.findCertByNickname(args[2]);
+        PK11PrivKey firstKey = (PK11PrivKey) cm.findPrivKeyByCert(first);
+        PK11Cert second = (PK11Cert) cm.findCertByNickname(args[3]);
+        PK11PrivKey secondKey = (PK11PrivKey) cm.findPrivKeyByCert(second);
+
+        JSSServerTemplateCache cache = new JSSServerTemplateCache();
+        cache.setMaxEntries(1);
+
+        // Repeated acquisitions share one template.
+        JSSServerTemplateCache.Template held = cache.acquire(first, firstKey);
+        try (JSSServerTemplateCache.Template again = cache.acquire(first, firstKey)) {
+            assert again == held;
+        }
+        assert cache.getBuilds() == 1;
+        assert cache.getHits() == 1;
+        assert cache.size() == 1;
+
+        // A second certificate evicts the first, but the held reference
+        // keeps its PRFileDesc open.
+        JSSServerTemplateCache.Template other = cache.acquire(second, secondKey);
+        other.close();
+        assert cache.size() == 1;
+        assert cache.getEvictions() == 1;
+        assert !held.isClosed();
+        assert held.getFD() != null;
+
+        // Releasing the last reference closes it.
+        held.close();
+        assert held.isClosed();
+
+        // Closing twice doesn't underflow the reference count.
+        held.close();
+
+        // The evicted certificate gets a fresh template.
+        JSSServerTemplateCache.Template rebuilt = cache.acquire(first, firstKey);
+        rebuilt.close();
+        assert rebuilt != held;
+        assert cache.getBuilds() == 3;
+        assert other.isClosed();
+
+        // Unreferenced templates are closed as soon as they're invalidated.
+        assert cache.invalidate(first);
+        assert !cache.invalidate(first);
+        assert rebuilt.isClosed();
+        assert cache.size() == 0;
+
+        // Raising the bound keeps both; lowering it trims the least
+        // recently used one.
+        cache.setMaxEntries(2);
+        JSSServerTemplateCache.Template a = cache.acquire(first, firstKey);
+        a.close();
+        JSSServerTemplateCache.Template b = cache.acquire(second, secondKey);
+        b.close();
+        assert cache.size() == 2;
+
+        cache.setMaxEntries(1);
+        assert cache.size() == 1;
+        assert a.isClosed();
+        assert !b.isClosed();
+
+        cache.invalidateAll();
+        assert cache.size() == 0;
+        assert b.isClosed();
+    }
+}
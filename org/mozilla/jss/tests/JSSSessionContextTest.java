@@ -0,0 +1,184 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.util.Collections;
+
+import org.mozilla.jss.ssl.javax.JSSSession;
+import org.mozilla.jss.ssl.javax.JSSSessionContext;
+
+/**
+ * Checks that JSSSessionContext bounds the tracked sessions by size and
+ * timeout without touching the sessions it drops, and hands out stored
+ * resumption tokens once per peer ID.
+ */
+public class JSSSessionContextTest {
+
+    public static void main(String[] args) throws Exception {
+        testCacheSize();
+        testTimeout();
+        testResumptionTokens();
+    }
+
+    public static void testCacheSize() throws Exception {
+        Context ctx = new Context();
+        ctx.setSessionCacheSize(2);
+
+        Session first = new Session(1, System.currentTimeMillis());
+        Session second = new Session(2, System.currentTimeMillis());
+        Session third = new Session(3, System.currentTimeMillis());
+
+        ctx.completed(first, false);
+        ctx.completed(second, false);
+        ctx.completed(third, true);
+
+        assert ctx.size() == 2;
+        assert ctx.getSession(first.getId()) == null;
+        assert ctx.getSession(second.getId()) == second;
+        assert ctx.getSession(third.getId()) == third;
+        assert ctx.getFullHandshakes() == 2;
+        assert ctx.getResumedHandshakes() == 1;
+
+        // dropping a session must not invalidate it; it may still be in
+        // use by the engine that owns it
+        assert first.invalidated == 0;
+
+        ctx.setSessionCacheSize(1);
+        assert ctx.size() == 1;
+        assert ctx.getSession(third.getId()) == third;
+        assert second.invalidated == 0;
+
+        // sessions removed by their engine stay removed
+        third.invalidate();
+        assert third.invalidated == 1;
+        assert ctx.size() == 0;
+    }
+
+    public static void testTimeout() throws Exception {
+        Context ctx = new Context();
+        ctx.setSessionTimeout(60);
+
+        long now = System.currentTimeMillis();
+        Session fresh = new Session(1, now);
+        Session old = new Session(2, now - 120 * 1000L);
+        Session recent = new Session(3, now - 30 * 1000L);
+
+        // a resumed session keeps its creation time, so an expired session
+        // can be tracked after a fresh one
+        ctx.completed(fresh, false);
+        ctx.completed(old, true);
+
+        assert ctx.size() == 1;
+        assert ctx.getSession(old.getId()) == null;
+        assert ctx.getSession(fresh.getId()) == fresh;
+        assert old.invalidated == 0;
+
+        ctx.completed(recent, true);
+        assert ctx.size() == 2;
+        assert Collections.list(ctx.getIds()).size() == 2;
+
+        // shortening the timeout expires the recent session but not the
+        // fresh one tracked before it
+        ctx.setSessionTimeout(10);
+        assert ctx.size() == 1;
+        assert ctx.getSession(fresh.getId()) == fresh;
+        assert ctx.getSession(recent.getId()) == null;
+        assert recent.invalidated == 0;
+
+        ctx.setSessionTimeout(0);
+        ctx.completed(old, true);
+        assert ctx.size() == 2;
+    }
+
+    public static void testResumptionTokens() throws Exception {
+        Context ctx = new Context(false);
+        byte[] ticket = { 1, 2, 3 };
+
+        ctx.put("localhost:443|TLSv1.2", ticket);
+        assert ctx.getResumptionTokenCount() == 1;
+
+        // tokens are keyed by the whole peer ID, not just the peer
+        assert ctx.take("localhost:443|TLSv1.3") == null;
+        assert ctx.take("localhost:8443|TLSv1.2") == null;
+        assert ctx.getResumptionAttempts() == 0;
+
+        // and only handed out once
+        assert ctx.take("localhost:443|TLSv1.2") == ticket;
+        assert ctx.take("localhost:443|TLSv1.2") == null;
+        assert ctx.getResumptionAttempts() == 1;
+        assert ctx.getResumptionTokenCount() == 0;
+
+        // a newer token from the same peer replaces the older one
+        byte[] newer = { 4, 5, 6 };
+        ctx.put("localhost:443|TLSv1.2", ticket);
+        ctx.put("localhost:443|TLSv1.2", newer);
+        assert ctx.getResumptionTokenCount() == 1;
+        assert ctx.take("localhost:443|TLSv1.2") == newer;
+
+        // the store is bounded by the cache size, dropping the oldest peers
+        ctx.setSessionCacheSize(2);
+        ctx.put("a", ticket);
+        ctx.put("b", ticket);
+        ctx.put("c", ticket);
+        assert ctx.getResumptionTokenCount() == 2;
+        assert ctx.take("a") == null;
+        assert ctx.take("c") == ticket;
+
+        ctx.setSessionCacheSize(0);
+        for (int i = 0; i < 100; i++) {
+            ctx.put("peer" + i, ticket);
+        }
+        assert ctx.getResumptionTokenCount() == 101;
+
+        ctx.setSessionCacheSize(10);
+        assert ctx.getResumptionTokenCount() == 10;
+        assert ctx.take("peer90") == ticket;
+        assert ctx.take("peer89") == null;
+    }
+
+    private static class Context extends JSSSessionContext {
+        Context() {
+            this(true);
+        }
+
+        Context(boolean server) {
+            super(server);
+        }
+
+        void completed(JSSSession session, boolean wasResumed) {
+            handshakeCompleted(session, wasResumed);
+        }
+
+        void put(String peerID, byte[] data) {
+            putResumptionToken(peerID, data);
+        }
+
+        byte[] take(String peerID) {
+            return takeResumptionToken(peerID);
+        }
+    }
+
+    private static class Session extends JSSSession {
+        int invalidated;
+
+        Session(int id, long created) {
+            super(null, 16384);
+            setId(new byte[] { (byte) id, 0x5e, 0x55 });
+            setCreationTime(created);
+            setExpirationTime(created + 86400 * 1000L);
+        }
+
+        @Override
+        protected void refreshData() {
+            // no engine behind these sessions
+        }
+
+        @Override
+        public void invalidate() {
+            invalidated += 1;
+            close();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.util.Calendar;
+import java.util.Date;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.asn1.INTEGER;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.KeyPairAlgorithm;
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.mozilla.jss.pkix.cert.Certificate;
+import org.mozilla.jss.pkix.cert.CertificateInfo;
+import org.mozilla.jss.pkix.primitive.AlgorithmIdentifier;
+import org.mozilla.jss.pkix.primitive.Name;
+import org.mozilla.jss.pkix.primitive.SubjectPublicKeyInfo;
+import org.mozilla.jss.provider.javax.crypto.JSSTokenKeyManager;
+
+/**
+ * Checks that JSSTokenKeyManager selects server certificates by host name
+ * and key type, from the NSS database and from a JSS KeyStore, and that
+ * entries set or deleted through the KeyStore are noticed.
+ */
+public class JSSTokenKeyManagerTest {
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+        //  - nssdb password
+        //  - host name of the server certs
+
+        CryptoManager cm = CryptoManager.getInstance();
+        cm.setPasswordCallback(new FilePasswordCallback(args[1]));
+
+        testSelection(cm, new JSSTokenKeyManager(null, null), args[2]);
+
+        KeyStore ks = KeyStore.getInstance("PKCS11", "Mozilla-JSS");
+        ks.load(null, null);
+        testSelection(cm, new JSSTokenKeyManager(ks, null), args[2]);
+
+        testKeyStoreChanges(cm, ks);
+    }
+
+    public static void testSelection(CryptoManager cm, JSSTokenKeyManager km, String host) throws Exception {
+        // Other tests may add certificates for the same host name, so
+        // only check the key type of the selected ones.
+        String rsa = km.findServerAlias("RSA", host);
+        assert rsa != null;
+        assert km.getCertificate(rsa).getPublicKey().getAlgorithm().equals("RSA");
+
+        String ec = km.findServerAlias("EC", host);
+        assert ec != null;
+        assert km.getCertificate(ec).getPublicKey().getAlgorithm().equals("EC");
+
+        // Host names are case-insensitive and may be fully qualified.
+        assert rsa.equals(km.findServerAlias("RSA", host.toUpperCase()));
+        assert ec.equals(km.findServerAlias("EC", host + "."));
+
+        // Neither another key type nor an unknown host matches.
+        assert km.findServerAlias("DSA", host) == null;
+        assert km.findServerAlias("RSA", "unknown." + host) == null;
+        assert km.findServerAlias("RSA", "*." + host) == null;
+
+        // Looking up many unknown names neither fails nor changes the
+        // selection for known ones.
+        for (int i = 0; i < 10000; i++) {
+            assert km.findServerAlias("RSA", "host" + i + ".example.com") == null;
+        }
+        assert rsa.equals(km.findServerAlias("RSA", host));
+    }
+
+    public static void testKeyStoreChanges(CryptoManager cm, KeyStore ks) throws Exception {
+        String host = "rotated.example.com";
+        String nickname = "JSSTokenKeyManagerTest";
+
+        JSSTokenKeyManager dbManager = new JSSTokenKeyManager(null, null);
+        JSSTokenKeyManager ksManager = new JSSTokenKeyManager(ks, null);
+
+        // Build both indexes before the database changes.
+        assert dbManager.findServerAlias("RSA", host) == null;
+        assert ksManager.findServerAlias("RSA", host) == null;
+
+        // A session key stored through the KeyStore becomes a token key.
+        CryptoToken token = cm.getInternalKeyStorageToken();
+        org.mozilla.jss.crypto.KeyPairGenerator kpg =
+            token.getKeyPairGenerator(KeyPairAlgorithm.RSA);
+        kpg.temporaryPairs(true);
+        kpg.initialize(2048);
+        KeyPair pair = kpg.genKeyPair();
+        String keyAlias = Utils.HexEncode(((PrivateKey) pair.getPrivate()).getUniqueID());
+
+        long modCount = cm.getCertDBModCount();
+        ks.setKeyEntry(nickname, pair.getPrivate(), null, null);
+        assert cm.getCertDBModCount() != modCount;
+
+        cm.importCertPackage(makeCert(host, pair), nickname);
+        String alias = dbManager.findServerAlias("RSA", host);
+        assert nickname.equals(alias);
+        assert ksManager.findServerAlias("RSA", host) != null;
+
+        // Deleting the certificate through the KeyStore stops serving it,
+        // without telling the key managers.
+        modCount = cm.getCertDBModCount();
+        ks.deleteEntry(nickname);
+        assert cm.getCertDBModCount() != modCount;
+        assert dbManager.findServerAlias("RSA", host) == null;
+        assert ksManager.findServerAlias("RSA", host) == null;
+
+        // And the key it leaves behind.
+        modCount = cm.getCertDBModCount();
+        ks.deleteEntry(keyAlias);
+        assert cm.getCertDBModCount() != modCount;
+        assert !ks.containsAlias(keyAlias);
+    }
+
+    private static byte[] makeCert(String host, KeyPair pair) throws Exception {
+        SignatureAlgorithm sigAlg = SignatureAlgorithm.RSASignatureWithSHA256Digest;
+
+        Name name = new Name();
+        name.addOrganizationName("Mozilla");
+        name.addCommonName(host);
+
+        Calendar cal = Calendar.getInstance();
+        Date notBefore = cal.getTime();
+        cal.add(Calendar.DATE, 1);
+        Date notAfter = cal.getTime();
+
+        SubjectPublicKeyInfo spki = (SubjectPublicKeyInfo) ASN1Util.decode(
+            new SubjectPublicKeyInfo.Template(), pair.getPublic().getEncoded());
+
+        CertificateInfo info = new CertificateInfo(
+            CertificateInfo.v3, new INTEGER(System.currentTimeMillis()),
+            new AlgorithmIdentifier(sigAlg.toOID()),
+            name, notBefore, notAfter, name, spki);
+
+        return ASN1Util.encode(new Certificate(info, pair.getPrivate(), sigAlg));
+    }
+}
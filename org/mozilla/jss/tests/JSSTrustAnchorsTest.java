@@ -0,0 +1,246 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.AuthorityKeyIdentifierExtension;
+import org.mozilla.jss.netscape.security.x509.CertificateAlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
+import org.mozilla.jss.netscape.security.x509.CertificateIssuerName;
+import org.mozilla.jss.netscape.security.x509.CertificateSerialNumber;
+import org.mozilla.jss.netscape.security.x509.CertificateSubjectName;
+import org.mozilla.jss.netscape.security.x509.CertificateValidity;
+import org.mozilla.jss.netscape.security.x509.CertificateVersion;
+import org.mozilla.jss.netscape.security.x509.CertificateX509Key;
+import org.mozilla.jss.netscape.security.x509.KeyIdentifier;
+import org.mozilla.jss.netscape.security.x509.SubjectKeyIdentifierExtension;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.netscape.security.x509.X509CertInfo;
+import org.mozilla.jss.netscape.security.x509.X509Key;
+import org.mozilla.jss.provider.javax.crypto.JSSTrustAnchors;
+
+/**
+ * Checks that JSSTrustAnchors finds the issuers of a certificate by
+ * AuthorityKeyIdentifier and falls back to the issuer DN, skips expired
+ * anchors, and rebuilds its index when the modification count changes.
+ * The anchors are generated with JDK keys, so the test doesn't need NSS.
+ */
+public class JSSTrustAnchorsTest {
+
+    private static long serial = 1;
+
+    public static void main(String[] args) throws Exception {
+        KeyPair key = generateKeyPair();
+
+        testKeyIDMatch(key);
+        testSubjectFallback(key);
+        testAnchorWithoutKeyID(key);
+        testRenewedAnchor(key);
+        testRebuild(key);
+    }
+
+    public static void testKeyIDMatch(KeyPair key) throws Exception {
+        X509Certificate first = makeCA("CN=Shared Root", key, id(1), null);
+        X509Certificate second = makeCA("CN=Shared Root", key, id(2), null);
+        Anchors anchors = new Anchors(first, second);
+
+        // Only the anchor whose SKI matches the AKI is returned.
+        X509Certificate leaf = makeLeaf("CN=Shared Root", key, id(2), null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { second });
+
+        leaf = makeLeaf("CN=Shared Root", key, id(1), null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { first });
+
+        // The issuer DN doesn't have to match for the AKI to be used.
+        leaf = makeLeaf("CN=Other Name", key, id(1), null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { first });
+    }
+
+    public static void testSubjectFallback(KeyPair key) throws Exception {
+        X509Certificate first = makeCA("CN=Shared Root", key, id(1), null);
+        X509Certificate second = makeCA("CN=Shared Root", key, id(2), null);
+        X509Certificate other = makeCA("CN=Other Root", key, id(3), null);
+        Anchors anchors = new Anchors(first, second, other);
+
+        // Without an AKI, or with an unknown one, every anchor with the
+        // issuer's subject is a candidate.
+        X509Certificate leaf = makeLeaf("CN=Shared Root", key, null, null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { first, second });
+
+        leaf = makeLeaf("CN=Shared Root", key, id(9), null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { first, second });
+
+        // Neither matching returns nothing.
+        leaf = makeLeaf("CN=Unknown Root", key, id(9), null);
+        assert anchors.getIssuers(leaf).length == 0;
+    }
+
+    public static void testAnchorWithoutKeyID(KeyPair key) throws Exception {
+        X509Certificate anchor = makeCA("CN=Root Without SKI", key, null, null);
+        Anchors anchors = new Anchors(anchor);
+
+        X509Certificate leaf = makeLeaf("CN=Root Without SKI", key, id(4), null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { anchor });
+
+        leaf = makeLeaf("CN=Root Without SKI", key, null, null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { anchor });
+    }
+
+    public static void testRenewedAnchor(KeyPair key) throws Exception {
+        // Validity times have a resolution of a second.
+        Date expiry = new Date((System.currentTimeMillis() / 1000 + 2) * 1000);
+
+        X509Certificate expiring = makeCA("CN=Renewed Root", key, id(5), expiry);
+        X509Certificate renewed = makeCA("CN=Renewed Root", key, id(6), null);
+        X509Certificate notYetValid = makeCA("CN=Future Root", key, id(7), null,
+                new Date(System.currentTimeMillis() + 86400000L));
+        Anchors anchors = new Anchors(expiring, renewed, notYetValid);
+
+        // Anchors which aren't valid yet aren't indexed.
+        assert Arrays.asList(anchors.getAnchors()).equals(Arrays.asList(expiring, renewed));
+
+        X509Certificate leaf = makeLeaf("CN=Renewed Root", key, id(5), null);
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { expiring });
+
+        while (System.currentTimeMillis() <= expiry.getTime() + 1000) {
+            Thread.sleep(100);
+        }
+
+        // Once the anchor with the matching SKI has expired, the renewed
+        // one with the same subject is used.
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { renewed });
+        assert anchors.loads == 1;
+    }
+
+    public static void testRebuild(KeyPair key) throws Exception {
+        X509Certificate first = makeCA("CN=First Root", key, id(1), null);
+        X509Certificate added = makeCA("CN=Added Root", key, id(8), null);
+        Anchors anchors = new Anchors(first);
+
+        X509Certificate leaf = makeLeaf("CN=Added Root", key, id(8), null);
+        assert anchors.getIssuers(leaf).length == 0;
+        assert anchors.loads == 1;
+
+        // New anchors aren't seen until the modification count changes.
+        anchors.certs.add(added);
+        assert anchors.getIssuers(leaf).length == 0;
+        assert anchors.loads == 1;
+
+        anchors.modCount++;
+        assert Arrays.equals(anchors.getIssuers(leaf), new X509Certificate[] { added });
+        assert anchors.getAnchors().length == 2;
+        assert anchors.loads == 2;
+
+        // And invalidate() drops the index too.
+        anchors.certs.remove(added);
+        anchors.invalidate();
+        assert anchors.getIssuers(leaf).length == 0;
+        assert anchors.loads == 3;
+    }
+
+    /**
+     * Trust anchors supplied by the test instead of the NSS database.
+     */
+    static class Anchors extends JSSTrustAnchors {
+        final List<X509Certificate> certs = new ArrayList<>();
+        long modCount;
+        int loads;
+
+        Anchors(X509Certificate... certs) {
+            this.certs.addAll(Arrays.asList(certs));
+        }
+
+        @Override
+        protected X509Certificate[] loadCACerts() {
+            loads++;
+            return certs.toArray(new X509Certificate[certs.size()]);
+        }
+
+        @Override
+        protected long getCertDBModCount() {
+            return modCount;
+        }
+
+        @Override
+        protected String getConfigDir() {
+            return null;
+        }
+    }
+
+    static byte[] id(int value) {
+        byte[] id = new byte[20];
+        Arrays.fill(id, (byte) value);
+        return id;
+    }
+
+    static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    static X509Certificate makeCA(String subject, KeyPair key, byte[] ski,
+            Date notAfter) throws Exception {
+        return makeCA(subject, key, ski, notAfter, new Date(System.currentTimeMillis() - 60000L));
+    }
+
+    static X509Certificate makeCA(String subject, KeyPair key, byte[] ski,
+            Date notAfter, Date notBefore) throws Exception {
+        return makeCert(subject, subject, key, ski, null, notBefore, notAfter);
+    }
+
+    static X509Certificate makeLeaf(String issuer, KeyPair key, byte[] aki,
+            byte[] ski) throws Exception {
+        return makeCert("CN=Leaf", issuer, key, ski, aki,
+                new Date(System.currentTimeMillis() - 60000L), null);
+    }
+
+    /**
+     * Returns a certificate signed with the given key, which is also the
+     * key it certifies.
+     */
+    static X509Certificate makeCert(String subject, String issuer, KeyPair key,
+            byte[] ski, byte[] aki, Date notBefore, Date notAfter) throws Exception {
+        if (notAfter == null) {
+            notAfter = new Date(System.currentTimeMillis() + 86400000L);
+        }
+
+        X509CertInfo info = new X509CertInfo();
+        info.set(X509CertInfo.VERSION, new CertificateVersion(CertificateVersion.V3));
+        info.set(X509CertInfo.SERIAL_NUMBER, new CertificateSerialNumber(BigInteger.valueOf(serial++)));
+        info.set(X509CertInfo.ISSUER, new CertificateIssuerName(new X500Name(issuer)));
+        info.set(X509CertInfo.SUBJECT, new CertificateSubjectName(new X500Name(subject)));
+        info.set(X509CertInfo.VALIDITY, new CertificateValidity(notBefore, notAfter));
+        info.set(X509CertInfo.ALGORITHM_ID, new CertificateAlgorithmId(AlgorithmId.get("SHA256withRSA")));
+        info.set(X509CertInfo.KEY, new CertificateX509Key(
+                X509Key.parse(new DerValue(key.getPublic().getEncoded()))));
+
+        CertificateExtensions extensions = new CertificateExtensions();
+        if (ski != null) {
+            extensions.set(SubjectKeyIdentifierExtension.NAME,
+                    new SubjectKeyIdentifierExtension(ski));
+        }
+        if (aki != null) {
+            extensions.set(AuthorityKeyIdentifierExtension.NAME,
+                    new AuthorityKeyIdentifierExtension(new KeyIdentifier(aki), null, null));
+        }
+        info.set(X509CertInfo.EXTENSIONS, extensions);
+
+        X509CertImpl cert = new X509CertImpl(info);
+        cert.sign(key.getPrivate(), "SHA256withRSA");
+        return cert;
+    }
+}
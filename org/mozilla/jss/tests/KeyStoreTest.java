@@ -11,6 +11,7 @@ import java.security.Key;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.KeyStore;
+import java.security.KeyStoreException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.util.Enumeration;
@@ -21,7 +22,9 @@ import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.crypto.CryptoToken;
 import org.mozilla.jss.crypto.KeyGenAlgorithm;
 import org.mozilla.jss.crypto.KeyGenerator;
+import org.mozilla.jss.crypto.PrivateKey;
 import org.mozilla.jss.crypto.SecretKeyFacade;
+import org.mozilla.jss.netscape.security.util.Utils;
 import org.mozilla.jss.pkcs11.PK11Token;
 import org.mozilla.jss.util.ConsolePasswordCallback;
 
@@ -32,6 +35,7 @@ public class KeyStoreTest {
             "<operation> [<args>...]");
         System.out.println("Operations:\n" +
             "getAliases\n" +
+            "checkAliasIndex\n" +
             "deleteEntry <alias> . . .\n" +
             "getCertByName <alias> . . .\n" +
             "getCertByDER <DER cert filename>\n" +
@@ -69,6 +73,8 @@ public class KeyStoreTest {
 
         if( op.equalsIgnoreCase("getAliases") ) {
             dumpAliases(ks);
+        } else if( op.equalsIgnoreCase("checkAliasIndex") ) {
+            checkAliasIndex(ks);
         } else if( op.equalsIgnoreCase("deleteEntry") ) {
             for(int j=0; j < args.length; ++j) {
                 ks.deleteEntry(args[j]);
@@ -121,13 +127,60 @@ public class KeyStoreTest {
 
     public static void dumpAliases(KeyStore ks) throws Throwable {
         Enumeration<String> aliases = ks.aliases();
+        int count = 0;
 
         System.out.println("Aliases:");
         while( aliases.hasMoreElements() ) {
             String alias = aliases.nextElement();
             System.out.println( "\"" + alias + "\"");
+
+            // Answered from the same alias index as aliases().
+            assert(ks.containsAlias(alias));
+            count++;
         }
         System.out.println();
+
+        assert(ks.size() == count);
+        assert(!ks.containsAlias("no such alias in KeyStoreTest"));
+    }
+
+    public static void checkAliasIndex(KeyStore ks) throws Throwable {
+        int before = ks.size();
+
+        // A permanent key generated outside of the KeyStore isn't in the
+        // alias index until the KeyStore is reloaded.
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA",
+            "Mozilla-JSS");
+        kpg.initialize(2048);
+        PrivateKey key = (PrivateKey) kpg.genKeyPair().getPrivate();
+        String alias = Utils.HexEncode(key.getUniqueID());
+
+        assert(!ks.containsAlias(alias));
+        assert(ks.size() == before);
+
+        ks.load(null, null);
+        assert(ks.containsAlias(alias));
+        assert(ks.size() == before + 1);
+
+        // Deleting through the KeyStore updates the index right away.
+        ks.deleteEntry(alias);
+        assert(!ks.containsAlias(alias));
+        assert(ks.size() == before);
+
+        // A failed deletion leaves the index consistent.
+        try {
+            ks.deleteEntry(alias);
+            assert(false);
+        } catch (KeyStoreException e) {
+            // expected
+        }
+        assert(ks.size() == before);
+
+        // Repeated misses keep returning false without changing the index.
+        for (int i = 0; i < 3; i++) {
+            assert(!ks.containsAlias("no such alias in KeyStoreTest"));
+        }
+        assert(ks.size() == before);
     }
 
     public static void getCertByDER(KeyStore ks, String derCertFilename)
@@ -0,0 +1,331 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.IllegalBlockingModeException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.ssl.SSLCertificateApprovalCallback;
+import org.mozilla.jss.ssl.SSLServerSocket;
+import org.mozilla.jss.ssl.SSLSocket;
+import org.mozilla.jss.ssl.SSLSocketChannel;
+
+/**
+ * Checks that a legacy SSLSocket created on a SocketChannel does its I/O
+ * directly on the channel's OS socket, and that it falls back to the
+ * channel's Java socket when the OS socket can't be determined. Also
+ * drives the handshake, writes and reads of an SSLSocketChannel in
+ * non-blocking mode from a Selector.
+ */
+public class LegacyChannelSocketTest {
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+        //  - nssdb password
+        //  - server cert
+
+        CryptoManager cm = CryptoManager.getInstance();
+        cm.setPasswordCallback(new FilePasswordCallback(args[1]));
+
+        SSLServerSocket server = new SSLServerSocket(0);
+        server.setReuseAddress(true);
+        server.requestClientAuth(false);
+        server.requireClientAuth(SSLSocket.SSL_REQUIRE_NEVER);
+        server.setUseClientMode(false);
+        server.setServerCertNickname(args[2]);
+
+        try {
+            InetSocketAddress address = new InetSocketAddress("localhost",
+                    server.getLocalPort());
+
+            // The JDK's SocketChannel exposes its descriptor.
+            SocketChannel channel = SocketChannel.open(address);
+            testEcho(server, channel, true);
+
+            // Other implementations don't; their Java socket is wrapped.
+            SocketChannel wrapped = new WrappedChannel(SocketChannel.open(address));
+            testEcho(server, wrapped, false);
+
+            testNonBlocking(server, address);
+
+        } finally {
+            server.close();
+        }
+    }
+
+    public static void testEcho(SSLServerSocket server, SocketChannel channel,
+            boolean expectNative) throws Exception {
+        Thread echo = startEcho(server);
+
+        SSLCertificateApprovalCallback approveAll = (cert, status) -> true;
+        SSLSocket client = new SSLSocket(channel, "localhost", approveAll, null);
+        assert client.isNativeSocket() == expectNative;
+
+        // Only sockets doing their own I/O have a channel view.
+        assert (client.getSSLChannel() != null) == expectNative;
+
+        client.forceHandshake();
+
+        byte[] message = new byte[10000];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) (i * 7);
+        }
+
+        OutputStream os = client.getOutputStream();
+        os.write(message);
+        os.flush();
+
+        byte[] received = new byte[message.length];
+        InputStream is = client.getInputStream();
+        int offset = 0;
+        while (offset < received.length) {
+            int read = is.read(received, offset, received.length - offset);
+            assert read > 0;
+            offset += read;
+        }
+        assert Arrays.equals(received, message);
+
+        // The channel is closed along with the socket.
+        client.close();
+        assert !channel.isOpen();
+
+        echo.join();
+    }
+
+    public static void testNonBlocking(SSLServerSocket server,
+            InetSocketAddress address) throws Exception {
+        Thread echo = startEcho(server);
+
+        SSLCertificateApprovalCallback approveAll = (cert, status) -> true;
+        SSLSocketChannel channel = SSLSocketChannel.open(SocketChannel.open(address),
+                "localhost", approveAll, null);
+        Selector selector = Selector.open();
+
+        // Only non-blocking channels can be registered.
+        try {
+            channel.register(selector, SelectionKey.OP_READ);
+            throw new RuntimeException("Expected registering a blocking channel to fail");
+        } catch (IllegalBlockingModeException expected) {
+        }
+
+        channel.configureBlocking(false);
+        assert !channel.isBlocking();
+
+        // The streams can't be used in non-blocking mode.
+        try {
+            channel.socket().getInputStream().read();
+            throw new RuntimeException("Expected a non-blocking stream read to fail");
+        } catch (IllegalBlockingModeException expected) {
+        }
+
+        SelectionKey key = channel.register(selector,
+                SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        assert key.channel() == channel.getSocketChannel();
+        assert key.attachment() == channel;
+
+        long deadline = System.currentTimeMillis() + 30000;
+
+        while (!channel.handshake()) {
+            await(selector, key, SelectionKey.OP_READ | SelectionKey.OP_WRITE, deadline);
+        }
+
+        byte[] message = new byte[100000];
+        for (int i = 0; i < message.length; i++) {
+            message[i] = (byte) (i * 13);
+        }
+
+        // Writes accept what the socket can take; the rest waits for
+        // OP_WRITE. The echo server returns everything, so reads are
+        // interleaved to keep both directions flowing.
+        ByteBuffer out = ByteBuffer.wrap(message);
+        ByteBuffer in = ByteBuffer.allocateDirect(message.length);
+        ByteBuffer chunk = ByteBuffer.allocate(1000);
+
+        while (in.hasRemaining()) {
+            boolean progress = false;
+
+            if (out.hasRemaining() && channel.write(out) > 0) {
+                progress = true;
+            }
+
+            chunk.clear();
+            int read = channel.read(chunk);
+            assert read >= 0;
+            if (read > 0) {
+                progress = true;
+                chunk.flip();
+                in.put(chunk);
+
+                // Buffered plaintext is returned without waiting.
+                if (channel.available() > 0) {
+                    chunk.clear();
+                    int more = channel.read(chunk);
+                    assert more > 0;
+                    chunk.flip();
+                    in.put(chunk);
+                }
+            }
+
+            if (!progress) {
+                int ops = SelectionKey.OP_READ;
+                if (out.hasRemaining()) {
+                    ops |= SelectionKey.OP_WRITE;
+                }
+                await(selector, key, ops, deadline);
+            }
+        }
+
+        byte[] received = new byte[message.length];
+        in.flip();
+        in.get(received);
+        assert Arrays.equals(received, message);
+
+        channel.close();
+        assert !channel.isOpen();
+        assert !channel.getSocketChannel().isOpen();
+        assert !key.isValid();
+
+        selector.close();
+        echo.join();
+    }
+
+    private static void await(Selector selector, SelectionKey key, int ops,
+            long deadline) throws Exception {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new RuntimeException("Timed out waiting for the peer");
+        }
+
+        key.interestOps(ops);
+        selector.select(remaining);
+        selector.selectedKeys().clear();
+    }
+
+    private static Thread startEcho(SSLServerSocket server) {
+        Thread echo = new Thread(() -> {
+            try (Socket peer = server.accept()) {
+                InputStream is = peer.getInputStream();
+                OutputStream os = peer.getOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    os.write(buffer, 0, read);
+                    os.flush();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        });
+        echo.start();
+        return echo;
+    }
+
+    /**
+     * A SocketChannel which isn't the JDK implementation, so that its
+     * descriptor can't be read from its fields.
+     */
+    private static class WrappedChannel extends SocketChannel {
+        private SocketChannel delegate;
+
+        WrappedChannel(SocketChannel delegate) {
+            super(delegate.provider());
+            this.delegate = delegate;
+        }
+
+        public SocketChannel bind(SocketAddress local) throws IOException {
+            delegate.bind(local);
+            return this;
+        }
+
+        public <T> SocketChannel setOption(SocketOption<T> name, T value) throws IOException {
+            delegate.setOption(name, value);
+            return this;
+        }
+
+        public <T> T getOption(SocketOption<T> name) throws IOException {
+            return delegate.getOption(name);
+        }
+
+        public Set<SocketOption<?>> supportedOptions() {
+            return delegate.supportedOptions();
+        }
+
+        public SocketChannel shutdownInput() throws IOException {
+            delegate.shutdownInput();
+            return this;
+        }
+
+        public SocketChannel shutdownOutput() throws IOException {
+            delegate.shutdownOutput();
+            return this;
+        }
+
+        public Socket socket() {
+            return delegate.socket();
+        }
+
+        public boolean isConnected() {
+            return delegate.isConnected();
+        }
+
+        public boolean isConnectionPending() {
+            return delegate.isConnectionPending();
+        }
+
+        public boolean connect(SocketAddress remote) throws IOException {
+            return delegate.connect(remote);
+        }
+
+        public boolean finishConnect() throws IOException {
+            return delegate.finishConnect();
+        }
+
+        public SocketAddress getRemoteAddress() throws IOException {
+            return delegate.getRemoteAddress();
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        public SocketAddress getLocalAddress() throws IOException {
+            return delegate.getLocalAddress();
+        }
+
+        protected void implCloseSelectableChannel() throws IOException {
+            delegate.close();
+        }
+
+        protected void implConfigureBlocking(boolean block) throws IOException {
+            delegate.configureBlocking(block);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.pkcs11.PK11Cert;
+
+/**
+ * Checks that PK11Certs wrapping the same certificate share its decoded
+ * form, and that the mutable values they return are copies.
+ */
+public class PK11CertViewTest {
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+        //  - nickname of a certificate with extensions
+
+        CryptoManager cm = CryptoManager.getInstance();
+
+        // Each lookup returns a new PK11Cert for the same certificate.
+        PK11Cert a = (PK11Cert) cm.findCertByNickname(args[1]);
+        PK11Cert b = (PK11Cert) cm.findCertByNickname(args[1]);
+        assert a != b;
+        assert a.equals(b);
+        assert a.hashCode() == b.hashCode();
+
+        // Both share one decoded view, so immutable values are shared too.
+        assert a.getSerialNumber() == b.getSerialNumber();
+
+        testEncoded(a, b);
+        testTBSCertificate(a, b);
+        testDates(a);
+        testExtensions(a, b);
+    }
+
+    public static void testEncoded(PK11Cert a, PK11Cert b) throws Exception {
+        byte[] original = b.getEncoded();
+        byte[] encoded = a.getEncoded();
+        assert encoded != a.getEncoded();
+        assert Arrays.equals(encoded, original);
+
+        encoded[encoded.length - 1] ^= 1;
+        assert Arrays.equals(a.getEncoded(), original);
+        assert Arrays.equals(b.getEncoded(), original);
+        assert a.equals(b);
+    }
+
+    public static void testTBSCertificate(PK11Cert a, PK11Cert b) throws Exception {
+        byte[] original = b.getTBSCertificate();
+        byte[] tbs = a.getTBSCertificate();
+        assert Arrays.equals(tbs, original);
+
+        tbs[0] ^= 1;
+        assert Arrays.equals(a.getTBSCertificate(), original);
+        assert Arrays.equals(b.getTBSCertificate(), original);
+    }
+
+    public static void testDates(PK11Cert a) throws Exception {
+        Date notAfter = a.getNotAfter();
+        long time = notAfter.getTime();
+        notAfter.setTime(0);
+        assert a.getNotAfter().getTime() == time;
+
+        Date notBefore = a.getNotBefore();
+        time = notBefore.getTime();
+        notBefore.setTime(0);
+        assert a.getNotBefore().getTime() == time;
+    }
+
+    public static void testExtensions(PK11Cert a, PK11Cert b) throws Exception {
+        Set<String> oids = new LinkedHashSet<>();
+        Set<String> critical = a.getCriticalExtensionOIDs();
+        Set<String> nonCritical = a.getNonCriticalExtensionOIDs();
+        if (critical != null) {
+            oids.addAll(critical);
+        }
+        if (nonCritical != null) {
+            oids.addAll(nonCritical);
+        }
+        assert !oids.isEmpty();
+
+        // The returned sets belong to the caller.
+        if (critical != null) {
+            critical.add("1.2.3.4");
+            assert !a.getCriticalExtensionOIDs().contains("1.2.3.4");
+            assert !b.getCriticalExtensionOIDs().contains("1.2.3.4");
+        }
+        if (nonCritical != null) {
+            nonCritical.clear();
+            assert a.getNonCriticalExtensionOIDs().equals(b.getNonCriticalExtensionOIDs());
+        }
+
+        for (String oid : oids) {
+            byte[] original = b.getExtensionValue(oid);
+            byte[] value = a.getExtensionValue(oid);
+            assert value != null;
+            assert Arrays.equals(value, original);
+
+            value[0] ^= 1;
+            assert Arrays.equals(a.getExtensionValue(oid), original);
+            assert Arrays.equals(b.getExtensionValue(oid), original);
+        }
+
+        assert a.getExtensionValue("1.2.3.4") == null;
+        assert a.getExtensionValue("1.2.3.4") == null;
+    }
+}
@@ -0,0 +1,192 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.security.InvalidAlgorithmParameterException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.*;
+import javax.crypto.Cipher;
+import javax.crypto.spec.*;
+
+import org.mozilla.jss.*;
+import org.mozilla.jss.crypto.*;
+import org.mozilla.jss.util.*;
+
+public class TestAEAD {
+    /*
+     * Test Case 4 from the original GCM specification, "The Galois/Counter
+     * Mode of Operation (GCM)" by McGrew and Viega.
+     */
+    private static final byte[] GCM_KEY = hex("feffe9928665731c6d6a8f9467308308");
+    private static final byte[] GCM_IV = hex("cafebabefacedbaddecaf888");
+    private static final byte[] GCM_AAD = hex("feedfacedeadbeeffeedfacedeadbeefabaddad2");
+    private static final byte[] GCM_PT = hex(
+        "d9313225f88406e5a55909c5aff5269a86a7a9531534f7da2e4c303d8a318a72" +
+        "1c3c0c95956809532fcf0e2449a6b525b16aedf5aa0de657ba637b39");
+    private static final byte[] GCM_CT = hex(
+        "42831ec2217774244b7221b784d0d49ce3aa212f2c02a4e035c17e2329aca12e" +
+        "21d514b25466931c7d8f6a5aac84aa051ba30b396a0aac973d58e091" +
+        "5bc94fbc3221a5db94fae95ae7121a47");
+
+    public static void main(String[] args) throws Exception {
+        CryptoManager cm = CryptoManager.getInstance();
+        CryptoToken tok = cm.getInternalKeyStorageToken();
+        PasswordCallback cb = new FilePasswordCallback(args[1]);
+        tok.login(cb);
+
+        testGCMVector();
+        testRoundTrip("AES/GCM/NoPadding", "AES", 16);
+        testRoundTrip("ChaCha20-Poly1305", "ChaCha20", 32);
+        testIVReuse();
+        testIVReuseSecretKeySpec();
+    }
+
+    public static void testGCMVector() throws Exception {
+        Key key = importKey("AES", GCM_KEY);
+        GCMParameterSpec spec = new GCMParameterSpec(128, GCM_IV);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "Mozilla-JSS");
+        cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+        cipher.updateAAD(GCM_AAD);
+        // update() buffers; the whole ciphertext comes out of doFinal().
+        byte[] first = cipher.update(GCM_PT, 0, 10);
+        byte[] last = cipher.doFinal(GCM_PT, 10, GCM_PT.length - 10);
+        assert(first == null || first.length == 0);
+        assert(Arrays.equals(last, GCM_CT));
+
+        cipher.init(Cipher.DECRYPT_MODE, key, spec);
+        cipher.updateAAD(GCM_AAD);
+        assert(cipher.getOutputSize(GCM_CT.length) == GCM_PT.length);
+        assert(Arrays.equals(cipher.doFinal(GCM_CT), GCM_PT));
+    }
+
+    public static void testRoundTrip(String transformation, String keyAlg,
+        int keyLength) throws Exception
+    {
+        byte[] keyBytes = new byte[keyLength];
+        byte[] aad = new byte[20];
+        byte[] plaintext = new byte[1000];
+        SecureRandom random = new SecureRandom();
+        random.nextBytes(keyBytes);
+        random.nextBytes(aad);
+        random.nextBytes(plaintext);
+        Key key = importKey(keyAlg, keyBytes);
+
+        // Let the cipher generate its own nonce.
+        Cipher cipher = Cipher.getInstance(transformation, "Mozilla-JSS");
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        byte[] iv = cipher.getIV();
+        assert(iv != null && iv.length == 12);
+        cipher.updateAAD(aad);
+        byte[] ciphertext = cipher.doFinal(plaintext);
+        assert(ciphertext.length == plaintext.length + 16);
+
+        AlgorithmParameterSpec spec = getSpec(transformation, iv);
+
+        cipher.init(Cipher.DECRYPT_MODE, key, spec);
+        cipher.updateAAD(aad);
+        assert(Arrays.equals(cipher.doFinal(ciphertext), plaintext));
+
+        // Tampering with the ciphertext or the AAD must fail authentication.
+        ciphertext[0] ^= 1;
+        cipher.init(Cipher.DECRYPT_MODE, key, spec);
+        cipher.updateAAD(aad);
+        try {
+            cipher.doFinal(ciphertext);
+            throw new RuntimeException("Expected AEADBadTagException for modified ciphertext");
+        } catch (AEADBadTagException expected) {
+        }
+        ciphertext[0] ^= 1;
+
+        aad[0] ^= 1;
+        cipher.init(Cipher.DECRYPT_MODE, key, spec);
+        cipher.updateAAD(aad);
+        try {
+            cipher.doFinal(ciphertext);
+            throw new RuntimeException("Expected AEADBadTagException for modified AAD");
+        } catch (AEADBadTagException expected) {
+        }
+    }
+
+    public static void testIVReuse() throws Exception {
+        Key key = importKey("AES", GCM_KEY);
+        GCMParameterSpec spec = new GCMParameterSpec(128, GCM_IV);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "Mozilla-JSS");
+        cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+        cipher.doFinal(GCM_PT);
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+            throw new RuntimeException("Expected IV reuse to be rejected");
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException expected) {
+        }
+    }
+
+    public static void testIVReuseSecretKeySpec() throws Exception {
+        // Keys from other providers are translated into token keys on
+        // each init(); reuse must be detected all the same.
+        Key key = new SecretKeySpec(GCM_KEY, "AES");
+        GCMParameterSpec spec = new GCMParameterSpec(128, GCM_IV);
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding", "Mozilla-JSS");
+        cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+        cipher.updateAAD(GCM_AAD);
+        assert(Arrays.equals(cipher.doFinal(GCM_PT), GCM_CT));
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, spec);
+            throw new RuntimeException("Expected IV reuse to be rejected");
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException expected) {
+        }
+
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(GCM_KEY, "AES"), spec);
+            throw new RuntimeException("Expected IV reuse with an equal key to be rejected");
+        } catch (InvalidKeyException | InvalidAlgorithmParameterException expected) {
+        }
+
+        // Decrypting with the same IV, encrypting with a fresh IV, or
+        // with another key is fine.
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(GCM_KEY, "AES"), spec);
+        cipher.updateAAD(GCM_AAD);
+        assert(Arrays.equals(cipher.doFinal(GCM_CT), GCM_PT));
+
+        byte[] iv = GCM_IV.clone();
+        iv[0] ^= 1;
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
+        cipher.doFinal(GCM_PT);
+
+        byte[] otherKey = GCM_KEY.clone();
+        otherKey[0] ^= 1;
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(otherKey, "AES"), spec);
+        cipher.doFinal(GCM_PT);
+    }
+
+    private static Key importKey(String alg, byte[] keyBytes) throws Exception {
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(alg, "Mozilla-JSS");
+        return factory.generateSecret(new SecretKeySpec(keyBytes, alg));
+    }
+
+    private static AlgorithmParameterSpec getSpec(String transformation, byte[] iv) {
+        if (transformation.startsWith("AES")) {
+            return new GCMParameterSpec(128, iv);
+        }
+        return new IvParameterSpec(iv);
+    }
+
+    private static byte[] hex(String value) {
+        byte[] result = new byte[value.length() / 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (byte) Integer.parseInt(value.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+}
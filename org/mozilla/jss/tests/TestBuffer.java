@@ -1,5 +1,7 @@
 package org.mozilla.jss.tests;
 
+import java.nio.ByteBuffer;
+
 import org.mozilla.jss.nss.Buffer;
 import org.mozilla.jss.nss.BufferProxy;
 
@@ -27,6 +29,51 @@ public class TestBuffer {
         Buffer.Free(buf);
     }
 
+    public static void TestByteBuffers() {
+        BufferProxy buf = Buffer.Create(10);
+        assert(buf != null);
+
+        ByteBuffer[] inputs = {
+            ByteBuffer.allocateDirect(4),
+            ByteBuffer.allocate(4),
+            ByteBuffer.allocate(4).asReadOnlyBuffer(),
+        };
+
+        for (ByteBuffer input : inputs) {
+            if (!input.isReadOnly()) {
+                input.put(new byte[] { 0x01, 0x00, 0x02, 0x03 });
+                input.flip();
+            }
+
+            assert(Buffer.Write(buf, input) == 4);
+            assert(input.remaining() == 0);
+            assert(Buffer.ReadCapacity(buf) == 4);
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(3);
+            assert(Buffer.Read(buf, direct) == 3);
+            assert(direct.position() == 3);
+
+            ByteBuffer heap = ByteBuffer.allocate(8);
+            heap.position(2);
+            assert(Buffer.Read(buf, heap) == 1);
+            assert(heap.position() == 3);
+
+            if (!input.isReadOnly()) {
+                assert(direct.get(0) == 0x01);
+                assert(direct.get(1) == 0x00);
+                assert(direct.get(2) == 0x02);
+                assert(heap.get(2) == 0x03);
+            }
+        }
+
+        // Partial writes only consume what fit into the buffer.
+        ByteBuffer large = ByteBuffer.allocateDirect(16);
+        assert(Buffer.Write(buf, large) == 10);
+        assert(large.remaining() == 6);
+
+        Buffer.Free(buf);
+    }
+
     public static void TestCapacities() {
         BufferProxy buf = Buffer.Create(6);
         byte[] data = {0x00, 0x01, 0x02};
@@ -71,6 +118,38 @@ public class TestBuffer {
         Buffer.Free(buf);
     }
 
+    public static void TestResize() {
+        BufferProxy buf = Buffer.Create(4);
+        assert(buf != null);
+
+        // Wrap the contents around the end of the buffer.
+        assert(Buffer.Write(buf, new byte[] { 0x01, 0x02, 0x03 }) == 3);
+        assert(Buffer.Read(buf, 2).length == 2);
+        assert(Buffer.Write(buf, new byte[] { 0x04, 0x05, 0x06 }) == 3);
+        assert(Buffer.ReadCapacity(buf) == 4);
+
+        // Unread contents must fit.
+        assert(!Buffer.Resize(buf, 3));
+        assert(Buffer.Capacity(buf) == 4);
+
+        assert(Buffer.Resize(buf, 8));
+        assert(Buffer.Capacity(buf) == 8);
+        assert(Buffer.ReadCapacity(buf) == 4);
+        assert(Buffer.WriteCapacity(buf) == 4);
+
+        byte[] out_data = Buffer.Read(buf, 4);
+        assert(out_data[0] == 0x03);
+        assert(out_data[1] == 0x04);
+        assert(out_data[2] == 0x05);
+        assert(out_data[3] == 0x06);
+
+        assert(Buffer.Resize(buf, 2));
+        assert(!Buffer.CanRead(buf));
+        assert(Buffer.WriteCapacity(buf) == 2);
+
+        Buffer.Free(buf);
+    }
+
     public static void main(String[] args) {
         System.loadLibrary("jss4");
 
@@ -80,10 +159,16 @@ public class TestBuffer {
         System.out.println("Calling TestReadWrite()...");
         TestReadWrite();
 
+        System.out.println("Calling TestByteBuffers()...");
+        TestByteBuffers();
+
         System.out.println("Calling TestCapacities()...");
         TestCapacities();
 
         System.out.println("Calling TestPutGet()...");
         TestPutGet();
+
+        System.out.println("Calling TestResize()...");
+        TestResize();
     }
 }
@@ -1,5 +1,6 @@
 package org.mozilla.jss.tests;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.util.ArrayList;
@@ -23,6 +24,8 @@ import org.mozilla.jss.ssl.SSLVersion;
 import org.mozilla.jss.ssl.javax.JSSEngine;
 import org.mozilla.jss.ssl.javax.JSSEngineReferenceImpl;
 import org.mozilla.jss.ssl.javax.JSSParameters;
+import org.mozilla.jss.ssl.javax.JSSSession;
+import org.mozilla.jss.ssl.javax.JSSSessionContext;
 
 public class TestSSLEngine {
     public static boolean debug = false;
@@ -978,6 +981,208 @@ public class TestSSLEngine {
         }
     }
 
+    public static JSSEngine createResumptionClient(SSLContext ctx, int port, String client_alias, String protocol, String cipher_suite) throws Exception {
+        JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine("localhost", port);
+        client_eng.setSSLParameters(createParameters(client_alias));
+        client_eng.setUseClientMode(true);
+        configureSSLEngine(client_eng, protocol, cipher_suite);
+        return client_eng;
+    }
+
+    public static JSSSession connectResumptionClient(SSLContext ctx, JSSEngine client_eng, String server_alias, String protocol) throws Exception {
+        JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+        server_eng.setSSLParameters(createParameters(server_alias));
+        server_eng.setUseClientMode(false);
+        server_eng.setEnabledProtocols(new String[] { protocol });
+
+        try {
+            testInitialHandshake(client_eng, server_eng);
+            JSSSession session = (JSSSession) client_eng.getSession();
+            testClose(client_eng, server_eng);
+            return session;
+        } finally {
+            client_eng.cleanup();
+            server_eng.cleanup();
+        }
+    }
+
+    public static void testResumption(SSLContext ctx, String client_alias, String server_alias) throws Exception {
+        JSSSessionContext client_context = (JSSSessionContext) ctx.getClientSessionContext();
+        SSLEngine dummy = ctx.createSSLEngine();
+
+        for (String protocol : new String[] { "TLSv1.2", "TLSv1.3" }) {
+            // Find two usable cipher suites, so that we can check that a
+            // different configuration doesn't pick up the stored token.
+            String first = null;
+            String second = null;
+            for (String cipher_suite : dummy.getSupportedCipherSuites()) {
+                if (skipProtocolCipherSuite(protocol, cipher_suite, client_alias, server_alias)) {
+                    continue;
+                }
+
+                if (first == null) {
+                    first = cipher_suite;
+                } else {
+                    second = cipher_suite;
+                    break;
+                }
+            }
+
+            if (second == null) {
+                System.err.println("Skipping resumption test for " + protocol);
+                continue;
+            }
+
+            System.err.println("Testing resumption: " + protocol + " with " + first);
+            int port = protocol.equals("TLSv1.2") ? 7412 : 7413;
+
+            JSSSession session = connectResumptionClient(ctx, createResumptionClient(ctx, port, client_alias, protocol, first), server_alias, protocol);
+            assert !session.isResumptionOffered();
+            assert !session.isResumed();
+
+            // The same peer and configuration resumes the first session.
+            long attempts = client_context.getResumptionAttempts();
+            session = connectResumptionClient(ctx, createResumptionClient(ctx, port, client_alias, protocol, first), server_alias, protocol);
+            assert session.isResumptionOffered();
+            assert session.isResumed();
+            assert client_context.getResumptionAttempts() == attempts + 1;
+
+            // Another port is another peer.
+            session = connectResumptionClient(ctx, createResumptionClient(ctx, port + 100, client_alias, protocol, first), server_alias, protocol);
+            assert !session.isResumptionOffered();
+            assert !session.isResumed();
+
+            // So is the same peer with other cipher suites enabled.
+            session = connectResumptionClient(ctx, createResumptionClient(ctx, port, client_alias, protocol, second), server_alias, protocol);
+            assert !session.isResumptionOffered();
+            assert !session.isResumed();
+        }
+    }
+
+    /**
+     * Sends data from send to recv in chunks of the given size, unwrapping
+     * whatever arrives after each wrap, and returns the data received.
+     */
+    public static byte[] transferData(SSLEngine send, SSLEngine recv, byte[] data, int chunk) throws Exception {
+        ByteBuffer inter = ByteBuffer.allocate(send.getSession().getPacketBufferSize());
+        ByteBuffer dest = ByteBuffer.allocate(recv.getSession().getApplicationBufferSize());
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+        int offset = 0;
+        int max_counter = 4 * (data.length / chunk + 1) + 20;
+        for (int counter = 0; offset < data.length || received.size() < data.length; counter++) {
+            if (counter == max_counter) {
+                throw new RuntimeException("Only received " + received.size() + " of " + data.length + " bytes");
+            }
+
+            SSLEngineResult r = send.wrap(ByteBuffer.wrap(data, offset, Math.min(chunk, data.length - offset)), inter);
+            if (r.getStatus() != SSLEngineResult.Status.OK) {
+                throw new RuntimeException("Unknown result from send.wrap(): " + r.getStatus());
+            }
+            offset += r.bytesConsumed();
+
+            inter.flip();
+            while (inter.hasRemaining()) {
+                r = recv.unwrap(inter, dest);
+                if (r.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    break;
+                } else if (r.getStatus() != SSLEngineResult.Status.OK) {
+                    throw new RuntimeException("Unknown result from recv.unwrap(): " + r.getStatus());
+                }
+
+                dest.flip();
+                received.write(dest.array(), dest.position(), dest.remaining());
+                dest.clear();
+
+                if (r.bytesConsumed() == 0 && r.bytesProduced() == 0) {
+                    break;
+                }
+            }
+            inter.compact();
+        }
+
+        return received.toByteArray();
+    }
+
+    /**
+     * Sends data between the engines, in chunks of the given size, and
+     * checks that it arrives in order, without any byte lost or repeated.
+     */
+    public static void checkTransfer(SSLEngine send, SSLEngine recv, int size, int chunk) throws Exception {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            // 251 is prime, so the pattern doesn't line up with records.
+            data[i] = (byte) (i % 251);
+        }
+
+        byte[] received = transferData(send, recv, data, chunk);
+        if (!Arrays.equals(data, received)) {
+            throw new RuntimeException("Expected " + size + " bytes sent in chunks of " + chunk +
+                                       " to be received unchanged; got " + received.length + " bytes");
+        }
+    }
+
+    public static void testAdaptiveBuffers(SSLContext ctx, String client_alias, String server_alias) throws Exception {
+        System.err.println("Testing adaptive buffers...");
+
+        JSSEngineReferenceImpl client_eng = (JSSEngineReferenceImpl) ctx.createSSLEngine();
+        client_eng.setSSLParameters(createParameters(client_alias));
+        client_eng.setUseClientMode(true);
+        client_eng.setName("JSS Client adaptive");
+        client_eng.setAdaptiveBuffers(true);
+
+        JSSEngineReferenceImpl server_eng = (JSSEngineReferenceImpl) ctx.createSSLEngine();
+        server_eng.setSSLParameters(createParameters(server_alias));
+        server_eng.setUseClientMode(false);
+        server_eng.setName("JSS Server adaptive");
+        server_eng.setAdaptiveBuffers(true);
+
+        int small = client_eng.getBufferSize();
+        int large = Math.max(small, JSSEngine.MAX_RECORD_SIZE);
+        assert(client_eng.getSession().getPacketBufferSize() == large);
+
+        try {
+            testHandshake(client_eng, server_eng, false);
+
+            // Bulk transfers grow the buffers receiving them; several full
+            // records and a partial one pass through the grown buffers.
+            checkTransfer(client_eng, server_eng, 3 * 16384 + 123, 16384);
+            assert(client_eng.getWriteBufferSize() == large);
+            assert(server_eng.getReadBufferSize() == large);
+
+            checkTransfer(server_eng, client_eng, 3 * 16384 + 123, 16384);
+            assert(server_eng.getWriteBufferSize() == large);
+            assert(client_eng.getReadBufferSize() == large);
+
+            // Small writes don't shrink them right away...
+            checkTransfer(client_eng, server_eng, 4 * 100, 100);
+            assert(client_eng.getWriteBufferSize() == large);
+            assert(server_eng.getReadBufferSize() == large);
+
+            // ...but once enough calls went by with little data, they
+            // shrink back, without losing data sent across the resize.
+            checkTransfer(client_eng, server_eng, 40 * 100, 100);
+            checkTransfer(server_eng, client_eng, 40 * 100, 100);
+            assert(client_eng.getReadBufferSize() == small);
+            assert(client_eng.getWriteBufferSize() == small);
+            assert(server_eng.getReadBufferSize() == small);
+            assert(server_eng.getWriteBufferSize() == small);
+
+            // And they grow again for the next bulk transfer, here with
+            // chunks that don't line up with records.
+            checkTransfer(client_eng, server_eng, 5 * 16384, 10000);
+            assert(client_eng.getWriteBufferSize() == large);
+            assert(server_eng.getReadBufferSize() == large);
+
+            testClose(client_eng, server_eng);
+        } finally {
+            client_eng.cleanup();
+            server_eng.cleanup();
+        }
+
+        System.err.println("Done testing adaptive buffers! Success!");
+    }
+
     public static void testBasicClientServer(String[] args) throws Exception {
         SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
         ctx.init(getKMs(), getTMs(), null);
@@ -988,6 +1193,8 @@ public class TestSSLEngine {
         testAllHandshakes(ctx, client_alias, server_alias, false);
         testAllHandshakes(ctx, client_alias, server_alias, true);
         testJSSEToJSSHandshakes(ctx, server_alias);
+        testResumption(ctx, client_alias, server_alias);
+        testAdaptiveBuffers(ctx, client_alias, server_alias);
     }
 
     public static void testNativeClientServer(String[] args) throws Exception {
@@ -0,0 +1,143 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.crypto.CryptoToken;
+
+/**
+ * Checks that CryptoManager.withThreadToken scopes nest, restore the
+ * previous token when closed, and only affect the thread which opened
+ * them.
+ */
+public class ThreadTokenScopeTest {
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+
+        CryptoManager cm = CryptoManager.getInstance();
+        CryptoToken keyStorage = cm.getInternalKeyStorageToken();
+        CryptoToken crypto = cm.getInternalCryptoToken();
+        assert keyStorage != crypto;
+
+        cm.setThreadToken(null);
+        try {
+            testNesting(cm, keyStorage, crypto);
+            testRestoresExplicitToken(cm, keyStorage, crypto);
+            testThreadIsolation(cm, keyStorage, crypto);
+            testCloseOnOtherThread(cm, crypto);
+        } finally {
+            cm.setThreadToken(null);
+        }
+    }
+
+    public static void testNesting(CryptoManager cm, CryptoToken keyStorage,
+            CryptoToken crypto) throws Exception {
+        // Without a thread token, the key storage token is the default.
+        assert cm.getThreadToken() == keyStorage;
+
+        try (CryptoManager.ThreadTokenScope outer = cm.withThreadToken(crypto)) {
+            assert cm.getThreadToken() == crypto;
+
+            try (CryptoManager.ThreadTokenScope inner = cm.withThreadToken(null)) {
+                assert cm.getThreadToken() == keyStorage;
+            }
+            assert cm.getThreadToken() == crypto;
+
+            // An exception leaving a scope still restores the token.
+            try (CryptoManager.ThreadTokenScope inner = cm.withThreadToken(keyStorage)) {
+                throw new IllegalArgumentException("leaving the scope");
+            } catch (IllegalArgumentException expected) {
+            }
+            assert cm.getThreadToken() == crypto;
+        }
+        assert cm.getThreadToken() == keyStorage;
+    }
+
+    public static void testRestoresExplicitToken(CryptoManager cm,
+            CryptoToken keyStorage, CryptoToken crypto) throws Exception {
+        cm.setThreadToken(crypto);
+
+        CryptoManager.ThreadTokenScope scope = cm.withThreadToken(keyStorage);
+        assert cm.getThreadToken() == keyStorage;
+
+        scope.close();
+        assert cm.getThreadToken() == crypto;
+
+        // Closing again doesn't undo a token set afterwards.
+        cm.setThreadToken(keyStorage);
+        scope.close();
+        assert cm.getThreadToken() == keyStorage;
+
+        cm.setThreadToken(null);
+    }
+
+    public static void testThreadIsolation(CryptoManager cm,
+            CryptoToken keyStorage, CryptoToken crypto) throws Exception {
+        AtomicReference<CryptoToken> seen = new AtomicReference<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // This thread's scope doesn't change the other thread's token.
+        try (CryptoManager.ThreadTokenScope scope = cm.withThreadToken(crypto)) {
+            Thread other = new Thread(() -> seen.set(cm.getThreadToken()));
+            other.start();
+            other.join();
+            assert seen.get() == keyStorage;
+            assert cm.getThreadToken() == crypto;
+        }
+
+        // Nor does the other thread's scope change this thread's token.
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch checked = new CountDownLatch(1);
+
+        Thread other = new Thread(() -> {
+            try (CryptoManager.ThreadTokenScope scope = cm.withThreadToken(crypto)) {
+                opened.countDown();
+                checked.await();
+                seen.set(cm.getThreadToken());
+            } catch (Throwable t) {
+                failure.set(t);
+                opened.countDown();
+            }
+        });
+        other.start();
+        opened.await();
+
+        assert cm.getThreadToken() == keyStorage;
+        checked.countDown();
+        other.join();
+
+        assert failure.get() == null : failure.get();
+        assert seen.get() == crypto;
+        assert cm.getThreadToken() == keyStorage;
+    }
+
+    public static void testCloseOnOtherThread(CryptoManager cm,
+            CryptoToken crypto) throws Exception {
+        CryptoManager.ThreadTokenScope scope = cm.withThreadToken(crypto);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread other = new Thread(() -> {
+            try {
+                scope.close();
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        other.start();
+        other.join();
+
+        assert failure.get() instanceof IllegalStateException;
+        assert cm.getThreadToken() == crypto;
+
+        // The scope can still be closed by its own thread.
+        scope.close();
+        assert cm.getThreadToken() == cm.getInternalKeyStorageToken();
+    }
+}
@@ -0,0 +1,179 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.CRLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.mozilla.jss.netscape.security.x509.CRLExtensions;
+import org.mozilla.jss.netscape.security.x509.CRLNumberExtension;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+import org.mozilla.jss.netscape.security.x509.X509CRLReader;
+
+/**
+ * Checks that X509CRLReader streams the entries of a CRL, and verifies
+ * its signature, like X509CRLImpl, and that it rejects truncated CRLs and
+ * lengths which exceed their enclosing structures.
+ */
+public class X509CRLReaderTest {
+
+    public static void main(String[] args) throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair kp = generator.generateKeyPair();
+
+        List<RevokedCertificate> revokedCerts = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            revokedCerts.add(new RevokedCertImpl(BigInteger.valueOf(i * 7919L), new Date(1000000L * i)));
+        }
+
+        CRLExtensions crlExtensions = new CRLExtensions();
+        crlExtensions.add(new CRLNumberExtension(BigInteger.TEN));
+
+        X509CRLImpl crl = new X509CRLImpl(
+            new X500Name("CN=Test"),
+            new Date(),
+            new Date(System.currentTimeMillis() + 86400000L),
+            revokedCerts.toArray(new RevokedCertificate[] {}),
+            crlExtensions
+        );
+        crl.sign(kp.getPrivate(), "SHA256withRSA");
+        byte[] encoded = crl.getEncoded();
+
+        Path file = Files.createTempFile("crl", ".der");
+        try {
+            Files.write(file, encoded);
+
+            try (X509CRLReader reader = X509CRLReader.open(file)) {
+                check(reader, crl, kp);
+            }
+        } finally {
+            Files.delete(file);
+        }
+
+        try (X509CRLReader reader = new X509CRLReader(new ByteArrayInputStream(encoded))) {
+            check(reader, crl, kp);
+        }
+
+        // skipped entries are still verified
+        try (X509CRLReader reader = new X509CRLReader(new ByteArrayInputStream(encoded))) {
+            reader.initVerify(kp.getPublic(), null);
+            reader.nextEntry();
+            reader.verify();
+        }
+
+        // a modified entry
+        byte[] modified = encoded.clone();
+        modified[encoded.length / 2] ^= 1;
+        try (X509CRLReader reader = new X509CRLReader(new ByteArrayInputStream(modified))) {
+            reader.initVerify(kp.getPublic(), null);
+            reader.verify();
+            throw new RuntimeException("Expected the signature not to match");
+        } catch (CRLException expected) {
+        }
+
+        testTruncated(encoded, kp);
+        testOversizedLengths(encoded, kp);
+    }
+
+    private static void testTruncated(byte[] encoded, KeyPair kp) throws Exception {
+        for (int length : new int[] { 1, 10, encoded.length / 2, encoded.length - 1 }) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            try {
+                readAll(truncated, kp);
+                throw new RuntimeException("Expected a CRL truncated to " + length + " bytes to fail");
+            } catch (java.io.EOFException | CRLException expected) {
+            }
+        }
+    }
+
+    private static void testOversizedLengths(byte[] encoded, KeyPair kp) throws Exception {
+        // The first entry: SEQUENCE { INTEGER 7919, ... }. A four-byte long
+        // form length swallows the serial number, claiming about 33MB.
+        int entry = indexOf(encoded, new byte[] { 0x02, 0x02, 0x1e, (byte) 0xef }) - 2;
+        assert(encoded[entry] == 0x30);
+        expectOverrun(encoded, entry + 1, kp, "RevokedCertificates overrun");
+
+        // The issuer: SEQUENCE { SET { SEQUENCE { OID 2.5.4.3, ... } } },
+        // claiming about 820MB.
+        int issuer = indexOf(encoded, new byte[] { 0x31, 0x0d, 0x30, 0x0b, 0x06, 0x03, 0x55, 0x04, 0x03 }) - 2;
+        assert(encoded[issuer] == 0x30);
+        expectOverrun(encoded, issuer + 1, kp, "TBSCertList overrun");
+
+        // The signature, outside the tbsCertList: BIT STRING of 257 bytes,
+        // whose two-byte length becomes a four-byte one.
+        int signature = encoded.length - 261;
+        assert(encoded[signature] == 0x03 && encoded[signature + 1] == (byte) 0x82);
+        expectOverrun(encoded, signature + 1, kp, "signed overrun");
+    }
+
+    // Replaces the length octet at the given offset with a four-byte long
+    // form, and expects reading the CRL to fail before allocating for it.
+    private static void expectOverrun(byte[] encoded, int offset, KeyPair kp,
+            String message) throws Exception {
+        byte[] modified = encoded.clone();
+        modified[offset] = (byte) 0x84;
+        try {
+            readAll(modified, kp);
+            throw new RuntimeException("Expected an oversized length to fail");
+        } catch (CRLException e) {
+            assert(e.getMessage().equals(message));
+        }
+    }
+
+    private static void readAll(byte[] encoded, KeyPair kp) throws Exception {
+        try (X509CRLReader reader = new X509CRLReader(new ByteArrayInputStream(encoded))) {
+            reader.initVerify(kp.getPublic(), null);
+            while (reader.nextEntry() != null) {
+            }
+            reader.verify();
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i + pattern.length <= data.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new RuntimeException("Pattern not found");
+    }
+
+    private static void check(X509CRLReader reader, X509CRLImpl crl, KeyPair kp)
+            throws Exception {
+        assert(reader.getIssuer().equals(crl.getIssuerDN()));
+        assert(reader.getThisUpdate().getTime() / 1000 == crl.getThisUpdate().getTime() / 1000);
+
+        reader.initVerify(kp.getPublic(), null);
+
+        int count = 0;
+        RevokedCertImpl entry;
+        while ((entry = reader.nextEntry()) != null) {
+            count++;
+            assert(crl.getRevokedCertificate(entry.getSerialNumber())
+                    .getRevocationDate().equals(entry.getRevocationDate()));
+        }
+        assert(count == crl.getNumberOfRevokedCertificates());
+
+        reader.verify();
+        assert(reader.getExtensions().size() == 1);
+    }
+}
@@ -87,6 +87,7 @@ PR_BEGIN_EXTERN_C
 #define RC2_KEYTYPE_FIELD "RC2"
 #define SHA1_HMAC_KEYTYPE_FIELD "SHA1_HMAC"
 #define AES_KEYTYPE_FIELD "AES"
+#define CHACHA20_KEYTYPE_FIELD "CHACHA20"
 #define GENERIC_SECRET_KEYTYPE_FIELD "GENERIC_SECRET"
 
 /*
@@ -395,6 +396,8 @@ PR_BEGIN_EXTERN_C
 #define SSLFD_PROXY_CLIENT_CERT_FIELD "clientCert"
 #define SSLFD_PROXY_CLIENT_CERT_SIG "Lorg/mozilla/jss/pkcs11/PK11Cert;"
 #define SSLFD_PROXY_EVENT_LIST_SIG "Ljava/util/ArrayList;"
+#define SSLFD_PROXY_RESUMPTION_TOKEN_FIELD "resumptionToken"
+#define SSLFD_PROXY_RESUMPTION_TOKEN_SIG "[B"
 
 /*
  * SecurityStatusResult
@@ -719,6 +719,41 @@ bool JSS_FromByteArray(JNIEnv *env, jbyteArray array, uint8_t **data,
     return true;
 }
 
+/************************************************************************
+** JSS_RefDirectBuffer.
+**
+** See jssutil.h for more information.
+**
+*/
+bool JSS_RefDirectBuffer(JNIEnv *env, jobject buffer, jint offset,
+    jint length, uint8_t **data)
+{
+    uint8_t *address = NULL;
+    jlong capacity = 0;
+
+    if (env == NULL || buffer == NULL || data == NULL) {
+        return false;
+    }
+    *data = NULL;
+
+    address = (*env)->GetDirectBufferAddress(env, buffer);
+    capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    if (address == NULL || capacity < 0) {
+        JSS_throwMsg(env, ILLEGAL_ARGUMENT_EXCEPTION,
+            "Expected a direct java.nio.ByteBuffer.");
+        return false;
+    }
+
+    if (offset < 0 || length < 0 || (jlong) offset + length > capacity) {
+        JSS_throwMsg(env, INDEX_OUT_OF_BOUNDS_EXCEPTION,
+            "Region exceeds the capacity of the direct ByteBuffer.");
+        return false;
+    }
+
+    *data = address + offset;
+    return true;
+}
+
 /************************************************************************
 ** JSS_RefJString
 **
@@ -348,6 +348,21 @@ void JSS_DerefByteArray(JNIEnv *env, jbyteArray array, void *data, jint mode);
 bool JSS_FromByteArray(JNIEnv *env, jbyteArray array, uint8_t **data,
     size_t *length);
 
+/************************************************************************
+** JSS_RefDirectBuffer.
+**
+** References the region [offset, offset + length) of the direct
+** java.nio.ByteBuffer buffer into *data. No copy is made and the reference
+** doesn't need to be released; it is valid for as long as the buffer is.
+** Throws an IllegalArgumentException when buffer isn't direct and an
+** IndexOutOfBoundsException when the region exceeds its capacity.
+**
+** Returns
+**  bool - whether or not the operation succeeded.
+*/
+bool JSS_RefDirectBuffer(JNIEnv *env, jobject buffer, jint offset,
+    jint length, uint8_t **data);
+
 /************************************************************************
 ** JSS_RefJString
 **